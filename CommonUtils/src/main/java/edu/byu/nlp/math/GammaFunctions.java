@@ -33,8 +33,87 @@ public class GammaFunctions {
 	@VisibleForTesting
 	static final int MANUALLY_COMPUTE_RISING_FACTORIAL_THRESHOLD = 8;
 	
+	// Below this, digamma and trigamma are shifted up with their recurrences before applying the 
+	// asymptotic expansions, whose omitted terms are then < 1e-16 (relative).
+	private static final double ASYMPTOTIC_THRESHOLD = 10.0;
+	private static final double SMALL_DIGAMMA_THRESHOLD = 1e-6;
+	private static final double EULER_MASCHERONI = 0.57721566490153286061;
+	
 	private GammaFunctions() { }
 
+	/**
+	 * Returns digamma, trigamma and logGamma evaluated at alpha + n, tabulated for integer n (see
+	 * {@link ShiftedGammaFunctions}). The tables belong to the returned instance, so callers should 
+	 * keep it for as long as alpha stays the same (e.g., one optimizer evaluation) and no longer.
+	 */
+	public static ShiftedGammaFunctions shifted(double alpha) {
+		return new ShiftedGammaFunctions(alpha);
+	}
+
+	/**
+	 * The digamma function, accurate to about 1e-15 (relative) for positive x. For x below 10, 
+	 * shifts x up with digamma(x) = digamma(x + 1) - 1/x and then applies the asymptotic expansion
+	 * (commons-math shifts up to 49). Negative x are reflected, with 
+	 * digamma(x) = digamma(1 - x) - pi / tan(pi x); the result is NaN at the poles (the negative 
+	 * integers, which include every negative double of magnitude 2^52 or more) and at -Infinity.
+	 */
+	public static double digamma(double x) {
+		if (x > 0 && x <= SMALL_DIGAMMA_THRESHOLD) {
+			return -EULER_MASCHERONI - 1.0 / x + (Math.PI * Math.PI / 6.0) * x;
+		}
+		if (x < 0) {
+			if (x == Math.floor(x)) {
+				return Double.NaN;
+			}
+			return digamma(1 - x) - Math.PI / Math.tan(Math.PI * x);
+		}
+		double result = 0.0;
+		while (x < ASYMPTOTIC_THRESHOLD) {
+			result -= 1.0 / x;
+			x += 1.0;
+		}
+		double inv = 1.0 / x;
+		double inv2 = inv * inv;
+		// ln x - 1/(2x) - \sum_n B_{2n} / (2n x^{2n})
+		return result + Math.log(x) - 0.5 * inv
+				- inv2 * (1.0 / 12 - inv2 * (1.0 / 120 - inv2 * (1.0 / 252 - inv2 * (1.0 / 240 - inv2 * (1.0 / 132
+				- inv2 * (691.0 / 32760 - inv2 / 12))))));
+	}
+
+	/**
+	 * The trigamma function, accurate to about 1e-15 (relative) for positive x. See 
+	 * {@link #digamma(double)}; negative x are reflected with 
+	 * trigamma(x) = pi^2 / sin^2(pi x) - trigamma(1 - x).
+	 */
+	public static double trigamma(double x) {
+		if (x < 0) {
+			if (x == Math.floor(x)) {
+				return Double.NaN;
+			}
+			double sin = Math.sin(Math.PI * x);
+			return Math.PI * Math.PI / (sin * sin) - trigamma(1 - x);
+		}
+		double result = 0.0;
+		while (x < ASYMPTOTIC_THRESHOLD) {
+			result += 1.0 / (x * x);
+			x += 1.0;
+		}
+		double inv = 1.0 / x;
+		double inv2 = inv * inv;
+		// 1/x + 1/(2x^2) + \sum_n B_{2n} / x^{2n+1}
+		return result + inv + 0.5 * inv2
+				+ inv * inv2 * (1.0 / 6 - inv2 * (1.0 / 30 - inv2 * (1.0 / 42 - inv2 * (1.0 / 30 - inv2 * (5.0 / 66
+				- inv2 * (691.0 / 2730 - inv2 * 7.0 / 6))))));
+	}
+
+	/**
+	 * ln Gamma(x) (commons-math's implementation; provided here so that callers need only one
+	 * entry point for special functions).
+	 */
+	public static double logGamma(double x) {
+		return Gamma.logGamma(x);
+	}
+
 	/**
 	 * Computes ln Gamma(x + k) - ln Gamma(x)  
 	 */
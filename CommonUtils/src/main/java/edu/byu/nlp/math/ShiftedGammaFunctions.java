@@ -0,0 +1,143 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.math;
+
+/**
+ * digamma, trigamma and logGamma at shift + n for a fixed shift, as needed
+ * by Dirichlet-multinomial computations (where n is a count and shift a
+ * concentration parameter). Values for non-negative integer n are tabulated
+ * with the recurrences
+ *
+ *   digamma(x + 1) = digamma(x) + 1/x
+ *   trigamma(x + 1) = trigamma(x) - 1/x^2
+ *   logGamma(x + 1) = logGamma(x) + log(x)
+ *
+ * re-anchored to a direct evaluation every {@value #ANCHOR_INTERVAL} entries
+ * (and at n = 1) to bound the accumulated rounding error. Tables grow on demand to
+ * (about twice) the largest n used, up to {@value #MAX_TABLE_SIZE} entries; other
+ * arguments are evaluated directly.
+ *
+ * Obtain instances through {@link GammaFunctions#shifted(double)}. Their tables
+ * live as long as they do, so an instance should be scoped to one use of its
+ * shift (e.g., one optimizer evaluation). Instances are thread-safe.
+ */
+public class ShiftedGammaFunctions {
+
+  static final int MAX_TABLE_SIZE = 1 << 16;
+  private static final int ANCHOR_INTERVAL = 64;
+  private static final int INITIAL_TABLE_SIZE = 64;
+
+  private final double shift;
+  private final Table digammas = new Table() {
+    @Override
+    double direct(double x) {
+      return GammaFunctions.digamma(x);
+    }
+    @Override
+    double next(double previous, double x) {
+      return previous + 1.0 / x;
+    }
+  };
+  private final Table trigammas = new Table() {
+    @Override
+    double direct(double x) {
+      return GammaFunctions.trigamma(x);
+    }
+    @Override
+    double next(double previous, double x) {
+      return previous - 1.0 / (x * x);
+    }
+  };
+  private final Table logGammas = new Table() {
+    @Override
+    double direct(double x) {
+      return GammaFunctions.logGamma(x);
+    }
+    @Override
+    double next(double previous, double x) {
+      return previous + Math.log(x);
+    }
+  };
+
+  ShiftedGammaFunctions(double shift) {
+    this.shift = shift;
+  }
+
+  public double getShift() {
+    return shift;
+  }
+
+  /** digamma(shift + n) */
+  public double digamma(double n) {
+    return digammas.get(n);
+  }
+
+  /** trigamma(shift + n) */
+  public double trigamma(double n) {
+    return trigammas.get(n);
+  }
+
+  /** logGamma(shift + n) */
+  public double logGamma(double n) {
+    return logGammas.get(n);
+  }
+
+  /**
+   * A lazily grown table of f(shift + i), i = 0, 1, ...
+   */
+  private abstract class Table {
+
+    private volatile double[] values = new double[0];
+
+    /** f(x) */
+    abstract double direct(double x);
+
+    /** f(x + 1), given f(x) */
+    abstract double next(double previous, double x);
+
+    double get(double n) {
+      int i = (int) n;
+      if (i == n && i >= 0) {
+        double[] values = this.values;
+        if (i < values.length) {
+          return values[i];
+        }
+        if (i < MAX_TABLE_SIZE) {
+          return grow(i)[i];
+        }
+      }
+      return direct(shift + n);
+    }
+
+    private synchronized double[] grow(int index) {
+      double[] values = this.values;
+      if (index < values.length) {
+        return values;
+      }
+      int size = Math.min(MAX_TABLE_SIZE, Math.max(INITIAL_TABLE_SIZE, Math.max(index + 1, 2 * values.length)));
+      double[] grown = new double[size];
+      System.arraycopy(values, 0, grown, 0, values.length);
+      for (int i = values.length; i < size; i++) {
+        // entry 1 is also evaluated directly: for small shifts, f(shift) is dominated by the term
+        // the recurrence removes, and stepping from it would cancel most of the significant digits
+        grown[i] = (i % ANCHOR_INTERVAL <= 1) ? direct(shift + i) : next(grown[i - 1], shift + (i - 1));
+      }
+      this.values = grown;
+      return grown;
+    }
+  }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Batch and multinomial draws in terms of single draws and the normalized
+ * probabilities.
+ */
+abstract class AbstractCategoricalSampler implements CategoricalSampler {
+
+  protected final double[] probs; // normalized
+
+  /**
+   * Copies and normalizes the given weights.
+   *
+   * @throws IllegalArgumentException if any of the weights are negative or
+   *   they are all zero
+   */
+  protected AbstractCategoricalSampler(double[] unnormalizedProbs) {
+    Preconditions.checkNotNull(unnormalizedProbs);
+    Preconditions.checkArgument(unnormalizedProbs.length > 0, "there must be at least one category");
+    double total = 0;
+    for (double p : unnormalizedProbs) {
+      if (p < 0.0) {
+        throw new IllegalArgumentException("weights must be non-negative");
+      }
+      total += p;
+    }
+    Preconditions.checkArgument(total > 0 && !Double.isInfinite(total), "weights must have a finite, positive sum");
+    this.probs = new double[unnormalizedProbs.length];
+    for (int i = 0; i < probs.length; i++) {
+      probs[i] = unnormalizedProbs[i] / total;
+    }
+  }
+
+  @Override
+  public int size() {
+    return probs.length;
+  }
+
+  @Override
+  public double probabilityOf(int category) {
+    return probs[category];
+  }
+
+  @Override
+  public void sample(RandomGenerator rnd, int n, int[] out) {
+    Preconditions.checkArgument(n >= 0 && n <= out.length, "out must have room for n draws");
+    for (int i = 0; i < n; i++) {
+      out[i] = sample(rnd);
+    }
+  }
+
+  /**
+   * Uses individual draws when there are fewer draws than categories, and
+   * otherwise a chain of conditional binomial draws (one per category).
+   */
+  @Override
+  public int[] multinomial(RandomGenerator rnd, int numDraws, int[] counts) {
+    Preconditions.checkArgument(numDraws >= 0, "numDraws must be non-negative");
+    Preconditions.checkArgument(counts.length >= probs.length, "counts must have an entry per category");
+    if (numDraws < probs.length) {
+      Arrays.fill(counts, 0, probs.length, 0);
+      for (int d = 0; d < numDraws; d++) {
+        ++counts[sample(rnd)];
+      }
+      return counts;
+    }
+    return RandomGenerators.nextMultinomial(rnd, numDraws, probs, counts);
+  }
+
+}
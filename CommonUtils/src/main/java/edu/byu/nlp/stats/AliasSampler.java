@@ -0,0 +1,103 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * Samples from a categorical distribution in O(1) time per draw using an
+ * alias table (Vose's method; O(K) to build).
+ *
+ * Each draw uses a single uniform: its integer part (scaled by K) picks a
+ * column and its fractional part decides between the column and its
+ * alias.
+ */
+public class AliasSampler extends AbstractCategoricalSampler {
+
+  private final double[] thresholds;
+  private final int[] aliases;
+
+  /**
+   * @throws IllegalArgumentException if any of the weights are negative or
+   *   they are all zero
+   */
+  public AliasSampler(double[] unnormalizedProbs) {
+    super(unnormalizedProbs);
+    int size = probs.length;
+    this.thresholds = new double[size];
+    this.aliases = new int[size];
+
+    double[] scaled = new double[size];
+    int[] small = new int[size], large = new int[size];
+    int numSmall = 0, numLarge = 0;
+    for (int i = 0; i < size; i++) {
+      scaled[i] = probs[i] * size;
+      if (scaled[i] < 1) {
+        small[numSmall++] = i;
+      }
+      else {
+        large[numLarge++] = i;
+      }
+    }
+    while (numSmall > 0 && numLarge > 0) {
+      int s = small[--numSmall], l = large[--numLarge];
+      thresholds[s] = scaled[s];
+      aliases[s] = l;
+      scaled[l] = (scaled[l] + scaled[s]) - 1;
+      if (scaled[l] < 1) {
+        small[numSmall++] = l;
+      }
+      else {
+        large[numLarge++] = l;
+      }
+    }
+    // what remains is (up to rounding) exactly 1
+    while (numLarge > 0) {
+      int l = large[--numLarge];
+      thresholds[l] = 1;
+      aliases[l] = l;
+    }
+    while (numSmall > 0) {
+      int s = small[--numSmall];
+      thresholds[s] = 1;
+      aliases[s] = s;
+    }
+  }
+
+  /**
+   * A sampler over probabilities given in log space (they need not be
+   * normalized).
+   */
+  public static AliasSampler fromLogProbs(double[] logProbs) {
+    double max = Double.NEGATIVE_INFINITY;
+    for (double logProb : logProbs) {
+      max = Math.max(max, logProb);
+    }
+    double[] probs = new double[logProbs.length];
+    for (int i = 0; i < probs.length; i++) {
+      probs[i] = Math.exp(logProbs[i] - max);
+    }
+    return new AliasSampler(probs);
+  }
+
+  @Override
+  public int sample(RandomGenerator rnd) {
+    double u = rnd.nextDouble() * thresholds.length;
+    int column = Math.min((int) u, thresholds.length - 1);
+    return (u - column < thresholds[column]) ? column : aliases[column];
+  }
+
+}
@@ -0,0 +1,246 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Draws from a fixed binomial distribution in O(1) expected time, whatever
+ * the number of trials. When n * min(p, 1 - p) < 30 this uses inversion
+ * (BINV), whose expected cost is proportional to that mean, and otherwise
+ * the BTPE algorithm described in:
+ *
+ * Voratas Kachitvichyanukul and Bruce W. Schmeiser:
+ * Binomial Random Variate Generation
+ * Communications of the ACM, Volume 31, Number 2, February 1988, pages 216-222.
+ *
+ * The set-up is done once, in the constructor, so repeated draws with the
+ * same parameters should share a sampler. Samplers are immutable and may be
+ * shared between threads (each with its own RandomGenerator).
+ */
+public class BinomialSampler {
+
+  // below this mean, BINV is faster than BTPE
+  private static final double BTPE_THRESHOLD = 30.0;
+
+  private final int n;
+  // draws are for min(p, 1 - p) (as both algorithms require); flipped means the result is n - draw
+  private final boolean flipped;
+  private final double p;
+  private final double q;
+  private final boolean btpe;
+
+  // BINV (s and a are also used by BTPE)
+  private final double s;
+  private final double a;
+  private final double r;
+
+  // BTPE (Step 0); only set when btpe
+  private final int m;
+  private final double npq;
+  private final double p1;
+  private final double xm;
+  private final double xl;
+  private final double xr;
+  private final double c;
+  private final double lambdal;
+  private final double lambdar;
+  private final double p2;
+  private final double p3;
+  private final double p4;
+
+  /**
+   * @param n the number of trials
+   * @param p the probability of success in each trial
+   */
+  public BinomialSampler(int n, double p) {
+    // (not Preconditions.checkArgument(boolean, String, Object...), which boxes on every call)
+    if (n < 0) {
+      throw new IllegalArgumentException("n must be non-negative (not " + n + ")");
+    }
+    if (!(p >= 0.0 && p <= 1.0)) {
+      throw new IllegalArgumentException("p must be a probability (not " + p + ")");
+    }
+    this.n = n;
+    this.flipped = p > 0.5;
+    this.p = flipped ? 1 - p : p;
+    this.q = 1 - this.p;
+    this.btpe = n * this.p >= BTPE_THRESHOLD;
+
+    this.s = this.p / q;
+    this.a = (n + 1.0) * s;
+    if (!btpe) {
+      this.r = Math.pow(q, n);
+      this.m = 0;
+      this.npq = this.p1 = this.xm = this.xl = this.xr = this.c = 0;
+      this.lambdal = this.lambdar = this.p2 = this.p3 = this.p4 = 0;
+      return;
+    }
+    this.r = 0;
+    double fm = n * this.p + this.p;
+    this.m = (int) fm;
+    this.npq = n * this.p * q;
+    this.p1 = Math.floor(2.195 * Math.sqrt(npq) - 4.6 * q) + 0.5;
+    this.xm = m + 0.5;
+    this.xl = xm - p1;
+    this.xr = xm + p1;
+    this.c = 0.134 + 20.5 / (15.3 + m);
+    double al = (fm - xl) / (fm - xl * this.p);
+    double ar = (xr - fm) / (xr * q);
+    this.lambdal = al * (1.0 + 0.5 * al);
+    this.lambdar = ar * (1.0 + 0.5 * ar);
+    this.p2 = p1 * (1 + 2 * c);
+    this.p3 = p2 + c / lambdal;
+    this.p4 = p3 + c / lambdar;
+  }
+
+  /**
+   * A draw from the binomial distribution.
+   */
+  public int sample(RandomGenerator rnd) {
+    if (p == 0.0) {
+      return flipped ? n : 0;
+    }
+    int x = btpe ? btpe(rnd) : binv(rnd, n, s, a, r);
+    return flipped ? n - x : x;
+  }
+
+  /**
+   * A draw from the binomial distribution with n trials and probability p,
+   * without constructing a sampler when inversion applies.
+   */
+  public static int sample(RandomGenerator rnd, int n, double p) {
+    double pMin = Math.min(p, 1 - p);
+    if (n < 0 || !(p >= 0.0 && p <= 1.0) || n * pMin >= BTPE_THRESHOLD) {
+      return new BinomialSampler(n, p).sample(rnd);
+    }
+    if (pMin == 0.0) {
+      return (p > 0.5) ? n : 0;
+    }
+    double s = pMin / (1 - pMin);
+    int x = binv(rnd, n, s, (n + 1.0) * s, Math.pow(1 - pMin, n));
+    return (p > 0.5) ? n - x : x;
+  }
+
+  /**
+   * Draws count independent samples into out[0..count).
+   */
+  public void sample(RandomGenerator rnd, int count, int[] out) {
+    Preconditions.checkArgument(count >= 0 && count <= out.length, "out must have room for count draws");
+    for (int i = 0; i < count; i++) {
+      out[i] = sample(rnd);
+    }
+  }
+
+  /** Algorithm BINV (inversion), with s = p/q, a = (n + 1)s and r = q^n */
+  private static int binv(RandomGenerator rnd, int n, double s, double a, double r) {
+    while (true) {
+      double pr = r;
+      double u = rnd.nextDouble();
+      // (the bound on x guards against rounding error in the tail, where pr underflows)
+      for (int x = 0; x <= n; x++) {
+        if (u < pr) {
+          return x;
+        }
+        u -= pr;
+        pr *= (a / (x + 1)) - s;
+      }
+    }
+  }
+
+  /** Algorithm BTPE (triangle, parallelogram, exponential) */
+  private int btpe(RandomGenerator rnd) {
+    while (true) {
+      /* Step 1 */
+      int y;
+      double u = rnd.nextDouble();
+      double v = rnd.nextDouble();
+      u *= p4;
+      if (u <= p1) {
+        return (int) (xm - p1 * v + u);
+      }
+      /* Step 2 */
+      if (u > p2) {
+        /* Step 3 */
+        if (u > p3) {
+          /* Step 4 */
+          y = (int) Math.min(Integer.MAX_VALUE, Math.floor(xr - Math.log(v) / lambdar));
+          if (y > n) {
+            continue;
+          }
+          v = v * (u - p3) * lambdar;
+        } else {
+          y = (int) Math.floor(xl + Math.log(v) / lambdal);
+          if (y < 0) {
+            continue;
+          }
+          v = v * (u - p2) * lambdal;
+        }
+      } else {
+        double x = xl + (u - p1) / c;
+        v = v * c + 1.0 - Math.abs(m - x + 0.5) / p1;
+        if (v > 1) {
+          continue;
+        }
+        y = (int) x;
+      }
+      /* Step 5.0 */
+      int k = Math.abs(y - m);
+      if (k > 20 && k < 0.5 * npq - 1.0) {
+        /* Step 5.2 */
+        double rho = (k / npq) * ((k * (k / 3.0 + 0.625) + 0.1666666666666) / npq + 0.5);
+        double t = -(double) k * k / (2 * npq);
+        double logV = Math.log(v);
+        if (logV < t - rho) {
+          return y;
+        }
+        if (logV > t + rho) {
+          continue;
+        }
+        /* Step 5.3 */
+        double x1 = y + 1;
+        double f1 = m + 1;
+        double z = n + 1.0 - m;
+        double w = n - y + 1.0;
+        double x2 = x1 * x1;
+        double f2 = f1 * f1;
+        double z2 = z * z;
+        double w2 = w * w;
+        if (logV > xm * Math.log(f1 / x1) + (n - m + 0.5) * Math.log(z / w)
+            + (y - m) * Math.log(w * p / (x1 * q))
+            + (13860. - (462. - (132. - (99. - 140. / f2) / f2) / f2) / f2) / f1 / 166320.
+            + (13860. - (462. - (132. - (99. - 140. / z2) / z2) / z2) / z2) / z / 166320.
+            + (13860. - (462. - (132. - (99. - 140. / x2) / x2) / x2) / x2) / x1 / 166320.
+            + (13860. - (462. - (132. - (99. - 140. / w2) / w2) / w2) / w2) / w / 166320.) {
+          continue;
+        }
+        return y;
+      } else {
+        /* Step 5.1 */
+        double f = 1.0;
+        for (int i = m; i < y; f *= (a / (++i) - s));
+        for (int i = y; i < m; f /= (a / (++i) - s));
+        if (v > f) {
+          continue;
+        }
+        return y;
+      }
+    }
+  }
+
+}
@@ -15,6 +15,12 @@
  */
 package edu.byu.nlp.stats;
 
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Doubles;
+
 /**
  * A categorical distribution.
  * 
@@ -41,4 +47,30 @@ public interface CategoricalDistribution {
 	 * Returns the entropy of the distribution.
 	 */
 	double entropy();
+	
+	/**
+	 * Returns a sampler over the current parameters; repeated draws from the 
+	 * sampler are O(1) and allocation-free.
+	 * 
+	 * The default builds an {@link AliasSampler} from the log probabilities 
+	 * of events 0, 1, ..., stopping once they account for all but 1e-9 of 
+	 * the probability (or at the first event that is out of range), so it 
+	 * requires a normalized distribution. 
+	 * Implementations that know their number of events should override it.
+	 */
+	default CategoricalSampler sampler() {
+		List<Double> logProbs = Lists.newArrayList();
+		double mass = 0;
+		try {
+			while (mass < 1 - 1e-9) {
+				double logProb = logProbabilityOf(logProbs.size());
+				logProbs.add(logProb);
+				mass += Math.exp(logProb);
+			}
+		} catch (IndexOutOfBoundsException e) {
+			// no more events
+		}
+		Preconditions.checkState(!logProbs.isEmpty(), "the distribution has no events");
+		return AliasSampler.fromLogProbs(Doubles.toArray(logProbs));
+	}
 }
@@ -0,0 +1,55 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * Draws from a fixed categorical distribution. Samplers do their work up
+ * front so that repeated draws are cheap and allocation-free. They are
+ * immutable and may be shared between threads (each with its own
+ * RandomGenerator).
+ */
+public interface CategoricalSampler {
+
+  /**
+   * The number of categories
+   */
+  int size();
+
+  /**
+   * The (normalized) probability of the given category
+   */
+  double probabilityOf(int category);
+
+  /**
+   * Draws one category.
+   */
+  int sample(RandomGenerator rnd);
+
+  /**
+   * Draws n categories into out[0..n).
+   */
+  void sample(RandomGenerator rnd, int n, int[] out);
+
+  /**
+   * Counts how often each category occurs in numDraws draws (i.e., draws
+   * from a multinomial distribution). Overwrites counts[0..size()) and
+   * returns counts.
+   */
+  int[] multinomial(RandomGenerator rnd, int numDraws, int[] counts);
+
+}
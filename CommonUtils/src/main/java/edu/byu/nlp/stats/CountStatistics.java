@@ -0,0 +1,228 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import edu.byu.nlp.math.GammaFunctions;
+import edu.byu.nlp.math.ShiftedGammaFunctions;
+import edu.byu.nlp.util.ParallelTasks;
+
+/**
+ * The sufficient statistics of a collection of counts n_1, ..., n_N that
+ * share a Dirichlet(-multinomial) parameter alpha, i.e., the sums
+ *
+ *   sum_i digamma(alpha + n_i) - digamma(alpha)
+ *   sum_i logGamma(alpha + n_i) - logGamma(alpha)
+ *
+ * that appear in the fixed-point updates and log-likelihoods of the
+ * Dirichlet-multinomial optimizables.
+ *
+ * When every count is a non-negative integer and the largest is at most
+ * {@value #MAX_HISTOGRAM_RATIO} times the number of counts (the usual case),
+ * the counts are summarized once into a count-of-counts histogram: with
+ * atLeast[c] the number of counts >= c, the sums are
+ *
+ *   sum_{c >= 1} atLeast[c] / (alpha + c - 1)
+ *   sum_{c >= 1} atLeast[c] * log(alpha + c - 1)
+ *
+ * (Minka, "Estimating a Dirichlet distribution", section 3), so each
+ * evaluation costs O(max count) rather than O(N) and needs no special
+ * functions. Other counts (e.g., scaled data, or a few large counts) are
+ * kept as is and evaluated directly, optionally in parallel (see
+ * {@link ParallelTasks}): the counts are split into fixed blocks whose partial
+ * sums are combined in a fixed (binary tree) order, so the result is the same
+ * for any number of threads.
+ */
+class CountStatistics {
+
+  // larger integral counts are evaluated directly rather than through a histogram this long
+  static final int MAX_HISTOGRAM_LENGTH = 1 << 20;
+  // counts whose maximum exceeds this multiple of their number are evaluated directly, 
+  // since the histogram would cost more per evaluation than the counts themselves
+  static final int MAX_HISTOGRAM_RATIO = 4;
+  // fractional counts are summed in blocks of (at most) this many
+  static final int BLOCK_SIZE = 4096;
+
+  private final int size;
+  // exactly one of these is non-null
+  private final int[] atLeast;
+  private final double[] counts;
+  // for evaluating counts directly
+  private final int numThreads;
+
+  private CountStatistics(int size, int[] atLeast, double[] counts, int numThreads) {
+    this.size = size;
+    this.atLeast = atLeast;
+    this.counts = counts;
+    this.numThreads = numThreads;
+  }
+
+  /**
+   * Summarizes the given counts, which are copied if they cannot be
+   * summarized by a histogram.
+   */
+  static CountStatistics of(double[] counts) {
+    return of(counts, 1);
+  }
+
+  /**
+   * Summarizes the given counts, evaluating any that cannot be summarized by a
+   * histogram with the given number of threads.
+   */
+  static CountStatistics of(double[] counts, int numThreads) {
+    Preconditions.checkNotNull(counts);
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be positive (not %s)", numThreads);
+    int maxCount = 0;
+    for (double count : counts) {
+      if (!(count >= 0 && count < MAX_HISTOGRAM_LENGTH && count == Math.rint(count))) {
+        return new CountStatistics(counts.length, null, counts.clone(), numThreads);
+      }
+      maxCount = Math.max(maxCount, (int) count);
+    }
+    if (maxCount > (long) MAX_HISTOGRAM_RATIO * counts.length) {
+      return new CountStatistics(counts.length, null, counts.clone(), numThreads);
+    }
+    int[] atLeast = new int[maxCount + 1];
+    for (double count : counts) {
+      ++atLeast[(int) count];
+    }
+    // turn counts-of-counts into tail sums
+    for (int c = maxCount - 1; c >= 0; c--) {
+      atLeast[c] += atLeast[c + 1];
+    }
+    return new CountStatistics(counts.length, atLeast, null, numThreads);
+  }
+
+  /**
+   * Summarizes all of the counts in the given (possibly ragged) matrix.
+   */
+  static CountStatistics of(double[][] counts) {
+    return of(counts, 1);
+  }
+
+  /**
+   * Summarizes all of the counts in the given (possibly ragged) matrix,
+   * evaluating them with the given number of threads (see above).
+   */
+  static CountStatistics of(double[][] counts, int numThreads) {
+    Preconditions.checkNotNull(counts);
+    int size = 0;
+    for (double[] row : counts) {
+      size += row.length;
+    }
+    double[] flattened = new double[size];
+    int offset = 0;
+    for (double[] row : counts) {
+      System.arraycopy(row, 0, flattened, offset, row.length);
+      offset += row.length;
+    }
+    return of(flattened, numThreads);
+  }
+
+  /** The number of counts summarized */
+  int size() {
+    return size;
+  }
+
+  /** Whether the counts are summarized by a count-of-counts histogram */
+  boolean isHistogram() {
+    return atLeast != null;
+  }
+
+  /**
+   * sum_i digamma(alpha + n_i) - digamma(alpha)
+   */
+  double digammaSum(double alpha) {
+    if (atLeast == null) {
+      ShiftedGammaFunctions shifted = GammaFunctions.shifted(alpha);
+      return directSum(shifted, false) - size * shifted.digamma(0);
+    }
+    double total = 0;
+    for (int c = 1; c < atLeast.length; c++) {
+      total += atLeast[c] / (alpha + (c - 1));
+    }
+    return total;
+  }
+
+  /**
+   * sum_i logGamma(alpha + n_i) - logGamma(alpha)
+   */
+  double logGammaSum(double alpha) {
+    if (atLeast == null) {
+      ShiftedGammaFunctions shifted = GammaFunctions.shifted(alpha);
+      return directSum(shifted, true) - size * shifted.logGamma(0);
+    }
+    double total = 0;
+    for (int c = 1; c < atLeast.length; c++) {
+      total += atLeast[c] * Math.log(alpha + (c - 1));
+    }
+    return total;
+  }
+
+  private double directSum(final ShiftedGammaFunctions shifted, final boolean logGamma) {
+    int numBlocks = (counts.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    double[] blockSums = new double[numBlocks];
+    if (numThreads == 1 || numBlocks <= 1) {
+      for (int b = 0; b < numBlocks; b++) {
+        blockSums[b] = blockSum(b, shifted, logGamma);
+      }
+    } else {
+      List<Callable<Double>> tasks = Lists.newArrayListWithCapacity(numBlocks);
+      for (int b = 0; b < numBlocks; b++) {
+        final int block = b;
+        tasks.add(new Callable<Double>() {
+          @Override
+          public Double call() {
+            return blockSum(block, shifted, logGamma);
+          }
+        });
+      }
+      List<Double> results = ParallelTasks.invokeAll(tasks, numThreads);
+      for (int b = 0; b < numBlocks; b++) {
+        blockSums[b] = results.get(b);
+      }
+    }
+    return treeSum(blockSums, 0, numBlocks);
+  }
+
+  /**
+   * sum_i f(shift + counts[i]) over the given block, where f is digamma or
+   * logGamma.
+   */
+  private double blockSum(int block, ShiftedGammaFunctions shifted, boolean logGamma) {
+    int to = Math.min(counts.length, (block + 1) * BLOCK_SIZE);
+    double total = 0;
+    for (int i = block * BLOCK_SIZE; i < to; i++) {
+      total += logGamma ? shifted.logGamma(counts[i]) : shifted.digamma(counts[i]);
+    }
+    return total;
+  }
+
+  /** Sums values[from, to) by halving the range, so the order of the additions is fixed */
+  private static double treeSum(double[] values, int from, int to) {
+    if (to - from <= 1) {
+      return (to > from) ? values[from] : 0.0;
+    }
+    int mid = (from + to) >>> 1;
+    return treeSum(values, from, mid) + treeSum(values, mid, to);
+  }
+
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A variant of {@link MutableSum} for dense, small indices: summands are kept in a
+ * double[] (grown as needed) and inactive summands in a BitSet, so updates
+ * neither box nor hash.
+ *
+ * The running sum is compensated (Neumaier's variant of Kahan summation), so
+ * it does not drift under long sequences of updates, and is recomputed from
+ * the active summands every {@value #RESUM_INTERVAL} updates to discard what
+ * error does accumulate; removing an infinite (or NaN) summand also triggers a
+ * recomputation. Copies share their arrays until one of them is next modified
+ * (copy-on-write), so taking a snapshot is O(1); once all but one of the
+ * sums sharing the arrays have made their own, the last one writes in place.
+ */
+public class DenseMutableSum {
+
+  static final int RESUM_INTERVAL = 1 << 16;
+  private static final int INITIAL_CAPACITY = 16;
+
+  private double[] summands;
+  private BitSet inactive;
+  // the number of sums using summands and inactive (shared by all of them)
+  private AtomicInteger numSharing;
+  private double sum;
+  private double compensation;
+  private int numUpdates;
+
+  public DenseMutableSum() {
+    this(INITIAL_CAPACITY);
+  }
+
+  /**
+   * @param capacity the expected number of summands (more may be set)
+   */
+  public DenseMutableSum(int capacity) {
+    Preconditions.checkArgument(capacity >= 0, "capacity must be non-negative (not %s)", capacity);
+    this.summands = new double[capacity];
+    this.inactive = new BitSet();
+    this.numSharing = new AtomicInteger(1);
+  }
+
+  private DenseMutableSum(DenseMutableSum other) {
+    this.summands = other.summands;
+    this.inactive = other.inactive;
+    this.numSharing = other.numSharing;
+    this.sum = other.sum;
+    this.compensation = other.compensation;
+    this.numUpdates = other.numUpdates;
+  }
+
+  public void setSummand(int index, double value) {
+    Preconditions.checkArgument(index >= 0, "indexes must be non-negative (not %s)", index);
+    if (index >= summands.length) {
+      if (value == 0.0) {
+        // unset summands are 0 already
+        return;
+      }
+      ensureWritable(index + 1);
+    } else {
+      ensureWritable(0);
+    }
+    double previous = summands[index];
+    summands[index] = value;
+    if (!inactive.get(index) && previous != value) {
+      if (removed(previous)) {
+        add(value);
+      }
+      updated();
+    }
+  }
+
+  /**
+   * Summands remember their values, but don't participate in the total sum
+   * while they are marked inactive. By default, all summands are active.
+   */
+  public void setSummandActive(int index, boolean active) {
+    Preconditions.checkArgument(index >= 0, "indexes must be non-negative (not %s)", index);
+    boolean previouslyActive = !inactive.get(index);
+    if (active == previouslyActive) {
+      return;
+    }
+    ensureWritable(0);
+    inactive.set(index, !active);
+    double value = (index < summands.length) ? summands[index] : 0.0;
+    if (value != 0.0) {
+      if (active) {
+        add(value);
+      } else {
+        removed(value);
+      }
+      updated();
+    }
+  }
+
+  public double getSum() {
+    return sum + compensation;
+  }
+
+  /**
+   * The value of the given summand, or 0 if it is inactive or was never set.
+   */
+  public double getSummand(int index) {
+    if (index >= summands.length || inactive.get(index)) {
+      return 0.0;
+    }
+    return summands[index];
+  }
+
+  /**
+   * An independent copy of this sum, in O(1) time (the summands are copied
+   * by whichever sum is modified while they are still shared).
+   */
+  public DenseMutableSum copy() {
+    numSharing.incrementAndGet();
+    return new DenseMutableSum(this);
+  }
+
+  /**
+   * Recomputes the sum from the active summands, discarding any accumulated
+   * rounding error. This is done automatically every {@value #RESUM_INTERVAL}
+   * updates.
+   */
+  public void resum() {
+    sum = 0.0;
+    compensation = 0.0;
+    for (int i = inactive.nextClearBit(0); i < summands.length; i = inactive.nextClearBit(i + 1)) {
+      add(summands[i]);
+    }
+    numUpdates = 0;
+  }
+
+  /** Neumaier's compensated addition */
+  private void add(double value) {
+    double t = sum + value;
+    if (!Double.isFinite(t)) {
+      // (the compensation would be inf - inf = NaN)
+    } else if (Math.abs(sum) >= Math.abs(value)) {
+      compensation += (sum - t) + value;
+    } else {
+      compensation += (value - t) + sum;
+    }
+    sum = t;
+  }
+
+  /**
+   * Subtracts a summand that has been changed or inactivated. Infinite (and
+   * NaN) summands cannot be subtracted, since inf - inf is NaN, so those are
+   * removed by recomputing the sum from the arrays, which must already hold
+   * the change. Returns false in that case (the sum is then up to date).
+   */
+  private boolean removed(double previous) {
+    if (!Double.isFinite(previous)) {
+      resum();
+      return false;
+    }
+    add(-previous);
+    return true;
+  }
+
+  private void updated() {
+    if (++numUpdates >= RESUM_INTERVAL) {
+      resum();
+    }
+  }
+
+  /**
+   * Makes the arrays private to this sum (if they are shared with a copy) and
+   * at least the given length.
+   */
+  private void ensureWritable(int length) {
+    boolean shared = numSharing.get() > 1;
+    if (length > summands.length) {
+      summands = Arrays.copyOf(summands, Math.max(length, 2 * summands.length));
+    } else if (shared) {
+      summands = summands.clone();
+    }
+    if (shared) {
+      inactive = (BitSet) inactive.clone();
+      numSharing.decrementAndGet();
+      numSharing = new AtomicInteger(1);
+    }
+  }
+
+}
@@ -16,16 +16,20 @@
 package edu.byu.nlp.stats;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealVector;
 import org.apache.commons.math3.random.RandomGenerator;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 
 import edu.byu.nlp.math.GammaFunctions;
 import edu.byu.nlp.math.RealMatrices;
 import edu.byu.nlp.util.DoubleArrays;
+import edu.byu.nlp.util.ParallelTasks;
 
 /**
  * @author rah67
@@ -33,6 +37,8 @@ import edu.byu.nlp.util.DoubleArrays;
  */
 public class DirichletDistribution {
 
+	private static final int ROWS_PER_TASK = 64;
+
 	private final double[] alpha;
 	
 	public static DirichletDistribution newDirichlet(double[] alpha, boolean copy) {
@@ -165,10 +171,55 @@ public class DirichletDistribution {
   }
   
 	public static double[] sample(double[] alpha, RandomGenerator rnd) {
-		double[] theta = GammaDistribution.sample(alpha, rnd);
-		DoubleArrays.normalizeToSelf(theta);
+		double[] theta = new double[alpha.length];
+		sample(alpha, theta, rnd);
 		return theta;
 	}
+
+	/**
+	 * Stores a sample from the specified Dirichlet distribution in theta (which may be alpha). 
+	 * If every gamma draw underflows (i.e., all of the alphas are tiny), the sample is computed 
+	 * in log space instead.
+	 */
+	public static void sample(double[] alpha, double[] theta, RandomGenerator rnd) {
+		Preconditions.checkArgument(theta.length == alpha.length, "theta and alpha must have the same length");
+		double sum = 0.0;
+		for (int k = 0; k < alpha.length; k++) {
+			double draw = GammaDistribution.sample(alpha[k], rnd);
+			if (sum == 0.0) {
+				// leading zero draws are only stored once a draw is positive, so that alpha is 
+				// still intact for the log-space fallback if theta is alpha
+				if (draw == 0.0) {
+					continue;
+				}
+				Arrays.fill(theta, 0, k, 0.0);
+			}
+			theta[k] = draw;
+			sum += draw;
+		}
+		if (sum > 0.0) {
+			for (int k = 0; k < theta.length; k++) {
+				theta[k] /= sum;
+			}
+		} else {
+			logSample(alpha, theta, rnd);
+			DoubleArrays.expToSelf(theta);
+		}
+	}
+
+	/**
+	 * Stores the log of a sample from the specified Dirichlet distribution in logTheta (which may
+	 * be alpha). Each gamma draw is made in log space (see 
+	 * {@link GammaDistribution#logSample(double, RandomGenerator)}), so the result is finite even
+	 * for alphas so small that the gamma draws themselves underflow.
+	 */
+	public static void logSample(double[] alpha, double[] logTheta, RandomGenerator rnd) {
+		Preconditions.checkArgument(logTheta.length == alpha.length, "logTheta and alpha must have the same length");
+		for (int k = 0; k < alpha.length; k++) {
+			logTheta[k] = GammaDistribution.logSample(alpha[k], rnd);
+		}
+		DoubleArrays.logNormalizeToSelf(logTheta);
+	}
 	
 	public static double[][] sample(RealMatrix alphas, RandomGenerator rnd) {
 		double[][] theta = GammaDistribution.sample(alphas, rnd);
@@ -185,7 +236,64 @@ public class DirichletDistribution {
 		}
 		return thetas;
 	}
-	
+
+	/**
+	 * Samples from each of the specified Dirichlet distributions, using up to numThreads threads.
+	 * See {@link #sample(double[][], double[][], RandomGenerator, int)}.
+	 */
+	public static double[][] sample(double[][] alphas, RandomGenerator rnd, int numThreads) {
+		double[][] thetas = new double[alphas.length][];
+		for (int i = 0; i < thetas.length; i++) {
+			thetas[i] = new double[alphas[i].length];
+		}
+		sample(alphas, thetas, rnd, numThreads);
+		return thetas;
+	}
+
+	/**
+	 * Stores a sample from the Dirichlet distribution alphas[i] in thetas[i] (preallocated, with 
+	 * the same shape as alphas; thetas may be alphas), using up to numThreads threads.
+	 * Row i is drawn with its own stream (see {@link RandomStreams}), seeded by a single draw from
+	 * rnd. (The result differs from that of {@link #sample(double[][], RandomGenerator)}.)
+	 */
+	public static void sample(double[][] alphas, double[][] thetas, RandomGenerator rnd, int numThreads) {
+		sampleRows(alphas, thetas, false, rnd, numThreads);
+	}
+
+	/**
+	 * Like {@link #sample(double[][], double[][], RandomGenerator, int)}, but stores the log of each 
+	 * sample (see {@link #logSample(double[], double[], RandomGenerator)}).
+	 */
+	public static void logSample(double[][] alphas, double[][] logThetas, RandomGenerator rnd, int numThreads) {
+		sampleRows(alphas, logThetas, true, rnd, numThreads);
+	}
+
+	private static void sampleRows(final double[][] alphas, final double[][] out, final boolean logSpace, 
+			RandomGenerator rnd, int numThreads) {
+		Preconditions.checkArgument(numThreads > 0, "numThreads must be positive (not %s)", numThreads);
+		Preconditions.checkArgument(out.length == alphas.length, "expected %s output rows (not %s)", 
+				alphas.length, out.length);
+		final RandomStreams streams = RandomStreams.from(rnd);
+		List<Callable<Void>> tasks = Lists.newArrayList();
+		for (int start = 0; start < alphas.length; start += ROWS_PER_TASK) {
+			final int from = start, to = Math.min(alphas.length, start + ROWS_PER_TASK);
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int i = from; i < to; i++) {
+						if (logSpace) {
+							logSample(alphas[i], out[i], streams.stream(i));
+						} else {
+							sample(alphas[i], out[i], streams.stream(i));
+						}
+					}
+					return null;
+				}
+			});
+		}
+		ParallelTasks.invokeAll(tasks, numThreads);
+	}
+
 	/**
 	 * Returns the log of a sample from the specified Dirichlet distribution.
 	 * Similar to calling:
@@ -196,9 +304,8 @@ public class DirichletDistribution {
 	 * EXCEPT that precision is better preserved.
 	 **/
 	public static double[] logSample(double[] alpha, RandomGenerator rnd) {
-		double[] theta = GammaDistribution.sample(alpha, rnd);
-		DoubleArrays.logToSelf(theta);
-		DoubleArrays.logNormalizeToSelf(theta);
+		double[] theta = new double[alpha.length];
+		logSample(alpha, theta, rnd);
 		return theta;
 	}
 	
@@ -207,9 +314,7 @@ public class DirichletDistribution {
 	 * Precision is preserved through a call to logNormalizeToSelf().
 	 **/
 	public static void logSampleToSelf(double[] alpha, RandomGenerator rnd) {
-		GammaDistribution.sampleToSelf(alpha, rnd);
-		DoubleArrays.logToSelf(alpha);
-		DoubleArrays.logNormalizeToSelf(alpha);
+		logSample(alpha, alpha, rnd);
 	}	
 
 	/**
@@ -222,9 +327,8 @@ public class DirichletDistribution {
 	 * EXCEPT that precision is better preserved.
 	 **/
 	public static double[] logSample(RealVector alpha, RandomGenerator rnd) {
-		double[] theta = GammaDistribution.sample(alpha, rnd);
-		DoubleArrays.logToSelf(theta);
-		DoubleArrays.logNormalizeToSelf(theta);
+		double[] theta = alpha.toArray();
+		logSample(theta, theta, rnd);
 		return theta;
 	}
 	
@@ -277,18 +381,14 @@ public class DirichletDistribution {
   public static double[] logSample(double alpha, int dimension, RandomGenerator rnd) {
     double[] theta = new double[dimension];
     for (int i = 0; i < theta.length; i++) {
-        theta[i] = GammaDistribution.sample(alpha, rnd); 
+        theta[i] = GammaDistribution.logSample(alpha, rnd); 
     }
-    DoubleArrays.logToSelf(theta);
     DoubleArrays.logNormalizeToSelf(theta);
     return theta;
   }
 
   public static void sampleToSelf(double[] alpha, RandomGenerator rnd) {
-    for (int i = 0; i < alpha.length; i++) {
-      alpha[i] = GammaDistribution.sample(alpha[i], rnd);
-    }
-    DoubleArrays.normalizeToSelf(alpha);
+    sample(alpha, alpha, rnd);
   }
 
   public static void sampleToSelf(double[][] alphas, RandomGenerator rnd) {
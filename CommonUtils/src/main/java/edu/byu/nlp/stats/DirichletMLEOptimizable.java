@@ -15,8 +15,7 @@
  */
 package edu.byu.nlp.stats;
 
-import org.apache.commons.math3.special.Gamma;
-
+import edu.byu.nlp.math.GammaFunctions;
 import edu.byu.nlp.math.optimize.IterativeOptimizer.Optimizable;
 import edu.byu.nlp.math.optimize.ValueAndObject;
 import edu.byu.nlp.util.DoubleArrays;
@@ -53,7 +52,7 @@ public class DirichletMLEOptimizable implements Optimizable<double[]> {
 		double alphaSum = DoubleArrays.sum(alpha);
 		double[] g = computeG(alpha, alphaSum);
 		double[] q = computeQ(alpha);
-		double b = computeB(g, q, N * Gamma.trigamma(alphaSum));
+		double b = computeB(g, q, N * GammaFunctions.trigamma(alphaSum));
 		for (int k = 0; k < alpha.length; k++) {
 			alpha[k] -= (g[k] - b) / q[k];
 		}
@@ -62,9 +61,9 @@ public class DirichletMLEOptimizable implements Optimizable<double[]> {
 	}
 	
 	private double computeValue(double[] alpha) {
-		double value = Gamma.logGamma(DoubleArrays.sum(alpha));
+		double value = GammaFunctions.logGamma(DoubleArrays.sum(alpha));
 		for (int k = 0; k < alpha.length; k++) {
-			value -= Gamma.logGamma(alpha[k]);
+			value -= GammaFunctions.logGamma(alpha[k]);
 		}
 		value *= N;
 		
@@ -76,10 +75,10 @@ public class DirichletMLEOptimizable implements Optimizable<double[]> {
 	}
 	
 	private double[] computeG(double[] alpha, double alphaSum) {
-		double digammaAlphaSum = Gamma.digamma(alphaSum);
+		double digammaAlphaSum = GammaFunctions.digamma(alphaSum);
 		double[] g = new double[alpha.length];
 		for (int k = 0; k < g.length; k++) {
-			g[k] = N * (digammaAlphaSum - Gamma.digamma(alpha[k])) + sumTheta[k];
+			g[k] = N * (digammaAlphaSum - GammaFunctions.digamma(alpha[k])) + sumTheta[k];
 		}
 		return g;
 	}
@@ -87,7 +86,7 @@ public class DirichletMLEOptimizable implements Optimizable<double[]> {
 	private double[] computeQ(double[] alpha) {
 		double[] q = new double[alpha.length];
 		for (int k = 0; k < q.length; k++) {
-			q[k] = -N * Gamma.trigamma(alpha[k]);
+			q[k] = -N * GammaFunctions.trigamma(alpha[k]);
 		}
 		return q;
 	}
@@ -15,8 +15,6 @@
  */
 package edu.byu.nlp.stats;
 
-import org.apache.commons.math3.special.Gamma;
-
 import com.google.common.base.Preconditions;
 
 import edu.byu.nlp.math.optimize.IterativeOptimizer.Optimizable;
@@ -39,23 +37,35 @@ import edu.byu.nlp.util.Matrices;
 public class DirichletMultinomialMLEOptimizable implements Optimizable<double[]> {
 
 	private final boolean inPlace;
-	private final double[][] data;
-	private final double[] perIDataSums;
-	private final int N;
+	private final CountStatistics[] perKCounts;
+	private final CountStatistics perIDataSums;
 	private final int K;
 	
 	public static DirichletMultinomialMLEOptimizable newOptimizable(double[][] data, boolean inPlace) {
-		return new DirichletMultinomialMLEOptimizable(data, inPlace);
+		return newOptimizable(data, inPlace, 1);
+	}
+	
+	/**
+	 * @param numThreads the number of threads with which to evaluate fractional data 
+	 * (integral data are summarized by histograms; see CountStatistics). The results do 
+	 * not depend on numThreads.
+	 */
+	public static DirichletMultinomialMLEOptimizable newOptimizable(double[][] data, boolean inPlace, int numThreads) {
+		return new DirichletMultinomialMLEOptimizable(data, inPlace, numThreads);
 	}
 	
-	private DirichletMultinomialMLEOptimizable(double[][] data, boolean inPlace) {
+	private DirichletMultinomialMLEOptimizable(double[][] data, boolean inPlace, int numThreads) {
 		Preconditions.checkNotNull(data, "invalid data: "+data);
 		Preconditions.checkArgument(data.length>0, "invalid data: "+data);
 		Preconditions.checkArgument(data[0].length>0, "invalid data: "+data);
-		this.data = data;
-		this.N = data.length;
 		this.K = data[0].length;
-		this.perIDataSums = Matrices.sumOverSecond(data);
+		// the data only enter through these, which are computed once (see CountStatistics)
+		double[][] perKData = Matrices.transpose(data);
+		this.perKCounts = new CountStatistics[K];
+		for (int k = 0; k < K; k++) {
+			perKCounts[k] = CountStatistics.of(perKData[k], numThreads);
+		}
+		this.perIDataSums = CountStatistics.of(Matrices.sumOverSecond(data), numThreads);
 		this.inPlace = inPlace;
 	}
 	
@@ -67,64 +77,27 @@ public class DirichletMultinomialMLEOptimizable implements Optimizable<double[]>
 			alpha = alpha.clone();
 		}
 		double alphaSum = DoubleArrays.sum(alpha);
-		double denominator = computeDenominator(perIDataSums,alphaSum);
+		double denominator = perIDataSums.digammaSum(alphaSum);
 		for (int k = 0; k < K; k++) {
-			double numerator = computeNumerator(data,alpha,k,N);
+			double numerator = perKCounts[k].digammaSum(alpha[k]);
 			double ratio = numerator / denominator; 
 			alpha[k] *= ratio;
 		}
 		
-		double value = computeLogLikelihood(data, alpha, alphaSum, perIDataSums, N, K);
+		double value = computeLogLikelihood(perKCounts, alpha, alphaSum, perIDataSums, K);
 		return new ValueAndObject<double[]>(value, alpha);
 	}
 
-	private static double computeNumerator(double[][] data, double[] alpha, int k, int N) {
-		double total = 0;
-		for (int i=0; i<N; i++){
-			total += Gamma.digamma(data[i][k] + alpha[k]);
-		}
-		total -= Gamma.digamma(alpha[k]) * N; // pulled out of the loop for efficiency
-		return total;
-	}
-	
-	private static double computeDenominator(double[] perIDataSums, double alphaSum) {
-		double total = 0;
-		for (int i=0; i<perIDataSums.length; i++){
-			total += Gamma.digamma(perIDataSums[i] + alphaSum);
-		}
-		total -= Gamma.digamma(alphaSum) * perIDataSums.length;
-		return total;
-	}
-
 	/**
 	 * Equation 53 from http://research.microsoft.com/en-us/um/people/minka/papers/dirichlet/minka-dirichlet.pdf
 	 */
-	private static double computeLogLikelihood(double[][] data, double[] alpha, double alphaSum, double[] perIDataSums, int N, int K) {
-		
-		// this comes from the denominator of the second term
-		// which can be factored out of the inner loop into 
-		// prod_i prod_k (1/gamma(alpha_k))
-		double[] logGammaOfAlpha = alpha.clone();
+	private static double computeLogLikelihood(CountStatistics[] perKCounts, double[] alpha, double alphaSum, CountStatistics perIDataSums, int K) {
+		// first term: sum_i logGamma(alphaSum) - logGamma(alphaSum + n_i)
+		double llik = -perIDataSums.logGammaSum(alphaSum);
+		// second term: sum_i sum_k logGamma(alpha_k + n_ik) - logGamma(alpha_k)
 		for (int k=0; k<K; k++){
-			logGammaOfAlpha[k] = Gamma.logGamma(logGammaOfAlpha[k]);
+			llik += perKCounts[k].logGammaSum(alpha[k]);
 		}
-		double logGammaOfAlphaSum = DoubleArrays.sum(logGammaOfAlpha);
-		double llik = -logGammaOfAlphaSum * N;
-		
-		
-		for (int i=0; i<N; i++){
-			// first  term numerator
-			llik += Gamma.logGamma(alphaSum);
-			// first term denominator
-			llik -= Gamma.logGamma(perIDataSums[i] + alphaSum);
-			// second term
-			for (int k=0; k<K; k++){
-				// second term numerator
-				llik += Gamma.logGamma(data[i][k] + alpha[k]);
-				// second term denominator (factored out and precomputed)
-			}
-		}
-		
 		return llik;
 	}
 	
@@ -136,4 +136,10 @@ public class DoubleArrayCategoricalDistribution implements CategoricalDistributi
         }
         return entropy;
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public CategoricalSampler sampler() {
+        return AliasSampler.fromLogProbs(logProbs);
+    }
 }
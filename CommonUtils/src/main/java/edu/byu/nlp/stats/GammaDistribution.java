@@ -28,10 +28,16 @@ import com.google.common.base.Preconditions;
 public class GammaDistribution {
 
   /**
-   * self-contained gamma generator. Multiply result with scale parameter (or
-   * divide by rate parameter). After Teh (npbayes).
+   * Samples from the gamma distribution with the given shape and unit scale.
+   * Multiply the result by the scale parameter (or divide by the rate
+   * parameter) for other scales.
    * 
-   * Taken From knowceans.
+   * Uses the method of Marsaglia and Tsang (2000), which needs a normal
+   * draw (see {@link NormalDistribution}), a uniform, and rarely a log per
+   * attempt, and accepts with probability > 0.95 for every shape. Shapes
+   * less than 1 are boosted: if X ~ Gamma(shape + 1) and U ~ Unif(0,1), then
+   * X * U^(1/shape) ~ Gamma(shape). For very small shapes the result may
+   * underflow to 0; use {@link #logSample(double, RandomGenerator)} instead.
    */
   public static double sample(double shape, RandomGenerator rnd) {
     Preconditions.checkArgument(shape > 0.0);
@@ -39,41 +45,49 @@ public class GammaDistribution {
 
     if (shape == 1.0) {
       /* Exponential */
-      return -Math.log(rnd.nextDouble());
+      return -Math.log(1.0 - rnd.nextDouble());
     } else if (shape < 1.0) {
-      /* Use Johnk's generator */
-      double cc = 1.0 / shape;
-      double dd = 1.0 / (1.0 - shape);
-      while (true) {
-        double xx = Math.pow(rnd.nextDouble(), cc);
-        double yy = xx + Math.pow(rnd.nextDouble(), dd);
-        if (yy <= 1.0) {
-          // FIXME: assertion error for rr = 0.010817814317923407
-          // assert yy != 0 && xx / yy > 0 : "rr = " + rr;
-          // INFO: this if is a hack
-          if (yy != 0 && xx / yy > 0) {
-            return -Math.log(rnd.nextDouble()) * xx / yy;
-          }
-        }
+      return sampleMarsagliaTsang(shape + 1.0, rnd) * Math.pow(1.0 - rnd.nextDouble(), 1.0 / shape);
+    } else {
+      return sampleMarsagliaTsang(shape, rnd);
+    }
+  }
+
+  /**
+   * Returns the log of a sample from the gamma distribution with the given
+   * shape and unit scale. Unlike Math.log(sample(shape, rnd)), this is
+   * finite even for shapes so small that the sample itself underflows.
+   */
+  public static double logSample(double shape, RandomGenerator rnd) {
+    Preconditions.checkArgument(shape > 0.0);
+    Preconditions.checkNotNull(rnd);
+
+    if (shape < 1.0) {
+      // log(X * U^(1/shape)) = log(X) + log(U) / shape
+      return Math.log(sampleMarsagliaTsang(shape + 1.0, rnd)) + Math.log(1.0 - rnd.nextDouble()) / shape;
+    }
+    return Math.log(sample(shape, rnd));
+  }
+
+  /** Requires shape >= 1 */
+  private static double sampleMarsagliaTsang(double shape, RandomGenerator rnd) {
+    double d = shape - 1.0 / 3.0;
+    double c = 1.0 / Math.sqrt(9.0 * d);
+    while (true) {
+      double x, v;
+      do {
+        x = NormalDistribution.sample(rnd);
+        v = 1.0 + c * x;
+      } while (v <= 0.0);
+      v = v * v * v;
+      double u = rnd.nextDouble();
+      double xx = x * x;
+      // the first test (a squeeze) avoids the logs most of the time
+      if (u < 1.0 - 0.0331 * xx * xx) {
+        return d * v;
       }
-    } else { /* rr > 1.0 */
-      /* Use bests algorithm */
-      double bb = shape - 1.0;
-      double cc = 3.0 * shape - 0.75;
-      while (true) {
-        double uu = rnd.nextDouble();
-        double vv = rnd.nextDouble();
-        double ww = uu * (1.0 - uu);
-        double yy = Math.sqrt(cc / ww) * (uu - 0.5);
-        double xx = bb + yy;
-        if (xx >= 0) {
-          double zz = 64.0 * ww * ww * ww * vv * vv;
-          assert zz > 0 && bb != 0 && xx / bb > 0;
-          if ((zz <= (1.0 - 2.0 * yy * yy / xx))
-              || (Math.log(zz) <= 2.0 * (bb * Math.log(xx / bb) - yy))) {
-            return xx;
-          }
-        }
+      if (Math.log(u) < 0.5 * xx + d * (1.0 - v + Math.log(v))) {
+        return d * v;
       }
     }
   }
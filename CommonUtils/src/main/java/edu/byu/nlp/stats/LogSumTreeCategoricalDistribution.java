@@ -0,0 +1,199 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link SumTreeCategoricalDistribution} whose weights are set in log
+ * space (unnormalized log probabilities), with O(log K) updates and draws.
+ *
+ * The tree holds e^{w_k - shift} for a common shift. Whenever an update
+ * would push a weight too far above the shift (risking overflow) or the
+ * total too far below it (risking underflow of the smaller weights), the
+ * distribution renormalizes: the shift becomes the current maximum log
+ * weight and the tree is rebuilt (O(K)). Renormalization is needed only
+ * after a large change in the scale of the weights, so its cost is
+ * amortized over many O(log K) updates.
+ *
+ * Not thread-safe.
+ */
+public class LogSumTreeCategoricalDistribution implements CategoricalDistribution {
+
+  /** How far (in log space) the weights may drift from the shift before renormalizing */
+  private static final double RENORMALIZATION_THRESHOLD = 100.0;
+  private static final double MIN_TOTAL = Math.exp(-RENORMALIZATION_THRESHOLD);
+
+  private final double[] logWeights;
+  private final double[] scratch; // exponentiated weights while renormalizing
+  private final SumTreeCategoricalDistribution tree;
+  private double shift;
+  private int numRenormalizations = 0;
+
+  /**
+   * A distribution over numCategories categories, all of which initially
+   * have log weight -Infinity (weights must be set before sampling).
+   */
+  public LogSumTreeCategoricalDistribution(int numCategories) {
+    this.tree = new SumTreeCategoricalDistribution(numCategories);
+    this.logWeights = new double[numCategories];
+    this.scratch = new double[numCategories];
+    Arrays.fill(logWeights, Double.NEGATIVE_INFINITY);
+    this.shift = 0.0;
+  }
+
+  /**
+   * A distribution with the given (copied) unnormalized log probabilities. O(K).
+   *
+   * @throws IllegalArgumentException if any of the log weights are NaN or +Infinity
+   */
+  public static LogSumTreeCategoricalDistribution fromLogWeights(double[] logWeights) {
+    LogSumTreeCategoricalDistribution dist = new LogSumTreeCategoricalDistribution(logWeights.length);
+    for (int k = 0; k < logWeights.length; k++) {
+      checkLogWeight(logWeights[k]);
+    }
+    System.arraycopy(logWeights, 0, dist.logWeights, 0, logWeights.length);
+    dist.renormalize();
+    return dist;
+  }
+
+  private static void checkLogWeight(double logWeight) {
+    if (Double.isNaN(logWeight) || logWeight == Double.POSITIVE_INFINITY) {
+      throw new IllegalArgumentException("log weights must be less than +Infinity (not " + logWeight + ")");
+    }
+  }
+
+  public int getNumCategories() {
+    return logWeights.length;
+  }
+
+  public double getLogWeight(int category) {
+    return logWeights[category];
+  }
+
+  /**
+   * Sets the unnormalized log probability of the category. O(log K),
+   * except when the distribution must be renormalized.
+   *
+   * @throws IllegalArgumentException if the log weight is NaN or +Infinity
+   */
+  public void setLogWeight(int category, double logWeight) {
+    Preconditions.checkElementIndex(category, logWeights.length);
+    checkLogWeight(logWeight);
+    logWeights[category] = logWeight;
+    if (logWeight - shift > RENORMALIZATION_THRESHOLD) {
+      renormalize();
+      return;
+    }
+    tree.setWeight(category, Math.exp(logWeight - shift));
+    if (tree.getTotal() < MIN_TOTAL) {
+      renormalize();
+    }
+  }
+
+  /**
+   * Adds delta to the log weight of the category, i.e., multiplies its
+   * weight by e^delta.
+   */
+  public void addToLogWeight(int category, double delta) {
+    setLogWeight(category, logWeights[category] + delta);
+  }
+
+  /**
+   * Re-exponentiates every weight relative to the current maximum. O(K).
+   */
+  private void renormalize() {
+    double max = Double.NEGATIVE_INFINITY;
+    for (double logWeight : logWeights) {
+      max = Math.max(max, logWeight);
+    }
+    shift = (max == Double.NEGATIVE_INFINITY) ? 0.0 : max;
+    for (int k = 0; k < scratch.length; k++) {
+      scratch[k] = Math.exp(logWeights[k] - shift);
+    }
+    tree.setWeights(scratch);
+    ++numRenormalizations;
+  }
+
+  /**
+   * How often the weights have been re-exponentiated (including by
+   * {@link #fromLogWeights(double[])})
+   */
+  public int getNumRenormalizations() {
+    return numRenormalizations;
+  }
+
+  /**
+   * The log of the sum of the weights (i.e., the log normalizer). O(1).
+   */
+  public double getLogTotal() {
+    return shift + Math.log(tree.getTotal());
+  }
+
+  /**
+   * Draws a category with probability proportional to the exponentiated
+   * log weights. O(log K).
+   *
+   * @throws IllegalStateException if all of the log weights are -Infinity
+   */
+  public int sample(RandomGenerator rnd) {
+    return tree.sample(rnd);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public double logProbabilityOf(int event) {
+    return logWeights[event] - getLogTotal();
+  }
+
+  /** {@inheritDoc} O(K). */
+  @Override
+  public int argMax() {
+    int argMax = 0;
+    for (int k = 1; k < logWeights.length; k++) {
+      if (logWeights[k] > logWeights[argMax]) {
+        argMax = k;
+      }
+    }
+    return argMax;
+  }
+
+  /** {@inheritDoc} O(K). */
+  @Override
+  public double logMax() {
+    return logProbabilityOf(argMax());
+  }
+
+  /** {@inheritDoc} O(K). */
+  @Override
+  public double entropy() {
+    return tree.entropy();
+  }
+
+  /**
+   * Returns a sampler over a snapshot of the current weights; it is not
+   * affected by later updates. O(K).
+   */
+  @Override
+  public CategoricalSampler sampler() {
+    return tree.sampler();
+  }
+
+}
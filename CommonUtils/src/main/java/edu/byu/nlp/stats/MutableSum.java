@@ -15,6 +15,8 @@ import com.google.common.collect.Sets;
  * calculate the updated sum in constant time. 
  * Summands are indexed by integer, but maintained 
  * sparsely. 
+ * 
+ * See {@link DenseMutableSum} for small, dense indices.
  */
 public class MutableSum {
   
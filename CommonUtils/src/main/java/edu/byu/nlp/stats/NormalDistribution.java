@@ -0,0 +1,94 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * Standard normal variates by the ziggurat method (Marsaglia and Tsang,
+ * 2000; this is the 128-layer variant of Doornik, 2005). Most draws cost a
+ * single nextLong() and a multiplication; the alternative,
+ * RandomGenerator.nextGaussian(), usually needs a log and a sqrt.
+ */
+public class NormalDistribution {
+
+  private static final int NUM_LAYERS = 128;
+  private static final double R = 3.442619855899; // start of the tail
+  private static final double V = 9.91256303526217e-3; // area of each layer
+
+  // X[i] is the right edge of layer i (X[0] is that of a box with the tail's area); X[NUM_LAYERS] = 0
+  private static final double[] X = new double[NUM_LAYERS + 1];
+  // RATIO[i] = X[i+1] / X[i]: below it, a point is inside the density without evaluating it
+  private static final double[] RATIO = new double[NUM_LAYERS];
+
+  static {
+    double f = Math.exp(-0.5 * R * R);
+    X[0] = V / f;
+    X[1] = R;
+    X[NUM_LAYERS] = 0;
+    for (int i = 2; i < NUM_LAYERS; i++) {
+      X[i] = Math.sqrt(-2 * Math.log(V / X[i - 1] + f));
+      f = Math.exp(-0.5 * X[i] * X[i]);
+    }
+    for (int i = 0; i < NUM_LAYERS; i++) {
+      RATIO[i] = X[i + 1] / X[i];
+    }
+  }
+
+  /**
+   * A draw from the standard normal distribution.
+   */
+  public static double sample(RandomGenerator rnd) {
+    while (true) {
+      long bits = rnd.nextLong();
+      // the top 53 bits give u in [-1, 1); the (disjoint) bottom 7 bits pick the layer
+      double u = 2 * ((bits >>> 11) * 0x1.0p-53) - 1;
+      int i = (int) (bits & (NUM_LAYERS - 1));
+      if (Math.abs(u) < RATIO[i]) {
+        return u * X[i];
+      }
+      if (i == 0) {
+        return sampleTail(u < 0, rnd);
+      }
+      double x = u * X[i];
+      double f0 = Math.exp(-0.5 * (X[i] * X[i] - x * x));
+      double f1 = Math.exp(-0.5 * (X[i + 1] * X[i + 1] - x * x));
+      if (f1 + rnd.nextDouble() * (f0 - f1) < 1.0) {
+        return x;
+      }
+    }
+  }
+
+  /**
+   * A draw from the normal distribution with the given mean and standard
+   * deviation.
+   */
+  public static double sample(double mean, double sd, RandomGenerator rnd) {
+    return mean + sd * sample(rnd);
+  }
+
+  /** Marsaglia's method for the tail beyond R */
+  private static double sampleTail(boolean negative, RandomGenerator rnd) {
+    double x, y;
+    do {
+      // 1 - nextDouble() is in (0, 1]
+      x = Math.log(1 - rnd.nextDouble()) / R;
+      y = Math.log(1 - rnd.nextDouble());
+    } while (-2 * y < x * x);
+    return negative ? x - R : R - x;
+  }
+
+}
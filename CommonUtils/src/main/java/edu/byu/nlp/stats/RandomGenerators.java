@@ -34,156 +34,83 @@ import edu.byu.nlp.util.DoubleArrays;
  */
 public class RandomGenerators {
 
-	private static final double LOGSUM_THRESHOLD = 20.0;
 	@VisibleForTesting static final int BINARY_SEARCH_THRESHOLD = 5;
+
+	private static final ThreadLocal<double[]> LOG_PROBS_WORKSPACE = new ThreadLocal<double[]>() {
+		@Override
+		protected double[] initialValue() {
+			return new double[16];
+		}
+	};
 	
 	/**
-	 * This routine generates a random number between 0 and n inclusive, following
-	 * the binomial distribution with probability p and n trials. The routine is
-	 * based on the BTPE algorithm, described in:
-	 * 
-	 * Voratas Kachitvichyanukul and Bruce W. Schmeiser:
-	 * Binomial Random Variate Generation
-	 * Communications of the ACM, Volume 31, Number 2, February 1988, pages 216-222.
-	 * 
-	 * Snagged on March 19, 2009 from:
+	 * Returns a draw from the binomial distribution with n trials and probability p, in O(1) 
+	 * expected time (see {@link BinomialSampler}, which should be used instead for repeated 
+	 * draws with the same parameters).
 	 * 
-	 * http://chianti.ucsd.edu/svn/csplugins/trunk/ucsf/scooter/clusterMaker/src/clusterMaker/algorithms/kmeans/KCluster.java
-	 * 
-	 * by Robbie who also converted the uniform() calls to RandomGenerator.nextDouble()
-	 * 
-	 * @param p The probability of a single event.  This should be less than or equal to 0.5.
+	 * @param p The probability of a single event.
 	 * @param n The number of trials
 	 * @return An integer drawn from a binomial distribution with parameters (p, n).
 	 */
 	public static int nextBinom(RandomGenerator rnd, int n, double p) {
-		// rah67 March 19, 2007; didn't properly handle the degenerate case
-		if (p == 1.0) return n;
-		
-		double q = 1 - p;
-		if (n*p < 30.0) /* Algorithm BINV */
-		{ 
-			double s = p/q;
-			double a = (n+1)*s;
-//			double r = Math.exp(n*Math.log(q)); /* pow() causes a crash on AIX */
-			double r = Math.pow(q,n); /* rah67 March 19, 2007 */
-			int x = 0;
-			double u = rnd.nextDouble();
-			while(true)
-			{ 
-				if (u < r) return x;
-				u-=r;
-				x++;
-				r *= (a/x)-s;
-			}
-		}
-		else /* Algorithm BTPE */
-		{ /* Step 0 */
-			double fm = n*p + p;
-			int m = (int) fm;
-			double p1 = Math.floor(2.195*Math.sqrt(n*p*q) -4.6*q) + 0.5;
-			double xm = m + 0.5;
-			double xl = xm - p1;
-			double xr = xm + p1;
-			double c = 0.134 + 20.5/(15.3+m);
-			double a = (fm-xl)/(fm-xl*p);
-			double b = (xr-fm)/(xr*q);
-			double lambdal = a*(1.0+0.5*a);
-			double lambdar = b*(1.0+0.5*b);
-			double p2 = p1*(1+2*c);
-			double p3 = p2 + c/lambdal;
-			double p4 = p3 + c/lambdar;
-			while (true)
-			{ /* Step 1 */
-				int y;
-				int k;
-				double u = rnd.nextDouble();
-				double v = rnd.nextDouble();
-				u *= p4;
-				if (u <= p1) return (int)(xm-p1*v+u);
-				/* Step 2 */
-				if (u > p2)
-				{ /* Step 3 */
-					if (u > p3)
-					{ /* Step 4 */
-						y = (int)(xr-Math.log(v)/lambdar);
-						if (y > n) continue;
-						/* Go to step 5 */
-						v = v*(u-p3)*lambdar;
-					}
-					else
-					{
-						y = (int)(xl+Math.log(v)/lambdal);
-						if (y < 0) continue;
-						/* Go to step 5 */
-						v = v*(u-p2)*lambdal;
-					}
-				}
-				else
-				{
-					double x = xl + (u-p1)/c;
-					v = v*c + 1.0 - Math.abs(m-x+0.5)/p1;
-					if (v > 1) continue;
-					/* Go to step 5 */
-					y = (int)x;
-				}
-				/* Step 5 */
-				/* Step 5.0 */
-				k = Math.abs(y-m);
-				if (k > 20 && k < 0.5*n*p*q-1.0)
-				{ /* Step 5.2 */
-					double rho = (k/(n*p*q))*((k*(k/3.0 + 0.625) + 0.1666666666666)/(n*p*q)+0.5);
-					double t = -k*k/(2*n*p*q);
-					double A = Math.log(v);
-					if (A < t-rho) return y;
-					else if (A > t+rho) continue;
-					else
-					{ /* Step 5.3 */
-						double x1 = y+1;
-						double f1 = m+1;
-						double z = n+1-m;
-						double w = n-y+1;
-						double x2 = x1*x1;
-						double f2 = f1*f1;
-						double z2 = z*z;
-						double w2 = w*w;
-						if (A > xm * Math.log(f1/x1) + (n-m+0.5)*Math.log(z/w)
-						      + (y-m)*Math.log(w*p/(x1*q))
-						      + (13860.-(462.-(132.-(99.-140./f2)/f2)/f2)/f2)/f1/166320.
-						      + (13860.-(462.-(132.-(99.-140./z2)/z2)/z2)/z2)/z/166320.
-						      + (13860.-(462.-(132.-(99.-140./x2)/x2)/x2)/x2)/x1/166320.
-						      + (13860.-(462.-(132.-(99.-140./w2)/w2)/w2)/w2)/w/166320.)
-							continue;
-						return y;
-					}
-				}
-				else
-				{ /* Step 5.1 */
-					int i;
-					double s = p/q;
-					double aa = s*(n+1);
-					double f = 1.0;
-					for (i = m; i < y; f *= (aa/(++i)-s));
-					for (i = y; i < m; f /= (aa/(++i)-s));
-					if (v > f) continue;
-					return y;
-				}
-			}
-		}
+		return BinomialSampler.sample(rnd, n, p);
 	}
 
+	/**
+	 * Counts how often each event occurs in numDraws draws with the probabilities 
+	 * specified by unnormalized probabilities (see {@link #nextMultinomial}).
+	 */
 	public static double[] nextVectorUnnormalizedProbs(RandomGenerator rnd, double[] unnormalizedProbs, int numDraws){
-		double[] vec = new double[unnormalizedProbs.length];
-		for (int d=0; d<numDraws; d++){
-			vec[nextIntUnnormalizedProbs(rnd, unnormalizedProbs)] += 1;
+		int[] counts = nextMultinomial(rnd, numDraws, unnormalizedProbs, new int[unnormalizedProbs.length]);
+		double[] vec = new double[counts.length];
+		for (int k=0; k<counts.length; k++){
+			vec[k] = counts[k];
 		}
 		return vec;
 	}
 	
+	/**
+	 * Counts how often each event occurs in numDraws draws with the probabilities specified by 
+	 * unnormalized probabilities (i.e., draws from a multinomial distribution), as a chain of 
+	 * conditional binomial draws: the count of event k is binomial with the draws not yet 
+	 * assigned to events before k and probability w_k / (w_k + ... + w_K). This takes O(K) 
+	 * expected time regardless of numDraws. Overwrites counts[0..K) and returns counts.
+	 * 
+	 * @throws IllegalArgumentException if any of the weights are negative or they are all zero 
+	 */
+	public static int[] nextMultinomial(RandomGenerator rnd, int numDraws, double[] unnormalizedProbs, int[] counts){
+		Preconditions.checkArgument(numDraws >= 0, "numDraws must be non-negative (not %s)", numDraws);
+		Preconditions.checkArgument(counts.length >= unnormalizedProbs.length, "counts must have an entry per event");
+		int last = -1;
+		double total = 0.0;
+		for (int k=0; k<unnormalizedProbs.length; k++){
+			Preconditions.checkArgument(unnormalizedProbs[k] >= 0.0, "weights must be non-negative");
+			if (unnormalizedProbs[k] > 0.0){
+				last = k;
+				total += unnormalizedProbs[k];
+			}
+		}
+		Preconditions.checkArgument(last >= 0 && !Double.isInfinite(total), "weights must have a finite, positive sum");
+		
+		Arrays.fill(counts, 0, unnormalizedProbs.length, 0);
+		int remaining = numDraws;
+		double remainingMass = total;
+		for (int k=0; k<last && remaining>0; k++){
+			// remainingMass only drifts below w_k through rounding error
+			double p = (unnormalizedProbs[k] >= remainingMass) ? 1.0 : unnormalizedProbs[k] / remainingMass;
+			counts[k] = nextBinom(rnd, remaining, p);
+			remaining -= counts[k];
+			remainingMass -= unnormalizedProbs[k];
+		}
+		counts[last] += remaining;
+		return counts;
+	}
+	
 	
 	/**
 	 * Returns a random integer with the probabilities specified by unnormalized probabilities.
-	 * Uses a binary search for additional speed-ups.
+	 * Uses a binary search for additional speed-ups. To draw repeatedly from the same 
+	 * probabilities, use a {@link CumulativeSampler} or {@link AliasSampler} instead.
 	 * 
 	 * @throws IllegalArgumentException if any of the weights are negative
 	 */
@@ -199,7 +126,13 @@ public class RandomGenerators {
 		}
 		
 		double u = rnd.nextDouble() * DoubleArrays.last(cumUnnormalizedProbs);
-		
+		return searchCumulative(cumUnnormalizedProbs, u);
+	}
+	
+	/**
+	 * The index of the first cumulative probability greater than u
+	 */
+	static int searchCumulative(double[] cumUnnormalizedProbs, double u) {
 		if (cumUnnormalizedProbs.length < BINARY_SEARCH_THRESHOLD) {
 			return linearSearch(cumUnnormalizedProbs, u);
 		} else {
@@ -218,144 +151,99 @@ public class RandomGenerators {
 	}
 
 	private static int binarySearch(double[] cumUnnormalizedProbs, double u) {
-		int lowerBracket = 0;
-		int upperBracket = cumUnnormalizedProbs.length - 1;
-	  int middleIndex = 0;
-		while (lowerBracket <= upperBracket) {
-			middleIndex = (lowerBracket + upperBracket) >>> 1;
-			double middleValue = cumUnnormalizedProbs[middleIndex];
-			if (middleValue > u) {
-				upperBracket = middleIndex - 1;
-			} else if (middleValue < u) {
-				// We adjust middleIndex directly for the (likely) case when we fall through
-				lowerBracket = ++middleIndex;
+		return binarySearch(cumUnnormalizedProbs, 0, cumUnnormalizedProbs.length - 1, u);
+	}
+
+	/**
+	 * The index of the first element of cum[lowerBracket..upperBracket] that is greater than u
+	 * (upperBracket if there is none).
+	 */
+	private static int binarySearch(double[] cum, int lowerBracket, int upperBracket, double u) {
+		while (lowerBracket < upperBracket) {
+			int middleIndex = (lowerBracket + upperBracket) >>> 1;
+			if (cum[middleIndex] > u) {
+				upperBracket = middleIndex;
 			} else {
-				return middleIndex;
+				lowerBracket = middleIndex + 1;
 			}
 		}
-		return middleIndex;
+		return lowerBracket;
 	}
 
 	/**
 	 * Returns a random integer with the probabilities specified by unnormalized log probabilities.
-	 * 
-	 * This sampler is based on the observation that log(\sum_i e^{x_i}) = 
-	 * log(x_1 * \sum_{i=2} e^{x_i - x_1}) which in turn is equivalent to 
-	 * x_1 + log(1 + \sum_{i=2} e^{x_i - x_1}). In other words, sampling requires computing the logSum
-	 * in order to normalize, but if we cache the cumulative sum of the exponents, we only perform as
-	 * many log operations as is necessary for search. Since we compute the highest probable element
-	 * first, this can result in significant reductions in cost. Furthermore, we use a binary search,
-	 * further reducing the cost.
+	 * Uses a per-thread workspace, so no memory is allocated once the workspace is large enough;
+	 * see {@link #nextIntUnnormalizedLogProbs(RandomGenerator, double[], double[])}.
 	 */
 	public static int nextIntUnnormalizedLogProbs(RandomGenerator rnd, double[] unnormalizedLogProbs) {
-	  double[] copy = unnormalizedLogProbs.clone();
-	  DoubleArrays.logNormalizeToSelf(copy);
-	  DoubleArrays.expToSelf(copy);
-	  double u1 = rnd.nextDouble();
-	  double acc = 0.0;
-	  for (int i = 0; i < copy.length; i++) {
-	    acc += copy[i];
-	    if (acc > u1) {
-	      return i;
-	    }
-	  }
-	  System.out.println(Arrays.toString(unnormalizedLogProbs));
-      System.out.println(Arrays.toString(copy));
-	  throw new IllegalStateException("this should never happen");
-	  
-	  // FIXME(rhaertel): there appears to be a bug; for now, I'm skipping over these optimizations.
-	  //
-//		// Finding the max is helpful for two reasons: (1) we can avoid exps with parameters that are
-//	  // many orders of magnitude smaller. (2) being the most probable, we can speed up sampling by
-//	  // checking it first
-//		int argMax = DoubleArrays.argMax(unnormalizedLogProbs);
-//		double max = unnormalizedLogProbs[argMax];
-//		
-//		// We move the max (most probable) to the beginning to make sampling faster
-//		DoubleArrays.swap(unnormalizedLogProbs, 0, argMax);
-//
-//		// This will hold the cumulative sum of exponentiated differences
-//		double[] cumSum = cumSumOfExponentiatedDiffs(unnormalizedLogProbs, max);
-//		
-//		// Undo the previous swap to leave x unchanged
-//		DoubleArrays.swap(unnormalizedLogProbs, 0, argMax);
-//		
-//		double r = rnd.nextDouble();
-//		double u = Math.log(r) + Math.log(1.0 + cumSum[cumSum.length - 1]);
-//		// Was the most probable item randomly chosen? We check first since it is most probable. This
-//		// is particularly advantageous in spiky distributions.
-//		//
-//		// Note the mathematical equivalence with r < p(X = 0), r ~ Unif(0,1)
-//		//   log(r) < log p(X = 0)
-//		//   log(r) < log exp(x[0]) - log(\sum_{i=0} exp(x[i]))
-//		//   log(r) + log(\sum_{i=1} exp(x_i)) < x[0]
-//		//   log(r) + x[0] + log(1 + \sum_{i=1} exp(x[i] - x[0])) < x[0]
-//		//   log(r) + log(1 + \sum_{i=1} exp(x[i] - x[0])) < 0
-//		//   u + log(1 + \sum_{i=1} exp(x[i] - x[0])) < 0
-//		if (u < 0) {
-//			return argMax;
-//		}
-//		
-//		if (unnormalizedLogProbs.length < BINARY_SEARCH_THRESHOLD) {
-//			return linearSearchLogs(argMax, cumSum, u);
-//		} else {
-//			// Since we only do logs as needed, a binary search can reduce the number of logs
-//			return binarySearchLogs(argMax, cumSum, 1, unnormalizedLogProbs.length - 1, u);
-//		}
+		double[] workspace = LOG_PROBS_WORKSPACE.get();
+		if (workspace.length < unnormalizedLogProbs.length) {
+			workspace = new double[Math.max(unnormalizedLogProbs.length, 2 * workspace.length)];
+			LOG_PROBS_WORKSPACE.set(workspace);
+		}
+		return nextIntUnnormalizedLogProbs(rnd, unnormalizedLogProbs, workspace);
 	}
 
-	private static double[] cumSumOfExponentiatedDiffs(double[] x, double max) {
-		double[] cumSum = new double[x.length];
+	/**
+	 * Returns a random integer with the probabilities specified by unnormalized log probabilities.
+	 * The first unnormalizedLogProbs.length entries of workspace are overwritten; unnormalizedLogProbs is
+	 * left unchanged.
+	 * 
+	 * This sampler is based on the observation that \sum_i e^{x_i} = e^{x_m} \sum_i e^{x_i - x_m}, 
+	 * where x_m is the largest element. One pass finds x_m; a second (the only one that 
+	 * exponentiates) caches the cumulative sum of e^{x_i - x_m} over i != m in the workspace. Since 
+	 * the most probable element is checked first (e^{x_m - x_m} = 1), spiky distributions usually 
+	 * return without a search; otherwise, the cumulative sums are searched as in 
+	 * {@link #nextIntUnnormalizedProbs(RandomGenerator, double[])}.
+	 * 
+	 * @throws IllegalArgumentException if the workspace is too small or no element is finite
+	 */
+	public static int nextIntUnnormalizedLogProbs(RandomGenerator rnd, double[] unnormalizedLogProbs, 
+			double[] workspace) {
+		int n = unnormalizedLogProbs.length;
+		Preconditions.checkArgument(workspace.length >= n, "workspace must be at least as long as the log probabilities");
 		
-		double sumExponentiatedDiffs = 0.0;
-		for (int i = 1; i < x.length; i++) {
-			double diff = x[i] - max;
-			if (diff > LOGSUM_THRESHOLD) {
-				sumExponentiatedDiffs += Math.exp(diff);
+		int argMax = 0;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			if (unnormalizedLogProbs[i] > max) {
+				max = unnormalizedLogProbs[i];
+				argMax = i;
 			}
-			cumSum[i] = sumExponentiatedDiffs; 
 		}
-		return cumSum;
-	}
-
-	private static int linearSearchLogs(int argMax, double[] cumSum, double u) {
-		for (int i = 1; i < cumSum.length; i++) {
-			if (u < Math.log(1.0 + cumSum[i])) {
-				return returnVal(i, argMax);
-			}
+		if (max == Double.NEGATIVE_INFINITY || max == Double.POSITIVE_INFINITY) {
+			throw new IllegalArgumentException("the largest log probability must be finite; was " + max);
 		}
-
-		throw new IllegalStateException("Problem with log sampling");
-	}
-
-	private static int binarySearchLogs(int argMax, double[] cum, int lowerBracket, int upperBracket, double u) {
-		int middleIndex = 0;
-		while (lowerBracket <= lowerBracket) {
-			middleIndex = (lowerBracket + upperBracket) >>> 1;
-			double middleValue = Math.log(1.0 + cum[middleIndex]);
-			if (middleValue > u) {
-				upperBracket = middleIndex - 1;
-			} else if (middleValue < u) {
-				// We adjust middleIndex directly for the (likely) case when we fall through
-				lowerBracket = ++middleIndex;
-			} else {
-				return returnVal(middleIndex, argMax);
+		
+		// The max contributes nothing to workspace[argMax]; it is sampled separately (below).
+		double cum = 0.0;
+		for (int i = 0; i < n; i++) {
+			if (i != argMax) {
+				cum += Math.exp(unnormalizedLogProbs[i] - max);
 			}
+			workspace[i] = cum;
 		}
-		return returnVal(middleIndex, argMax);
-	}
-
-	/** Adjusts for the fact that we moved argMax to the beginning **/
-	private static int returnVal(int index, int argMax) {
-		if (index == argMax) {
-			return 0;
-		} else if (index <= argMax) {
-			return index - 1;
+		
+		// Note the equivalence with r < p(X = m), r ~ Unif(0,1):
+		//   r < e^{x_m} / \sum_i e^{x_i} = 1 / (1 + \sum_{i != m} e^{x_i - x_m})
+		double u = rnd.nextDouble() * (1.0 + cum);
+		if (u < 1.0) {
+			return argMax;
+		}
+		u -= 1.0;
+		if (u >= cum) {
+			// Only possible due to rounding
+			return argMax;
+		}
+		
+		// Since workspace[argMax] doesn't exceed its predecessor, the search never returns argMax
+		if (n < BINARY_SEARCH_THRESHOLD) {
+			return linearSearch(workspace, u);
 		} else {
-			return index;
+			return binarySearch(workspace, 0, n - 1, u);
 		}
 	}
-	
+
 	/**
 	 * Returns an array with the specified size where each element 
 	 * has been assigned an integer value between 0 (inclusive) and 
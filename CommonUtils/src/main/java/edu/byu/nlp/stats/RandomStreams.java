@@ -0,0 +1,62 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A family of independent random streams derived from a single seed, for
+ * reproducible parallel work. Split the work into tasks with fixed indices
+ * (e.g., chunks of a fixed size, not one chunk per thread) and give task i
+ * {@code stream(i)}: its draws depend only on the seed and i, so results are
+ * the same however many threads run the tasks and in whatever order.
+ *
+ * Stream i is a {@link Xoroshiro128Generator} whose 128-bit state is taken
+ * from positions 2i+1 and 2i+2 of a SplitMix64 sequence, so distinct
+ * indices get distinct states and creating a stream is O(1).
+ *
+ * Instances are immutable and thread-safe (the streams they create are not).
+ */
+public class RandomStreams {
+
+  private final long base;
+
+  public RandomStreams(long seed) {
+    this.base = Xoroshiro128Generator.mix64(seed);
+  }
+
+  /**
+   * Streams seeded by one draw from rnd, for methods that are handed a
+   * RandomGenerator but want to fan out work.
+   */
+  public static RandomStreams from(RandomGenerator rnd) {
+    return new RandomStreams(rnd.nextLong());
+  }
+
+  /**
+   * A new generator for the task with the given (non-negative) index. Each
+   * call returns a fresh generator at the start of the stream.
+   */
+  public Xoroshiro128Generator stream(long index) {
+    Preconditions.checkArgument(index >= 0, "stream indices must be non-negative (not %s)", index);
+    return new Xoroshiro128Generator(
+        Xoroshiro128Generator.splitMix64(base, 2 * index + 1),
+        Xoroshiro128Generator.splitMix64(base, 2 * index + 2));
+  }
+
+}
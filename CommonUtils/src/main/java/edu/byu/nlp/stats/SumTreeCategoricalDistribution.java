@@ -0,0 +1,213 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A mutable categorical distribution over unnormalized (non-negative)
+ * weights, for loops that change a few weights between draws (e.g., Gibbs
+ * samplers). Weights are the leaves of a complete binary sum tree, so
+ * changing a weight and drawing are both O(log K), as opposed to the O(K)
+ * rescan needed by {@link DoubleArrayCategoricalDistribution} or
+ * {@link RandomGenerators#nextIntUnnormalizedProbs(RandomGenerator, double[])}.
+ *
+ * Each update recomputes the sums along the path to the root from their
+ * children (rather than adding a delta), so the total is always the sum of
+ * the current weights and does not drift as weights change.
+ *
+ * Not thread-safe.
+ */
+public class SumTreeCategoricalDistribution implements CategoricalDistribution {
+
+  private final int numCategories;
+  private final int numLeaves; // a power of two
+  // tree[1] is the root; the children of i are 2i and 2i+1; the weight of k is tree[numLeaves + k]
+  private final double[] tree;
+
+  /**
+   * A distribution over numCategories categories, all of which initially
+   * have weight 0 (weights must be set before sampling).
+   */
+  public SumTreeCategoricalDistribution(int numCategories) {
+    Preconditions.checkArgument(numCategories > 0, "there must be at least one category (not %s)", numCategories);
+    this.numCategories = numCategories;
+    this.numLeaves = Integer.highestOneBit(numCategories) == numCategories ?
+        numCategories : Integer.highestOneBit(numCategories) << 1;
+    this.tree = new double[2 * numLeaves];
+  }
+
+  /**
+   * A distribution with the given (copied) weights. O(K).
+   *
+   * @throws IllegalArgumentException if any of the weights are negative
+   */
+  public static SumTreeCategoricalDistribution fromWeights(double[] weights) {
+    SumTreeCategoricalDistribution dist = new SumTreeCategoricalDistribution(weights.length);
+    dist.setWeights(weights);
+    return dist;
+  }
+
+  private static void checkWeight(double weight) {
+    if (!(weight >= 0.0) || Double.isInfinite(weight)) {
+      throw new IllegalArgumentException("weights must be non-negative and finite (not " + weight + ")");
+    }
+  }
+
+  public int getNumCategories() {
+    return numCategories;
+  }
+
+  public double getWeight(int category) {
+    Preconditions.checkElementIndex(category, numCategories);
+    return tree[numLeaves + category];
+  }
+
+  /**
+   * Sets the (unnormalized) weight of the category. O(log K).
+   *
+   * @throws IllegalArgumentException if the weight is negative
+   */
+  public void setWeight(int category, double weight) {
+    Preconditions.checkElementIndex(category, numCategories);
+    checkWeight(weight);
+    int i = numLeaves + category;
+    tree[i] = weight;
+    for (i >>>= 1; i >= 1; i >>>= 1) {
+      tree[i] = tree[2 * i] + tree[2 * i + 1];
+    }
+  }
+
+  /**
+   * Adds delta to the weight of the category. O(log K).
+   *
+   * @throws IllegalArgumentException if the resulting weight is negative
+   */
+  public void addToWeight(int category, double delta) {
+    setWeight(category, getWeight(category) + delta);
+  }
+
+  /**
+   * The sum of the weights. O(1).
+   */
+  public double getTotal() {
+    return tree[1];
+  }
+
+  public double probabilityOf(int category) {
+    return getWeight(category) / getTotal();
+  }
+
+  /**
+   * Draws a category with probability proportional to its weight. O(log K).
+   *
+   * @throws IllegalStateException if all of the weights are 0
+   */
+  public int sample(RandomGenerator rnd) {
+    Preconditions.checkState(tree[1] > 0, "at least one weight must be positive");
+    double u = rnd.nextDouble() * tree[1];
+    int i = 1;
+    while (i < numLeaves) {
+      int left = 2 * i;
+      // The second test guards against rounding sending us to an empty subtree
+      if (u < tree[left] || tree[left + 1] == 0.0) {
+        i = left;
+      }
+      else {
+        u -= tree[left];
+        i = left + 1;
+      }
+    }
+    return i - numLeaves;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public double logProbabilityOf(int event) {
+    return Math.log(getWeight(event)) - Math.log(getTotal());
+  }
+
+  /** {@inheritDoc} O(K). */
+  @Override
+  public int argMax() {
+    int argMax = 0;
+    for (int k = 1; k < numCategories; k++) {
+      if (tree[numLeaves + k] > tree[numLeaves + argMax]) {
+        argMax = k;
+      }
+    }
+    return argMax;
+  }
+
+  /** {@inheritDoc} O(K). */
+  @Override
+  public double logMax() {
+    return logProbabilityOf(argMax());
+  }
+
+  /** {@inheritDoc} O(K). */
+  @Override
+  public double entropy() {
+    double total = getTotal();
+    double entropy = 0.0;
+    for (int k = 0; k < numCategories; k++) {
+      double p = tree[numLeaves + k] / total;
+      if (p > 0) {
+        entropy -= p * Math.log(p);
+      }
+    }
+    return entropy;
+  }
+
+  /**
+   * Returns a sampler over a snapshot of the current weights; it is not
+   * affected by later updates. O(K).
+   */
+  @Override
+  public CategoricalSampler sampler() {
+    return new AliasSampler(getWeights());
+  }
+
+  /**
+   * A copy of the current weights
+   */
+  public double[] getWeights() {
+    return Arrays.copyOfRange(tree, numLeaves, numLeaves + numCategories);
+  }
+
+  /**
+   * Overwrites every weight; O(K), rather than the O(K log K) of setting
+   * them one at a time.
+   *
+   * @throws IllegalArgumentException if any of the weights are negative
+   */
+  public void setWeights(double[] weights) {
+    Preconditions.checkArgument(weights.length == numCategories,
+        "expected %s weights (not %s)", numCategories, weights.length);
+    for (int k = 0; k < numCategories; k++) {
+      checkWeight(weights[k]);
+    }
+    System.arraycopy(weights, 0, tree, numLeaves, numCategories);
+    for (int i = numLeaves - 1; i >= 1; i--) {
+      tree[i] = tree[2 * i] + tree[2 * i + 1];
+    }
+  }
+
+}
@@ -15,10 +15,9 @@
  */
 package edu.byu.nlp.stats;
 
-import org.apache.commons.math3.special.Gamma;
-
 import com.google.common.base.Preconditions;
 
+import edu.byu.nlp.math.GammaFunctions;
 import edu.byu.nlp.math.optimize.IterativeOptimizer.Optimizable;
 import edu.byu.nlp.math.optimize.ValueAndObject;
 import edu.byu.nlp.util.DoubleArrays;
@@ -56,15 +55,15 @@ public class SymmetricDirichletMLEFPOptimizable implements Optimizable<Double> {
 	public ValueAndObject<Double> computeNext(Double alphaD) {
 		double alpha = alphaD.doubleValue();
 		double s = K * alpha;
-		double denom = (K - 1) / s - Gamma.digamma(s) + Gamma.digamma(s / K) ;
+		double denom = (K - 1) / s - GammaFunctions.digamma(s) + GammaFunctions.digamma(s / K) ;
 		double nextS = (K - 1) / denom;
 		double nextAlpha = nextS / K;
 		if (nextAlpha <= 0.0) {
 			throw new IllegalStateException("Fixed-point update failed; alpha = " + nextAlpha);
 		}
 		
-		double value = N * (Gamma.logGamma(nextS) + nextAlpha * DoubleArrays.sum(meanLogTheta)
-				- K * Gamma.logGamma(nextAlpha));
+		double value = N * (GammaFunctions.logGamma(nextS) + nextAlpha * DoubleArrays.sum(meanLogTheta)
+				- K * GammaFunctions.logGamma(nextAlpha));
 		return new ValueAndObject<Double>(value, nextAlpha);
 	}
 }
\ No newline at end of file
@@ -15,8 +15,6 @@
  */
 package edu.byu.nlp.stats;
 
-import org.apache.commons.math3.special.Gamma;
-
 import com.google.common.base.Preconditions;
 
 import edu.byu.nlp.math.optimize.IterativeOptimizer.Optimizable;
@@ -55,8 +53,9 @@ import edu.byu.nlp.util.Pair;
  */
 public class SymmetricDirichletMultinomialDiagonalMatrixMAPOptimizable implements Optimizable<Pair<Double,Double>> {
 
-	private final double[][][] data;
-	private final int J;
+	private final CountStatistics diagCounts;
+	private final CountStatistics offDiagCounts;
+	private final CountStatistics rowSums;
 	private final int K;
 	private double gammaA;
 	private double gammaB;
@@ -66,20 +65,51 @@ public class SymmetricDirichletMultinomialDiagonalMatrixMAPOptimizable implement
 	 * @param gammaB the second parameter of a gamma hyperprior over the dirichlet
 	 */
 	public static SymmetricDirichletMultinomialDiagonalMatrixMAPOptimizable newOptimizable(double[][][] data, double gammaA, double gammaB) {
-		return new SymmetricDirichletMultinomialDiagonalMatrixMAPOptimizable(data,gammaA,gammaB);
+		return newOptimizable(data,gammaA,gammaB,1);
+	}
+	
+	/**
+	 * @param gammaA the first parameter of a gamma hyperprior over the dirichlet 
+	 * @param gammaB the second parameter of a gamma hyperprior over the dirichlet
+	 * @param numThreads the number of threads with which to evaluate fractional data 
+	 * (see {@link DirichletMultinomialMLEOptimizable#newOptimizable(double[][], boolean, int)})
+	 */
+	public static SymmetricDirichletMultinomialDiagonalMatrixMAPOptimizable newOptimizable(double[][][] data, double gammaA, double gammaB, int numThreads) {
+		return new SymmetricDirichletMultinomialDiagonalMatrixMAPOptimizable(data,gammaA,gammaB,numThreads);
 	}
 	
-	private SymmetricDirichletMultinomialDiagonalMatrixMAPOptimizable(double[][][] data, double gammaA, double gammaB) {
+	private SymmetricDirichletMultinomialDiagonalMatrixMAPOptimizable(double[][][] data, double gammaA, double gammaB, int numThreads) {
 		Preconditions.checkNotNull(data, "invalid data: "+data);
 		Preconditions.checkArgument(data.length>0, "invalid data: "+data);
 		Preconditions.checkArgument(data[0].length>0, "invalid data: "+data);
 		Preconditions.checkArgument(gammaA*gammaB>0,"gammaA and gammaB must either both be valid (>0) or both invalid (<=0)");
 		this.gammaA=gammaA;
 		this.gammaB=gammaB;
-		this.data = data;
-		this.J = data.length;
+		int J = data.length;
 		this.K = data[0].length;
 		Preconditions.checkArgument(data[0][0].length==this.K,"parameter matrices must be square");
+		
+		// the data only enter through these, which are computed once (see CountStatistics)
+		double[] diag = new double[J*K];
+		double[] offDiag = new double[J*K*(K-1)];
+		double[][] perJRowSums = new double[J][];
+		int d = 0, o = 0;
+		for (int j=0; j<J; j++){
+			for (int k=0; k<K; k++){
+				for (int kprime=0; kprime<K; kprime++){
+					if (k==kprime){
+						diag[d++] = data[j][k][kprime];
+					}
+					else{
+						offDiag[o++] = data[j][k][kprime];
+					}
+				}
+			}
+			perJRowSums[j] = Matrices.sumOverSecond(data[j]);
+		}
+		this.diagCounts = CountStatistics.of(diag, numThreads);
+		this.offDiagCounts = CountStatistics.of(offDiag, numThreads);
+		this.rowSums = CountStatistics.of(perJRowSums, numThreads);
 	}
 	
 	/** {@inheritDoc} */
@@ -87,13 +117,15 @@ public class SymmetricDirichletMultinomialDiagonalMatrixMAPOptimizable implement
 	public ValueAndObject<Pair<Double,Double>> computeNext(Pair<Double,Double> params) {
 		double alphaDiag = params.getFirst();
 		double alphaOffdiag = params.getSecond();
+		// both denominators sum over the rows of every matrix
+		double rowSumDigammas = rowSums.digammaSum(alphaDiag + (K-1)*alphaOffdiag);
 		
 		// diag
-		double diagNumerator = computeDiagNumerator(data,alphaDiag,J,K); 
+		double diagNumerator = diagCounts.digammaSum(alphaDiag); 
 		if (gammaA>0){
 			diagNumerator += (gammaA - 1) / alphaDiag; // optional prior
 		}
-		double diagDenominator = computeDiagDenominator(data,alphaDiag,alphaOffdiag,J,K);
+		double diagDenominator = rowSumDigammas;
 		if (gammaB>0){
 			diagDenominator += gammaB; // optional prior
 		}
@@ -101,87 +133,26 @@ public class SymmetricDirichletMultinomialDiagonalMatrixMAPOptimizable implement
 		double newDiag = alphaDiag * diagRatio;
 		
 		// off diag
-		double offDiagNumerator = computeOffDiagNumerator(data,alphaOffdiag,J,K); 
+		double offDiagNumerator = offDiagCounts.digammaSum(alphaOffdiag); 
 		if (gammaA>0){
 			offDiagNumerator += (gammaA - 1) / alphaOffdiag; // optional prior
 		}
-		double offDiagDenominator = computeOffDiagDenominator(data,alphaDiag,alphaOffdiag,J,K);
+		double offDiagDenominator = (K-1) * rowSumDigammas;
 		if (gammaB>0){
 			offDiagDenominator += gammaB; // optional prior
 		}
 		double offDiagRatio = offDiagNumerator / offDiagDenominator; 
 		double newOffDiag = alphaOffdiag * offDiagRatio;
 		
-		double value = computeLogLikelihood(data, alphaDiag, alphaOffdiag, gammaA, gammaB, J, K);
+		double value = computeLogLikelihood(alphaDiag, alphaOffdiag, gammaA, gammaB);
 		return new ValueAndObject<Pair<Double,Double>>(value, Pair.of(newDiag, newOffDiag));
 	}
 
-	private double computeDiagNumerator(double[][][] data, double bdiag, int J, int K) {
-		double total = 0;
-		for (int j=0; j<J; j++){
-			for (int k=0; k<K; k++){
-				total += Gamma.digamma(data[j][k][k] + bdiag);
-			}
-		}
-		
-		total -= J * K * Gamma.digamma(bdiag);
-				
-		return total;
-	}
-
-	private double computeDiagDenominator(double[][][] data, double bdiag, double offdiag, int J, int K) {
-		double total = 0;
-		double alphasum = bdiag + (K-1)*offdiag;
-		
-		for (int j=0; j<J; j++){
-			double[] nj = Matrices.sumOverSecond(data[j]);
-			for (int k=0; k<K; k++){
-				total += Gamma.digamma(nj[k] + alphasum);
-			}
-		}
-		
-		total -= J * K * Gamma.digamma(alphasum);
-		
-		return total;
-	}
-
-	private double computeOffDiagNumerator(double[][][] data, double offdiag, int J, int K) {
-		double total = 0;
-
-		for (int j=0; j<J; j++){
-			for (int k=0; k<K; k++){
-				for (int kprime=0; kprime<K; kprime++){
-					if (k!=kprime){
-						total += Gamma.digamma(data[j][k][kprime]+offdiag);
-					}
-				}
-			}
-		}
-		
-		total -= J * K * (K-1) * Gamma.digamma(offdiag);
-		return total;
-	}
-
-	private double computeOffDiagDenominator(double[][][] data, double diag, double offdiag, int J, int K) {
-		double total = 0;
-		double alphasum = diag + (K-1)*offdiag;
-
-		for (int j=0; j<J; j++){
-			double[] nj = Matrices.sumOverSecond(data[j]);
-			for (int k=0; k<K; k++){
-				total += Gamma.digamma(nj[k] + alphasum);
-			}
-		}
-		total -= J * K * Gamma.digamma(alphasum);
-		return (K-1) * total;
-	}
-
-
 	/**
 	 * Equation 53 from http://research.microsoft.com/en-us/um/people/minka/papers/dirichlet/minka-dirichlet.pdf 
 	 * adapted to a matrix of data (just more outer sums)
 	 */
-	private double computeLogLikelihood(double[][][] data, double diag, double offdiag, double gammaA, double gammaB, int J, int K) {
+	private double computeLogLikelihood(double diag, double offdiag, double gammaA, double gammaB) {
 		double llik = 0;
 		
 		// gamma priors
@@ -190,27 +161,11 @@ public class SymmetricDirichletMultinomialDiagonalMatrixMAPOptimizable implement
 			llik += ((gammaA - 1) * Math.log(offdiag)) - gammaB * offdiag;
 		}
 		
-		// lik
-		for (int j=0; j<J; j++){
-			double[] nj = Matrices.sumOverSecond(data[j]);
-			for (int k=0; k<K; k++){
-				double totalAlpha = offdiag*(K-1) + diag;
-				// first  term numerator
-				llik += Gamma.logGamma(totalAlpha);
-				// first term denominator
-				llik -= Gamma.logGamma(nj[k] + totalAlpha);
-				// second term
-				for (int kprime=0; kprime<K; kprime++){
-					// second term numerator
-					llik += Gamma.logGamma(data[j][k][kprime] + (k==kprime?diag: offdiag));
-					// second term denominator (factored out and precomputed)
-				}
-			}
-		}
-		
-		// second term denominator
-		llik -= J * K * Gamma.logGamma(diag);
-		llik -= J * K * (K-1) * Gamma.logGamma(offdiag);
+		// first term: sum_j sum_k logGamma(total) - logGamma(total + n_jk)
+		llik -= rowSums.logGammaSum(offdiag*(K-1) + diag);
+		// second term: sum_j sum_k sum_k' logGamma(alpha_kk' + n_jkk') - logGamma(alpha_kk')
+		llik += diagCounts.logGammaSum(diag);
+		llik += offDiagCounts.logGammaSum(offdiag);
 		
 		return llik;
 	}
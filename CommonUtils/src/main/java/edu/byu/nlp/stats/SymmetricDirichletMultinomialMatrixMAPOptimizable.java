@@ -15,8 +15,6 @@
  */
 package edu.byu.nlp.stats;
 
-import org.apache.commons.math3.special.Gamma;
-
 import com.google.common.base.Preconditions;
 
 import edu.byu.nlp.math.optimize.IterativeOptimizer.Optimizable;
@@ -51,9 +49,8 @@ import edu.byu.nlp.util.Matrices;
  */
 public class SymmetricDirichletMultinomialMatrixMAPOptimizable implements Optimizable<Double> {
 
-	private final double[][] data;
-	private final double[] perIDataSums;
-	private final int N;
+	private final CountStatistics counts;
+	private final CountStatistics perIDataSums;
 	private final int K;
 	private double gammaA;
 	private double gammaB;
@@ -63,69 +60,55 @@ public class SymmetricDirichletMultinomialMatrixMAPOptimizable implements Optimi
 	 * @param gammaB the second parameter of a gamma hyperprior over the dirichlet
 	 */
 	public static SymmetricDirichletMultinomialMatrixMAPOptimizable newOptimizable(double[][] data, double gammaA, double gammaB) {
-		return new SymmetricDirichletMultinomialMatrixMAPOptimizable(data,gammaA,gammaB);
+		return newOptimizable(data,gammaA,gammaB,1);
+	}
+	
+	/**
+	 * @param gammaA the first parameter of a gamma hyperprior over the dirichlet 
+	 * @param gammaB the second parameter of a gamma hyperprior over the dirichlet
+	 * @param numThreads the number of threads with which to evaluate fractional data 
+	 * (see {@link DirichletMultinomialMLEOptimizable#newOptimizable(double[][], boolean, int)})
+	 */
+	public static SymmetricDirichletMultinomialMatrixMAPOptimizable newOptimizable(double[][] data, double gammaA, double gammaB, int numThreads) {
+		return new SymmetricDirichletMultinomialMatrixMAPOptimizable(data,gammaA,gammaB,numThreads);
 	}
 	
-	private SymmetricDirichletMultinomialMatrixMAPOptimizable(double[][] data, double gammaA, double gammaB) {
+	private SymmetricDirichletMultinomialMatrixMAPOptimizable(double[][] data, double gammaA, double gammaB, int numThreads) {
 		Preconditions.checkNotNull(data, "invalid data: "+data);
 		Preconditions.checkArgument(data.length>0, "invalid data: "+data);
 		Preconditions.checkArgument(data[0].length>0, "invalid data: "+data);
 		this.gammaA=gammaA;
 		this.gammaB=gammaB;
-		this.data = data;
-		this.N = data.length;
 		this.K = data[0].length;
-		this.perIDataSums = Matrices.sumOverSecond(data);
+		// the data only enter through these, which are computed once (see CountStatistics)
+		this.counts = CountStatistics.of(data, numThreads);
+		this.perIDataSums = CountStatistics.of(Matrices.sumOverSecond(data), numThreads);
 	}
 	
 	/** {@inheritDoc} */
 	@Override
 	public ValueAndObject<Double> computeNext(Double alpha) {
 		
-		double numerator = computeNumerator(data,alpha,N,K);
+		double numerator = counts.digammaSum(alpha);
 		if (gammaA>0){
 				numerator += (gammaA - 1)/alpha;
 		}
-		double denominator = computeDenominator(perIDataSums,alpha,K);
+		double denominator = K * perIDataSums.digammaSum(alpha*K);
 		if (gammaB>0){
 			denominator += gammaB;
 		}
 		double ratio = numerator / denominator; 
 		double newalpha = alpha * ratio;
 		
-		double value = computeLogLikelihood(data, alpha, perIDataSums, gammaA, gammaB, N, K);
+		double value = computeLogLikelihood(counts, alpha, perIDataSums, gammaA, gammaB, K);
 		return new ValueAndObject<Double>(value, newalpha);
 	}
 
-	private static double computeNumerator(double[][] data, double alpha, int N, int K) {
-		double total = 0;
-		for (int k=0; k<K; k++){
-			for (int i=0; i<N; i++){
-				total += Gamma.digamma(data[i][k] + alpha);
-			}
-		}
-		total -= Gamma.digamma(alpha) * N * K; // pulled out of the loop for efficiency
-		return total;
-	}
-	
-	private static double computeDenominator(double[] perIDataSums, double alpha, double K) {
-		double total = 0;
-		double alphaK = alpha*K;
-		for (int i=0; i<perIDataSums.length; i++){
-			total += Gamma.digamma(perIDataSums[i] + alphaK);
-		}
-		total -= Gamma.digamma(alphaK) * perIDataSums.length;
-		total *= K;
-		return total;
-	}
-
 	/**
 	 * Equation 53 from http://research.microsoft.com/en-us/um/people/minka/papers/dirichlet/minka-dirichlet.pdf
 	 */
-	private static double computeLogLikelihood(double[][] data, double alpha, double[] perIDataSums, double gammaA, double gammaB, int N, int K) {
+	private static double computeLogLikelihood(CountStatistics counts, double alpha, CountStatistics perIDataSums, double gammaA, double gammaB, int K) {
 
-		double alphaK = alpha*K;
-		
 		double llik = 0;
 
 		// gamma priors
@@ -133,23 +116,10 @@ public class SymmetricDirichletMultinomialMatrixMAPOptimizable implements Optimi
 			llik += ((gammaA - 1) * Math.log(alpha)) - gammaB * alpha;
 		}
 		
-		for (int i=0; i<N; i++){
-			// first  term numerator
-			llik += Gamma.logGamma(alphaK);
-			// first term denominator
-			llik -= Gamma.logGamma(perIDataSums[i] + alphaK);
-			// second term
-			for (int k=0; k<K; k++){
-				// second term numerator
-				llik += Gamma.logGamma(data[i][k] + alpha);
-				// second term denominator (factored out and precomputed)
-			}
-		}
-		
-		// this comes from the denominator of the second term
-		// which can be factored out of the inner loop into 
-		// prod_i prod_k (1/gamma(alpha_k))
-		llik -= Gamma.logGamma(alpha) * N * K;
+		// first term: sum_i logGamma(alpha*K) - logGamma(alpha*K + n_i)
+		llik -= perIDataSums.logGammaSum(alpha*K);
+		// second term: sum_i sum_k logGamma(alpha + n_ik) - logGamma(alpha)
+		llik += counts.logGammaSum(alpha);
 		
 		return llik;
 	}
@@ -15,12 +15,12 @@
  */
 package edu.byu.nlp.stats;
 
-import org.apache.commons.math3.special.Gamma;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 
+import edu.byu.nlp.math.GammaFunctions;
 import edu.byu.nlp.util.DoubleArrays;
 
 /**
@@ -65,21 +65,21 @@ public class SymmetricDirichletOptimizationHelper {
 
 	public double valueAt(double alpha) {
 		Preconditions.checkArgument(alpha > 0.0, "alpha must be strictly greater than zero; was %s", alpha);
-		double value = N * (Gamma.logGamma(K * alpha) - K * Gamma.logGamma(alpha)) + (alpha - 1) * sumOfLogThetas; 
+		double value = N * (GammaFunctions.logGamma(K * alpha) - K * GammaFunctions.logGamma(alpha)) + (alpha - 1) * sumOfLogThetas; 
 		logger.debug(String.format("valueAt(%f) = %f", alpha, value));
 		return value;
 	}
 	
 	public double firstDerivativeAt(double alpha) {
 		Preconditions.checkArgument(alpha > 0.0, "alpha must be strictly greater than zero; was %s", alpha);
-		double derivative = N * K * (Gamma.digamma(K * alpha) - Gamma.digamma(alpha)) + sumOfLogThetas;
+		double derivative = N * K * (GammaFunctions.digamma(K * alpha) - GammaFunctions.digamma(alpha)) + sumOfLogThetas;
 		logger.debug(String.format("derivativeAt(%f) = %f", alpha, derivative));
 		return derivative;
 	}
 	
 	public double secondDerivativeAt(double alpha) {
 		Preconditions.checkArgument(alpha > 0.0, "alpha must be strictly greater than zero; was %s", alpha);
-		double secondDerivative = N * K * (K * Gamma.trigamma(K * alpha) - Gamma.trigamma(alpha));
+		double secondDerivative = N * K * (K * GammaFunctions.trigamma(K * alpha) - GammaFunctions.trigamma(alpha));
 		logger.debug(String.format("secondDerivativeAt(%f) = %f", alpha, secondDerivative));
 		return secondDerivative;
 	}
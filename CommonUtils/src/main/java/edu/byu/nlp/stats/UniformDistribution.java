@@ -15,6 +15,8 @@
  */
 package edu.byu.nlp.stats;
 
+import java.util.Arrays;
+
 import org.apache.commons.math3.random.RandomGenerator;
 
 /**
@@ -55,4 +57,12 @@ public class UniformDistribution implements CategoricalDistribution {
         return Math.log(numLabels);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public CategoricalSampler sampler() {
+        double[] weights = new double[numLabels];
+        Arrays.fill(weights, 1.0);
+        return new AliasSampler(weights);
+    }
+
 }
@@ -74,4 +74,10 @@ public class VectorCategoricalDistribution implements CategoricalDistribution {
         }
         return entropy;
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public CategoricalSampler sampler() {
+        return AliasSampler.fromLogProbs(logProbs.toArray());
+    }
 }
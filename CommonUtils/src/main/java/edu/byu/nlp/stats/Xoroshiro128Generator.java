@@ -0,0 +1,162 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import org.apache.commons.math3.random.BitsStreamGenerator;
+
+/**
+ * A small, fast generator (xoroshiro128**, Blackman and Vigna) with 128 bits
+ * of state, for use where many independent generators are needed, e.g., one
+ * per parallel task (see {@link RandomStreams}). Seeds are expanded into
+ * state with SplitMix64, so similar seeds give unrelated sequences.
+ *
+ * Independent generators can be derived with {@link #split()} (seeded from
+ * this generator's output) or {@link #jump()} (advances this generator by
+ * 2^64 draws; successive jumps give non-overlapping subsequences).
+ *
+ * Like other RandomGenerators, instances are not thread-safe.
+ */
+public class Xoroshiro128Generator extends BitsStreamGenerator {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+  private static final long[] JUMP = {0xdf900294d8f554a5L, 0x170865df4b3201fcL};
+
+  private long s0, s1;
+
+  public Xoroshiro128Generator(long seed) {
+    setSeed(seed);
+  }
+
+  /**
+   * A generator with the given state (used as is). The state must not be
+   * all zeros.
+   */
+  Xoroshiro128Generator(long s0, long s1) {
+    setState(s0, s1);
+  }
+
+  private void setState(long s0, long s1) {
+    if (s0 == 0 && s1 == 0) {
+      // the all-zero state is a fixed point
+      s0 = GOLDEN_GAMMA;
+    }
+    this.s0 = s0;
+    this.s1 = s1;
+    clear();
+  }
+
+  /**
+   * The SplitMix64 finalizer: a bijective mix of the bits of z.
+   */
+  static long mix64(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * The value at the given position of the SplitMix64 sequence starting at
+   * seed.
+   */
+  static long splitMix64(long seed, long position) {
+    return mix64(seed + position * GOLDEN_GAMMA);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void setSeed(long seed) {
+    setState(splitMix64(seed, 1), splitMix64(seed, 2));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void setSeed(int seed) {
+    setSeed((long) seed);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void setSeed(int[] seed) {
+    long combined = 0;
+    for (int i = 0; i < seed.length; i++) {
+      combined = mix64(combined + (seed[i] & 0xffffffffL) + GOLDEN_GAMMA);
+    }
+    setSeed(combined);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long nextLong() {
+    long s0 = this.s0, s1 = this.s1;
+    long result = Long.rotateLeft(s0 * 5, 7) * 9;
+    s1 ^= s0;
+    this.s0 = Long.rotateLeft(s0, 24) ^ s1 ^ (s1 << 16);
+    this.s1 = Long.rotateLeft(s1, 37);
+    return result;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected int next(int bits) {
+    return (int) (nextLong() >>> (64 - bits));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int nextInt() {
+    return (int) (nextLong() >>> 32);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public double nextDouble() {
+    return (nextLong() >>> 11) * 0x1.0p-53;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean nextBoolean() {
+    return nextLong() < 0;
+  }
+
+  /**
+   * A new generator seeded from this generator's next two outputs; this
+   * generator advances by two draws.
+   */
+  public Xoroshiro128Generator split() {
+    return new Xoroshiro128Generator(mix64(nextLong()), mix64(nextLong()));
+  }
+
+  /**
+   * Advances this generator by 2^64 draws.
+   */
+  public void jump() {
+    long j0 = 0, j1 = 0;
+    for (long jump : JUMP) {
+      for (int b = 0; b < 64; b++) {
+        if ((jump & (1L << b)) != 0) {
+          j0 ^= s0;
+          j1 ^= s1;
+        }
+        nextLong();
+      }
+    }
+    setState(j0, j1);
+  }
+
+}
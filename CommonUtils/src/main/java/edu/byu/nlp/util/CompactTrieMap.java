@@ -0,0 +1,752 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.util;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A memory-compact alternative to {@link TrieMap}. Nodes are int ids into
+ * parallel arrays rather than objects, and the children of a node are
+ * stored as a sorted char[] of edge labels (binary searched) rather
+ * than a HashMap<Character,...>, so no characters are boxed and a node
+ * with a single child costs a few bytes instead of a hash table.
+ *
+ * The map is built mutably and can then be frozen with {@link #freeze()}.
+ * Freezing renumbers the nodes breadth-first and packs all edges into
+ * a single char[] so that the edges of node n are
+ * edgeLabels[firstEdge[n]..firstEdge[n+1]) and edge e leads to node e+1.
+ * A frozen map is immutable.
+ *
+ * Iteration is in lexicographic (char) order. Null keys are not permitted
+ * but null values are allowed. As with {@link TrieMap}, the empty string
+ * must be explicitly put as a key in order to be returned by iterators
+ * and the contains methods.
+ */
+public class CompactTrieMap<V> extends AbstractMap<CharSequence, V> implements Serializable, Map<CharSequence, V> {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final char[] NO_LABELS = new char[0];
+  private static final int[] NO_CHILDREN = new int[0];
+  private static final int ROOT = 0;
+  private static final int NOT_FOUND = -1;
+  private static final int INITIAL_CAPACITY = 16;
+
+  // building representation: per-node sorted edge labels and the parallel child ids.
+  // Slots of nodes pruned by remove() are not reused; freeze() drops them.
+  private char[][] labels;
+  private int[][] children;
+  private int numNodes;
+
+  // frozen representation (see class comment)
+  private int[] firstEdge;
+  private char[] edgeLabels;
+
+  // shared
+  private Object[] nodeValues;
+  private BitSet present;
+  private int size;
+  private boolean frozen;
+  private transient int modCount;
+
+  /**
+   * Constructs an empty, mutable map
+   */
+  public CompactTrieMap() {
+    this.labels = new char[INITIAL_CAPACITY][];
+    this.children = new int[INITIAL_CAPACITY][];
+    this.nodeValues = new Object[INITIAL_CAPACITY];
+    this.present = new BitSet();
+    newNode(); // root
+  }
+
+  /**
+   * Constructs a mutable map and fills it with the values from the provided map.
+   * The copy is shallow.
+   */
+  public CompactTrieMap(Map<? extends CharSequence, ? extends V> map) {
+    this();
+    putAll(map);
+  }
+
+  /**
+   * Returns a frozen copy of the provided map.
+   */
+  public static <V> CompactTrieMap<V> frozenCopyOf(Map<? extends CharSequence, ? extends V> map){
+    return new CompactTrieMap<V>(map).freeze();
+  }
+
+  /**
+   * Converts this map to its packed, immutable representation (in place)
+   * and returns it. Subsequent modifications throw
+   * UnsupportedOperationException. Freezing an already frozen map is a no-op.
+   */
+  public CompactTrieMap<V> freeze() {
+    if (frozen){
+      return this;
+    }
+    // breadth-first order of the reachable nodes
+    int[] order = new int[numNodes];
+    int head = 0, tail = 0;
+    order[tail++] = ROOT;
+    while (head < tail) {
+      for (int child: children[order[head++]]) {
+        order[tail++] = child;
+      }
+    }
+    int numLive = tail;
+
+    int[] packedFirstEdge = new int[numLive + 1];
+    char[] packedLabels = new char[numLive - 1];
+    Object[] packedValues = new Object[numLive];
+    BitSet packedPresent = new BitSet(numLive);
+    int e = 0;
+    for (int i = 0; i < numLive; i++) {
+      int node = order[i];
+      packedFirstEdge[i] = e;
+      for (char c: labels[node]) {
+        packedLabels[e++] = c;
+      }
+      packedValues[i] = nodeValues[node];
+      if (present.get(node)) {
+        packedPresent.set(i);
+      }
+    }
+    packedFirstEdge[numLive] = e;
+
+    this.firstEdge = packedFirstEdge;
+    this.edgeLabels = packedLabels;
+    this.nodeValues = packedValues;
+    this.present = packedPresent;
+    this.numNodes = numLive;
+    this.labels = null;
+    this.children = null;
+    this.frozen = true;
+    ++modCount;
+    return this;
+  }
+
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * The number of trie nodes, including the root and (before freezing)
+   * any slots left behind by removals
+   */
+  public int numNodes() {
+    return numNodes;
+  }
+
+  // Node accessors (the only code that knows about the two representations)
+
+  private int numChildren(int node) {
+    return frozen ? firstEdge[node + 1] - firstEdge[node] : labels[node].length;
+  }
+
+  private char childLabel(int node, int i) {
+    return frozen ? edgeLabels[firstEdge[node] + i] : labels[node][i];
+  }
+
+  private int childAt(int node, int i) {
+    return frozen ? firstEdge[node] + i + 1 : children[node][i];
+  }
+
+  /**
+   * Index of the edge labelled c among the node's children, or a negative
+   * number if there is none.
+   */
+  private int childIndex(int node, char c) {
+    if (frozen) {
+      int from = firstEdge[node];
+      int i = Arrays.binarySearch(edgeLabels, from, firstEdge[node + 1], c);
+      return i < 0 ? NOT_FOUND : i - from;
+    }
+    int i = Arrays.binarySearch(labels[node], c);
+    return i < 0 ? NOT_FOUND : i;
+  }
+
+  private int child(int node, char c) {
+    int i = childIndex(node, c);
+    return i < 0 ? NOT_FOUND : childAt(node, i);
+  }
+
+  @SuppressWarnings("unchecked")
+  private V valueOf(int node) {
+    return (V) nodeValues[node];
+  }
+
+  /**
+   * Utility method to get the node in the trie corresponding to <tt>str</tt>,
+   * or NOT_FOUND.
+   */
+  private int findNode(CharSequence str) {
+    int node = ROOT;
+    for (int i = 0; i < str.length() && node != NOT_FOUND; i++) {
+      node = child(node, str.charAt(i));
+    }
+    return node;
+  }
+
+  // Mutation
+
+  private void checkNotFrozen() {
+    if (frozen) {
+      throw new UnsupportedOperationException("This map has been frozen");
+    }
+  }
+
+  private int newNode() {
+    if (numNodes == labels.length) {
+      int capacity = labels.length + (labels.length >> 1) + 1;
+      labels = Arrays.copyOf(labels, capacity);
+      children = Arrays.copyOf(children, capacity);
+      nodeValues = Arrays.copyOf(nodeValues, capacity);
+    }
+    labels[numNodes] = NO_LABELS;
+    children[numNodes] = NO_CHILDREN;
+    return numNodes++;
+  }
+
+  private int addChild(int node, char c) {
+    int child = newNode();
+    char[] oldLabels = labels[node];
+    int[] oldChildren = children[node];
+    int ins = -(Arrays.binarySearch(oldLabels, c) + 1);
+
+    char[] newLabels = new char[oldLabels.length + 1];
+    System.arraycopy(oldLabels, 0, newLabels, 0, ins);
+    newLabels[ins] = c;
+    System.arraycopy(oldLabels, ins, newLabels, ins + 1, oldLabels.length - ins);
+
+    int[] newChildren = new int[oldChildren.length + 1];
+    System.arraycopy(oldChildren, 0, newChildren, 0, ins);
+    newChildren[ins] = child;
+    System.arraycopy(oldChildren, ins, newChildren, ins + 1, oldChildren.length - ins);
+
+    labels[node] = newLabels;
+    children[node] = newChildren;
+    return child;
+  }
+
+  private void removeChild(int node, char c) {
+    char[] oldLabels = labels[node];
+    int[] oldChildren = children[node];
+    int del = Arrays.binarySearch(oldLabels, c);
+    if (oldLabels.length == 1) {
+      labels[node] = NO_LABELS;
+      children[node] = NO_CHILDREN;
+      return;
+    }
+    char[] newLabels = new char[oldLabels.length - 1];
+    System.arraycopy(oldLabels, 0, newLabels, 0, del);
+    System.arraycopy(oldLabels, del + 1, newLabels, del, newLabels.length - del);
+    int[] newChildren = new int[oldChildren.length - 1];
+    System.arraycopy(oldChildren, 0, newChildren, 0, del);
+    System.arraycopy(oldChildren, del + 1, newChildren, del, newChildren.length - del);
+    labels[node] = newLabels;
+    children[node] = newChildren;
+  }
+
+  @Override
+  public V put(CharSequence key, V value) {
+    if (key == null) {
+      throw new IllegalArgumentException("This map does not support null keys");
+    }
+    checkNotFrozen();
+
+    int node = ROOT;
+    for (int i = 0; i < key.length(); i++) {
+      char c = key.charAt(i);
+      int next = child(node, c);
+      node = (next == NOT_FOUND) ? addChild(node, c) : next;
+    }
+
+    V replaced = valueOf(node);
+    nodeValues[node] = value;
+    if (!present.get(node)) {
+      present.set(node);
+      ++size;
+      ++modCount;
+      return null;
+    }
+    return replaced;
+  }
+
+  @Override
+  public V remove(Object o) {
+    if (!(o instanceof CharSequence)) {
+      return null;
+    }
+    checkNotFrozen();
+    return removeIfMatches((CharSequence) o, false, null);
+  }
+
+  /**
+   * Removes str (if it maps to value or if !matchValue), erasing any
+   * nodes that are left without keys below them.
+   */
+  private V removeIfMatches(CharSequence str, boolean matchValue, Object value) {
+    int[] path = new int[str.length() + 1];
+    path[0] = ROOT;
+    for (int i = 0; i < str.length(); i++) {
+      path[i + 1] = child(path[i], str.charAt(i));
+      if (path[i + 1] == NOT_FOUND) {
+        return null;
+      }
+    }
+    int node = path[str.length()];
+    if (!present.get(node)) {
+      return null;
+    }
+    V removed = valueOf(node);
+    if (matchValue && !(removed == null ? value == null : removed.equals(value))) {
+      return null;
+    }
+    nodeValues[node] = null;
+    present.clear(node);
+    --size;
+    ++modCount;
+
+    for (int i = str.length(); i > 0 && !present.get(path[i]) && labels[path[i]].length == 0; i--) {
+      removeChild(path[i - 1], str.charAt(i - 1));
+    }
+    return removed;
+  }
+
+  /**
+   * Removes all of the mappings from this map.
+   */
+  @Override
+  public void clear() {
+    checkNotFrozen();
+    Arrays.fill(labels, 0, numNodes, null);
+    Arrays.fill(children, 0, numNodes, null);
+    Arrays.fill(nodeValues, 0, numNodes, null);
+    present.clear();
+    numNodes = 0;
+    newNode(); // root
+    size = 0;
+    ++modCount;
+  }
+
+  // Queries
+
+  @Override
+  public V get(Object o) {
+    if (!(o instanceof CharSequence)) {
+      return null;
+    }
+    int node = findNode((CharSequence) o);
+    return node == NOT_FOUND ? null : valueOf(node);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    if (!(key instanceof CharSequence)) {
+      return false;
+    }
+    int node = findNode((CharSequence) key);
+    return node != NOT_FOUND && present.get(node);
+  }
+
+  /**
+   * Returns <tt>true</tt> if this map contains at least one mapping
+   * whose key begins with the specified string.
+   *
+   * @see TrieMap#containsKeyPrefix(CharSequence)
+   */
+  public boolean containsKeyPrefix(CharSequence prefix) {
+    return findNode(prefix) != NOT_FOUND;
+  }
+
+  /**
+   * Returns <tt>true</tt> if this map contains exactly one mapping
+   * whose key begins with the specified string.
+   *
+   * @see TrieMap#containsUnambiguousKeyPrefix(CharSequence)
+   */
+  public boolean containsUnambiguousKeyPrefix(CharSequence prefix) {
+    return getEntryFromUnambiguousPrefix(prefix) != null;
+  }
+
+  /**
+   * If the specified prefix contains exactly one match in this trie, returns the associated entry.
+   *
+   * @see TrieMap#getEntryFromUnambiguousPrefix(CharSequence)
+   */
+  public Entry<CharSequence, V> getEntryFromUnambiguousPrefix(CharSequence prefix) {
+    int startNode = findNode(prefix);
+    if (startNode == NOT_FOUND) {
+      return null;
+    }
+
+    EntryIterator it = new EntryIterator(startNode, prefix);
+    if (!it.hasNext()) {
+      return null;
+    }
+
+    Entry<CharSequence, V> e = it.next();
+    if (it.hasNext() && !e.getKey().equals(prefix.toString())) {
+      return null;
+    }
+    return e;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  // Iterators
+
+  /**
+   * Depth-first, lexicographically ordered iteration below a start node.
+   * The stack holds the nodes on the path to the current key and, for each,
+   * the index of the next child to descend into.
+   */
+  private abstract class TrieIterator<E> implements Iterator<E> {
+
+    private final class TrieEntry implements Entry<CharSequence, V> {
+
+      private final String key;
+      private final int node;
+
+      public TrieEntry(String key, int node) {
+        this.key = key;
+        this.node = node;
+      }
+
+      @Override
+      public CharSequence getKey() {
+        return key;
+      }
+
+      @Override
+      public V getValue() {
+        return valueOf(node);
+      }
+
+      @Override
+      public V setValue(V value) {
+        checkNotFrozen();
+        V old = valueOf(node);
+        nodeValues[node] = value;
+        return old;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+        if (!(o instanceof Map.Entry)) {
+          return false;
+        }
+        Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+        return eq(key, e.getKey()) && eq(getValue(), e.getValue());
+      }
+
+      @Override
+      public int hashCode() {
+        V value = getValue();
+        return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+      }
+
+      @Override
+      public String toString() {
+        return key + " => " + getValue();
+      }
+
+      private boolean eq(Object o1, Object o2) {
+        return o1 == null ? o2 == null : o1.equals(o2);
+      }
+    }
+
+    private final int startNode;
+    private final int prefixLength;
+    private final StringBuilder key;
+    private int[] nodeStack = new int[INITIAL_CAPACITY];
+    private int[] childStack = new int[INITIAL_CAPACITY];
+    private int depth = 0;
+    private int expectedModCount;
+    private int next = NOT_FOUND;
+    private String nextKey;
+    private String currentKey;
+
+    public TrieIterator() {
+      this(ROOT, "");
+    }
+
+    public TrieIterator(int startNode, CharSequence prefix) {
+      this.expectedModCount = modCount;
+      this.startNode = startNode;
+      this.prefixLength = prefix.length();
+      this.key = new StringBuilder(prefix);
+      push(startNode);
+      if (present.get(startNode)) {
+        next = startNode;
+        nextKey = key.toString();
+      } else {
+        advance();
+      }
+    }
+
+    private void push(int node) {
+      if (depth == nodeStack.length) {
+        nodeStack = Arrays.copyOf(nodeStack, depth * 2);
+        childStack = Arrays.copyOf(childStack, depth * 2);
+      }
+      nodeStack[depth] = node;
+      childStack[depth] = 0;
+      ++depth;
+    }
+
+    private void advance() {
+      next = NOT_FOUND;
+      nextKey = null;
+      while (depth > 0) {
+        int top = depth - 1;
+        int node = nodeStack[top];
+        int ci = childStack[top];
+        if (ci < numChildren(node)) {
+          childStack[top] = ci + 1;
+          int child = childAt(node, ci);
+          key.append(childLabel(node, ci));
+          push(child);
+          if (present.get(child)) {
+            next = child;
+            nextKey = key.toString();
+            return;
+          }
+        } else {
+          --depth;
+          if (depth > 0) {
+            key.setLength(key.length() - 1);
+          }
+        }
+      }
+    }
+
+    /**
+     * Rebuilds the stack so that it points at nextKey. Needed after a
+     * removal, which may have erased edges and shifted child indices.
+     */
+    private void reseek() {
+      if (next == NOT_FOUND) {
+        return;
+      }
+      depth = 0;
+      key.setLength(prefixLength);
+      push(startNode);
+      int node = startNode;
+      for (int i = prefixLength; i < nextKey.length(); i++) {
+        char c = nextKey.charAt(i);
+        int ci = childIndex(node, c);
+        childStack[depth - 1] = ci + 1;
+        node = childAt(node, ci);
+        key.append(c);
+        push(node);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != NOT_FOUND;
+    }
+
+    public Entry<CharSequence, V> nextEntry() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (next == NOT_FOUND) {
+        throw new NoSuchElementException();
+      }
+      Entry<CharSequence, V> current = new TrieEntry(nextKey, next);
+      currentKey = nextKey;
+      advance();
+      return current;
+    }
+
+    @Override
+    public void remove() {
+      if (currentKey == null) {
+        throw new IllegalStateException();
+      }
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      CompactTrieMap.this.remove(currentKey);
+      currentKey = null;
+      expectedModCount = modCount;
+      reseek();
+    }
+  }
+
+  private final class KeyIterator extends TrieIterator<CharSequence> {
+    @Override
+    public CharSequence next() {
+      return nextEntry().getKey();
+    }
+  }
+
+  private final class EntryIterator extends TrieIterator<Entry<CharSequence, V>> {
+    public EntryIterator() {
+    }
+
+    public EntryIterator(int startNode, CharSequence prefix) {
+      super(startNode, prefix);
+    }
+
+    @Override
+    public Entry<CharSequence, V> next() {
+      return nextEntry();
+    }
+  }
+
+  private final class ValueIterator extends TrieIterator<V> {
+    @Override
+    public V next() {
+      return nextEntry().getValue();
+    }
+  }
+
+  // Views
+
+  private transient Set<CharSequence> keySet;
+  private transient Collection<V> values;
+  private transient Set<Entry<CharSequence, V>> entrySet;
+
+  @Override
+  public Set<CharSequence> keySet() {
+    Set<CharSequence> ks = keySet;
+    return ks != null ? ks : (keySet = new KeySet());
+  }
+
+  @Override
+  public Collection<V> values() {
+    Collection<V> v = values;
+    return v != null ? v : (values = new Values());
+  }
+
+  @Override
+  public Set<Entry<CharSequence, V>> entrySet() {
+    Set<Entry<CharSequence, V>> es = entrySet;
+    return es != null ? es : (entrySet = new EntrySet());
+  }
+
+  private final class KeySet extends AbstractSet<CharSequence> {
+    @Override
+    public Iterator<CharSequence> iterator() {
+      return new KeyIterator();
+    }
+
+    @Override
+    public int size() {
+      return CompactTrieMap.this.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return containsKey(o);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      int before = size;
+      CompactTrieMap.this.remove(o);
+      return size != before;
+    }
+
+    @Override
+    public void clear() {
+      CompactTrieMap.this.clear();
+    }
+  }
+
+  private final class EntrySet extends AbstractSet<Entry<CharSequence, V>> {
+    @Override
+    public void clear() {
+      CompactTrieMap.this.clear();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      if (!containsKey(e.getKey())) {
+        return false;
+      }
+      V candidate = get(e.getKey());
+      return candidate == null ? e.getValue() == null : candidate.equals(e.getValue());
+    }
+
+    @Override
+    public Iterator<Entry<CharSequence, V>> iterator() {
+      return new EntryIterator();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      if (!(o instanceof Map.Entry) || !(((Map.Entry<?, ?>) o).getKey() instanceof CharSequence)) {
+        return false;
+      }
+      checkNotFrozen();
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      int before = size;
+      removeIfMatches((CharSequence) e.getKey(), true, e.getValue());
+      return size != before;
+    }
+
+    @Override
+    public int size() {
+      return CompactTrieMap.this.size();
+    }
+  }
+
+  private final class Values extends AbstractCollection<V> {
+    @Override
+    public void clear() {
+      CompactTrieMap.this.clear();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return containsValue(o);
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+      return new ValueIterator();
+    }
+
+    @Override
+    public int size() {
+      return CompactTrieMap.this.size();
+    }
+  }
+
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.util;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * A set backed by a {@link CompactTrieMap}. The memory-compact counterpart
+ * of {@link TrieSet}, with the same prefix queries plus a build-then-freeze
+ * mode.
+ */
+public class CompactTrieSet extends AbstractSet<CharSequence> implements Set<CharSequence>, Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Boolean PRESENT = Boolean.TRUE;
+
+  private final CompactTrieMap<Boolean> map;
+
+  /**
+   * Constructs a new, empty (mutable) set.
+   */
+  public CompactTrieSet() {
+    this.map = new CompactTrieMap<Boolean>();
+  }
+
+  /**
+   * Constructs a new (mutable) set containing the elements in the specified
+   * iterable.
+   */
+  public CompactTrieSet(Iterable<? extends CharSequence> it) {
+    this();
+    for (CharSequence e: it) {
+      add(e);
+    }
+  }
+
+  /**
+   * Returns a frozen set containing the elements in the specified iterable.
+   */
+  public static CompactTrieSet frozenCopyOf(Iterable<? extends CharSequence> it) {
+    return new CompactTrieSet(it).freeze();
+  }
+
+  /**
+   * Packs the set into its immutable representation and returns it.
+   *
+   * @see CompactTrieMap#freeze()
+   */
+  public CompactTrieSet freeze() {
+    map.freeze();
+    return this;
+  }
+
+  public boolean isFrozen() {
+    return map.isFrozen();
+  }
+
+  /**
+   * Returns true if the provided prefix is a prefix to exactly one string
+   * contained in this set.
+   */
+  public boolean containsUnambiguousPrefix(CharSequence prefix) {
+    return map.containsUnambiguousKeyPrefix(prefix);
+  }
+
+  /**
+   * Checks if any string in the set starts with the specified prefix.
+   */
+  public boolean containsPrefix(CharSequence prefix) {
+    return map.containsKeyPrefix(prefix);
+  }
+
+  @Override
+  public boolean add(CharSequence e) {
+    return map.put(e, PRESENT) == null;
+  }
+
+  @Override
+  public void clear() {
+    map.clear();
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return map.containsKey(o);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return map.isEmpty();
+  }
+
+  /**
+   * Returns an iterator over the elements in this set in lexicographic order.
+   */
+  @Override
+  public Iterator<CharSequence> iterator() {
+    return map.keySet().iterator();
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    return map.remove(o) == PRESENT;
+  }
+
+  @Override
+  public int size() {
+    return map.size();
+  }
+
+}
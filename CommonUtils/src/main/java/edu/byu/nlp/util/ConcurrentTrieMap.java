@@ -0,0 +1,447 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A thread-safe trie-backed map for read-heavy workloads. Nodes are
+ * immutable; a write copies the nodes on the path to the key and then
+ * publishes the new root with a single volatile write. Readers never
+ * lock: each read operation (and each iterator) works against the root
+ * it saw when it started, so it observes a consistent snapshot and
+ * never throws ConcurrentModificationException. Writers are serialized
+ * on an internal lock.
+ *
+ * Every node caches the number of keys below it, so {@link #size()}
+ * and {@link #countWithPrefix(CharSequence)} do not enumerate keys.
+ * {@link #prefixEntries(CharSequence, int)} streams matches in
+ * lexicographic order without building intermediate collections.
+ *
+ * Null keys are not permitted but null values are allowed.
+ *
+ * @see TrieMap
+ */
+public class ConcurrentTrieMap<V> extends AbstractMap<CharSequence, V> implements Map<CharSequence, V> {
+
+  private static final class Node<V> {
+    private static final char[] NO_LABELS = new char[0];
+    private static final Node<?>[] NO_CHILDREN = new Node<?>[0];
+
+    private final char[] labels; // sorted
+    private final Node<V>[] children;
+    private final V value;
+    private final boolean present;
+    private final int count; // keys in this subtree (including this node)
+
+    private Node(char[] labels, Node<V>[] children, V value, boolean present, int count) {
+      this.labels = labels;
+      this.children = children;
+      this.value = value;
+      this.present = present;
+      this.count = count;
+    }
+
+    /**
+     * A new array of nodes (shared when empty, since it is never written)
+     */
+    @SuppressWarnings("unchecked")
+    static <V> Node<V>[] newArray(int length) {
+      return (Node<V>[]) (length == 0 ? NO_CHILDREN : new Node<?>[length]);
+    }
+
+    static <V> Node<V> empty() {
+      return new Node<V>(NO_LABELS, Node.<V>newArray(0), null, false, 0);
+    }
+
+    static <V> Node<V> leaf(V value) {
+      return new Node<V>(NO_LABELS, Node.<V>newArray(0), value, true, 1);
+    }
+
+    static <V> Node<V> single(char c, Node<V> child) {
+      Node<V>[] children = newArray(1);
+      children[0] = child;
+      return new Node<V>(new char[]{c}, children, null, false, child.count);
+    }
+
+    Node<V> child(char c) {
+      int i = Arrays.binarySearch(labels, c);
+      return i < 0 ? null : children[i];
+    }
+
+    Node<V> withValue(V newValue, boolean newPresent) {
+      int newCount = count - (present ? 1 : 0) + (newPresent ? 1 : 0);
+      return new Node<V>(labels, children, newValue, newPresent, newCount);
+    }
+
+    /**
+     * Copy of this node with the child at edge c replaced (or inserted)
+     */
+    Node<V> withChild(char c, Node<V> child, int countDelta) {
+      int i = Arrays.binarySearch(labels, c);
+      if (i >= 0) {
+        Node<V>[] newChildren = children.clone();
+        newChildren[i] = child;
+        return new Node<V>(labels, newChildren, value, present, count + countDelta);
+      }
+      int ins = -(i + 1);
+      char[] newLabels = new char[labels.length + 1];
+      System.arraycopy(labels, 0, newLabels, 0, ins);
+      newLabels[ins] = c;
+      System.arraycopy(labels, ins, newLabels, ins + 1, labels.length - ins);
+      Node<V>[] newChildren = newArray(children.length + 1);
+      System.arraycopy(children, 0, newChildren, 0, ins);
+      newChildren[ins] = child;
+      System.arraycopy(children, ins, newChildren, ins + 1, children.length - ins);
+      return new Node<V>(newLabels, newChildren, value, present, count + countDelta);
+    }
+
+    /**
+     * Copy of this node without the child at edge c
+     */
+    Node<V> withoutChild(char c, int countDelta) {
+      int del = Arrays.binarySearch(labels, c);
+      char[] newLabels = new char[labels.length - 1];
+      System.arraycopy(labels, 0, newLabels, 0, del);
+      System.arraycopy(labels, del + 1, newLabels, del, newLabels.length - del);
+      Node<V>[] newChildren = newArray(children.length - 1);
+      System.arraycopy(children, 0, newChildren, 0, del);
+      System.arraycopy(children, del + 1, newChildren, del, newChildren.length - del);
+      return new Node<V>(newLabels, newChildren, value, present, count + countDelta);
+    }
+  }
+
+  private volatile Node<V> root = Node.empty();
+  private final Object writeLock = new Object();
+
+  public ConcurrentTrieMap() {
+  }
+
+  public ConcurrentTrieMap(Map<? extends CharSequence, ? extends V> map) {
+    putAll(map);
+  }
+
+  // Reads (lock-free)
+
+  private static <V> Node<V> findNode(Node<V> node, CharSequence str) {
+    for (int i = 0; i < str.length() && node != null; i++) {
+      node = node.child(str.charAt(i));
+    }
+    return node;
+  }
+
+  @Override
+  public V get(Object o) {
+    if (!(o instanceof CharSequence)) {
+      return null;
+    }
+    Node<V> node = findNode(root, (CharSequence) o);
+    return (node == null || !node.present) ? null : node.value;
+  }
+
+  @Override
+  public boolean containsKey(Object o) {
+    if (!(o instanceof CharSequence)) {
+      return false;
+    }
+    Node<V> node = findNode(root, (CharSequence) o);
+    return node != null && node.present;
+  }
+
+  @Override
+  public int size() {
+    return root.count;
+  }
+
+  /**
+   * Returns <tt>true</tt> if this map contains at least one mapping
+   * whose key begins with the specified string.
+   */
+  public boolean containsKeyPrefix(CharSequence prefix) {
+    return countWithPrefix(prefix) > 0;
+  }
+
+  /**
+   * The number of keys that begin with the specified string. Costs
+   * O(prefix.length()) regardless of the number of matches.
+   */
+  public int countWithPrefix(CharSequence prefix) {
+    Node<V> node = findNode(root, prefix);
+    return node == null ? 0 : node.count;
+  }
+
+  /**
+   * Returns the longest key in this map that is a prefix of str (possibly
+   * str itself or the empty string), or null if there is none.
+   */
+  public CharSequence longestPrefixOf(CharSequence str) {
+    Node<V> node = root;
+    int longest = node.present ? 0 : -1;
+    for (int i = 0; i < str.length(); i++) {
+      node = node.child(str.charAt(i));
+      if (node == null) {
+        break;
+      }
+      if (node.present) {
+        longest = i + 1;
+      }
+    }
+    return longest < 0 ? null : str.subSequence(0, longest);
+  }
+
+  /**
+   * Lazily enumerates (in lexicographic order) at most limit entries
+   * whose keys begin with prefix. Each call to iterator() works against
+   * the snapshot of the map current at that time. Entries are immutable.
+   */
+  public Iterable<Entry<CharSequence, V>> prefixEntries(final CharSequence prefix, final int limit) {
+    Preconditions.checkNotNull(prefix);
+    Preconditions.checkArgument(limit >= 0, "limit must be non-negative");
+    final String start = prefix.toString();
+    return new Iterable<Entry<CharSequence, V>>() {
+      @Override
+      public Iterator<Entry<CharSequence, V>> iterator() {
+        return new PrefixIterator(findNode(root, start), start, limit);
+      }
+    };
+  }
+
+  // Writes (serialized; path copying)
+
+  @Override
+  public V put(CharSequence key, V value) {
+    if (key == null) {
+      throw new IllegalArgumentException("This map does not support null keys");
+    }
+    synchronized (writeLock) {
+      int len = key.length();
+      Node<V>[] path = Node.newArray(len + 1);
+      path[0] = root;
+      int depth = 0;
+      while (depth < len) {
+        Node<V> next = path[depth].child(key.charAt(depth));
+        if (next == null) {
+          break;
+        }
+        path[++depth] = next;
+      }
+
+      V replaced = null;
+      int delta;
+      Node<V> cur;
+      if (depth == len) {
+        Node<V> old = path[len];
+        replaced = old.present ? old.value : null;
+        delta = old.present ? 0 : 1;
+        cur = old.withValue(value, true);
+      } else {
+        // new chain for key[depth+1..len), hung off of path[depth]
+        cur = Node.leaf(value);
+        for (int i = len - 1; i > depth; i--) {
+          cur = Node.single(key.charAt(i), cur);
+        }
+        delta = 1;
+        cur = path[depth].withChild(key.charAt(depth), cur, delta);
+      }
+      for (int i = depth - 1; i >= 0; i--) {
+        cur = path[i].withChild(key.charAt(i), cur, delta);
+      }
+      root = cur;
+      return replaced;
+    }
+  }
+
+  @Override
+  public V remove(Object o) {
+    if (!(o instanceof CharSequence)) {
+      return null;
+    }
+    CharSequence key = (CharSequence) o;
+    synchronized (writeLock) {
+      int len = key.length();
+      Node<V>[] path = Node.newArray(len + 1);
+      path[0] = root;
+      for (int i = 0; i < len; i++) {
+        path[i + 1] = path[i].child(key.charAt(i));
+        if (path[i + 1] == null) {
+          return null;
+        }
+      }
+      Node<V> old = path[len];
+      if (!old.present) {
+        return null;
+      }
+
+      // null cur means "erase this edge"
+      Node<V> cur = old.withValue(null, false);
+      for (int i = len - 1; i >= 0; i--) {
+        if (cur.count == 0) {
+          cur = path[i].withoutChild(key.charAt(i), -1);
+        } else {
+          cur = path[i].withChild(key.charAt(i), cur, -1);
+        }
+      }
+      root = cur;
+      return old.value;
+    }
+  }
+
+  @Override
+  public void clear() {
+    synchronized (writeLock) {
+      root = Node.empty();
+    }
+  }
+
+  // Iteration
+
+  /**
+   * Depth-first, lexicographic iteration below a start node of a fixed
+   * snapshot
+   */
+  private final class PrefixIterator implements Iterator<Entry<CharSequence, V>> {
+
+    private Node<V>[] nodeStack;
+    private int[] childStack;
+    private int depth = 0;
+    private final StringBuilder key;
+    private int remaining;
+    private Entry<CharSequence, V> next;
+    private CharSequence lastKey;
+
+    PrefixIterator(Node<V> start, String prefix, int limit) {
+      this.key = new StringBuilder(prefix);
+      this.remaining = limit;
+      this.nodeStack = Node.newArray(16);
+      this.childStack = new int[16];
+      if (start != null && limit > 0) {
+        push(start);
+        if (start.present) {
+          next = new SimpleImmutableEntry<CharSequence, V>(prefix, start.value);
+        } else {
+          advance();
+        }
+      }
+    }
+
+    private void push(Node<V> node) {
+      if (depth == nodeStack.length) {
+        nodeStack = Arrays.copyOf(nodeStack, depth * 2);
+        childStack = Arrays.copyOf(childStack, depth * 2);
+      }
+      nodeStack[depth] = node;
+      childStack[depth] = 0;
+      ++depth;
+    }
+
+    private void advance() {
+      next = null;
+      if (remaining <= 0) {
+        return;
+      }
+      while (depth > 0) {
+        int top = depth - 1;
+        Node<V> node = nodeStack[top];
+        int ci = childStack[top];
+        if (ci < node.children.length) {
+          childStack[top] = ci + 1;
+          Node<V> child = node.children[ci];
+          key.append(node.labels[ci]);
+          push(child);
+          if (child.present) {
+            next = new SimpleImmutableEntry<CharSequence, V>(key.toString(), child.value);
+            return;
+          }
+        } else {
+          nodeStack[top] = null;
+          --depth;
+          if (depth > 0) {
+            key.setLength(key.length() - 1);
+          }
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Entry<CharSequence, V> next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      Entry<CharSequence, V> current = next;
+      lastKey = current.getKey();
+      --remaining;
+      advance();
+      return current;
+    }
+
+    /**
+     * Removes the last returned key from the map (not from this
+     * iterator's snapshot)
+     */
+    @Override
+    public void remove() {
+      if (lastKey == null) {
+        throw new IllegalStateException();
+      }
+      ConcurrentTrieMap.this.remove(lastKey);
+      lastKey = null;
+    }
+  }
+
+  private Set<Entry<CharSequence, V>> entrySet;
+
+  /**
+   * A weakly consistent view: iterators traverse the snapshot current
+   * when they were created.
+   */
+  @Override
+  public Set<Entry<CharSequence, V>> entrySet() {
+    Set<Entry<CharSequence, V>> es = entrySet;
+    return es != null ? es : (entrySet = new EntrySet());
+  }
+
+  private final class EntrySet extends AbstractSet<Entry<CharSequence, V>> {
+    @Override
+    public Iterator<Entry<CharSequence, V>> iterator() {
+      return new PrefixIterator(root, "", Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int size() {
+      return ConcurrentTrieMap.this.size();
+    }
+
+    @Override
+    public void clear() {
+      ConcurrentTrieMap.this.clear();
+    }
+  }
+
+}
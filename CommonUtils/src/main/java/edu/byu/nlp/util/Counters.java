@@ -15,17 +15,14 @@
  */
 package edu.byu.nlp.util;
 
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 
-import org.apache.commons.math3.random.RandomAdaptor;
 import org.apache.commons.math3.random.RandomGenerator;
 
-import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
 
 /**
  * @author rah67
@@ -67,23 +64,12 @@ public class Counters {
   public static <E,V extends Comparable<V>> List<E> argMaxList(Set<Entry<E, V>> entrySet, int topn, RandomGenerator rnd) {
     topn = (topn>0)? topn: entrySet.size();
     
-    List<Entry<E, V>> entries = Lists.newArrayList(entrySet);
-    // shuffle to ensure that ties are broken randomly
-    if (rnd!=null){
-      Collections.shuffle(entries, new RandomAdaptor(rnd));
+    // ties are broken randomly if rnd is given (otherwise in iteration order)
+    TopK.ObjectHeap<V, E> heap = new TopK.ObjectHeap<V, E>(Math.min(topn, entrySet.size()), Ordering.<V>natural(), rnd);
+    for (Entry<E, V> entry: entrySet){
+      heap.offer(entry.getValue(), entry.getKey());
     }
-    // sort to ensure most voted-for options are at the beginning
-    Collections.sort(entries,new Comparator<Entry<E, V>>() {
-	@Override
-      public int compare(Entry<E, V> o1, Entry<E, V> o2) {
-    	  return (o2.getValue()).compareTo(o1.getValue()); // descending order
-      }
-    });
-    // pull out the top n values
-    List<E> vals = Lists.newArrayList();
-    for (int i=0; i<Math.min(topn, entries.size()); i++){
-      vals.add(entries.get(i).getKey());
-    }
-    return vals;
+    // most voted-for options are at the beginning
+    return heap.items();
   }
 }
\ No newline at end of file
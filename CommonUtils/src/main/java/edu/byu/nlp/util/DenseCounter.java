@@ -26,6 +26,8 @@ import org.apache.commons.math3.random.RandomGenerator;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
 
 /**
  * @author rah67
@@ -244,6 +246,6 @@ public class DenseCounter implements Counter<Integer> {
     /** {@inheritDoc} */
     @Override
     public List<Integer> argMaxList(int topn, RandomGenerator rnd) {
-      return Counters.argMaxList(entrySet(), topn, rnd);
+      return Lists.newArrayList(Ints.asList(TopK.largest(counts, (topn>0)? topn: counts.length, rnd)));
     }
 }
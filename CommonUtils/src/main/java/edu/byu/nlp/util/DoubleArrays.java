@@ -20,12 +20,11 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
 import com.google.gson.Gson;
 
 import edu.byu.nlp.math.Math2;
@@ -46,11 +45,7 @@ public class DoubleArrays {
     if (arr==null || arr.length==0){
       return null;
     }
-    Map<Integer,Double> map = Maps.newHashMap();
-    for (int i=0; i<arr.length; i++){
-      map.put(i, arr[i]);
-    }
-    return Counters.argMaxList(map.entrySet(), topn, null);
+    return Lists.newArrayList(Ints.asList(TopK.largest(arr, (topn>0)? topn: arr.length, null)));
   }
   
 	/**
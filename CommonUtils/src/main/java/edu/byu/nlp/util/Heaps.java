@@ -24,7 +24,6 @@ import java.util.List;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
-import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
 
@@ -115,17 +114,14 @@ public class Heaps {
 			return Collections.singletonList(Iterators2.max(iterator, comparator));
 		}
 
-		// Heapify the first n
-		List<V> values = Lists.newArrayListWithCapacity(n);
-		Iterators.addAll(values, Iterators.limit(iterator, n));
-		BinaryHeap<V> heap = new BinaryHeap<V>(values, comparator);
-		heap.heapify();
-		
+		// Bounded heap of the best n so far; ties go to the earlier element
+		TopK.ObjectHeap<V, Void> heap = new TopK.ObjectHeap<V, Void>(n, comparator, null);
 		while (iterator.hasNext()) {
-			heap.offerThenPoll(iterator.next());
+			heap.offer(iterator.next(), null);
 		}
+		List<V> values = heap.values(); // largest first
 		if (sort) {
-			Collections.sort(values, comparator);
+			Collections.reverse(values);
 		}
 		return values;
 	}
@@ -15,63 +15,51 @@
  */
 package edu.byu.nlp.util;
 
-import java.util.Arrays;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Maintain integer counts over an array of positions
+ * Maintain integer counts over an array of positions. A thin adapter over
+ * an {@link IntCountMatrix} (one row per position) that tracks row totals.
+ * As before, each position has room for one category beyond numCategories
+ * (index numCategories may be counted, and may be an argmax, but is not
+ * reported by {@link #values(int)}).
  */
 public class IntArrayCounter {
   private static final Logger logger = LoggerFactory.getLogger(IntArrayCounter.class);
   
   // assignment counts
-  Counter<Integer>[] counts;
-  private int numCategories;
+  private final IntCountMatrix counts;
+  private final int numCategories;
 
   public IntArrayCounter(int size, int numCategories) {
+    this(new IntCountMatrix(size, numCategories + 1, true), numCategories);
+  }
+
+  private IntArrayCounter(IntCountMatrix counts, int numCategories) {
+    this.counts = counts;
     this.numCategories = numCategories;
-    counts = new DenseCounter[size]; 
   }
 
   public void reset() {
-    counts = new DenseCounter[counts.length];
+    counts.clear();
   }
   
   public IntArrayCounter clone(){
-	  IntArrayCounter cnt = new IntArrayCounter(counts.length, numCategories);
-	  int[][] values = values();
-	  for (int i=0; i<values.length; i++){
-		  int[] vals = values[i];
-		  for (int c=0; c<vals.length; c++){
-			  cnt.increment(i, c, values[i][c]);
-		  }
-	  }
-	  return cnt;
+	  return new IntArrayCounter(counts.copy(), numCategories);
   }
 
-//  public void remapLabels(int[] map) {
-//    IntArrayCounter translated = new IntArrayCounter(counts.length,numCategories);
-//    for (int pos = 0; pos < counts.length; pos++) {
-//      for (int srcElement = 0; srcElement < map.length; srcElement++) {
-//        translated.increment(pos, map[srcElement], counts[pos].getCount(srcElement));
-//      }
-//    }
-//    this.counts = translated.counts;
-//  }
-
   public int[] argmax() {
-    int[] argmax = new int[counts.length];
-    for (int i=0; i<counts.length; i++){
+    int[] argmax = new int[counts.numRows()];
+    for (int i=0; i<argmax.length; i++){
       argmax[i] = argmax(i);
     }
     return argmax;
   }
 
   public int[][] values(){
-    int[][] result = new int[counts.length][];
-    for (int i=0; i<counts.length; i++){
+    int[][] result = new int[counts.numRows()][];
+    for (int i=0; i<result.length; i++){
       result[i] = values(i);
     }
     return result;
@@ -80,39 +68,34 @@ public class IntArrayCounter {
   public int[] values(int i){
     int[] vals = new int[numCategories];
     for (int e=0; e<numCategories; e++){
-      vals[e] = (counts[i]==null)? 0: counts[i].getCount(e);
+      vals[e] = counts.get(i, e);
     }
     return vals;
   }
   
   public int argmax(int i) {
-    if (counts[i]==null || counts[i].totalCount()==0){
+    if (counts.rowTotal(i)==0){
       logger.warn("Asked for argmax of empty counts. Returning -1.");
       return -1;
     }
-    return counts[i].argMax();
+    return counts.argmax(i);
   }
 
   public void increment(int[] vals) {
-    for (int i=0; i<vals.length; i++){
-      increment(i, vals[i]);
-    }
+    counts.incrementEach(vals);
   }
   
   public void increment(int i, int val) {
-    increment(i, val, 1);
+    counts.increment(i, val, 1);
   }
 
   public void increment(int i, int val, int count) {
-    if (counts[i] == null) {
-      counts[i] = new DenseCounter(numCategories+1);
-    }
-    counts[i].incrementCount(val, count);
+    counts.increment(i, val, count);
   }
 
   /** {@inheritDoc} */
   @Override
   public String toString() {
-    return Arrays.toString(counts);
+    return counts.toString();
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,314 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.util;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A dense matrix of int counts stored row-major in a single int[]. All
+ * operations take primitive arguments, so incrementing does not allocate.
+ * Per-row totals can optionally be maintained incrementally, which makes
+ * {@link #rowTotal(int)} O(1) at the cost of one extra write per update.
+ *
+ * Like {@link DenseCounter}, increment/decrement return the count prior to
+ * the update.
+ */
+public class IntCountMatrix {
+
+  private final int numRows;
+  private final int numColumns;
+  private final int[] counts;
+  private final int[] rowTotals; // null if not tracked
+
+  public IntCountMatrix(int numRows, int numColumns) {
+    this(numRows, numColumns, false);
+  }
+
+  public IntCountMatrix(int numRows, int numColumns, boolean trackRowTotals) {
+    Preconditions.checkArgument(numRows >= 0, "numRows must be non-negative");
+    Preconditions.checkArgument(numColumns >= 0, "numColumns must be non-negative");
+    Preconditions.checkArgument((long) numRows * numColumns <= Integer.MAX_VALUE, "matrix is too large");
+    this.numRows = numRows;
+    this.numColumns = numColumns;
+    this.counts = new int[numRows * numColumns];
+    this.rowTotals = trackRowTotals ? new int[numRows] : null;
+  }
+
+  private IntCountMatrix(IntCountMatrix other) {
+    this.numRows = other.numRows;
+    this.numColumns = other.numColumns;
+    this.counts = other.counts.clone();
+    this.rowTotals = (other.rowTotals == null) ? null : other.rowTotals.clone();
+  }
+
+  public int numRows() {
+    return numRows;
+  }
+
+  public int numColumns() {
+    return numColumns;
+  }
+
+  public boolean tracksRowTotals() {
+    return rowTotals != null;
+  }
+
+  private int index(int row, int col) {
+    Preconditions.checkElementIndex(row, numRows);
+    Preconditions.checkElementIndex(col, numColumns);
+    return row * numColumns + col;
+  }
+
+  public int get(int row, int col) {
+    return counts[index(row, col)];
+  }
+
+  public void set(int row, int col, int count) {
+    int i = index(row, col);
+    if (rowTotals != null) {
+      rowTotals[row] += count - counts[i];
+    }
+    counts[i] = count;
+  }
+
+  public int increment(int row, int col) {
+    return increment(row, col, 1);
+  }
+
+  public int increment(int row, int col, int delta) {
+    int i = index(row, col);
+    int old = counts[i];
+    counts[i] = old + delta;
+    if (rowTotals != null) {
+      rowTotals[row] += delta;
+    }
+    return old;
+  }
+
+  public int decrement(int row, int col) {
+    return increment(row, col, -1);
+  }
+
+  public int decrement(int row, int col, int delta) {
+    return increment(row, col, -delta);
+  }
+
+  /**
+   * Increments (row, cols[row]) for every row in [0, cols.length).
+   */
+  public void incrementEach(int[] cols) {
+    Preconditions.checkArgument(cols.length <= numRows, "more entries than rows");
+    for (int row = 0; row < cols.length; row++) {
+      increment(row, cols[row], 1);
+    }
+  }
+
+  /**
+   * O(1) if row totals are tracked; otherwise O(numColumns).
+   */
+  public int rowTotal(int row) {
+    Preconditions.checkElementIndex(row, numRows);
+    if (rowTotals != null) {
+      return rowTotals[row];
+    }
+    int total = 0;
+    for (int i = row * numColumns, end = i + numColumns; i < end; i++) {
+      total += counts[i];
+    }
+    return total;
+  }
+
+  /**
+   * The column with the largest count in the given row (ties go to the
+   * first such column), or -1 if there are no columns.
+   */
+  public int argmax(int row) {
+    Preconditions.checkElementIndex(row, numRows);
+    if (numColumns == 0) {
+      return -1;
+    }
+    int offset = row * numColumns;
+    int argMax = 0;
+    int max = counts[offset];
+    for (int c = 1; c < numColumns; c++) {
+      if (counts[offset + c] > max) {
+        argMax = c;
+        max = counts[offset + c];
+      }
+    }
+    return argMax;
+  }
+
+  /**
+   * Like {@link #argmax(int)}, but ties are broken uniformly at random (as
+   * in {@link DenseCounter#argMax(RandomGenerator)}). If rnd is null, ties
+   * go to the first maximum, as in {@link #argmax(int)}.
+   */
+  public int argmax(int row, RandomGenerator rnd) {
+    if (rnd == null) {
+      return argmax(row);
+    }
+    Preconditions.checkElementIndex(row, numRows);
+    if (numColumns == 0) {
+      return -1;
+    }
+    int offset = row * numColumns;
+    int argMax = 0;
+    int max = counts[offset];
+    int tieCount = 0;
+    for (int c = 1; c < numColumns; c++) {
+      int count = counts[offset + c];
+      if (count > max) {
+        argMax = c;
+        max = count;
+        tieCount = 0;
+      } else if (count == max) {
+        // reservoir sampling with a reservoir of size 1
+        if (rnd.nextInt(++tieCount + 1) == 0) {
+          argMax = c;
+        }
+      }
+    }
+    return argMax;
+  }
+
+  /**
+   * Copies the given row into dest (which must have at least numColumns()
+   * entries) and returns dest.
+   */
+  public int[] copyRow(int row, int[] dest) {
+    Preconditions.checkElementIndex(row, numRows);
+    System.arraycopy(counts, row * numColumns, dest, 0, numColumns);
+    return dest;
+  }
+
+  public int[] copyRow(int row) {
+    return copyRow(row, new int[numColumns]);
+  }
+
+  /**
+   * A live view of one row. Updates through the view are reflected in
+   * the matrix (and its row totals) and vice versa.
+   */
+  public Row row(int row) {
+    Preconditions.checkElementIndex(row, numRows);
+    return new Row(row);
+  }
+
+  public class Row {
+    private final int row;
+
+    private Row(int row) {
+      this.row = row;
+    }
+
+    public int get(int col) {
+      return IntCountMatrix.this.get(row, col);
+    }
+
+    public int increment(int col, int delta) {
+      return IntCountMatrix.this.increment(row, col, delta);
+    }
+
+    public int total() {
+      return rowTotal(row);
+    }
+
+    public int argmax() {
+      return IntCountMatrix.this.argmax(row);
+    }
+
+    public int size() {
+      return numColumns;
+    }
+
+    public int[] toArray() {
+      return copyRow(row);
+    }
+
+    @Override
+    public String toString() {
+      return Arrays.toString(toArray());
+    }
+  }
+
+  /**
+   * The underlying row-major counts. Modifying the returned array
+   * bypasses row-total bookkeeping.
+   */
+  public int[] array() {
+    return counts;
+  }
+
+  /**
+   * A row-major copy of the counts.
+   */
+  public int[] snapshot() {
+    return snapshot(new int[counts.length]);
+  }
+
+  /**
+   * Copies the row-major counts into dest (reusing it between snapshots
+   * avoids allocation) and returns dest.
+   */
+  public int[] snapshot(int[] dest) {
+    System.arraycopy(counts, 0, dest, 0, counts.length);
+    return dest;
+  }
+
+  public int[][] toArrays() {
+    int[][] result = new int[numRows][];
+    for (int row = 0; row < numRows; row++) {
+      result[row] = copyRow(row);
+    }
+    return result;
+  }
+
+  /**
+   * Overwrites this matrix with other's counts. Dimensions must match.
+   */
+  public void copyFrom(IntCountMatrix other) {
+    Preconditions.checkArgument(other.numRows == numRows && other.numColumns == numColumns,
+        "dimensions do not match");
+    System.arraycopy(other.counts, 0, counts, 0, counts.length);
+    if (rowTotals != null) {
+      for (int row = 0; row < numRows; row++) {
+        rowTotals[row] = other.rowTotal(row);
+      }
+    }
+  }
+
+  public IntCountMatrix copy() {
+    return new IntCountMatrix(this);
+  }
+
+  public void clear() {
+    Arrays.fill(counts, 0);
+    if (rowTotals != null) {
+      Arrays.fill(rowTotals, 0);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return Arrays.deepToString(toArrays());
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.util;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+/**
+ * A sparse 3-d count tensor table[row][col][item] = count over int indices.
+ * This is a primitive version of {@link TableCounter} that does not box
+ * keys or counts. Each row stores its (col,item) cells in a single
+ * open-addressing hash map keyed by the packed pair, so that all
+ * entries of a row can be visited without touching other rows.
+ */
+public class IntTableCounter {
+
+  private final Int2ObjectOpenHashMap<Long2IntOpenHashMap> rows = new Int2ObjectOpenHashMap<Long2IntOpenHashMap>();
+  private int totalCount = 0;
+
+  public static IntTableCounter create(){
+    return new IntTableCounter();
+  }
+
+  public void incrementCount(int row, int col, int item){
+    incrementCount(row, col, item, 1);
+  }
+
+  public void incrementCount(int row, int col, int item, int val){
+    Long2IntOpenHashMap cells = rows.get(row);
+    if (cells==null){
+      cells = new Long2IntOpenHashMap();
+      rows.put(row, cells);
+    }
+    cells.addTo(pack(col, item), val);
+    totalCount += val;
+  }
+
+  public int getCount(int row, int col, int item){
+    Long2IntOpenHashMap cells = rows.get(row);
+    return (cells==null)? 0: cells.get(pack(col, item));
+  }
+
+  public boolean containsRow(int row){
+    return rows.containsKey(row);
+  }
+
+  /**
+   * The number of non-empty (col,item) cells in the given row
+   */
+  public int numRowEntries(int row){
+    Long2IntOpenHashMap cells = rows.get(row);
+    return (cells==null)? 0: cells.size();
+  }
+
+  public int totalCount(){
+    return totalCount;
+  }
+
+  public void visitRowEntriesSparsely(int row, SparseTableVisitor visitor){
+    Long2IntOpenHashMap cells = rows.get(row);
+    if (cells!=null){
+      visitCells(row, cells, visitor);
+    }
+  }
+
+  public void visitEntriesSparsely(SparseTableVisitor visitor){
+    ObjectIterator<Int2ObjectMap.Entry<Long2IntOpenHashMap>> itr = rows.int2ObjectEntrySet().fastIterator();
+    while (itr.hasNext()){
+      Int2ObjectMap.Entry<Long2IntOpenHashMap> rowEntry = itr.next();
+      visitCells(rowEntry.getIntKey(), rowEntry.getValue(), visitor);
+    }
+  }
+
+  private static void visitCells(int row, Long2IntOpenHashMap cells, SparseTableVisitor visitor){
+    ObjectIterator<Long2IntMap.Entry> itr = cells.long2IntEntrySet().fastIterator();
+    while (itr.hasNext()){
+      Long2IntMap.Entry cell = itr.next();
+      long key = cell.getLongKey();
+      visitor.visitEntry(row, unpackCol(key), unpackItem(key), cell.getIntValue());
+    }
+  }
+
+  private static long pack(int col, int item){
+    return (((long)col) << 32) | (item & 0xFFFFFFFFL);
+  }
+
+  private static int unpackCol(long key){
+    return (int)(key >> 32);
+  }
+
+  private static int unpackItem(long key){
+    return (int)key;
+  }
+
+  public static abstract class SparseTableVisitor{
+    public abstract void visitEntry(int row, int col, int item, int count);
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    visitEntriesSparsely(new SparseTableVisitor() {
+      @Override
+      public void visitEntry(int row, int col, int item, int count) {
+        sb.append("\n\t["+row+"]["+col+"]["+item+"]="+count);
+      }
+    });
+    return sb.toString();
+  }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.util;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs lists of independent tasks on a bounded number of threads, returning
+ * their results in task order.
+ *
+ * Workers are borrowed from a single shared pool of daemon threads (which
+ * exit after a minute without work), so callers neither create nor shut down
+ * executors, and the calling thread runs tasks too. Callers that split their
+ * work into a fixed set of tasks and combine the results in task order get
+ * the same answer for any number of threads.
+ */
+public class ParallelTasks {
+
+  private static final ExecutorService workers = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("parallel-tasks-%d").build());
+
+  private ParallelTasks() {
+  }
+
+  /**
+   * Runs the tasks on at most numThreads threads (including the calling
+   * thread) and returns their results in task order. With one thread (or one
+   * task) everything runs in the calling thread.
+   *
+   * If a task fails, no further tasks are started and, once the running ones
+   * have finished, its exception is rethrown (checked exceptions wrapped in
+   * an IllegalStateException). An interrupted caller likewise stops starting
+   * tasks, restores its interrupt flag, and throws an IllegalStateException.
+   */
+  public static <T> List<T> invokeAll(final List<? extends Callable<? extends T>> tasks, int numThreads) {
+    Preconditions.checkNotNull(tasks);
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be positive (not %s)", numThreads);
+    final AtomicReferenceArray<T> results = new AtomicReferenceArray<T>(tasks.size());
+    final AtomicInteger next = new AtomicInteger();
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Runnable worker = new Runnable() {
+      @Override
+      public void run() {
+        for (int i = next.getAndIncrement(); i < tasks.size() && failure.get() == null; i = next.getAndIncrement()) {
+          try {
+            results.set(i, tasks.get(i).call());
+          }
+          catch (Throwable t) {
+            failure.compareAndSet(null, t);
+          }
+        }
+      }
+    };
+
+    int numWorkers = Math.min(numThreads, tasks.size()) - 1;
+    List<Future<?>> futures = Lists.newArrayListWithCapacity(Math.max(0, numWorkers));
+    for (int w = 0; w < numWorkers; w++) {
+      futures.add(workers.submit(worker));
+    }
+    worker.run();
+    boolean interrupted = false;
+    for (Future<?> future : futures) {
+      while (true) {
+        try {
+          future.get();
+          break;
+        }
+        catch (InterruptedException e) {
+          // stop starting tasks, but wait for the running ones
+          interrupted = true;
+          failure.compareAndSet(null, e);
+        }
+        catch (ExecutionException e) {
+          // (workers catch everything their tasks throw)
+          failure.compareAndSet(null, e.getCause());
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    Throwable t = failure.get();
+    if (t != null) {
+      Throwables.propagateIfPossible(t);
+      if (t instanceof InterruptedException) {
+        throw new IllegalStateException("interrupted while running tasks", t);
+      }
+      throw new IllegalStateException("task failed", t);
+    }
+    List<T> list = Lists.newArrayListWithCapacity(tasks.size());
+    for (int i = 0; i < tasks.size(); i++) {
+      list.add(results.get(i));
+    }
+    return list;
+  }
+
+}
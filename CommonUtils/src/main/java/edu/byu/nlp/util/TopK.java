@@ -0,0 +1,455 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.util;
+
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Streaming top-k selection. All selectors order candidates first by value
+ * and then by a tie-breaking key. When a RandomGenerator is supplied, each
+ * candidate draws one rnd.nextDouble() as its key (in the order offered),
+ * which breaks ties uniformly at random; otherwise ties go to the candidate
+ * offered (or indexed) first.
+ */
+public class TopK {
+
+  private TopK() { }
+
+  /**
+   * The indices of the k largest values, in descending order of value.
+   * If k > values.length, all indices are returned.
+   */
+  public static int[] largest(double[] values, int k, RandomGenerator rnd) {
+    Preconditions.checkNotNull(values);
+    Preconditions.checkArgument(k >= 0, "k must be non-negative");
+    int n = values.length;
+    k = Math.min(k, n);
+    if (k == 0) {
+      return new int[0];
+    }
+
+    if (k * 8 < n) {
+      DoubleHeap heap = new DoubleHeap(k, rnd);
+      for (int i = 0; i < n; i++) {
+        heap.offer(i, values[i]);
+      }
+      return heap.drain();
+    }
+
+    // k is a sizable fraction of n: partition then sort the prefix.
+    // Keys are drawn in index order, so this agrees with the heap path.
+    double[] ties = new double[n];
+    int[] indices = new int[n];
+    for (int i = 0; i < n; i++) {
+      ties[i] = (rnd == null) ? i : rnd.nextDouble();
+      indices[i] = i;
+    }
+    select(indices, 0, n, k, values, ties);
+    IntArrays.quickSort(indices, 0, k, new DescendingComparator(values, ties));
+    return (k == n) ? indices : IntArrays.copy(indices, 0, k);
+  }
+
+  /**
+   * The indices of the k largest values, in descending order of value.
+   * If k > values.length, all indices are returned.
+   */
+  public static int[] largest(int[] values, int k, RandomGenerator rnd) {
+    Preconditions.checkNotNull(values);
+    Preconditions.checkArgument(k >= 0, "k must be non-negative");
+    DoubleHeap heap = new DoubleHeap(Math.min(k, values.length), rnd);
+    for (int i = 0; i < values.length; i++) {
+      heap.offer(i, values[i]);
+    }
+    return heap.drain();
+  }
+
+  /**
+   * Partially reorders indices so that indices[0..k) refer to the k
+   * largest of the values they index (in no particular order; ties go to
+   * the smaller index). Runs in expected linear time and does not allocate.
+   */
+  public static void selectLargest(double[] values, int[] indices, int k) {
+    Preconditions.checkArgument(0 <= k && k <= indices.length, "k must be in [0, indices.length]");
+    select(indices, 0, indices.length, k, values, null);
+  }
+
+  private static boolean better(int a, int b, double[] values, double[] ties) {
+    int c = Double.compare(values[a], values[b]);
+    if (c != 0) {
+      return c > 0;
+    }
+    return (ties == null) ? a < b : ties[a] < ties[b];
+  }
+
+  private static void select(int[] indices, int from, int to, int k, double[] values, double[] ties) {
+    int lo = from, hi = to - 1, target = from + k - 1;
+    while (lo < hi) {
+      // partition around the middle element (Lomuto)
+      swap(indices, (lo + hi) >>> 1, hi);
+      int pivot = indices[hi];
+      int store = lo;
+      for (int i = lo; i < hi; i++) {
+        if (better(indices[i], pivot, values, ties)) {
+          swap(indices, i, store++);
+        }
+      }
+      swap(indices, store, hi);
+
+      if (store == target) {
+        return;
+      } else if (store < target) {
+        lo = store + 1;
+      } else {
+        hi = store - 1;
+      }
+    }
+  }
+
+  private static void swap(int[] arr, int i, int j) {
+    int tmp = arr[i];
+    arr[i] = arr[j];
+    arr[j] = tmp;
+  }
+
+  private static class DescendingComparator extends AbstractIntComparator {
+    private final double[] values;
+    private final double[] ties;
+
+    DescendingComparator(double[] values, double[] ties) {
+      this.values = values;
+      this.ties = ties;
+    }
+
+    @Override
+    public int compare(int a, int b) {
+      return better(a, b, values, ties) ? -1 : (better(b, a, values, ties) ? 1 : 0);
+    }
+  }
+
+  /**
+   * A bounded min-heap over (int id, double value) pairs that retains the
+   * capacity largest values offered. Storage is allocated once; call
+   * {@link #clear()} to reuse the heap (e.g., once per document).
+   */
+  public static class DoubleHeap {
+
+    private final int[] ids;
+    private final double[] values;
+    private final double[] ties;
+    private final RandomGenerator rnd;
+    private int size;
+    private int numOffered;
+
+    public DoubleHeap(int capacity, RandomGenerator rnd) {
+      Preconditions.checkArgument(capacity >= 0, "capacity must be non-negative");
+      this.ids = new int[capacity];
+      this.values = new double[capacity];
+      this.ties = new double[capacity];
+      this.rnd = rnd;
+    }
+
+    public int capacity() {
+      return ids.length;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public void clear() {
+      size = 0;
+      numOffered = 0;
+    }
+
+    /**
+     * Returns true if the pair was retained (for now)
+     */
+    public boolean offer(int id, double value) {
+      double tie = (rnd == null) ? numOffered : rnd.nextDouble();
+      ++numOffered;
+      if (size < ids.length) {
+        set(size, id, value, tie);
+        siftUp(size++);
+        return true;
+      }
+      if (size == 0 || !better(value, tie, values[0], ties[0])) {
+        return false;
+      }
+      set(0, id, value, tie);
+      siftDown(0);
+      return true;
+    }
+
+    /**
+     * The smallest retained value. The heap must not be empty.
+     */
+    public double minValue() {
+      Preconditions.checkState(size > 0, "heap is empty");
+      return values[0];
+    }
+
+    /**
+     * The id of the retained element at position i (0 <= i < size()), in
+     * heap order
+     */
+    public int idAt(int i) {
+      Preconditions.checkElementIndex(i, size);
+      return ids[i];
+    }
+
+    /**
+     * Empties the heap, writing the retained ids in descending order of
+     * value to ids[0..size()). Returns the number written.
+     */
+    public int drainTo(int[] out) {
+      int n = size;
+      Preconditions.checkArgument(out.length >= n, "output array is too small");
+      while (size > 0) {
+        out[size - 1] = ids[0];
+        --size;
+        set(0, ids[size], values[size], ties[size]);
+        siftDown(0);
+      }
+      numOffered = 0;
+      return n;
+    }
+
+    /**
+     * Empties the heap, returning the retained ids in descending order of
+     * value.
+     */
+    public int[] drain() {
+      int[] out = new int[size];
+      drainTo(out);
+      return out;
+    }
+
+    private static boolean better(double v1, double t1, double v2, double t2) {
+      int c = Double.compare(v1, v2);
+      return c > 0 || (c == 0 && t1 < t2);
+    }
+
+    private boolean better(int i, int j) {
+      return better(values[i], ties[i], values[j], ties[j]);
+    }
+
+    private void set(int i, int id, double value, double tie) {
+      ids[i] = id;
+      values[i] = value;
+      ties[i] = tie;
+    }
+
+    private void swap(int i, int j) {
+      int id = ids[i];
+      double value = values[i], tie = ties[i];
+      set(i, ids[j], values[j], ties[j]);
+      set(j, id, value, tie);
+    }
+
+    private void siftUp(int i) {
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (!better(parent, i)) {
+          return;
+        }
+        swap(i, parent);
+        i = parent;
+      }
+    }
+
+    private void siftDown(int i) {
+      while (true) {
+        int worst = i, left = 2 * i + 1, right = left + 1;
+        if (left < size && better(worst, left)) {
+          worst = left;
+        }
+        if (right < size && better(worst, right)) {
+          worst = right;
+        }
+        if (worst == i) {
+          return;
+        }
+        swap(i, worst);
+        i = worst;
+      }
+    }
+  }
+
+  /**
+   * A bounded heap over (value, item) pairs that retains the capacity best
+   * values according to a comparator (largest first). Values and items are
+   * stored in parallel arrays, so offering does not allocate.
+   */
+  public static class ObjectHeap<N, T> {
+
+    private final Object[] values;
+    private final Object[] items;
+    private final double[] ties;
+    private final Comparator<? super N> comparator;
+    private final RandomGenerator rnd;
+    private int size;
+    private int numOffered;
+
+    public ObjectHeap(int capacity, Comparator<? super N> comparator, RandomGenerator rnd) {
+      Preconditions.checkArgument(capacity >= 0, "capacity must be non-negative");
+      Preconditions.checkNotNull(comparator);
+      this.values = new Object[capacity];
+      this.items = new Object[capacity];
+      this.ties = new double[capacity];
+      this.comparator = comparator;
+      this.rnd = rnd;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public void clear() {
+      for (int i = 0; i < size; i++) {
+        values[i] = null;
+        items[i] = null;
+      }
+      size = 0;
+      numOffered = 0;
+    }
+
+    /**
+     * Offers a pair, drawing its tie-breaking key as described in
+     * {@link TopK}. Returns true if the pair was retained (for now).
+     */
+    public boolean offer(N value, T item) {
+      double tie = (rnd == null) ? numOffered : rnd.nextDouble();
+      return offer(value, item, tie);
+    }
+
+    /**
+     * Offers a pair with an explicit tie-breaking key (smaller wins).
+     */
+    public boolean offer(N value, T item, double tie) {
+      ++numOffered;
+      if (size < values.length) {
+        set(size, value, item, tie);
+        siftUp(size++);
+        return true;
+      }
+      if (size == 0 || !better(value, tie, 0)) {
+        return false;
+      }
+      set(0, value, item, tie);
+      siftDown(0);
+      return true;
+    }
+
+    /**
+     * The retained values, best first. Does not modify the heap.
+     */
+    @SuppressWarnings("unchecked")
+    public List<N> values() {
+      List<N> retval = Lists.newArrayListWithCapacity(size);
+      for (int i: bestFirst()) {
+        retval.add((N) values[i]);
+      }
+      return retval;
+    }
+
+    /**
+     * The retained items, best first. Does not modify the heap.
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> items() {
+      List<T> retval = Lists.newArrayListWithCapacity(size);
+      for (int i: bestFirst()) {
+        retval.add((T) items[i]);
+      }
+      return retval;
+    }
+
+    private int[] bestFirst() {
+      int[] order = new int[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+      }
+      IntArrays.quickSort(order, new AbstractIntComparator() {
+        @Override
+        public int compare(int a, int b) {
+          return better(a, b) ? -1 : (better(b, a) ? 1 : 0);
+        }
+      });
+      return order;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean better(Object value, double tie, int j) {
+      int c = comparator.compare((N) value, (N) values[j]);
+      return c > 0 || (c == 0 && tie < ties[j]);
+    }
+
+    private boolean better(int i, int j) {
+      return better(values[i], ties[i], j);
+    }
+
+    private void set(int i, Object value, Object item, double tie) {
+      values[i] = value;
+      items[i] = item;
+      ties[i] = tie;
+    }
+
+    private void swap(int i, int j) {
+      Object value = values[i], item = items[i];
+      double tie = ties[i];
+      set(i, values[j], items[j], ties[j]);
+      set(j, value, item, tie);
+    }
+
+    private void siftUp(int i) {
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (!better(parent, i)) {
+          return;
+        }
+        swap(i, parent);
+        i = parent;
+      }
+    }
+
+    private void siftDown(int i) {
+      while (true) {
+        int worst = i, left = 2 * i + 1, right = left + 1;
+        if (left < size && better(worst, left)) {
+          worst = left;
+        }
+        if (right < size && better(worst, right)) {
+          worst = right;
+        }
+        if (worst == i) {
+          return;
+        }
+        swap(i, worst);
+        i = worst;
+      }
+    }
+  }
+
+}
@@ -82,4 +82,66 @@ public class GammaFunctionsTest {
   public void testlogRisingFactorialPreconditionNegativeX() {
     GammaFunctions.logRisingFactorial(-1, 0);
   }
+
+  private static void assertClose(double actual, double expected, double relTol) {
+    assertThat(actual).isEqualTo(expected, Delta.delta(relTol * Math.max(1.0, Math.abs(expected))));
+  }
+
+  @Test
+  public void testDigammaAndTrigamma() {
+    // reference values computed to 50 digits; commons-math's digamma is only good to about 1e-9 here
+    double[][] xDigammaTrigamma = {
+        {1e-3, -1.00057557193181026e+03, 1.00000164253319590e+06},
+        {0.1, -1.04237549404110776e+01, 1.01433299150792763e+02},
+        {2.5, 7.03156640645243192e-01, 4.90357756100234854e-01},
+        {7.3, 1.91782033563798615e+00, 1.46795768131427085e-01},
+        {49.5, 3.89183765072637167e+00, 2.04074550468799909e-02},
+    };
+    for (double[] row : xDigammaTrigamma) {
+      assertClose(GammaFunctions.digamma(row[0]), row[1], 1e-14);
+      assertClose(GammaFunctions.trigamma(row[0]), row[2], 1e-14);
+    }
+    for (double x : new double[]{1e-8, 0.5, 1.0, 9.999, 10.0, 1e3, 1e7}) {
+      assertClose(GammaFunctions.digamma(x), Gamma.digamma(x), 1e-8);
+      assertClose(GammaFunctions.trigamma(x), Gamma.trigamma(x), 1e-8);
+    }
+    // exact values
+    assertClose(GammaFunctions.digamma(1.0), -0.57721566490153286061, 1e-15);
+    assertClose(GammaFunctions.trigamma(1.0), Math.PI * Math.PI / 6, 1e-15);
+    assertClose(GammaFunctions.digamma(0.5), -0.57721566490153286061 - 2 * log(2), 1e-15);
+  }
+
+  @Test
+  public void testShiftedTables() {
+    for (double alpha : new double[]{1e-4, 0.37, 1.0, 25.0}) {
+      ShiftedGammaFunctions shifted = GammaFunctions.shifted(alpha);
+      assertThat(shifted.getShift()).isEqualTo(alpha);
+      for (int n = 0; n < 3000; n++) {
+        assertClose(shifted.digamma(n), GammaFunctions.digamma(alpha + n), 1e-12);
+        assertClose(shifted.trigamma(n), GammaFunctions.trigamma(alpha + n), 1e-12);
+        assertClose(shifted.logGamma(n), Gamma.logGamma(alpha + n), 1e-12);
+      }
+      // beyond the table, and fractional or negative offsets, are evaluated directly
+      int big = ShiftedGammaFunctions.MAX_TABLE_SIZE + 10;
+      assertThat(shifted.digamma(big)).isEqualTo(GammaFunctions.digamma(alpha + big));
+      assertThat(shifted.logGamma(2.5)).isEqualTo(Gamma.logGamma(alpha + 2.5));
+      assertThat(shifted.trigamma(-0.5 + alpha)).isEqualTo(GammaFunctions.trigamma(alpha + (-0.5 + alpha)));
+    }
+  }
+
+  @Test
+  public void testNegativeArguments() {
+    // exact values
+    assertClose(GammaFunctions.digamma(-0.5), 2 - 0.57721566490153286061 - 2 * log(2), 1e-14);
+    assertClose(GammaFunctions.trigamma(-0.5), Math.PI * Math.PI / 2 + 4, 1e-14);
+    for (double x : new double[]{-1e-3, -0.3, -2.7, -41.25}) {
+      assertClose(GammaFunctions.digamma(x), Gamma.digamma(x), 1e-8);
+      assertClose(GammaFunctions.trigamma(x), Gamma.trigamma(x), 1e-8);
+    }
+    // poles, and arguments that used to shift up forever
+    for (double x : new double[]{-1.0, -7.0, -1e300, Double.NEGATIVE_INFINITY, Double.NaN}) {
+      assertThat(GammaFunctions.digamma(x)).isNaN();
+      assertThat(GammaFunctions.trigamma(x)).isNaN();
+    }
+  }
 }
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.distribution.BinomialDistribution;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.stat.inference.ChiSquareTest;
+import org.fest.assertions.Delta;
+import org.junit.Test;
+
+import edu.byu.nlp.util.IntArrays;
+
+/**
+ * Distributional (chi-square) tests of the binomial and multinomial
+ * samplers, with fixed seeds.
+ */
+public class BinomialSamplerTest {
+
+  private static final int NUM_SAMPLES = 20000;
+
+  /**
+   * Rejects at the 0.001 level, after pooling values into bins with an
+   * expected count of at least 5.
+   */
+  private static void assertFits(int n, double p, int[] samples) {
+    BinomialDistribution expected = new BinomialDistribution(n, p);
+    int min = expected.inverseCumulativeProbability(1e-4);
+    int max = expected.inverseCumulativeProbability(1 - 1e-4);
+    long[] observed = new long[max - min + 1];
+    for (int sample : samples) {
+      assertThat(sample).isGreaterThanOrEqualTo(0).isLessThanOrEqualTo(n);
+      ++observed[Math.max(min, Math.min(max, sample)) - min];
+    }
+    double[] expectedCounts = new double[observed.length];
+    for (int x = min; x <= max; x++) {
+      double prob = (x == min) ? expected.cumulativeProbability(x)
+          : (x == max) ? 1 - expected.cumulativeProbability(x - 1) : expected.probability(x);
+      expectedCounts[x - min] = prob * samples.length;
+    }
+    // pool adjacent bins with small expected counts
+    int numBins = 0;
+    double[] pooledExpected = new double[observed.length];
+    long[] pooledObserved = new long[observed.length];
+    for (int i = 0; i < observed.length; i++) {
+      pooledExpected[numBins] += expectedCounts[i];
+      pooledObserved[numBins] += observed[i];
+      if (pooledExpected[numBins] >= 5) {
+        ++numBins;
+      }
+    }
+    if (numBins < observed.length && pooledExpected[numBins] > 0) {
+      // fold the remainder into the last full bin
+      pooledExpected[numBins - 1] += pooledExpected[numBins];
+      pooledObserved[numBins - 1] += pooledObserved[numBins];
+    }
+    if (numBins < 2) {
+      return;
+    }
+    double pValue = new ChiSquareTest().chiSquareTest(Arrays.copyOf(pooledExpected, numBins),
+        Arrays.copyOf(pooledObserved, numBins));
+    assertThat(pValue).isGreaterThan(0.001);
+  }
+
+  @Test
+  public void testDistribution() {
+    RandomGenerator rnd = new MersenneTwister(1);
+    // inversion, BTPE, and both for p > 0.5
+    int[] ns = {10, 1000, 200, 1000000, 100, 5000, 41};
+    double[] ps = {0.3, 0.01, 0.4, 0.3, 0.9, 0.8, 0.5};
+    int[] samples = new int[NUM_SAMPLES];
+    for (int i = 0; i < ns.length; i++) {
+      new BinomialSampler(ns[i], ps[i]).sample(rnd, samples.length, samples);
+      assertFits(ns[i], ps[i], samples);
+    }
+  }
+
+  @Test
+  public void testLargeN() {
+    // the cost of a draw does not depend on n
+    int n = 2000000000;
+    double p = 0.37;
+    BinomialSampler sampler = new BinomialSampler(n, p);
+    RandomGenerator rnd = new MersenneTwister(2);
+    double sum = 0, sumSq = 0;
+    int numDraws = 100000;
+    for (int i = 0; i < numDraws; i++) {
+      double z = (sampler.sample(rnd) - n * p) / Math.sqrt(n * p * (1 - p));
+      sum += z;
+      sumSq += z * z;
+    }
+    assertThat(sum / numDraws).isEqualTo(0.0, Delta.delta(0.02));
+    assertThat(sumSq / numDraws).isEqualTo(1.0, Delta.delta(0.03));
+  }
+
+  @Test
+  public void testDegenerate() {
+    RandomGenerator rnd = new MersenneTwister(3);
+    assertThat(new BinomialSampler(17, 0.0).sample(rnd)).isEqualTo(0);
+    assertThat(new BinomialSampler(17, 1.0).sample(rnd)).isEqualTo(17);
+    assertThat(new BinomialSampler(0, 0.4).sample(rnd)).isEqualTo(0);
+    assertThat(RandomGenerators.nextBinom(rnd, 5, 1.0)).isEqualTo(5);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidProbability() {
+    new BinomialSampler(3, 1.5);
+  }
+
+  @Test
+  public void testMultinomialMarginals() {
+    // each count is binomial(numDraws, p_k)
+    double[] weights = {2, 0, 1, 7};
+    int numDraws = 60;
+    RandomGenerator rnd = new MersenneTwister(4);
+    int[][] marginals = new int[weights.length][NUM_SAMPLES];
+    int[] counts = new int[weights.length];
+    for (int i = 0; i < NUM_SAMPLES; i++) {
+      RandomGenerators.nextMultinomial(rnd, numDraws, weights, counts);
+      assertThat(IntArrays.sum(counts)).isEqualTo(numDraws);
+      for (int k = 0; k < weights.length; k++) {
+        marginals[k][i] = counts[k];
+      }
+    }
+    assertFits(numDraws, 0.2, marginals[0]);
+    assertThat(IntArrays.sum(marginals[1])).isZero();
+    assertFits(numDraws, 0.1, marginals[2]);
+    assertFits(numDraws, 0.7, marginals[3]);
+  }
+
+  @Test
+  public void testLargeMultinomial() {
+    double[] weights = {0.5, 0.25, 0.0, 0.25};
+    int numDraws = 1000000000;
+    double[] counts = RandomGenerators.nextVectorUnnormalizedProbs(new MersenneTwister(5), weights, numDraws);
+    assertThat(counts[0] + counts[1] + counts[2] + counts[3]).isEqualTo((double) numDraws);
+    assertThat(counts[2]).isZero();
+    assertThat(counts[0] / numDraws).isEqualTo(0.5, Delta.delta(1e-3));
+  }
+
+}
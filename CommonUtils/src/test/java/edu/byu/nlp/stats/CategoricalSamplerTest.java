@@ -0,0 +1,150 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.fest.assertions.Delta;
+import org.junit.Test;
+
+import edu.byu.nlp.util.IntArrays;
+
+public class CategoricalSamplerTest {
+
+  private static final double[] WEIGHTS = {2.0, 0.0, 5.0, 1.0, 0.5, 0.0, 1.5};
+
+  private static void assertFrequencies(CategoricalSampler sampler, RandomGenerator rnd) {
+    int numDraws = 200000;
+    int[] out = new int[numDraws];
+    sampler.sample(rnd, numDraws, out);
+    int[] counts = new int[sampler.size()];
+    for (int category : out) {
+      ++counts[category];
+    }
+    double total = 0;
+    for (double w : WEIGHTS) {
+      total += w;
+    }
+    for (int k = 0; k < WEIGHTS.length; k++) {
+      assertThat(sampler.probabilityOf(k)).isEqualTo(WEIGHTS[k] / total, Delta.delta(1e-12));
+      assertThat((double) counts[k] / numDraws).isEqualTo(WEIGHTS[k] / total, Delta.delta(0.01));
+      if (WEIGHTS[k] == 0) {
+        assertThat(counts[k]).isZero();
+      }
+    }
+  }
+
+  @Test
+  public void testAliasSamplerFrequencies() {
+    assertFrequencies(new AliasSampler(WEIGHTS), new MersenneTwister(1));
+  }
+
+  @Test
+  public void testCumulativeSamplerFrequencies() {
+    assertFrequencies(new CumulativeSampler(WEIGHTS), new MersenneTwister(2));
+  }
+
+  @Test
+  public void testCumulativeSamplerMatchesNextIntUnnormalizedProbs() {
+    CumulativeSampler sampler = new CumulativeSampler(WEIGHTS);
+    RandomGenerator rnd1 = new MersenneTwister(3);
+    RandomGenerator rnd2 = new MersenneTwister(3);
+    for (int i = 0; i < 1000; i++) {
+      assertThat(sampler.sample(rnd1)).isEqualTo(RandomGenerators.nextIntUnnormalizedProbs(rnd2, WEIGHTS));
+    }
+  }
+
+  @Test
+  public void testMultinomial() {
+    CategoricalSampler sampler = new AliasSampler(WEIGHTS);
+    RandomGenerator rnd = new MersenneTwister(4);
+    int numDraws = 100000;
+    int[] counts = new int[WEIGHTS.length];
+    long[] totals = new long[WEIGHTS.length];
+    int numTrials = 20;
+    for (int t = 0; t < numTrials; t++) {
+      sampler.multinomial(rnd, numDraws, counts);
+      assertThat(IntArrays.sum(counts)).isEqualTo(numDraws);
+      for (int k = 0; k < counts.length; k++) {
+        totals[k] += counts[k];
+      }
+    }
+    for (int k = 0; k < WEIGHTS.length; k++) {
+      double freq = (double) totals[k] / (numDraws * numTrials);
+      assertThat(freq).isEqualTo(sampler.probabilityOf(k), Delta.delta(0.005));
+    }
+    assertThat(totals[1]).isZero();
+    assertThat(totals[5]).isZero();
+  }
+
+  @Test
+  public void testMultinomialWithFewDraws() {
+    int[] counts = new AliasSampler(WEIGHTS).multinomial(new MersenneTwister(5), 3, new int[WEIGHTS.length]);
+    assertThat(IntArrays.sum(counts)).isEqualTo(3);
+  }
+
+  @Test
+  public void testDistributionSampler() {
+    CategoricalDistribution dist = DoubleArrayCategoricalDistribution.newDistributionFromProbs(
+        new double[]{0.2, 0.0, 0.5, 0.3}, true);
+    CategoricalSampler sampler = dist.sampler();
+    assertThat(sampler.size()).isEqualTo(4);
+    assertThat(sampler.probabilityOf(1)).isZero();
+    assertThat(sampler.probabilityOf(2)).isEqualTo(0.5, Delta.delta(1e-12));
+  }
+
+  @Test
+  public void testDefaultDistributionSampler() {
+    final CategoricalDistribution delegate = DoubleArrayCategoricalDistribution.newDistributionFromProbs(
+        new double[]{0.2, 0.0, 0.5, 0.3}, true);
+    // an outside implementation that only provides the abstract methods
+    CategoricalDistribution dist = new CategoricalDistribution() {
+      @Override
+      public double logProbabilityOf(int event) {
+        return delegate.logProbabilityOf(event);
+      }
+      @Override
+      public int argMax() {
+        return delegate.argMax();
+      }
+      @Override
+      public double logMax() {
+        return delegate.logMax();
+      }
+      @Override
+      public double entropy() {
+        return delegate.entropy();
+      }
+    };
+    CategoricalSampler sampler = dist.sampler();
+    assertThat(sampler.size()).isEqualTo(4);
+    assertThat(sampler.probabilityOf(1)).isZero();
+    assertThat(sampler.probabilityOf(2)).isEqualTo(0.5, Delta.delta(1e-12));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeWeights() {
+    new AliasSampler(new double[]{1.0, -1.0});
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAllZeroWeights() {
+    new CumulativeSampler(new double[]{0.0, 0.0});
+  }
+
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.fest.assertions.Delta;
+import org.junit.Test;
+
+import edu.byu.nlp.math.GammaFunctions;
+
+public class CountStatisticsTest {
+
+  private static double directDigammaSum(double[] counts, double alpha) {
+    double total = 0;
+    for (double count : counts) {
+      total += GammaFunctions.digamma(alpha + count) - GammaFunctions.digamma(alpha);
+    }
+    return total;
+  }
+
+  private static double directLogGammaSum(double[] counts, double alpha) {
+    double total = 0;
+    for (double count : counts) {
+      total += GammaFunctions.logGamma(alpha + count) - GammaFunctions.logGamma(alpha);
+    }
+    return total;
+  }
+
+  private static void assertMatchesDirect(CountStatistics stats, double[] counts) {
+    assertThat(stats.size()).isEqualTo(counts.length);
+    for (double alpha : new double[]{1e-3, 0.2, 1.0, 7.5, 300.0}) {
+      double digammaSum = directDigammaSum(counts, alpha);
+      double logGammaSum = directLogGammaSum(counts, alpha);
+      assertThat(stats.digammaSum(alpha)).isEqualTo(digammaSum, Delta.delta(1e-10 * Math.abs(digammaSum)));
+      assertThat(stats.logGammaSum(alpha)).isEqualTo(logGammaSum, Delta.delta(1e-10 * Math.abs(logGammaSum)));
+    }
+  }
+
+  @Test
+  public void testIntegralCountsUseHistogram() {
+    RandomGenerator rnd = new MersenneTwister(1);
+    double[] counts = new double[2000];
+    for (int i = 0; i < counts.length; i++) {
+      // many zeros and repeats, as in real count data
+      counts[i] = rnd.nextInt(4) == 0 ? rnd.nextInt(200) : rnd.nextInt(3);
+    }
+    CountStatistics stats = CountStatistics.of(counts);
+    assertThat(stats.isHistogram()).isTrue();
+    assertMatchesDirect(stats, counts);
+  }
+
+  @Test
+  public void testFractionalCountsAreEvaluatedDirectly() {
+    double[] counts = {0, 3, 2.5, 10, 0.125};
+    CountStatistics stats = CountStatistics.of(counts);
+    assertThat(stats.isHistogram()).isFalse();
+    assertMatchesDirect(stats, counts);
+
+    double[] hugeCounts = {1, CountStatistics.MAX_HISTOGRAM_LENGTH};
+    assertThat(CountStatistics.of(hugeCounts).isHistogram()).isFalse();
+    assertMatchesDirect(CountStatistics.of(hugeCounts), hugeCounts);
+  }
+
+  @Test
+  public void testSparseLargeCountsAreEvaluatedDirectly() {
+    double[] counts = {0, 1, CountStatistics.MAX_HISTOGRAM_RATIO * 3 + 1};
+    CountStatistics stats = CountStatistics.of(counts);
+    assertThat(stats.isHistogram()).isFalse();
+    assertMatchesDirect(stats, counts);
+
+    counts[2] = CountStatistics.MAX_HISTOGRAM_RATIO * counts.length;
+    assertThat(CountStatistics.of(counts).isHistogram()).isTrue();
+  }
+
+  @Test
+  public void testMatrix() {
+    double[][] counts = {{1, 0, 4}, {}, {2, 2}};
+    CountStatistics stats = CountStatistics.of(counts);
+    assertThat(stats.isHistogram()).isTrue();
+    assertMatchesDirect(stats, new double[]{1, 0, 4, 2, 2});
+  }
+
+  @Test
+  public void testParallelSumsDoNotDependOnThreads() {
+    RandomGenerator rnd = new MersenneTwister(2);
+    double[] counts = new double[10 * CountStatistics.BLOCK_SIZE + 17];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = rnd.nextInt(50) * 0.5;
+    }
+    CountStatistics serial = CountStatistics.of(counts);
+    for (int numThreads : new int[]{2, 3, 8}) {
+      CountStatistics parallel = CountStatistics.of(counts, numThreads);
+      assertThat(parallel.digammaSum(0.7)).isEqualTo(serial.digammaSum(0.7));
+      assertThat(parallel.logGammaSum(0.7)).isEqualTo(serial.logGammaSum(0.7));
+    }
+    assertMatchesDirect(serial, counts);
+  }
+
+  @Test
+  public void testAllZeros() {
+    CountStatistics stats = CountStatistics.of(new double[]{0, 0, 0});
+    assertThat(stats.digammaSum(0.5)).isEqualTo(0.0);
+    assertThat(stats.logGammaSum(0.5)).isEqualTo(0.0);
+  }
+
+}
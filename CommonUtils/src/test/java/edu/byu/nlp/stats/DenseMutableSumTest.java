@@ -0,0 +1,202 @@
+package edu.byu.nlp.stats;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+public class DenseMutableSumTest {
+
+  private static final double THRESHOLD = 1e-20;
+  
+  @Test
+  public void test() {
+    
+    DenseMutableSum sum = new DenseMutableSum(0);
+    assertEquals(0,sum.getSum(),THRESHOLD);
+
+    sum.setSummand(0, 1);
+    assertEquals(1,sum.getSum(),THRESHOLD);
+
+    sum.setSummand(0, -1);
+    assertEquals(-1,sum.getSum(),THRESHOLD);
+
+    sum.setSummand(1, 5.5);
+    assertEquals(4.5,sum.getSum(),THRESHOLD);
+
+    sum.setSummand(1, 0);
+    assertEquals(-1,sum.getSum(),THRESHOLD);
+
+    sum.setSummand(8, 0);
+    assertEquals(-1,sum.getSum(),THRESHOLD);
+    
+    sum.setSummand(100, 2);
+    assertEquals(1,sum.getSum(),THRESHOLD);
+    assertEquals(2,sum.getSummand(100),THRESHOLD);
+    assertEquals(0,sum.getSummand(1000),THRESHOLD);
+  }
+
+  @Test
+  public void testActive() {
+
+    DenseMutableSum sum = new DenseMutableSum();
+    for (int i=0; i<20; i++){
+      sum.setSummand(i, 2);
+    }
+    assertEquals(40,sum.getSum(),THRESHOLD);
+
+    sum.setSummandActive(0, false);
+    assertEquals(38,sum.getSum(),THRESHOLD);
+    assertEquals(0,sum.getSummand(0),THRESHOLD);
+
+    sum.setSummandActive(0, true);
+    assertEquals(40,sum.getSum(),THRESHOLD);
+
+    for (int i=0; i<20; i+=2){
+      sum.setSummandActive(i, false);
+    }
+    assertEquals(20,sum.getSum(),THRESHOLD);
+
+    // summands that haven't been set may be inactivated
+    sum.setSummandActive(9999, false);
+    assertEquals(20,sum.getSum(),THRESHOLD);
+    sum.setSummand(9999, 321498237);
+    assertEquals(20,sum.getSum(),THRESHOLD);
+
+    // change inactive summands
+    for (int i=0; i<20; i+=2){
+      sum.setSummand(i, 1);
+    }
+    // no change
+    assertEquals(20,sum.getSum(),THRESHOLD);
+
+    // now activate the changed summands
+    for (int i=0; i<20; i+=2){
+      sum.setSummandActive(i, true);
+    }
+    assertEquals(30,sum.getSum(),THRESHOLD);
+  }
+
+  @Test
+  public void testNoDrift() {
+    // 1e16 swamps small summands in an uncompensated sum
+    DenseMutableSum sum = new DenseMutableSum();
+    sum.setSummand(0, 1e16);
+    for (int i = 0; i < 1000; i++) {
+      sum.setSummand(1 + i % 10, 1.0);
+      sum.setSummand(1 + i % 10, 0.1);
+    }
+    sum.setSummand(0, 0);
+    assertEquals(1.0,sum.getSum(),1e-12);
+
+    // many cycles, across periodic resummations
+    RandomGenerator rnd = new MersenneTwister(1);
+    double[] values = new double[50];
+    for (int i = 0; i < 3 * DenseMutableSum.RESUM_INTERVAL; i++) {
+      int index = rnd.nextInt(values.length);
+      values[index] = (rnd.nextDouble() - 0.5) * Math.pow(10, rnd.nextInt(12));
+      sum.setSummand(index, values[index]);
+    }
+    double expected = 0;
+    for (double value : values) {
+      expected += value;
+    }
+    assertEquals(expected,sum.getSum(),1e-4);
+  }
+
+  @Test
+  public void testMatchesMutableSum() {
+    RandomGenerator rnd = new MersenneTwister(2);
+    MutableSum expected = new MutableSum();
+    DenseMutableSum actual = new DenseMutableSum();
+    for (int i = 0; i < 10000; i++) {
+      int index = rnd.nextInt(40);
+      if (rnd.nextInt(3) == 0) {
+        boolean active = rnd.nextBoolean();
+        expected.setSummandActive(index, active);
+        actual.setSummandActive(index, active);
+      } else {
+        double value = rnd.nextInt(5) == 0 ? 0 : rnd.nextInt(100);
+        expected.setSummand(index, value);
+        actual.setSummand(index, value);
+      }
+      assertEquals(expected.getSum(),actual.getSum(),1e-9);
+      assertEquals(expected.getSummand(index),actual.getSummand(index),THRESHOLD);
+    }
+  }
+
+  @Test
+  public void testCopyOnWrite() {
+    DenseMutableSum sum = new DenseMutableSum();
+    sum.setSummand(0, 1);
+    sum.setSummand(1, 2);
+    DenseMutableSum copy = sum.copy();
+    
+    sum.setSummand(0, 10);
+    sum.setSummandActive(1, false);
+    assertEquals(10,sum.getSum(),THRESHOLD);
+    assertEquals(3,copy.getSum(),THRESHOLD);
+    assertEquals(1,copy.getSummand(0),THRESHOLD);
+    assertEquals(2,copy.getSummand(1),THRESHOLD);
+
+    copy.setSummand(5, 4);
+    assertEquals(7,copy.getSum(),THRESHOLD);
+    assertEquals(0,sum.getSummand(5),THRESHOLD);
+    assertEquals(10,sum.getSum(),THRESHOLD);
+
+    // inactive summands are copied too
+    DenseMutableSum copy2 = sum.copy();
+    copy2.setSummandActive(1, true);
+    assertEquals(12,copy2.getSum(),THRESHOLD);
+    assertEquals(10,sum.getSum(),THRESHOLD);
+  }
+
+  @Test
+  public void testCopiesAreIndependent() {
+    DenseMutableSum sum = new DenseMutableSum();
+    sum.setSummand(0, 1);
+    DenseMutableSum copy = sum.copy();
+    DenseMutableSum copy2 = copy.copy();
+
+    // the copies make their own arrays, after which the original writes in place
+    copy.setSummand(0, 2);
+    copy2.setSummand(0, 3);
+    sum.setSummand(0, 4);
+    assertEquals(4,sum.getSum(),THRESHOLD);
+    assertEquals(2,copy.getSum(),THRESHOLD);
+    assertEquals(3,copy2.getSum(),THRESHOLD);
+
+    // copies of a sum that has since been written to keep its old values
+    DenseMutableSum snapshot = sum.copy();
+    sum.setSummand(0, 5);
+    sum.setSummandActive(0, false);
+    assertEquals(4,snapshot.getSum(),THRESHOLD);
+    assertEquals(4,snapshot.getSummand(0),THRESHOLD);
+    assertEquals(0,sum.getSum(),THRESHOLD);
+  }
+
+  @Test
+  public void testInfiniteSummands() {
+    DenseMutableSum sum = new DenseMutableSum();
+    sum.setSummand(0, 1);
+    sum.setSummand(1, Double.POSITIVE_INFINITY);
+    assertEquals(Double.POSITIVE_INFINITY,sum.getSum(),THRESHOLD);
+    sum.setSummand(2, 2);
+    assertEquals(Double.POSITIVE_INFINITY,sum.getSum(),THRESHOLD);
+
+    // removing the infinity restores the finite sum
+    sum.setSummand(1, 4);
+    assertEquals(7,sum.getSum(),THRESHOLD);
+    sum.setSummand(1, Double.NEGATIVE_INFINITY);
+    sum.setSummandActive(1, false);
+    assertEquals(3,sum.getSum(),THRESHOLD);
+
+    sum.setSummandActive(1, true);
+    sum.setSummand(2, Double.POSITIVE_INFINITY);
+    assertTrue(Double.isNaN(sum.getSum()));
+    sum.setSummand(2, 0);
+    assertEquals(Double.NEGATIVE_INFINITY,sum.getSum(),THRESHOLD);
+  }
+
+}
@@ -112,4 +112,26 @@ public class DirichletMultinomialMLEOptimizableTest {
 		assertThat(optimum1).isEqualTo(optimum2, delta);
 		
 	}
+
+	@Test
+	public void testParallelMatchesSerial() {
+		double[] alpha = new double[]{ 1,2,3,4 };
+		double[][] data = DirichletTestUtils.sampleMultinomialDataset(alpha,20000,100,new MersenneTwister(1));
+		// fractional counts are evaluated directly rather than through histograms 
+		for (double[] row : data) {
+			for (int k = 0; k < row.length; k++) {
+				row[k] *= 0.5;
+			}
+		}
+		double[] startPoint = new double[]{9,4,1,7};
+		DirichletMultinomialMLEOptimizable serial = DirichletMultinomialMLEOptimizable.newOptimizable(data, false, 1);
+		DirichletMultinomialMLEOptimizable parallel = DirichletMultinomialMLEOptimizable.newOptimizable(data, false, 4);
+		for (int iteration = 0; iteration < 5; iteration++) {
+			ValueAndObject<double[]> expected = serial.computeNext(startPoint);
+			ValueAndObject<double[]> actual = parallel.computeNext(startPoint);
+			assertThat(actual.getValue()).isEqualTo(expected.getValue());
+			assertThat(actual.getObject()).isEqualTo(expected.getObject());
+			startPoint = expected.getObject();
+		}
+	}
 }
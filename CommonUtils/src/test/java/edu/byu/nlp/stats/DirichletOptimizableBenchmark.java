@@ -0,0 +1,94 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import org.apache.commons.math3.random.MersenneTwister;
+
+import edu.byu.nlp.math.optimize.IterativeOptimizer.Optimizable;
+import edu.byu.nlp.util.Timers;
+
+/**
+ * Times fixed-point iterations of the Dirichlet-multinomial optimizables at
+ * 1, 2, 4, 8 and 16 threads, on fractional counts (evaluated directly, in
+ * parallel) and on the same counts rounded to integers (summarized by
+ * histograms, for which the number of threads does not matter). Not a unit
+ * test; run by hand:
+ *
+ *   java edu.byu.nlp.stats.DirichletOptimizableBenchmark [numRows]
+ */
+public class DirichletOptimizableBenchmark {
+
+  private static final int NUM_ROUNDS = 5;
+  private static final int NUM_ITERATIONS = 10;
+  private static final int[] NUM_THREADS = {1, 2, 4, 8, 16};
+
+  public static void main(String[] args) {
+    int numRows = (args.length > 0) ? Integer.parseInt(args[0]) : 300000;
+    double[] alpha = {0.5, 1, 2, 4, 8};
+    double[][] integral = DirichletTestUtils.sampleMultinomialDataset(alpha, numRows, 50, new MersenneTwister(1));
+    double[][] fractional = new double[numRows][];
+    for (int i = 0; i < numRows; i++) {
+      fractional[i] = integral[i].clone();
+      for (int k = 0; k < alpha.length; k++) {
+        fractional[i][k] *= 0.3;
+      }
+    }
+    double[][][] confusions = DirichletTestUtils.sampleDirichletMultinomialMatrixDataset(10, 1, 5, numRows / 5, 50,
+        new MersenneTwister(2));
+    for (double[][] confusion : confusions) {
+      for (double[] row : confusion) {
+        for (int k = 0; k < row.length; k++) {
+          row[k] *= 0.3;
+        }
+      }
+    }
+    double[] start = {1, 1, 1, 1, 1};
+
+    System.out.printf("%d rows x %d columns, %d iterations%n", numRows, alpha.length, NUM_ITERATIONS);
+    report("DirichletMultinomialMLE, integral", 1,
+        DirichletMultinomialMLEOptimizable.newOptimizable(integral, false, 1), start);
+    for (int numThreads : NUM_THREADS) {
+      report("DirichletMultinomialMLE, fractional", numThreads,
+          DirichletMultinomialMLEOptimizable.newOptimizable(fractional, false, numThreads), start);
+    }
+    for (int numThreads : NUM_THREADS) {
+      report("SymmetricMatrixMAP, fractional", numThreads,
+          SymmetricDirichletMultinomialMatrixMAPOptimizable.newOptimizable(fractional, -1, -1, numThreads), 1.0);
+    }
+    for (int numThreads : NUM_THREADS) {
+      report("DiagonalMatrixMAP, fractional", numThreads,
+          SymmetricDirichletMultinomialDiagonalMatrixMAPOptimizable.newOptimizable(confusions, -1, -1, numThreads),
+          edu.byu.nlp.util.Pair.of(5.0, 0.5));
+    }
+  }
+
+  private static <T> void report(String name, int numThreads, Optimizable<T> optimizable, T start) {
+    long bestNanos = Long.MAX_VALUE;
+    double checksum = 0;
+    for (int round = 0; round < NUM_ROUNDS; round++) {
+      T point = start;
+      Timers.Stoppable timer = Timers.start();
+      for (int iteration = 0; iteration < NUM_ITERATIONS; iteration++) {
+        point = optimizable.computeNext(point).getObject();
+      }
+      bestNanos = Math.min(bestNanos, timer.stop().getDurationNanos());
+      checksum = optimizable.computeNext(point).getValue();
+    }
+    System.out.printf("%-40s %2d thread(s) %8.2f ms/iteration  (value %.6f)%n", name, numThreads,
+        bestNanos / 1e6 / NUM_ITERATIONS, checksum);
+  }
+
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.apache.commons.math3.distribution.RealDistribution;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.stat.inference.KolmogorovSmirnovTest;
+import org.fest.assertions.Delta;
+import org.junit.Test;
+
+import edu.byu.nlp.util.DoubleArrays;
+
+/**
+ * Distributional (Kolmogorov-Smirnov) tests of the normal, gamma and
+ * Dirichlet samplers, with fixed seeds.
+ */
+public class GammaDistributionTest {
+
+  private static final int NUM_SAMPLES = 20000;
+
+  /**
+   * Rejects at the 0.001 level, using the asymptotic distribution of the
+   * KS statistic (the exact p-value is too slow for this many samples).
+   */
+  private static void assertFits(RealDistribution expected, double[] samples) {
+    double d = new KolmogorovSmirnovTest().kolmogorovSmirnovStatistic(expected, samples);
+    assertThat(d * Math.sqrt(samples.length)).isLessThan(1.949);
+  }
+
+  @Test
+  public void testZigguratNormal() {
+    RandomGenerator rnd = new MersenneTwister(1);
+    double[] samples = new double[NUM_SAMPLES];
+    int numInTail = 0;
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = NormalDistribution.sample(rnd);
+      if (Math.abs(samples[i]) > 3.442619855899) {
+        ++numInTail;
+      }
+    }
+    assertFits(new org.apache.commons.math3.distribution.NormalDistribution(), samples);
+    // P(|X| > R) is about 5.8e-4
+    assertThat(numInTail).isGreaterThan(0);
+  }
+
+  @Test
+  public void testGammaShapes() {
+    RandomGenerator rnd = new MersenneTwister(2);
+    for (double shape : new double[]{0.05, 0.3, 1.0, 2.5, 50.0}) {
+      double[] samples = new double[NUM_SAMPLES];
+      for (int i = 0; i < samples.length; i++) {
+        samples[i] = GammaDistribution.sample(shape, rnd);
+        assertThat(samples[i]).isGreaterThanOrEqualTo(0.0);
+      }
+      assertFits(new org.apache.commons.math3.distribution.GammaDistribution(shape, 1.0), samples);
+    }
+  }
+
+  @Test
+  public void testGammaLogSample() {
+    RandomGenerator rnd = new MersenneTwister(3);
+    double shape = 0.3;
+    double[] samples = new double[NUM_SAMPLES];
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = Math.exp(GammaDistribution.logSample(shape, rnd));
+    }
+    assertFits(new org.apache.commons.math3.distribution.GammaDistribution(shape, 1.0), samples);
+
+    // tiny shapes: the sample itself underflows, but its log does not
+    for (int i = 0; i < 1000; i++) {
+      double logSample = GammaDistribution.logSample(1e-4, rnd);
+      assertThat(Double.isInfinite(logSample) || Double.isNaN(logSample)).isFalse();
+    }
+  }
+
+  @Test
+  public void testDirichletMarginals() {
+    // theta_0 ~ Beta(alpha_0, sum(alpha) - alpha_0)
+    double[] alpha = {0.4, 1.5, 3.0};
+    RandomGenerator rnd = new MersenneTwister(4);
+    double[][] alphas = new double[NUM_SAMPLES][];
+    for (int i = 0; i < alphas.length; i++) {
+      alphas[i] = alpha;
+    }
+    double[][] thetas = new double[NUM_SAMPLES][alpha.length];
+    DirichletDistribution.sample(alphas, thetas, rnd, 3);
+    double[] marginal = new double[NUM_SAMPLES];
+    for (int i = 0; i < thetas.length; i++) {
+      assertThat(DoubleArrays.sum(thetas[i])).isEqualTo(1.0, Delta.delta(1e-12));
+      marginal[i] = thetas[i][0];
+    }
+    assertFits(new org.apache.commons.math3.distribution.BetaDistribution(0.4, 4.5), marginal);
+  }
+
+  @Test
+  public void testDirichletLogSampleWithTinyAlphas() {
+    double[][] alphas = new double[200][];
+    for (int i = 0; i < alphas.length; i++) {
+      alphas[i] = new double[]{1e-5, 1e-6, 1e-5, 1e-7};
+    }
+    double[][] logThetas = new double[alphas.length][4];
+    double[][] thetas = new double[alphas.length][4];
+    DirichletDistribution.logSample(alphas, logThetas, new MersenneTwister(5), 2);
+    DirichletDistribution.sample(alphas, thetas, new MersenneTwister(5), 1);
+    for (int i = 0; i < alphas.length; i++) {
+      assertThat(DoubleArrays.logSum(logThetas[i])).isEqualTo(0.0, Delta.delta(1e-9));
+      for (double logTheta : logThetas[i]) {
+        assertThat(Double.isNaN(logTheta)).isFalse();
+      }
+      assertThat(DoubleArrays.sum(thetas[i])).isEqualTo(1.0, Delta.delta(1e-9));
+    }
+  }
+
+  @Test
+  public void testDirichletSampleToSelfWithTinyAlphas() {
+    // every gamma draw underflows, so the sample falls back to log space, which needs the alphas
+    RandomGenerator rnd = new MersenneTwister(7);
+    for (int i = 0; i < 100; i++) {
+      double[] alpha = {1e-200, 1e-250, 1e-200};
+      DirichletDistribution.sampleToSelf(alpha, rnd);
+      assertThat(DoubleArrays.sum(alpha)).isEqualTo(1.0, Delta.delta(1e-9));
+    }
+    double[][] alphas = new double[200][];
+    for (int i = 0; i < alphas.length; i++) {
+      alphas[i] = new double[]{1e-200, 1e-250, 1e-200};
+    }
+    DirichletDistribution.sample(alphas, alphas, rnd, 2);
+    for (double[] theta : alphas) {
+      assertThat(DoubleArrays.sum(theta)).isEqualTo(1.0, Delta.delta(1e-9));
+    }
+  }
+
+  @Test
+  public void testBatchSamplesDoNotDependOnThreads() {
+    double[][] alphas = new double[500][];
+    for (int i = 0; i < alphas.length; i++) {
+      alphas[i] = new double[]{0.1, 1.0 + i % 5, 20.0};
+    }
+    double[][] serial = new double[alphas.length][3];
+    double[][] parallel = new double[alphas.length][3];
+    DirichletDistribution.logSample(alphas, serial, new MersenneTwister(6), 1);
+    DirichletDistribution.logSample(alphas, parallel, new MersenneTwister(6), 4);
+    assertThat(parallel).isEqualTo(serial);
+  }
+
+}
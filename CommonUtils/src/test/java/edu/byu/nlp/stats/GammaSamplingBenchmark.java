@@ -0,0 +1,166 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import edu.byu.nlp.util.Timers;
+
+/**
+ * Times the ziggurat normal against RandomGenerator.nextGaussian(), the
+ * Marsaglia-Tsang gamma sampler against the previous Johnk/Best sampler,
+ * and batch Dirichlet sampling into a preallocated matrix against the
+ * row-by-row method. Not a unit test; run by hand:
+ *
+ *   java edu.byu.nlp.stats.GammaSamplingBenchmark [numDraws]
+ */
+public class GammaSamplingBenchmark {
+
+  private static final int NUM_ROUNDS = 5;
+
+  private interface Task {
+    double run(RandomGenerator rnd);
+  }
+
+  public static void main(String[] args) {
+    final int numDraws = (args.length > 0) ? Integer.parseInt(args[0]) : 2000000;
+
+    report("nextGaussian", numDraws, new Task() {
+      @Override
+      public double run(RandomGenerator rnd) {
+        double sum = 0;
+        for (int i = 0; i < numDraws; i++) {
+          sum += rnd.nextGaussian();
+        }
+        return sum;
+      }
+    });
+    report("ziggurat normal", numDraws, new Task() {
+      @Override
+      public double run(RandomGenerator rnd) {
+        double sum = 0;
+        for (int i = 0; i < numDraws; i++) {
+          sum += NormalDistribution.sample(rnd);
+        }
+        return sum;
+      }
+    });
+
+    for (final double shape : new double[]{0.1, 0.5, 2.0, 10.0}) {
+      report("Johnk/Best gamma(" + shape + ")", numDraws, new Task() {
+        @Override
+        public double run(RandomGenerator rnd) {
+          double sum = 0;
+          for (int i = 0; i < numDraws; i++) {
+            sum += previousGammaSample(shape, rnd);
+          }
+          return sum;
+        }
+      });
+      report("Marsaglia-Tsang gamma(" + shape + ")", numDraws, new Task() {
+        @Override
+        public double run(RandomGenerator rnd) {
+          double sum = 0;
+          for (int i = 0; i < numDraws; i++) {
+            sum += GammaDistribution.sample(shape, rnd);
+          }
+          return sum;
+        }
+      });
+    }
+
+    final int numRows = numDraws / 20;
+    final double[][] alphas = new double[numRows][];
+    for (int i = 0; i < numRows; i++) {
+      alphas[i] = new double[]{0.1, 0.5, 1.0, 2.0, 5.0, 0.1, 0.5, 1.0, 2.0, 5.0,
+          0.1, 0.5, 1.0, 2.0, 5.0, 0.1, 0.5, 1.0, 2.0, 5.0};
+    }
+    final double[][] thetas = new double[numRows][20];
+    report("Dirichlet rows (previous gamma)", numDraws, new Task() {
+      @Override
+      public double run(RandomGenerator rnd) {
+        double sum = 0;
+        for (int i = 0; i < numRows; i++) {
+          double total = 0;
+          for (int k = 0; k < 20; k++) {
+            thetas[i][k] = previousGammaSample(alphas[i][k], rnd);
+            total += thetas[i][k];
+          }
+          sum += thetas[i][0] / total;
+        }
+        return sum;
+      }
+    });
+    for (final int numThreads : new int[]{1, Runtime.getRuntime().availableProcessors()}) {
+      report("Dirichlet batch, " + numThreads + " thread(s)", numDraws, new Task() {
+        @Override
+        public double run(RandomGenerator rnd) {
+          DirichletDistribution.sample(alphas, thetas, rnd, numThreads);
+          return thetas[0][0];
+        }
+      });
+    }
+  }
+
+  private static void report(String name, int numDraws, Task task) {
+    double checksum = 0;
+    long bestNanos = Long.MAX_VALUE;
+    for (int round = 0; round < NUM_ROUNDS; round++) {
+      RandomGenerator rnd = new MersenneTwister(round);
+      Timers.Stoppable timer = Timers.start();
+      checksum += task.run(rnd);
+      bestNanos = Math.min(bestNanos, timer.stop().getDurationNanos());
+    }
+    System.out.printf("%-40s %7.1f ns/draw  (checksum %.3f)%n", name, bestNanos / (double) numDraws, checksum);
+  }
+
+  /**
+   * The previous implementation of GammaDistribution.sample
+   */
+  private static double previousGammaSample(double shape, RandomGenerator rnd) {
+    if (shape == 1.0) {
+      return -Math.log(rnd.nextDouble());
+    } else if (shape < 1.0) {
+      double cc = 1.0 / shape;
+      double dd = 1.0 / (1.0 - shape);
+      while (true) {
+        double xx = Math.pow(rnd.nextDouble(), cc);
+        double yy = xx + Math.pow(rnd.nextDouble(), dd);
+        if (yy <= 1.0 && yy != 0 && xx / yy > 0) {
+          return -Math.log(rnd.nextDouble()) * xx / yy;
+        }
+      }
+    } else {
+      double bb = shape - 1.0;
+      double cc = 3.0 * shape - 0.75;
+      while (true) {
+        double uu = rnd.nextDouble();
+        double vv = rnd.nextDouble();
+        double ww = uu * (1.0 - uu);
+        double yy = Math.sqrt(cc / ww) * (uu - 0.5);
+        double xx = bb + yy;
+        if (xx >= 0) {
+          double zz = 64.0 * ww * ww * ww * vv * vv;
+          if ((zz <= (1.0 - 2.0 * yy * yy / xx)) || (Math.log(zz) <= 2.0 * (bb * Math.log(xx / bb) - yy))) {
+            return xx;
+          }
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import edu.byu.nlp.util.DoubleArrays;
+import edu.byu.nlp.util.Timers;
+
+/**
+ * Compares {@link RandomGenerators#nextIntUnnormalizedLogProbs} (with a
+ * caller-provided and with the per-thread workspace) against the previous
+ * implementation, which copied, log-normalized and exponentiated the
+ * parameters on every call. Both flat and spiky distributions are timed, as
+ * they would appear in the inner loop of a collapsed Gibbs sampler. Not a unit
+ * test; run by hand:
+ *
+ *   java edu.byu.nlp.stats.LogProbSamplingBenchmark [numDraws]
+ */
+public class LogProbSamplingBenchmark {
+
+  private static final int NUM_ROUNDS = 5;
+  private static final int[] SIZES = {3, 10, 50, 200};
+
+  private interface Sampler {
+    int sample(RandomGenerator rnd, double[] logProbs);
+  }
+
+  public static void main(String[] args) {
+    int numDraws = (args.length > 0) ? Integer.parseInt(args[0]) : 2000000;
+    final double[] workspace = new double[SIZES[SIZES.length - 1]];
+
+    Sampler copying = new Sampler() {
+      @Override
+      public int sample(RandomGenerator rnd, double[] logProbs) {
+        return copyingSample(rnd, logProbs);
+      }
+    };
+    Sampler threadLocal = new Sampler() {
+      @Override
+      public int sample(RandomGenerator rnd, double[] logProbs) {
+        return RandomGenerators.nextIntUnnormalizedLogProbs(rnd, logProbs);
+      }
+    };
+    Sampler withWorkspace = new Sampler() {
+      @Override
+      public int sample(RandomGenerator rnd, double[] logProbs) {
+        return RandomGenerators.nextIntUnnormalizedLogProbs(rnd, logProbs, workspace);
+      }
+    };
+
+    for (int size : SIZES) {
+      for (boolean spiky : new boolean[]{false, true}) {
+        double[][] params = randomLogProbs(size, spiky, new MersenneTwister(size));
+        String name = String.format("K=%d, %s", size, spiky ? "spiky" : "flat");
+        report(name + ", copy", copying, params, numDraws);
+        report(name + ", thread-local", threadLocal, params, numDraws);
+        report(name + ", workspace", withWorkspace, params, numDraws);
+      }
+    }
+  }
+
+  private static void report(String name, Sampler sampler, double[][] params, int numDraws) {
+    long checksum = 0;
+    long bestNanos = Long.MAX_VALUE;
+    for (int round = 0; round < NUM_ROUNDS; round++) {
+      RandomGenerator rnd = new MersenneTwister(round);
+      Timers.Stoppable timer = Timers.start();
+      for (int d = 0; d < numDraws; d++) {
+        checksum += sampler.sample(rnd, params[d % params.length]);
+      }
+      bestNanos = Math.min(bestNanos, timer.stop().getDurationNanos());
+    }
+    System.out.printf("%-30s %7.1f ns/draw  (checksum %d)%n", name, bestNanos / (double) numDraws, checksum);
+  }
+
+  /**
+   * A pool of unnormalized log probability vectors. Spiky ones put most of
+   * the mass on a single (random) element.
+   */
+  private static double[][] randomLogProbs(int size, boolean spiky, RandomGenerator rnd) {
+    double[][] params = new double[64][size];
+    for (double[] logProbs : params) {
+      for (int i = 0; i < size; i++) {
+        logProbs[i] = -1000 + rnd.nextGaussian();
+      }
+      if (spiky) {
+        logProbs[rnd.nextInt(size)] += 10;
+      }
+    }
+    return params;
+  }
+
+  /**
+   * The previous implementation of nextIntUnnormalizedLogProbs
+   */
+  private static int copyingSample(RandomGenerator rnd, double[] unnormalizedLogProbs) {
+    double[] copy = unnormalizedLogProbs.clone();
+    DoubleArrays.logNormalizeToSelf(copy);
+    DoubleArrays.expToSelf(copy);
+    double u1 = rnd.nextDouble();
+    double acc = 0.0;
+    for (int i = 0; i < copy.length; i++) {
+      acc += copy[i];
+      if (acc > u1) {
+        return i;
+      }
+    }
+    throw new IllegalStateException("this should never happen");
+  }
+}
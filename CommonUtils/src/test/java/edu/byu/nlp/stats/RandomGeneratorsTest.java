@@ -198,4 +198,44 @@ public class RandomGeneratorsTest {
 
     assertThat(logBayesFactor(counts, theta)).isGreaterThanOrEqualTo(Math.log(100.0));
   }
+
+  /**
+   * Test method for {@link edu.byu.nlp.stats.RandomGenerators#nextIntUnnormalizedLogProbs(org.apache.commons.math3.random.RandomGenerator, double[], double[])}.
+   */
+  @Test
+  public void testNextIntUnnormalizedLogProbsWithWorkspace() {
+    final int numSamples = 10000;
+    // the max is neither first nor last
+    final double[] theta = new double[]{ 0.05, 0.1, 0.05, 0.1, 0.4, 0.05, 0.1, 0.05, 0.1 };
+    
+    double[] unnormalizedLogProbs = DoubleArrays.log(theta);
+    DoubleArrays.addToSelf(unnormalizedLogProbs, 5678);
+    double[] copy = unnormalizedLogProbs.clone();
+    double[] workspace = new double[theta.length + 3];
+    
+    RandomGenerator rnd = new MersenneTwister(1);
+    int[] counts = new int[theta.length];
+    for (int i = 0; i < numSamples; i++) {
+      ++counts[RandomGenerators.nextIntUnnormalizedLogProbs(rnd, unnormalizedLogProbs, workspace)];
+    }
+
+    assertThat(unnormalizedLogProbs).isEqualTo(copy);
+    assertThat(logBayesFactor(counts, theta)).isGreaterThanOrEqualTo(Math.log(100.0));
+  }
+
+  @Test
+  public void testNextIntUnnormalizedLogProbsNeverReturnsImpossibleEvents() {
+    double[] unnormalizedLogProbs = new double[]{ Double.NEGATIVE_INFINITY, -1.0, Double.NEGATIVE_INFINITY, 
+        -2.0, -3.0, Double.NEGATIVE_INFINITY };
+    RandomGenerator rnd = new MersenneTwister(2);
+    for (int i = 0; i < 10000; i++) {
+      int event = RandomGenerators.nextIntUnnormalizedLogProbs(rnd, unnormalizedLogProbs);
+      assertThat(unnormalizedLogProbs[event]).isGreaterThan(Double.NEGATIVE_INFINITY);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNextIntUnnormalizedLogProbsWithSmallWorkspace() {
+    RandomGenerators.nextIntUnnormalizedLogProbs(new MersenneTwister(), new double[]{ 0.0, 0.0, 0.0 }, new double[2]);
+  }
 }
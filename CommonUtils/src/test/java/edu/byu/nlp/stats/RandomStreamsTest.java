@@ -0,0 +1,95 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.fest.assertions.Delta;
+import org.junit.Test;
+
+public class RandomStreamsTest {
+
+  private static long[] draws(RandomGenerator rnd, int n) {
+    long[] draws = new long[n];
+    for (int i = 0; i < n; i++) {
+      draws[i] = rnd.nextLong();
+    }
+    return draws;
+  }
+
+  @Test
+  public void testStreamsAreReproducibleAndDistinct() {
+    RandomStreams streams = new RandomStreams(42);
+    assertThat(draws(streams.stream(3), 10)).isEqualTo(draws(new RandomStreams(42).stream(3), 10));
+    assertThat(draws(streams.stream(3), 10)).isNotEqualTo(draws(streams.stream(4), 10));
+    assertThat(draws(streams.stream(3), 10)).isNotEqualTo(draws(new RandomStreams(43).stream(3), 10));
+  }
+
+  @Test
+  public void testSeedingIsReproducible() {
+    assertThat(draws(new Xoroshiro128Generator(7), 10)).isEqualTo(draws(new Xoroshiro128Generator(7), 10));
+    Xoroshiro128Generator rnd = new Xoroshiro128Generator(1);
+    rnd.nextLong();
+    rnd.setSeed(7);
+    assertThat(draws(rnd, 10)).isEqualTo(draws(new Xoroshiro128Generator(7), 10));
+  }
+
+  @Test
+  public void testSplitAndJumpGiveNewSequences() {
+    Xoroshiro128Generator rnd = new Xoroshiro128Generator(1);
+    Xoroshiro128Generator split = rnd.split();
+    assertThat(draws(split, 10)).isNotEqualTo(draws(rnd, 10));
+
+    Xoroshiro128Generator jumped = new Xoroshiro128Generator(1);
+    jumped.jump();
+    assertThat(draws(jumped, 10)).isNotEqualTo(draws(new Xoroshiro128Generator(1), 10));
+  }
+
+  @Test
+  public void testUniformMoments() {
+    RandomGenerator rnd = new RandomStreams(5).stream(0);
+    int n = 200000;
+    double sum = 0, sumSq = 0;
+    int ones = 0;
+    for (int i = 0; i < n; i++) {
+      double u = rnd.nextDouble();
+      assertThat(u).isGreaterThanOrEqualTo(0.0).isLessThan(1.0);
+      sum += u;
+      sumSq += u * u;
+      ones += rnd.nextBoolean() ? 1 : 0;
+    }
+    assertThat(sum / n).isEqualTo(0.5, Delta.delta(0.005));
+    assertThat(sumSq / n - (sum / n) * (sum / n)).isEqualTo(1.0 / 12, Delta.delta(0.002));
+    assertThat((double) ones / n).isEqualTo(0.5, Delta.delta(0.005));
+  }
+
+  @Test
+  public void testParallelDirichletSamplesDoNotDependOnThreads() {
+    double[][] alphas = new double[300][];
+    for (int i = 0; i < alphas.length; i++) {
+      alphas[i] = new double[]{0.5, 1.0 + i % 3, 2.0};
+    }
+    double[][] serial = DirichletDistribution.sample(alphas, new MersenneTwister(1), 1);
+    double[][] parallel = DirichletDistribution.sample(alphas, new MersenneTwister(1), 4);
+    assertThat(parallel).isEqualTo(serial);
+    for (double[] theta : serial) {
+      assertThat(theta[0] + theta[1] + theta[2]).isEqualTo(1.0, Delta.delta(1e-12));
+    }
+  }
+
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.stats;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.fest.assertions.Delta;
+import org.junit.Test;
+
+public class SumTreeCategoricalDistributionTest {
+
+  private static int[] sampleCounts(SumTreeCategoricalDistribution dist, RandomGenerator rnd, int numDraws) {
+    int[] counts = new int[dist.getNumCategories()];
+    for (int d = 0; d < numDraws; d++) {
+      ++counts[dist.sample(rnd)];
+    }
+    return counts;
+  }
+
+  @Test
+  public void testUpdatesKeepTotalsExact() {
+    RandomGenerator rnd = new MersenneTwister(1);
+    int numCategories = 37; // not a power of two
+    double[] weights = new double[numCategories];
+    SumTreeCategoricalDistribution dist = new SumTreeCategoricalDistribution(numCategories);
+    assertThat(dist.getTotal()).isEqualTo(0.0);
+    for (int i = 0; i < 10000; i++) {
+      int k = rnd.nextInt(numCategories);
+      if (rnd.nextBoolean()) {
+        weights[k] = rnd.nextDouble() * 1e6;
+        dist.setWeight(k, weights[k]);
+      }
+      else {
+        double delta = -weights[k] * rnd.nextDouble();
+        weights[k] += delta;
+        dist.addToWeight(k, delta);
+      }
+    }
+    double total = 0;
+    for (int k = 0; k < numCategories; k++) {
+      assertThat(dist.getWeight(k)).isEqualTo(weights[k]);
+      total += weights[k];
+    }
+    assertThat(dist.getTotal()).isEqualTo(total, Delta.delta(1e-9 * total));
+    assertThat(dist.getWeights()).isEqualTo(weights);
+  }
+
+  @Test
+  public void testSampleFrequencies() {
+    SumTreeCategoricalDistribution dist = SumTreeCategoricalDistribution.fromWeights(
+        new double[]{1.0, 0.0, 3.0, 2.0, 0.0});
+    // change a few weights after building
+    dist.setWeight(0, 2.0);
+    dist.addToWeight(4, 1.0);
+    dist.addToWeight(2, -1.0);
+    double[] expected = {2.0, 0.0, 2.0, 2.0, 1.0};
+
+    int numDraws = 100000;
+    int[] counts = sampleCounts(dist, new MersenneTwister(2), numDraws);
+    for (int k = 0; k < expected.length; k++) {
+      assertThat(dist.probabilityOf(k)).isEqualTo(expected[k] / 7.0, Delta.delta(1e-12));
+      assertThat((double) counts[k] / numDraws).isEqualTo(expected[k] / 7.0, Delta.delta(0.01));
+    }
+    assertThat(counts[1]).isZero();
+  }
+
+  @Test
+  public void testSingleCategory() {
+    SumTreeCategoricalDistribution dist = SumTreeCategoricalDistribution.fromWeights(new double[]{0.5});
+    assertThat(dist.sample(new MersenneTwister(3))).isEqualTo(0);
+    assertThat(dist.logProbabilityOf(0)).isEqualTo(0.0);
+  }
+
+  @Test
+  public void testDistributionMethods() {
+    SumTreeCategoricalDistribution dist = SumTreeCategoricalDistribution.fromWeights(new double[]{1.0, 3.0});
+    assertThat(dist.argMax()).isEqualTo(1);
+    assertThat(dist.logMax()).isEqualTo(Math.log(0.75), Delta.delta(1e-12));
+    assertThat(dist.entropy()).isEqualTo(-0.25 * Math.log(0.25) - 0.75 * Math.log(0.75), Delta.delta(1e-12));
+    assertThat(dist.sampler().probabilityOf(1)).isEqualTo(0.75, Delta.delta(1e-12));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeWeight() {
+    new SumTreeCategoricalDistribution(3).setWeight(1, -1.0);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testSampleWithoutWeights() {
+    new SumTreeCategoricalDistribution(3).sample(new MersenneTwister());
+  }
+
+  @Test
+  public void testLogSpaceRenormalization() {
+    LogSumTreeCategoricalDistribution dist = LogSumTreeCategoricalDistribution.fromLogWeights(
+        new double[]{-1000.0, -1000.0 + Math.log(3), Double.NEGATIVE_INFINITY});
+    assertThat(dist.getLogTotal()).isEqualTo(-1000.0 + Math.log(4), Delta.delta(1e-9));
+    int renormalizations = dist.getNumRenormalizations();
+
+    // small changes don't renormalize
+    dist.setLogWeight(2, -1000.0 + Math.log(2));
+    dist.addToLogWeight(0, Math.log(2));
+    assertThat(dist.getNumRenormalizations()).isEqualTo(renormalizations);
+    assertThat(dist.logProbabilityOf(1)).isEqualTo(Math.log(3.0 / 7.0), Delta.delta(1e-9));
+
+    // shift every weight far above, then far below, the original scale
+    for (int k = 0; k < 3; k++) {
+      dist.addToLogWeight(k, 5000.0);
+    }
+    assertThat(dist.getLogTotal()).isEqualTo(4000.0 + Math.log(7), Delta.delta(1e-9));
+    for (int k = 0; k < 3; k++) {
+      dist.addToLogWeight(k, -10000.0);
+    }
+    assertThat(dist.getLogTotal()).isEqualTo(-6000.0 + Math.log(7), Delta.delta(1e-9));
+    assertThat(dist.getNumRenormalizations()).isGreaterThan(renormalizations);
+
+    double[] expected = {2.0 / 7, 3.0 / 7, 2.0 / 7};
+    RandomGenerator rnd = new MersenneTwister(4);
+    int numDraws = 100000;
+    int[] counts = new int[3];
+    for (int d = 0; d < numDraws; d++) {
+      ++counts[dist.sample(rnd)];
+    }
+    for (int k = 0; k < 3; k++) {
+      assertThat(Math.exp(dist.logProbabilityOf(k))).isEqualTo(expected[k], Delta.delta(1e-9));
+      assertThat((double) counts[k] / numDraws).isEqualTo(expected[k], Delta.delta(0.01));
+    }
+  }
+
+  @Test
+  public void testLogSpaceUnderflowingWeights() {
+    // relative to the first weight, the second underflows; once the first is removed, it must not
+    LogSumTreeCategoricalDistribution dist = LogSumTreeCategoricalDistribution.fromLogWeights(
+        new double[]{0.0, -800.0});
+    dist.setLogWeight(0, Double.NEGATIVE_INFINITY);
+    assertThat(dist.getLogTotal()).isEqualTo(-800.0, Delta.delta(1e-9));
+    assertThat(dist.sample(new MersenneTwister(5))).isEqualTo(1);
+  }
+
+}
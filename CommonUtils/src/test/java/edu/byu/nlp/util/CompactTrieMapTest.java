@@ -0,0 +1,175 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.util;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.fest.assertions.Assertions;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class CompactTrieMapTest {
+
+  private static CompactTrieMap<Integer> mockTrie(){
+    CompactTrieMap<Integer> trie = new CompactTrieMap<Integer>();
+    trie.put("a", 1);
+    trie.put("abc", 2);
+    trie.put("abcde", 3);
+    trie.put("abd", 4);
+    trie.put("b", null);
+    return trie;
+  }
+
+  /** The mock trie, both before and after freezing */
+  private static List<CompactTrieMap<Integer>> mutableAndFrozen(){
+    List<CompactTrieMap<Integer>> tries = Lists.newArrayList();
+    tries.add(mockTrie());
+    tries.add(mockTrie().freeze());
+    return tries;
+  }
+
+  @Test
+  public void testPutGet(){
+    for (CompactTrieMap<Integer> trie: mutableAndFrozen()){
+      Assertions.assertThat(trie.size()).isEqualTo(5);
+      Assertions.assertThat(trie.get("a")).isEqualTo(1);
+      Assertions.assertThat(trie.get("abc")).isEqualTo(2);
+      Assertions.assertThat(trie.get(new StringBuilder("abcde"))).isEqualTo(3);
+      Assertions.assertThat(trie.get("abd")).isEqualTo(4);
+      Assertions.assertThat(trie.get("ab")).isNull();
+      Assertions.assertThat(trie.get("abcdef")).isNull();
+      Assertions.assertThat(trie.containsKey("b")).isTrue();
+      Assertions.assertThat(trie.containsKey("ab")).isFalse();
+      Assertions.assertThat(trie.containsKey("")).isFalse();
+      Assertions.assertThat(trie.containsKey(7)).isFalse();
+    }
+  }
+
+  @Test
+  public void testReplace(){
+    CompactTrieMap<Integer> trie = mockTrie();
+    Assertions.assertThat(trie.put("abc", 7)).isEqualTo(2);
+    Assertions.assertThat(trie.get("abc")).isEqualTo(7);
+    Assertions.assertThat(trie.size()).isEqualTo(5);
+  }
+
+  @Test
+  public void testPrefixes(){
+    for (CompactTrieMap<Integer> trie: mutableAndFrozen()){
+      Assertions.assertThat(trie.containsKeyPrefix("ab")).isTrue();
+      Assertions.assertThat(trie.containsKeyPrefix("abcd")).isTrue();
+      Assertions.assertThat(trie.containsKeyPrefix("abe")).isFalse();
+      Assertions.assertThat(trie.containsUnambiguousKeyPrefix("abc")).isTrue(); // exact match
+      Assertions.assertThat(trie.containsUnambiguousKeyPrefix("abcd")).isTrue();
+      Assertions.assertThat(trie.containsUnambiguousKeyPrefix("ab")).isFalse();
+      Assertions.assertThat(trie.getEntryFromUnambiguousPrefix("abcd").getKey()).isEqualTo("abcde");
+      Assertions.assertThat(trie.getEntryFromUnambiguousPrefix("abcd").getValue()).isEqualTo(3);
+    }
+  }
+
+  @Test
+  public void testRemove(){
+    CompactTrieMap<Integer> trie = mockTrie();
+    Assertions.assertThat(trie.remove("abcde")).isEqualTo(3);
+    Assertions.assertThat(trie.remove("abcde")).isNull();
+    Assertions.assertThat(trie.remove("ab")).isNull();
+    Assertions.assertThat(trie.size()).isEqualTo(4);
+    // dangling nodes are erased
+    Assertions.assertThat(trie.containsKeyPrefix("abcd")).isFalse();
+    Assertions.assertThat(trie.containsKeyPrefix("abc")).isTrue();
+
+    Assertions.assertThat(trie.entrySet().remove(new SimpleEntry<CharSequence,Integer>("abd", 5))).isFalse();
+    Assertions.assertThat(trie.entrySet().remove(new SimpleEntry<CharSequence,Integer>("abd", 4))).isTrue();
+    Assertions.assertThat(trie.containsKeyPrefix("abd")).isFalse();
+
+    trie.freeze();
+    Assertions.assertThat(trie.keySet()).containsOnly("a", "abc", "b");
+  }
+
+  @Test(expected=UnsupportedOperationException.class)
+  public void testFrozenPut(){
+    mockTrie().freeze().put("z", 1);
+  }
+
+  @Test
+  public void testIterationOrder(){
+    CompactTrieMap<Integer> trie = mockTrie();
+    trie.put("", 0);
+    List<String> keys = Lists.newArrayList();
+    for (CharSequence key: trie.keySet()){
+      keys.add(key.toString());
+    }
+    Assertions.assertThat(keys).isEqualTo(Lists.newArrayList("", "a", "abc", "abcde", "abd", "b"));
+  }
+
+  @Test
+  public void testIteratorRemove(){
+    CompactTrieMap<Integer> trie = mockTrie();
+    Iterator<Entry<CharSequence, Integer>> itr = trie.entrySet().iterator();
+    while (itr.hasNext()){
+      Entry<CharSequence, Integer> e = itr.next();
+      if (e.getKey().length()>1){
+        itr.remove();
+      }
+    }
+    Assertions.assertThat(trie.keySet()).containsOnly("a", "b");
+    Assertions.assertThat(trie.containsKeyPrefix("ab")).isFalse();
+  }
+
+  @Test
+  public void testAgreesWithTreeMap(){
+    Random rnd = new Random(3);
+    Map<String,Integer> expected = new TreeMap<String,Integer>();
+    CompactTrieMap<Integer> trie = new CompactTrieMap<Integer>();
+    for (int i=0; i<5000; i++){
+      StringBuilder key = new StringBuilder();
+      int len = rnd.nextInt(6);
+      for (int c=0; c<len; c++){
+        key.append((char)('a'+rnd.nextInt(4)));
+      }
+      if (rnd.nextInt(4)==0){
+        Assertions.assertThat(trie.remove(key)).isEqualTo(expected.remove(key.toString()));
+      }
+      else{
+        Assertions.assertThat(trie.put(key, i)).isEqualTo(expected.put(key.toString(), i));
+      }
+    }
+    Assertions.assertThat(trie.size()).isEqualTo(expected.size());
+    Assertions.assertThat(Lists.newArrayList(trie.values())).isEqualTo(Lists.newArrayList(expected.values()));
+    trie.freeze();
+    for (Entry<String, Integer> e: expected.entrySet()){
+      Assertions.assertThat(trie.get(e.getKey())).isEqualTo(e.getValue());
+    }
+    Assertions.assertThat(Lists.newArrayList(trie.values())).isEqualTo(Lists.newArrayList(expected.values()));
+  }
+
+  @Test
+  public void testSet(){
+    CompactTrieSet set = CompactTrieSet.frozenCopyOf(Lists.newArrayList("JEFFERY", "HOTDOG", "JOSHUA", "JOSHUA", "YEMEN"));
+    Assertions.assertThat(set.size()).isEqualTo(4);
+    Assertions.assertThat(set.contains("JOSHUA")).isTrue();
+    Assertions.assertThat(set.containsPrefix("JO")).isTrue();
+    Assertions.assertThat(set.containsUnambiguousPrefix("J")).isFalse();
+    Assertions.assertThat(set.containsUnambiguousPrefix("JE")).isTrue();
+  }
+}
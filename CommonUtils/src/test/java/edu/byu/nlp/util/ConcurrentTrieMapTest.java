@@ -0,0 +1,181 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.util;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.fest.assertions.Assertions;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class ConcurrentTrieMapTest {
+
+  private static ConcurrentTrieMap<Integer> mockTrie(){
+    ConcurrentTrieMap<Integer> trie = new ConcurrentTrieMap<Integer>();
+    trie.put("a", 1);
+    trie.put("abc", 2);
+    trie.put("abcde", 3);
+    trie.put("abd", 4);
+    trie.put("b", null);
+    return trie;
+  }
+
+  private static List<String> keys(Iterable<Entry<CharSequence, Integer>> entries){
+    List<String> keys = Lists.newArrayList();
+    for (Entry<CharSequence, Integer> e: entries){
+      keys.add(e.getKey().toString());
+    }
+    return keys;
+  }
+
+  @Test
+  public void testPutGetRemove(){
+    ConcurrentTrieMap<Integer> trie = mockTrie();
+    Assertions.assertThat(trie.size()).isEqualTo(5);
+    Assertions.assertThat(trie.get(new StringBuilder("abcde"))).isEqualTo(3);
+    Assertions.assertThat(trie.get("ab")).isNull();
+    Assertions.assertThat(trie.containsKey("b")).isTrue();
+    Assertions.assertThat(trie.containsKey("ab")).isFalse();
+    Assertions.assertThat(trie.put("abc", 7)).isEqualTo(2);
+    Assertions.assertThat(trie.size()).isEqualTo(5);
+
+    Assertions.assertThat(trie.remove("abcde")).isEqualTo(3);
+    Assertions.assertThat(trie.remove("abcde")).isNull();
+    Assertions.assertThat(trie.remove("ab")).isNull();
+    Assertions.assertThat(trie.size()).isEqualTo(4);
+    // dangling nodes are erased
+    Assertions.assertThat(trie.containsKeyPrefix("abcd")).isFalse();
+    Assertions.assertThat(trie.countWithPrefix("abc")).isEqualTo(1);
+  }
+
+  @Test
+  public void testPrefixQueries(){
+    ConcurrentTrieMap<Integer> trie = mockTrie();
+    Assertions.assertThat(trie.countWithPrefix("")).isEqualTo(5);
+    Assertions.assertThat(trie.countWithPrefix("a")).isEqualTo(4);
+    Assertions.assertThat(trie.countWithPrefix("abc")).isEqualTo(2);
+    Assertions.assertThat(trie.countWithPrefix("abe")).isEqualTo(0);
+
+    Assertions.assertThat(keys(trie.prefixEntries("ab", 10))).isEqualTo(Lists.newArrayList("abc", "abcde", "abd"));
+    Assertions.assertThat(keys(trie.prefixEntries("ab", 2))).isEqualTo(Lists.newArrayList("abc", "abcde"));
+    Assertions.assertThat(keys(trie.prefixEntries("a", 1))).isEqualTo(Lists.newArrayList("a"));
+    Assertions.assertThat(keys(trie.prefixEntries("ab", 0))).isEmpty();
+    Assertions.assertThat(keys(trie.prefixEntries("z", 10))).isEmpty();
+
+    Assertions.assertThat(trie.longestPrefixOf("abcdz").toString()).isEqualTo("abc");
+    Assertions.assertThat(trie.longestPrefixOf("abcde").toString()).isEqualTo("abcde");
+    Assertions.assertThat(trie.longestPrefixOf("az").toString()).isEqualTo("a");
+    Assertions.assertThat(trie.longestPrefixOf("z")).isNull();
+    trie.put("", 0);
+    Assertions.assertThat(trie.longestPrefixOf("z").toString()).isEqualTo("");
+  }
+
+  @Test
+  public void testIterationIsSnapshot(){
+    ConcurrentTrieMap<Integer> trie = mockTrie();
+    Iterator<Entry<CharSequence, Integer>> itr = trie.entrySet().iterator();
+    List<String> keys = Lists.newArrayList();
+    while (itr.hasNext()){
+      Entry<CharSequence, Integer> e = itr.next();
+      keys.add(e.getKey().toString());
+      // concurrent modification does not disturb the running iterator
+      trie.put("aa", 9);
+      if (e.getKey().length()>1){
+        itr.remove();
+      }
+    }
+    Assertions.assertThat(keys).isEqualTo(Lists.newArrayList("a", "abc", "abcde", "abd", "b"));
+    Assertions.assertThat(trie.keySet()).containsOnly("a", "aa", "b");
+  }
+
+  @Test
+  public void testAgreesWithTreeMap(){
+    Random rnd = new Random(3);
+    TreeMap<String,Integer> expected = new TreeMap<String,Integer>();
+    ConcurrentTrieMap<Integer> trie = new ConcurrentTrieMap<Integer>();
+    for (int i=0; i<5000; i++){
+      StringBuilder key = new StringBuilder();
+      int len = rnd.nextInt(6);
+      for (int c=0; c<len; c++){
+        key.append((char)('a'+rnd.nextInt(4)));
+      }
+      if (rnd.nextInt(4)==0){
+        Assertions.assertThat(trie.remove(key)).isEqualTo(expected.remove(key.toString()));
+      }
+      else{
+        Assertions.assertThat(trie.put(key, i)).isEqualTo(expected.put(key.toString(), i));
+      }
+    }
+    Assertions.assertThat(trie.size()).isEqualTo(expected.size());
+    Assertions.assertThat(Lists.newArrayList(trie.values())).isEqualTo(Lists.newArrayList(expected.values()));
+    Assertions.assertThat(trie.countWithPrefix("ab")).isEqualTo(expected.subMap("ab", "ac").size());
+  }
+
+  @Test
+  public void testConcurrentReadersAndWriters() throws InterruptedException{
+    final ConcurrentTrieMap<Integer> trie = new ConcurrentTrieMap<Integer>();
+    final int numWriters = 4, keysPerWriter = 2000;
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    List<Thread> threads = Lists.newArrayList();
+    for (int w=0; w<numWriters; w++){
+      final int writer = w;
+      threads.add(new Thread(){
+        @Override
+        public void run() {
+          for (int i=0; i<keysPerWriter; i++){
+            trie.put(writer+"-"+i, i);
+          }
+        }
+      });
+    }
+    threads.add(new Thread(){
+      @Override
+      public void run() {
+        try{
+          for (int i=0; i<200; i++){
+            // every snapshot is internally consistent
+            int size = trie.size();
+            int iterated = Lists.newArrayList(trie.prefixEntries("", Integer.MAX_VALUE)).size();
+            Assertions.assertThat(iterated).isGreaterThanOrEqualTo(size);
+            Integer value = trie.get("0-0");
+            Assertions.assertThat(value==null || value==0).isTrue();
+          }
+        }
+        catch (Throwable t){
+          failure.set(t);
+        }
+      }
+    });
+    for (Thread t: threads){
+      t.start();
+    }
+    for (Thread t: threads){
+      t.join();
+    }
+    Assertions.assertThat(failure.get()).isNull();
+    Assertions.assertThat(trie.size()).isEqualTo(numWriters*keysPerWriter);
+    for (int w=0; w<numWriters; w++){
+      Assertions.assertThat(trie.countWithPrefix(w+"-")).isEqualTo(keysPerWriter);
+    }
+  }
+
+}
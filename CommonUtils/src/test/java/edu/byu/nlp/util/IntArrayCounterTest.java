@@ -71,4 +71,13 @@ public class IntArrayCounterTest {
   public void testArgmaxes() {
     Assertions.assertThat(c.argmax()).contains(2,0,-1,0,2);
   }
+
+  @Test
+  public void testExtraCategory() {
+    // one category beyond numCategories is counted, but not reported by values()
+    c.increment(3, 3);
+    Assertions.assertThat(c.argmax(3)).isEqualTo(3);
+    Assertions.assertThat(c.values(3)).isEqualTo(new int[]{0,0,0});
+    Assertions.assertThat(c.clone().argmax(3)).isEqualTo(3);
+  }
 }
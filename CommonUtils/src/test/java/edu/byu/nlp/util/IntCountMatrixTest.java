@@ -0,0 +1,94 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.util;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.fest.assertions.Assertions;
+import org.junit.Test;
+
+public class IntCountMatrixTest {
+
+  private static IntCountMatrix mockMatrix(boolean trackRowTotals){
+    IntCountMatrix m = new IntCountMatrix(3, 4, trackRowTotals);
+    m.increment(0, 1);
+    m.increment(0, 3, 5);
+    m.increment(2, 2, 2);
+    m.decrement(2, 2);
+    m.incrementEach(new int[]{0, 0});
+    m.set(1, 3, 4);
+    return m;
+  }
+
+  @Test
+  public void testCounts(){
+    for (boolean track: new boolean[]{true, false}){
+      IntCountMatrix m = mockMatrix(track);
+      Assertions.assertThat(m.tracksRowTotals()).isEqualTo(track);
+      Assertions.assertThat(m.toArrays()).isEqualTo(new int[][]{{1,1,0,5},{1,0,0,4},{0,0,1,0}});
+      Assertions.assertThat(m.rowTotal(0)).isEqualTo(7);
+      Assertions.assertThat(m.rowTotal(1)).isEqualTo(5);
+      Assertions.assertThat(m.rowTotal(2)).isEqualTo(1);
+      Assertions.assertThat(m.increment(0, 3)).isEqualTo(5); // returns the old count
+      Assertions.assertThat(m.row(0).total()).isEqualTo(8);
+    }
+  }
+
+  @Test
+  public void testArgmax(){
+    IntCountMatrix m = mockMatrix(true);
+    Assertions.assertThat(m.argmax(0)).isEqualTo(3);
+    Assertions.assertThat(m.argmax(2)).isEqualTo(2);
+    m.clear();
+    Assertions.assertThat(m.argmax(1)).isEqualTo(0); // first of the tied columns
+    Assertions.assertThat(m.rowTotal(1)).isEqualTo(0);
+
+    // random tie-breaking hits every tied column
+    m.increment(1, 1);
+    m.increment(1, 2);
+    boolean[] seen = new boolean[4];
+    MersenneTwister rnd = new MersenneTwister(1);
+    for (int i=0; i<100; i++){
+      seen[m.argmax(1, rnd)] = true;
+    }
+    Assertions.assertThat(seen).isEqualTo(new boolean[]{false, true, true, false});
+
+    // without a generator, ties go to the first maximum
+    Assertions.assertThat(m.argmax(1, null)).isEqualTo(1);
+  }
+
+  @Test
+  public void testCopies(){
+    IntCountMatrix m = mockMatrix(true);
+    int[] snapshot = m.snapshot();
+    IntCountMatrix copy = m.copy();
+    IntCountMatrix.Row row = m.row(1);
+    row.increment(0, 2);
+    Assertions.assertThat(m.get(1, 0)).isEqualTo(3);
+    Assertions.assertThat(m.rowTotal(1)).isEqualTo(7);
+    Assertions.assertThat(snapshot[4]).isEqualTo(1);
+    Assertions.assertThat(copy.get(1, 0)).isEqualTo(1);
+    Assertions.assertThat(copy.rowTotal(1)).isEqualTo(5);
+
+    copy.copyFrom(m);
+    Assertions.assertThat(copy.rowTotal(1)).isEqualTo(7);
+    Assertions.assertThat(copy.copyRow(1, new int[4])).isEqualTo(new int[]{3,0,0,4});
+  }
+
+  @Test(expected=IndexOutOfBoundsException.class)
+  public void testBounds(){
+    new IntCountMatrix(2, 2).increment(0, 2);
+  }
+}
@@ -0,0 +1,91 @@
+package edu.byu.nlp.util;
+
+import org.fest.assertions.Assertions;
+import org.fest.assertions.Fail;
+import org.junit.Test;
+
+import edu.byu.nlp.util.IntTableCounter.SparseTableVisitor;
+
+public class IntTableCounterTest {
+
+  private static IntTableCounter mockTable(){
+    IntTableCounter tc = IntTableCounter.create();
+    tc.incrementCount(1, 1, 0);
+    tc.incrementCount(1, 1, 0);
+    tc.incrementCount(1, 1, 0);
+    tc.incrementCount(1, 1, 7, 5);
+
+    tc.incrementCount(1, 2, 0);
+
+    tc.incrementCount(2, 1, 0);
+    tc.incrementCount(2, 2, 0);
+    tc.incrementCount(2, 3, 0);
+    return tc;
+  }
+
+  @Test
+  public void testCounterGetSetCounts(){
+    IntTableCounter table = mockTable();
+
+    Assertions.assertThat(table.getCount(1, 1, 0)).isEqualTo(3);
+    Assertions.assertThat(table.getCount(1, 1, 7)).isEqualTo(5);
+    Assertions.assertThat(table.getCount(2, 1, 0)).isEqualTo(1);
+    Assertions.assertThat(table.getCount(2, 2, 0)).isEqualTo(1);
+    Assertions.assertThat(table.getCount(2, 3, 0)).isEqualTo(1);
+
+    Assertions.assertThat(table.getCount(1, 65, 7)).isEqualTo(0);
+    Assertions.assertThat(table.getCount(1, 2, 7)).isEqualTo(0);
+    Assertions.assertThat(table.getCount(3, 2, 7)).isEqualTo(0);
+
+    Assertions.assertThat(table.totalCount()).isEqualTo(12);
+    Assertions.assertThat(table.numRowEntries(1)).isEqualTo(3);
+    Assertions.assertThat(table.numRowEntries(3)).isEqualTo(0);
+  }
+
+  @Test
+  public void testLargeIndices(){
+    IntTableCounter table = IntTableCounter.create();
+    table.incrementCount(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, 2);
+    table.incrementCount(0, Integer.MAX_VALUE, 0);
+    Assertions.assertThat(table.getCount(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE)).isEqualTo(2);
+    Assertions.assertThat(table.getCount(0, Integer.MAX_VALUE, 0)).isEqualTo(1);
+    Assertions.assertThat(table.getCount(0, 0, Integer.MAX_VALUE)).isEqualTo(0);
+  }
+
+  @Test
+  public void testVisitors(){
+    IntTableCounter table = mockTable();
+
+    final int[] visited = new int[1];
+    table.visitEntriesSparsely(new SparseTableVisitor() {
+      @Override
+      public void visitEntry(int row, int col, int item, int count) {
+        visited[0] += count;
+        if (row==1 && col==1 && item==0){
+          Assertions.assertThat(count).isEqualTo(3);
+        }
+        else if (row==1 && col==1 && item==7){
+          Assertions.assertThat(count).isEqualTo(5);
+        }
+        else if ((row==1 && col==2 && item==0) || (row==2 && item==0)){
+          Assertions.assertThat(count).isEqualTo(1);
+        }
+        else{
+          Fail.fail("entry shouldn't exist: ["+row+"]["+col+"]["+item+"]");
+        }
+      }
+    });
+    Assertions.assertThat(visited[0]).isEqualTo(12);
+
+    final int[] rowVisited = new int[1];
+    table.visitRowEntriesSparsely(2, new SparseTableVisitor() {
+      @Override
+      public void visitEntry(int row, int col, int item, int count) {
+        Assertions.assertThat(row).isEqualTo(2);
+        rowVisited[0] += count;
+      }
+    });
+    Assertions.assertThat(rowVisited[0]).isEqualTo(3);
+  }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.util;
+
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.fest.assertions.Assertions;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class ParallelTasksTest {
+
+  private static List<Callable<Integer>> squares(int num, final AtomicInteger numRun) {
+    List<Callable<Integer>> tasks = Lists.newArrayList();
+    for (int i = 0; i < num; i++) {
+      final int n = i;
+      tasks.add(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          numRun.incrementAndGet();
+          return n * n;
+        }
+      });
+    }
+    return tasks;
+  }
+
+  @Test
+  public void testResultsInTaskOrder() {
+    for (int numThreads : new int[]{1, 2, 7, 100}) {
+      AtomicInteger numRun = new AtomicInteger();
+      List<Integer> results = ParallelTasks.invokeAll(squares(50, numRun), numThreads);
+      Assertions.assertThat(numRun.get()).isEqualTo(50);
+      Assertions.assertThat(results).hasSize(50);
+      for (int i = 0; i < 50; i++) {
+        Assertions.assertThat(results.get(i)).isEqualTo(i * i);
+      }
+    }
+    Assertions.assertThat(ParallelTasks.invokeAll(squares(0, new AtomicInteger()), 4)).isEmpty();
+  }
+
+  @Test
+  public void testUncheckedExceptionsPropagate() {
+    List<Callable<Integer>> tasks = squares(20, new AtomicInteger());
+    tasks.set(5, new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        throw new ArithmeticException("task 5");
+      }
+    });
+    try {
+      ParallelTasks.invokeAll(tasks, 4);
+      fail("expected an ArithmeticException");
+    }
+    catch (ArithmeticException e) {
+      Assertions.assertThat(e.getMessage()).isEqualTo("task 5");
+    }
+  }
+
+  @Test
+  public void testCheckedExceptionsAreWrapped() {
+    List<Callable<Integer>> tasks = squares(3, new AtomicInteger());
+    tasks.set(1, new Callable<Integer>() {
+      @Override
+      public Integer call() throws IOException {
+        throw new IOException("task 1");
+      }
+    });
+    try {
+      ParallelTasks.invokeAll(tasks, 1);
+      fail("expected an IllegalStateException");
+    }
+    catch (IllegalStateException e) {
+      Assertions.assertThat(e.getCause()).isInstanceOf(IOException.class);
+    }
+  }
+
+}
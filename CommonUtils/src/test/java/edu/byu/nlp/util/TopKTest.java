@@ -0,0 +1,119 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.fest.assertions.Assertions;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.primitives.Ints;
+
+public class TopKTest {
+
+  @Test
+  public void testLargest(){
+    double[] arr = new double[]{1, 2, 4, 3, 4, 0};
+    Assertions.assertThat(TopK.largest(arr, 2, null)).isEqualTo(new int[]{2, 4});
+    Assertions.assertThat(TopK.largest(arr, 3, null)).isEqualTo(new int[]{2, 4, 3});
+    Assertions.assertThat(TopK.largest(arr, 10, null)).isEqualTo(new int[]{2, 4, 3, 1, 0, 5});
+    Assertions.assertThat(TopK.largest(arr, 0, null)).isEqualTo(new int[]{});
+    Assertions.assertThat(TopK.largest(new int[]{1, 2, 4, 3, 4, 0}, 3, null)).isEqualTo(new int[]{2, 4, 3});
+  }
+
+  /**
+   * The heap and quickselect paths must agree, including how random keys
+   * are drawn.
+   */
+  @Test
+  public void testHeapAgreesWithQuickselect(){
+    Random rnd = new Random(5);
+    double[] arr = new double[500];
+    for (int i=0; i<arr.length; i++){
+      arr[i] = rnd.nextInt(20); // plenty of ties
+    }
+    for (int k: new int[]{1, 10, 50, 62, 63, 100, 499, 500}){
+      int[] actual = TopK.largest(arr, k, new MersenneTwister(k));
+      Assertions.assertThat(actual.length).isEqualTo(k);
+      // values are non-increasing and are the k largest
+      double[] sorted = arr.clone();
+      Arrays.sort(sorted);
+      for (int i=0; i<k; i++){
+        Assertions.assertThat(arr[actual[i]]).isEqualTo(sorted[arr.length-1-i]);
+      }
+      Assertions.assertThat(Ints.asList(actual)).doesNotHaveDuplicates();
+
+      // the same seed gives the same answer regardless of path
+      TopK.DoubleHeap heap = new TopK.DoubleHeap(k, new MersenneTwister(k));
+      for (int i=0; i<arr.length; i++){
+        heap.offer(i, arr[i]);
+      }
+      Assertions.assertThat(heap.drain()).isEqualTo(actual);
+    }
+  }
+
+  @Test
+  public void testRandomTieBreaking(){
+    double[] arr = new double[]{5, 5, 5, 5, 1};
+    MersenneTwister rnd = new MersenneTwister(1);
+    int[] hits = new int[arr.length];
+    for (int i=0; i<4000; i++){
+      ++hits[TopK.largest(arr, 1, rnd)[0]];
+    }
+    Assertions.assertThat(hits[4]).isEqualTo(0);
+    for (int i=0; i<4; i++){
+      Assertions.assertThat(hits[i]).isGreaterThan(850).isLessThan(1150);
+    }
+  }
+
+  @Test
+  public void testSelectLargest(){
+    double[] arr = new double[]{9, 1, 8, 2, 7, 3, 6};
+    int[] indices = new int[]{0, 1, 2, 3, 4, 5, 6};
+    TopK.selectLargest(arr, indices, 3);
+    Assertions.assertThat(Ints.asList(Arrays.copyOf(indices, 3))).containsOnly(0, 2, 4);
+  }
+
+  @Test
+  public void testDoubleHeapReuse(){
+    TopK.DoubleHeap heap = new TopK.DoubleHeap(2, null);
+    heap.offer(0, 1.0);
+    heap.offer(1, 3.0);
+    Assertions.assertThat(heap.offer(2, 0.5)).isFalse();
+    Assertions.assertThat(heap.minValue()).isEqualTo(1.0);
+    heap.clear();
+    heap.offer(7, -1.0);
+    Assertions.assertThat(heap.drain()).isEqualTo(new int[]{7});
+    Assertions.assertThat(heap.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testObjectHeap(){
+    TopK.ObjectHeap<String, Integer> heap = new TopK.ObjectHeap<String, Integer>(2, Ordering.<String>natural(), null);
+    heap.offer("b", 1);
+    heap.offer("d", 2);
+    heap.offer("a", 3);
+    heap.offer("d", 4);
+    heap.offer("d", 6); // ties go to the earlier "d"s
+    heap.offer("c", 5);
+    Assertions.assertThat(heap.values()).isEqualTo(Lists.newArrayList("d", "d"));
+    Assertions.assertThat(heap.items()).isEqualTo(Lists.newArrayList(2, 4));
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.util;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the memory footprint and lookup speed of {@link TrieMap} and
+ * {@link CompactTrieMap} (mutable and frozen). Not a unit test; run by hand:
+ *
+ *   java edu.byu.nlp.util.TrieMapBenchmark [numKeys]
+ */
+public class TrieMapBenchmark {
+
+  private static final int NUM_LOOKUP_ROUNDS = 5;
+
+  public static void main(String[] args) {
+    int numKeys = (args.length > 0) ? Integer.parseInt(args[0]) : 300000;
+    String[] keys = randomKeys(numKeys, new Random(1));
+
+    report("TrieMap", new TrieMap<Integer>(), keys, false);
+    report("CompactTrieMap", new CompactTrieMap<Integer>(), keys, false);
+    report("CompactTrieMap (frozen)", new CompactTrieMap<Integer>(), keys, true);
+  }
+
+  private static void report(String name, Map<CharSequence, Integer> map, String[] keys, boolean freeze) {
+    long before = usedMemory();
+    for (int i = 0; i < keys.length; i++) {
+      map.put(keys[i], keys[i].length());
+    }
+    if (freeze) {
+      ((CompactTrieMap<Integer>) map).freeze();
+    }
+    long bytes = usedMemory() - before;
+
+    long checksum = 0;
+    long bestNanos = Long.MAX_VALUE;
+    for (int round = 0; round < NUM_LOOKUP_ROUNDS; round++) {
+      Timers.Stoppable timer = Timers.start();
+      for (String key: keys) {
+        checksum += map.get(key);
+      }
+      bestNanos = Math.min(bestNanos, timer.stop().getDurationNanos());
+    }
+    System.out.printf("%-25s %8.1f MB  %6.1f ns/lookup  (checksum %d)%n",
+        name, bytes / (1024.0 * 1024.0), bestNanos / (double) keys.length, checksum);
+  }
+
+  /**
+   * Dictionary-like keys: lower-case words with a skewed length distribution,
+   * so that prefixes are shared but most nodes have a single child.
+   */
+  private static String[] randomKeys(int numKeys, Random rnd) {
+    String[] keys = new String[numKeys];
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < numKeys; i++) {
+      sb.setLength(0);
+      int len = 3 + rnd.nextInt(6) + rnd.nextInt(6);
+      for (int c = 0; c < len; c++) {
+        sb.append((char) ('a' + Math.min(25, (int) (-Math.log(rnd.nextDouble()) * 6))));
+      }
+      keys[i] = sb.toString();
+    }
+    return keys;
+  }
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.data.annotators;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import edu.byu.nlp.dataset.AnnotationStore;
+import edu.byu.nlp.stats.AliasSampler;
+import edu.byu.nlp.stats.RandomStreams;
+import edu.byu.nlp.util.ParallelTasks;
+
+/**
+ * Generates synthetic label annotations from a set of
+ * {@link SimulatedAnnotator}s in bulk.
+ *
+ * Each annotation of an instance is made by an annotator drawn according
+ * to the annotators' annotation rates, and its label is drawn from that
+ * annotator's confusion matrix row for the instance's true label. Both
+ * draws use {@link AliasSampler}s (built once, in the constructor), so
+ * each costs O(1). Annotations are generated in fixed-size chunks, each
+ * with its own stream (see {@link RandomStreams}) derived from (seed,
+ * chunk), so chunks can be generated in parallel.
+ */
+public class SimulatedAnnotationGenerator {
+
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	private final int numAnnotators;
+	private final int numClasses;
+	private final int numThreads;
+	// annotators, by annotation rate
+	private final AliasSampler annotatorSampler;
+	// labels, by confusion matrix row (annotator*numClasses + trueLabel)
+	private final AliasSampler[] labelSamplers;
+
+	public SimulatedAnnotationGenerator(List<SimulatedAnnotator> annotators, int numThreads) {
+		Preconditions.checkNotNull(annotators);
+		Preconditions.checkArgument(!annotators.isEmpty(), "there must be at least one annotator");
+		Preconditions.checkArgument(numThreads > 0, "numThreads must be positive");
+		this.numAnnotators = annotators.size();
+		this.numClasses = annotators.get(0).getConfusionMatrix().length;
+		this.numThreads = numThreads;
+
+		this.annotatorSampler = new AliasSampler(SimulatedAnnotators.annotationRatesOf(annotators));
+		this.labelSamplers = new AliasSampler[numAnnotators * numClasses];
+		for (int j = 0; j < numAnnotators; j++) {
+			double[][] confusions = annotators.get(j).getConfusionMatrix();
+			Preconditions.checkArgument(confusions.length == numClasses, "annotator " + j + " has the wrong number of classes");
+			for (int k = 0; k < numClasses; k++) {
+				Preconditions.checkArgument(confusions[k].length == numClasses,
+						"annotator " + j + " has the wrong number of classes");
+				labelSamplers[j * numClasses + k] = new AliasSampler(confusions[k]);
+			}
+		}
+	}
+
+	public int getNumAnnotators() {
+		return numAnnotators;
+	}
+
+	public int getNumClasses() {
+		return numClasses;
+	}
+
+	/**
+	 * Generated annotations as parallel arrays; annotations of instance i
+	 * are at [i*annotationsPerInstance, (i+1)*annotationsPerInstance).
+	 */
+	public static class Annotations {
+		private final int[] instances;
+		private final int[] annotators;
+		private final int[] labels;
+
+		private Annotations(int size) {
+			this.instances = new int[size];
+			this.annotators = new int[size];
+			this.labels = new int[size];
+		}
+
+		public int size() {
+			return instances.length;
+		}
+
+		public int instanceAt(int index) {
+			return instances[index];
+		}
+
+		public int annotatorAt(int index) {
+			return annotators[index];
+		}
+
+		public int labelAt(int index) {
+			return labels[index];
+		}
+
+		/**
+		 * Adds these annotations to the given builder.
+		 */
+		public AnnotationStore.Builder addTo(AnnotationStore.Builder builder) {
+			return builder.addAll(instances, annotators, labels, 0, size());
+		}
+	}
+
+	/**
+	 * Generates annotationsPerInstance annotations for each instance, where
+	 * instance i's true label is trueLabels[i].
+	 */
+	public Annotations generate(final int[] trueLabels, final int annotationsPerInstance, final long seed) {
+		Preconditions.checkNotNull(trueLabels);
+		Preconditions.checkArgument(annotationsPerInstance >= 0, "annotationsPerInstance must be non-negative");
+		for (int label : trueLabels) {
+			Preconditions.checkElementIndex(label, numClasses, "true label");
+		}
+		long size = (long) trueLabels.length * annotationsPerInstance;
+		Preconditions.checkArgument(size <= Integer.MAX_VALUE, "too many annotations: " + size);
+		final Annotations result = new Annotations((int) size);
+
+		final RandomStreams streams = new RandomStreams(seed);
+		int numChunks = (result.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		List<Callable<Void>> tasks = Lists.newArrayList();
+		for (int c = 0; c < numChunks; c++) {
+			final int chunk = c;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					int from = chunk * CHUNK_SIZE, to = Math.min(result.size(), from + CHUNK_SIZE);
+					generate(trueLabels, annotationsPerInstance, streams.stream(chunk), result, from, to);
+					return null;
+				}
+			});
+		}
+		ParallelTasks.invokeAll(tasks, numThreads);
+		return result;
+	}
+
+	/**
+	 * Generates annotations (see {@link #generate(int[], int, long)}) as a
+	 * store over instances 0..trueLabels.length-1.
+	 */
+	public AnnotationStore generateStore(int[] trueLabels, int annotationsPerInstance, long seed) {
+		AnnotationStore.Builder builder = AnnotationStore.builder(numAnnotators, numClasses);
+		if (trueLabels.length > 0) {
+			builder.addInstance(trueLabels.length - 1, null);
+		}
+		return generate(trueLabels, annotationsPerInstance, seed).addTo(builder).build();
+	}
+
+	private void generate(int[] trueLabels, int annotationsPerInstance, RandomGenerator rnd, Annotations dest,
+			int from, int to) {
+		for (int i = from; i < to; i++) {
+			int instance = i / annotationsPerInstance;
+			int annotator = annotatorSampler.sample(rnd);
+			dest.instances[i] = instance;
+			dest.annotators[i] = annotator;
+			dest.labels[i] = labelSamplers[annotator * numClasses + trueLabels[instance]].sample(rnd);
+		}
+	}
+
+}
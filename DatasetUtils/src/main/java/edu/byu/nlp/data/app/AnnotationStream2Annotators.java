@@ -16,17 +16,11 @@
 package edu.byu.nlp.data.app;
 
 import java.io.IOException;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import org.apache.commons.math3.ml.clustering.CentroidCluster;
-import org.apache.commons.math3.ml.clustering.Clusterable;
-import org.apache.commons.math3.ml.clustering.KMeansPlusPlusClusterer;
-import org.apache.commons.math3.ml.distance.EuclideanDistance;
 import org.apache.commons.math3.random.MersenneTwister;
-import org.apache.commons.math3.random.RandomAdaptor;
 import org.apache.commons.math3.random.RandomGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -83,6 +77,12 @@ public class AnnotationStream2Annotators {
   @Option(help = "how many iterations should clustering algorithms do?")
   private static int maxIterations = 10000;
 
+  @Option(help = "kmeans uses mini-batches of this many annotators when there are more annotators than this")
+  private static int miniBatchSize = AnnotatorClusterer.DEFAULT_MINI_BATCH_SIZE;
+
+  @Option(help = "number of threads used by clustering")
+  private static int numThreads = Runtime.getRuntime().availableProcessors();
+
   @Option(help = "some choices (kmeans initialization; tie-breaking in majority vote) are stochastic. Seed the RNG.")
   private static long seed = System.currentTimeMillis();
   
@@ -118,7 +118,7 @@ public class AnnotationStream2Annotators {
     
     // aggregate annotators based on their confusion matrices
     double[][][] annotatorParameters = confusionMatrices2AnnotatorParameters(confusionMatrices);
-    int[] clusterAssignments = clusterAnnotatorParameters(annotatorParameters, aggregate, k, maxIterations, smooth, rnd);
+    int[] clusterAssignments = clusterAnnotatorParameters(annotatorParameters, aggregate, k, maxIterations, miniBatchSize, numThreads, rnd);
     double[][][] clusteredAnnotatorParameters = aggregateAnnotatorParameterClusters(annotatorParameters, clusterAssignments);
 
     // aggregate annotator rates
@@ -148,7 +148,15 @@ public class AnnotationStream2Annotators {
   /////////////////////////////
 
   public static double[][][] confusionMatrices2AnnotatorParameters(int[][][] confusionMatrices) {
+    return confusionMatrices2AnnotatorParameters(confusionMatrices, smooth);
+  }
+
+  /**
+   * Row-normalized confusion matrices, after adding smooth to every count.
+   */
+  public static double[][][] confusionMatrices2AnnotatorParameters(int[][][] confusionMatrices, double smooth) {
     Preconditions.checkNotNull(confusionMatrices);
+    Preconditions.checkArgument(smooth>=0,"invalid smoothing value="+smooth);
     Preconditions.checkArgument(confusionMatrices.length>0);
     int numAnnotators = confusionMatrices.length;
     
@@ -165,65 +173,39 @@ public class AnnotationStream2Annotators {
     return annotatorParameters;
   }
 
+  /**
+   * @deprecated clustering never used smooth (annotator parameters are 
+   * smoothed by {@link #confusionMatrices2AnnotatorParameters(int[][][], double)}); 
+   * use {@link #clusterAnnotatorParameters(double[][][], ClusteringMethod, int, int, RandomGenerator)}
+   */
+  @Deprecated
   public static int[] clusterAnnotatorParameters(double[][][] annotatorParameters, ClusteringMethod clusteringMethod, int k, int maxIterations, double smooth, RandomGenerator rnd) {
+    return clusterAnnotatorParameters(annotatorParameters, clusteringMethod, k, maxIterations, rnd);
+  }
+
+  /**
+   * Assigns each annotator to a cluster, using mini-batches of the default 
+   * size and all available processors.
+   */
+  public static int[] clusterAnnotatorParameters(double[][][] annotatorParameters, ClusteringMethod clusteringMethod, int k, int maxIterations, RandomGenerator rnd) {
+    return clusterAnnotatorParameters(annotatorParameters, clusteringMethod, k, maxIterations, 
+        AnnotatorClusterer.DEFAULT_MINI_BATCH_SIZE, Runtime.getRuntime().availableProcessors(), rnd);
+  }
+
+  /**
+   * Assigns each annotator to a cluster (see {@link AnnotatorClusterer}). 
+   * Results for a given seed do not depend on numThreads.
+   */
+  public static int[] clusterAnnotatorParameters(double[][][] annotatorParameters, ClusteringMethod clusteringMethod, int k, int maxIterations, 
+      int miniBatchSize, int numThreads, RandomGenerator rnd) {
     Preconditions.checkNotNull(annotatorParameters);
     Preconditions.checkArgument(annotatorParameters.length>0);
-    int numAnnotators = annotatorParameters.length;
-    
-    // put each annotator in a singleton cluster
-    List<Annotator> annotators = Lists.newArrayList();
-    for (int i=0; i<numAnnotators; i++){
-    	annotators.add(new Annotator(annotatorParameters[i], i, i));
-    }
-    
-    // precompute potenially useful quantities
-    double uniformClusterSize = (double)numAnnotators / k;  
-    
-    // transformed confusion matrices
-    switch(clusteringMethod){
-    case NONE:
-      break;
-    case RANDOM:
-      // shuffle, then assign in equal blocks 
-      Collections.shuffle(annotators, new RandomAdaptor(rnd));
-      for (int c=0; c<k; c++){
-        int start = (int)Math.floor(c*uniformClusterSize);
-        int end = (int)Math.floor(c*uniformClusterSize+uniformClusterSize);
-        for (int a=start; a<end; a++){
-        	annotators.get(a).clusterAssignment = c;
-        }
-      }
-      break;
-    case ACCURACY:
-      logger.debug("sorting annotators by accuracy");
-      Collections.sort(annotators); // re-order annotators so that more accurate ones appear first
+    if (clusteringMethod==ClusteringMethod.ACCURACY && logger.isDebugEnabled()){
       for (int i=0; i<annotatorParameters.length; i++){
         logger.debug("annotator #"+i+" accuracy="+accuracyOf(annotatorParameters[i]));
       }
-      // now divide annotators into equal chunks--like accuracies will cluster together
-      for (int c=0; c<k; c++){
-	    int start = (int)Math.floor(c*uniformClusterSize);
-	    int end = (int)Math.floor(c*uniformClusterSize+uniformClusterSize);
-	    for (int a=start; a<end; a++){
-	      annotators.get(a).clusterAssignment = c;
-	    }
-	  }
-      break;
-    case KMEANS:
-      assignKMeansClusters(annotators, k, maxIterations, rnd);
-      break;
-    default:
-      throw new IllegalArgumentException("unknown aggregation method="+clusteringMethod);
     }
-    
-    // return the mapping vector
-    int[] clusterAssignments = new int[numAnnotators];
-    for (int a=0; a<numAnnotators; a++){
-    	Annotator annotator = annotators.get(a);
-    	clusterAssignments[annotator.index] = annotator.clusterAssignment;
-    }
-    
-    return clusterAssignments;
+    return new AnnotatorClusterer(annotatorParameters, numThreads).cluster(clusteringMethod, k, maxIterations, miniBatchSize, rnd);
   }
 
   
@@ -253,49 +235,6 @@ public class AnnotationStream2Annotators {
   }
   
   
-  /**
-   * This returns a set of clustered annotator parameters. Averaging them yields the centroid of the cluster.
-   * Note that Annotator.clusterAssignment properties are change IN PLACE.  
-   */
-  private static void assignKMeansClusters(List<Annotator> annotators, int k, int maxIterations, RandomGenerator rnd) {
-    Preconditions.checkNotNull(annotators);
-    Preconditions.checkArgument(annotators.size()>0);
-    KMeansPlusPlusClusterer<Annotator> clusterer =  new KMeansPlusPlusClusterer<>(k, maxIterations, new EuclideanDistance(), rnd);
-    List<CentroidCluster<Annotator>> clusterCentroids = clusterer.cluster(annotators);
-    
-    for (int c=0; c<clusterCentroids.size(); c++){
-      for (Annotator annotator: clusterCentroids.get(c).getPoints()){
-        // note: we don't return the centroid point here because averaging the points in the cluster 
-        // yields precisely the centroid point.
-        // stick this annotator in this location in the confusions
-    	annotator.clusterAssignment = c;
-      }
-    }
-    
-  }
-  
-
-  private static class Annotator implements Clusterable, Comparable<Annotator>{
-    final protected double[] flatParameter;
-    final protected double accuracy;
-    final protected int index;
-    protected int clusterAssignment;
-    public Annotator(double[][] parameter, int index, int clusterAssignment){
-      this.index=index;
-      this.accuracy = accuracyOf(parameter);
-      this.flatParameter=Matrices.flatten(parameter);
-      this.clusterAssignment=clusterAssignment;
-    }
-    @Override
-    public double[] getPoint() {
-      return flatParameter;
-    }
-	@Override
-	public int compareTo(Annotator o) {
-        return Double.compare(o.accuracy, this.accuracy); // high-to-low
-	}
-  }
-  
   /**
    * average diagonal value
    */
@@ -0,0 +1,520 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.data.app;
+
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.math3.random.RandomAdaptor;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import edu.byu.nlp.data.app.AnnotationStream2Annotators.ClusteringMethod;
+import edu.byu.nlp.util.ParallelTasks;
+
+/**
+ * Clusters annotators by their (flattened) confusion matrices, stored
+ * row-major in a single double[] (point i occupies
+ * points[i*dimension..(i+1)*dimension)).
+ *
+ * K-means is initialized with k-means|| (a few rounds of oversampled
+ * D^2 sampling, reduced to k centers by weighted k-means++) and then run
+ * either as full-batch Lloyd iterations or, when there are more points
+ * than the mini-batch size, as mini-batch k-means. Assignment steps are
+ * split into fixed-size chunks that are processed in parallel (see
+ * {@link ParallelTasks}); partial sums are combined in chunk order and all
+ * random draws are made by the calling thread.
+ *
+ * Returned cluster ids are contiguous (0..numClusters-1).
+ */
+public class AnnotatorClusterer {
+
+  public static final int DEFAULT_MINI_BATCH_SIZE = 1024;
+  private static final int CHUNK_SIZE = 512;
+  private static final int NUM_INIT_ROUNDS = 5;
+  private static final double CONVERGENCE_TOLERANCE = 1e-12;
+
+  private final double[] points;
+  private final int numPoints;
+  private final int dimension;
+  private final int numClasses;
+  private final int numThreads;
+
+  /**
+   * @param annotatorParameters annotatorParameters[annotator][true label][annotation]
+   */
+  public AnnotatorClusterer(double[][][] annotatorParameters, int numThreads) {
+    Preconditions.checkNotNull(annotatorParameters);
+    Preconditions.checkArgument(annotatorParameters.length > 0, "there must be at least one annotator");
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be positive");
+    this.numPoints = annotatorParameters.length;
+    this.numClasses = annotatorParameters[0].length;
+    this.dimension = numClasses * annotatorParameters[0][0].length;
+    this.numThreads = numThreads;
+    this.points = new double[numPoints * dimension];
+    for (int i = 0; i < numPoints; i++) {
+      for (int r = 0; r < numClasses; r++) {
+        double[] row = annotatorParameters[i][r];
+        System.arraycopy(row, 0, points, i * dimension + r * row.length, row.length);
+      }
+    }
+  }
+
+  public int getNumPoints() {
+    return numPoints;
+  }
+
+  public int getDimension() {
+    return dimension;
+  }
+
+  public int[] cluster(ClusteringMethod method, int k, int maxIterations, int miniBatchSize, RandomGenerator rnd) {
+    Preconditions.checkArgument(k > 0, "invalid number of clusters=" + k);
+    switch (method) {
+    case NONE:
+      int[] singletons = new int[numPoints];
+      for (int i = 0; i < numPoints; i++) {
+        singletons[i] = i;
+      }
+      return singletons;
+    case RANDOM:
+      return random(k, rnd);
+    case ACCURACY:
+      return byAccuracy(k);
+    case KMEANS:
+      return kmeans(k, maxIterations, miniBatchSize, rnd);
+    default:
+      throw new IllegalArgumentException("unknown aggregation method=" + method);
+    }
+  }
+
+  /**
+   * Shuffles the annotators, then assigns them in equal blocks
+   */
+  public int[] random(int k, RandomGenerator rnd) {
+    List<Integer> order = Lists.newArrayListWithCapacity(numPoints);
+    for (int i = 0; i < numPoints; i++) {
+      order.add(i);
+    }
+    Collections.shuffle(order, new RandomAdaptor(rnd));
+    int[] sorted = new int[numPoints];
+    for (int i = 0; i < numPoints; i++) {
+      sorted[i] = order.get(i);
+    }
+    return inEqualBlocks(sorted, k);
+  }
+
+  /**
+   * Sorts annotators by accuracy (high-to-low), then assigns them in equal
+   * blocks so that like accuracies cluster together
+   */
+  public int[] byAccuracy(int k) {
+    final double[] accuracies = new double[numPoints];
+    int[] sorted = new int[numPoints];
+    for (int i = 0; i < numPoints; i++) {
+      accuracies[i] = accuracyOf(i);
+      sorted[i] = i;
+    }
+    IntArrays.mergeSort(sorted, new AbstractIntComparator() {
+      @Override
+      public int compare(int a, int b) {
+        return Double.compare(accuracies[b], accuracies[a]);
+      }
+    });
+    return inEqualBlocks(sorted, k);
+  }
+
+  /**
+   * average diagonal value of point i's confusion matrix
+   */
+  private double accuracyOf(int i) {
+    int numCols = dimension / numClasses;
+    double trace = 0;
+    for (int r = 0; r < numClasses; r++) {
+      trace += points[i * dimension + r * numCols + r];
+    }
+    return trace / numClasses;
+  }
+
+  private int[] inEqualBlocks(int[] sorted, int k) {
+    double uniformClusterSize = (double) numPoints / k;
+    int[] assignments = new int[numPoints];
+    for (int c = 0; c < k; c++) {
+      int start = (int) Math.floor(c * uniformClusterSize);
+      int end = (int) Math.floor(c * uniformClusterSize + uniformClusterSize);
+      for (int a = start; a < end; a++) {
+        assignments[sorted[a]] = c;
+      }
+    }
+    return compact(assignments, k);
+  }
+
+  /**
+   * K-means with k-means|| initialization. If there are more points than
+   * miniBatchSize, runs maxIterations mini-batch updates (stopping early
+   * if the centers stop moving); otherwise runs up to maxIterations Lloyd
+   * iterations (stopping when no assignment changes). Either way, points are
+   * assigned to their nearest final center.
+   */
+  public int[] kmeans(int k, int maxIterations, int miniBatchSize, RandomGenerator rnd) {
+    Preconditions.checkArgument(k > 0, "invalid number of clusters=" + k);
+    Preconditions.checkArgument(maxIterations > 0, "maxIterations must be positive");
+    Preconditions.checkArgument(miniBatchSize > 0, "miniBatchSize must be positive");
+    k = Math.min(k, numPoints);
+    int[] assignments = new int[numPoints];
+    double[] distances = new double[numPoints];
+    double[] centers = initialize(k, rnd);
+    if (numPoints > miniBatchSize) {
+      miniBatch(centers, maxIterations, miniBatchSize, rnd);
+      assign(centers, assignments, distances);
+    }
+    else {
+      lloyd(centers, assignments, distances, maxIterations);
+    }
+    return compact(assignments, k);
+  }
+
+  /**
+   * k-means||: oversample candidate centers in a few rounds of D^2
+   * sampling, weight each by the number of points nearest to it, and reduce
+   * them to k centers with weighted k-means++.
+   */
+  private double[] initialize(int k, RandomGenerator rnd) {
+    final double[] minDistances = new double[numPoints];
+    final int[] nearest = new int[numPoints];
+    Arrays.fill(minDistances, Double.POSITIVE_INFINITY);
+    final IntArrayList candidates = new IntArrayList();
+    candidates.add(rnd.nextInt(numPoints));
+    updateNearestCandidates(candidates, 0, minDistances, nearest);
+
+    double oversampling = 2.0 * k;
+    for (int round = 0; round < NUM_INIT_ROUNDS; round++) {
+      double cost = 0;
+      for (int i = 0; i < numPoints; i++) {
+        cost += minDistances[i];
+      }
+      if (cost == 0) {
+        break;
+      }
+      int firstNew = candidates.size();
+      for (int i = 0; i < numPoints; i++) {
+        if (rnd.nextDouble() < oversampling * minDistances[i] / cost) {
+          candidates.add(i);
+        }
+      }
+      updateNearestCandidates(candidates, firstNew, minDistances, nearest);
+    }
+
+    double[] weights = new double[candidates.size()];
+    for (int i = 0; i < numPoints; i++) {
+      ++weights[nearest[i]];
+    }
+
+    // weighted k-means++ over the candidates
+    int numCandidates = candidates.size();
+    double[] candidateDistances = new double[numCandidates];
+    Arrays.fill(candidateDistances, Double.POSITIVE_INFINITY);
+    double[] centers = new double[k * dimension];
+    int numCenters = 0;
+    int chosen = sample(weights, rnd);
+    while (true) {
+      System.arraycopy(points, candidates.getInt(chosen) * dimension, centers, numCenters * dimension, dimension);
+      ++numCenters;
+      if (numCenters == k) {
+        break;
+      }
+      double[] scores = new double[numCandidates];
+      double total = 0;
+      for (int c = 0; c < numCandidates; c++) {
+        candidateDistances[c] = Math.min(candidateDistances[c],
+            distance(points, candidates.getInt(c), centers, numCenters - 1));
+        scores[c] = weights[c] * candidateDistances[c];
+        total += scores[c];
+      }
+      if (total == 0) {
+        break; // fewer than k distinct candidates
+      }
+      chosen = sample(scores, rnd);
+    }
+    return Arrays.copyOf(centers, numCenters * dimension);
+  }
+
+  private void updateNearestCandidates(final IntArrayList candidates, final int firstNew,
+      final double[] minDistances, final int[] nearest) {
+    runInChunks(numPoints, new ChunkWriter() {
+      @Override
+      public void run(int from, int to) {
+        for (int i = from; i < to; i++) {
+          for (int c = firstNew; c < candidates.size(); c++) {
+            double d = distance(points, i, points, candidates.getInt(c));
+            if (d < minDistances[i]) {
+              minDistances[i] = d;
+              nearest[i] = c;
+            }
+          }
+        }
+      }
+    });
+  }
+
+  private void lloyd(double[] centers, int[] assignments, double[] distances, int maxIterations) {
+    int numCenters = centers.length / dimension;
+    Arrays.fill(assignments, -1);
+    boolean converged = false;
+    for (int iteration = 0; iteration < maxIterations; iteration++) {
+      if (assign(centers, assignments, distances) == 0) {
+        converged = true;
+        break;
+      }
+      // recompute centers from per-chunk partial sums, combined in chunk order
+      final int[] finalAssignments = assignments;
+      final int partialLength = numCenters * (dimension + 1);
+      List<double[]> partials = computeInChunks(numPoints, new ChunkComputation() {
+        @Override
+        public double[] compute(int from, int to) {
+          double[] sums = new double[partialLength];
+          for (int i = from; i < to; i++) {
+            int c = finalAssignments[i];
+            int offset = c * (dimension + 1);
+            for (int j = 0; j < dimension; j++) {
+              sums[offset + j] += points[i * dimension + j];
+            }
+            ++sums[offset + dimension];
+          }
+          return sums;
+        }
+      });
+      double[] sums = new double[partialLength];
+      for (double[] partial : partials) {
+        for (int j = 0; j < sums.length; j++) {
+          sums[j] += partial[j];
+        }
+      }
+      for (int c = 0; c < numCenters; c++) {
+        int offset = c * (dimension + 1);
+        double count = sums[offset + dimension];
+        if (count > 0) {
+          for (int j = 0; j < dimension; j++) {
+            centers[c * dimension + j] = sums[offset + j] / count;
+          }
+        }
+        else {
+          // move an empty cluster's center to the point farthest from its own center
+          int farthest = 0;
+          for (int i = 1; i < numPoints; i++) {
+            if (distances[i] > distances[farthest]) {
+              farthest = i;
+            }
+          }
+          System.arraycopy(points, farthest * dimension, centers, c * dimension, dimension);
+          distances[farthest] = 0;
+        }
+      }
+    }
+    if (!converged) {
+      // the centers have moved since the last assignment
+      assign(centers, assignments, distances);
+    }
+  }
+
+  private void miniBatch(double[] centers, int maxIterations, int miniBatchSize, RandomGenerator rnd) {
+    int numCenters = centers.length / dimension;
+    long[] counts = new long[numCenters];
+    final int[] batch = new int[miniBatchSize];
+    final int[] batchAssignments = new int[miniBatchSize];
+    final double[] batchCenters = centers;
+    for (int iteration = 0; iteration < maxIterations; iteration++) {
+      for (int b = 0; b < miniBatchSize; b++) {
+        batch[b] = rnd.nextInt(numPoints);
+      }
+      // assign the batch to the (cached) centers in parallel
+      runInChunks(miniBatchSize, new ChunkWriter() {
+        @Override
+        public void run(int from, int to) {
+          for (int b = from; b < to; b++) {
+            batchAssignments[b] = nearestCenter(batchCenters, batch[b], null, 0);
+          }
+        }
+      });
+      // per-center gradient steps with learning rate 1/count
+      double shift = 0;
+      for (int b = 0; b < miniBatchSize; b++) {
+        int c = batchAssignments[b];
+        double eta = 1.0 / ++counts[c];
+        for (int j = 0; j < dimension; j++) {
+          double delta = eta * (points[batch[b] * dimension + j] - centers[c * dimension + j]);
+          centers[c * dimension + j] += delta;
+          shift += delta * delta;
+        }
+      }
+      if (shift < CONVERGENCE_TOLERANCE) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Assigns every point to its nearest center in parallel. Returns the
+   * number of points whose assignment changed.
+   */
+  private int assign(final double[] centers, final int[] assignments, final double[] distances) {
+    final int[] changes = new int[(numPoints + CHUNK_SIZE - 1) / CHUNK_SIZE];
+    runInChunks(numPoints, new ChunkWriter() {
+      @Override
+      public void run(int from, int to) {
+        int changed = 0;
+        for (int i = from; i < to; i++) {
+          int c = nearestCenter(centers, i, distances, i);
+          if (c != assignments[i]) {
+            assignments[i] = c;
+            ++changed;
+          }
+        }
+        changes[from / CHUNK_SIZE] = changed;
+      }
+    });
+    int total = 0;
+    for (int changed : changes) {
+      total += changed;
+    }
+    return total;
+  }
+
+  /**
+   * The index of the center nearest to point i (ties go to the lowest
+   * index). If distances is non-null, the squared distance is stored at
+   * distances[slot].
+   */
+  private int nearestCenter(double[] centers, int i, double[] distances, int slot) {
+    int best = 0;
+    double bestDistance = Double.POSITIVE_INFINITY;
+    for (int c = 0; c < centers.length / dimension; c++) {
+      double d = distance(points, i, centers, c);
+      if (d < bestDistance) {
+        bestDistance = d;
+        best = c;
+      }
+    }
+    if (distances != null) {
+      distances[slot] = bestDistance;
+    }
+    return best;
+  }
+
+  /**
+   * squared euclidean distance between row a of x and row b of y
+   */
+  private double distance(double[] x, int a, double[] y, int b) {
+    double sum = 0;
+    for (int j = 0, ia = a * dimension, ib = b * dimension; j < dimension; j++) {
+      double d = x[ia + j] - y[ib + j];
+      sum += d * d;
+    }
+    return sum;
+  }
+
+  private static int sample(double[] weights, RandomGenerator rnd) {
+    double total = 0;
+    for (double w : weights) {
+      total += w;
+    }
+    double u = rnd.nextDouble() * total;
+    for (int i = 0; i < weights.length; i++) {
+      u -= weights[i];
+      if (u < 0) {
+        return i;
+      }
+    }
+    // rounding: return the last index with positive weight
+    for (int i = weights.length - 1; i > 0; i--) {
+      if (weights[i] > 0) {
+        return i;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Renumbers cluster ids (in 0..k-1) so that only non-empty clusters are
+   * used, preserving their order.
+   */
+  private static int[] compact(int[] assignments, int k) {
+    int[] ids = new int[k];
+    for (int a : assignments) {
+      ids[a] = 1;
+    }
+    for (int c = 0, next = 0; c < k; c++) {
+      ids[c] = (ids[c] == 0) ? -1 : next++;
+    }
+    int[] result = new int[assignments.length];
+    for (int i = 0; i < assignments.length; i++) {
+      result[i] = ids[assignments[i]];
+    }
+    return result;
+  }
+
+  /**
+   * Work over a contiguous range of indices that writes its results into
+   * shared arrays (each chunk to its own elements).
+   */
+  private interface ChunkWriter {
+    void run(int from, int to);
+  }
+
+  /**
+   * Work over a contiguous range of indices that returns a partial result.
+   */
+  private interface ChunkComputation {
+    double[] compute(int from, int to);
+  }
+
+  private void runInChunks(int size, final ChunkWriter task) {
+    computeInChunks(size, new ChunkComputation() {
+      @Override
+      public double[] compute(int from, int to) {
+        task.run(from, to);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Runs the task over fixed-size chunks of [0, size), in parallel if there
+   * is more than one thread. Returns the chunks' results in chunk order.
+   */
+  private List<double[]> computeInChunks(int size, final ChunkComputation task) {
+    List<Callable<double[]>> tasks = Lists.newArrayList();
+    for (int start = 0; start < size; start += CHUNK_SIZE) {
+      final int from = start, to = Math.min(size, start + CHUNK_SIZE);
+      tasks.add(new Callable<double[]>() {
+        @Override
+        public double[] call() {
+          return task.compute(from, to);
+        }
+      });
+    }
+    return ParallelTasks.invokeAll(tasks, numThreads);
+  }
+
+}
@@ -16,7 +16,6 @@
 package edu.byu.nlp.data.docs;
 
 import java.util.BitSet;
-import java.util.Comparator;
 import java.util.Map;
 
 import com.google.common.collect.Iterables;
@@ -26,9 +25,8 @@ import edu.byu.nlp.data.streams.DataStreams;
 import edu.byu.nlp.data.streams.DataStreams.Transform;
 import edu.byu.nlp.data.types.DataStreamInstance;
 import edu.byu.nlp.data.types.SparseFeatureVector;
-import edu.byu.nlp.data.types.SparseFeatureVector.Entry;
-import edu.byu.nlp.dataset.BasicSparseFeatureVector;
-import edu.byu.nlp.util.Heaps;
+import edu.byu.nlp.data.types.SparseFeatureVector.EntryVisitor;
+import edu.byu.nlp.util.TopK;
 
 /**
  * @author rah67
@@ -71,12 +69,21 @@ public class TopNPerDocumentFeatureSelectorFactory implements FeatureSelectorFac
 	
 		private BitSet buildBitSet(Iterable<Map<String,Object>> tfidfVectors) {
 			BitSet b = new BitSet(numFeatures);
-			Comparator<Entry> c = BasicSparseFeatureVector.valueComparator();
+			// one bounded heap, reused for every document
+			final TopK.DoubleHeap heap = new TopK.DoubleHeap(minFeaturesToKeepPerDocument, null);
+			EntryVisitor offerer = new EntryVisitor() {
+				@Override
+				public void visitEntry(int index, double value) {
+					heap.offer(index, value);
+				}
+			};
 			for (Map<String,Object> doc : tfidfVectors) {
 				if (DataStreamInstance.getData(doc)!=null){
 				  SparseFeatureVector data = (SparseFeatureVector) DataStreamInstance.getData(doc);
-					for (Entry e : Heaps.largestN(data.sparseEntries(), minFeaturesToKeepPerDocument, false, c)) {
-						b.set(e.getIndex());
+				  heap.clear();
+				  data.visitSparseEntries(offerer);
+					for (int i = 0; i < heap.size(); i++) {
+						b.set(heap.idAt(i));
 					}
 				}
 			}
@@ -0,0 +1,344 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.data.streams;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
+import edu.byu.nlp.data.streams.DataStreams.OneToMany;
+import edu.byu.nlp.data.streams.JSONFileToAnnotatedDocumentList.MeasurementPojo;
+import edu.byu.nlp.data.types.DataStreamInstance;
+import edu.byu.nlp.io.AbstractIterable;
+import edu.byu.nlp.util.ParallelTasks;
+import edu.byu.nlp.util.Strings;
+
+/**
+ * Streaming version of {@link JSONFileToAnnotatedDocumentList}, producing
+ * the same records. Annotation and measurement records are emitted as the
+ * file is read; one instance record per unique source is emitted after the
+ * last annotation (since any annotation of a source may carry its label or
+ * data). Only a small per-source summary is retained while reading, and
+ * 'datapath' files are read one at a time as their instance records are
+ * emitted, so memory does not grow with the size of the annotation log.
+ *
+ * The input may be either a JSON array of annotation objects or a
+ * JSON-lines file (one annotation object per line). JSON-lines input can
+ * be parsed by several threads, a batch of lines at a time; records are
+ * still emitted in file order.
+ *
+ * Each call to iterator() re-reads the file. The iterators are
+ * {@link Closeable}: the file is opened by the first call to hasNext() or
+ * next() and closed once the input has been read, so a consumer that stops
+ * early should close the iterator (which then ends) to release the file.
+ */
+public class StreamingJSONAnnotationReader implements OneToMany {
+
+  private static final Logger logger = LoggerFactory.getLogger(StreamingJSONAnnotationReader.class);
+
+  private static final int DEFAULT_BATCH_SIZE = 4096;
+
+  private final String jsonReferencedDataDir;
+  private final String fieldname;
+  private final int numThreads;
+  private final int batchSize;
+
+  public StreamingJSONAnnotationReader(String jsonReferencedDataDir, String fieldname) {
+    this(jsonReferencedDataDir, fieldname, 1, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * @param numThreads number of threads used to parse JSON-lines input
+   * @param batchSize number of lines parsed (and buffered) at a time
+   */
+  public StreamingJSONAnnotationReader(String jsonReferencedDataDir, String fieldname, int numThreads, int batchSize) {
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be positive");
+    Preconditions.checkArgument(batchSize > 0, "batchSize must be positive");
+    this.jsonReferencedDataDir = jsonReferencedDataDir;
+    this.fieldname = fieldname;
+    this.numThreads = numThreads;
+    this.batchSize = batchSize;
+  }
+
+  // simple deserialization pojo
+  static class AnnotationPojo {
+    public String annotator, label, data, source, annotation, datapath;
+    public MeasurementPojo measurement;
+    public long starttime = -1, endtime = -1;
+    public boolean labelobserved;
+    @Override
+    public String toString() {
+      return getClass().getName()+new Gson().toJson(this);
+    }
+  }
+
+  private static class InstancePojo {
+    private String label, data, source, datapath;
+    private boolean labelobserved;
+    @Override
+    public String toString() {
+      return getClass().getName()+" src="+source;
+    }
+  }
+
+  @Override
+  public Iterable<Map<String, Object>> apply(Map<String, Object> input) {
+    // this should be the only thing the input has
+    final String indexFilepath = (String) input.get(fieldname);
+
+    logger.info("Processing " + indexFilepath);
+    Preconditions.checkArgument(new File(indexFilepath).exists(), "Json dataset does not exist: "+indexFilepath);
+    return new AbstractIterable<Map<String, Object>>() {
+      @Override
+      public Iterator<Map<String, Object>> iterator() {
+        return new RecordIterator(indexFilepath);
+      }
+    };
+  }
+
+  private class RecordIterator extends AbstractIterator<Map<String, Object>> implements Closeable {
+    private final Gson gson = new Gson();
+    private final String path;
+    private BufferedReader reader; // null until opened, and once closed
+    private JsonReader jsonReader; // null for JSON-lines input
+    private boolean closed = false;
+    private final Deque<Map<String, Object>> pending = new ArrayDeque<Map<String, Object>>();
+    private final Map<String, InstancePojo> instanceData = Maps.newLinkedHashMap();
+    private Iterator<InstancePojo> instances = null; // set once the input is exhausted
+
+    RecordIterator(String path) {
+      this.path = path;
+    }
+
+    private void open() {
+      try {
+        this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), "utf-8"));
+        this.jsonReader = isJsonArray(reader) ? new JsonReader(reader) : null;
+        if (jsonReader != null) {
+          jsonReader.beginArray();
+        }
+      }
+      catch (IOException e) {
+        closeInput();
+        throw new RuntimeException("unable to read json file " + path, e);
+      }
+    }
+
+    @Override
+    protected Map<String, Object> computeNext() {
+      if (closed) {
+        return endOfData();
+      }
+      if (reader == null && instances == null) {
+        open();
+      }
+      while (pending.isEmpty() && instances == null) {
+        List<AnnotationPojo> batch = nextBatch();
+        if (batch.isEmpty()) {
+          closeInput();
+          instances = instanceData.values().iterator();
+        }
+        for (AnnotationPojo ann : batch) {
+          process(ann);
+        }
+      }
+      if (!pending.isEmpty()) {
+        return pending.poll();
+      }
+      if (instances.hasNext()) {
+        InstancePojo pojo = instances.next();
+        instances.remove(); // don't hold on to emitted instances
+        return DataStreamInstance.fromLabelRaw(pojo.source, pojo.source, dataOf(pojo), pojo.label, pojo.labelobserved);
+      }
+      return endOfData();
+    }
+
+    /**
+     * The next few annotations, in file order (empty at the end of the input)
+     */
+    private List<AnnotationPojo> nextBatch() {
+      try {
+        List<AnnotationPojo> batch = Lists.newArrayList();
+        if (jsonReader != null) {
+          if (jsonReader.hasNext()) {
+            batch.add(gson.<AnnotationPojo>fromJson(jsonReader, AnnotationPojo.class));
+          }
+          else {
+            jsonReader.endArray();
+          }
+          return batch;
+        }
+
+        final List<String> lines = Lists.newArrayListWithCapacity(batchSize);
+        String line;
+        while (lines.size() < batchSize && (line = reader.readLine()) != null) {
+          if (!line.trim().isEmpty()) {
+            lines.add(line);
+          }
+        }
+        if (numThreads == 1 || lines.size() < 2) {
+          for (String l : lines) {
+            batch.add(gson.fromJson(l, AnnotationPojo.class));
+          }
+          return batch;
+        }
+
+        // parse contiguous chunks of the batch in parallel (Gson is thread-safe)
+        List<Callable<List<AnnotationPojo>>> tasks = Lists.newArrayList();
+        int chunkSize = (lines.size() + numThreads - 1) / numThreads;
+        for (int start = 0; start < lines.size(); start += chunkSize) {
+          final List<String> chunk = lines.subList(start, Math.min(lines.size(), start + chunkSize));
+          tasks.add(new Callable<List<AnnotationPojo>>() {
+            @Override
+            public List<AnnotationPojo> call() {
+              List<AnnotationPojo> parsed = Lists.newArrayListWithCapacity(chunk.size());
+              for (String l : chunk) {
+                parsed.add(gson.fromJson(l, AnnotationPojo.class));
+              }
+              return parsed;
+            }
+          });
+        }
+        for (List<AnnotationPojo> parsed : ParallelTasks.invokeAll(tasks, numThreads)) {
+          batch.addAll(parsed);
+        }
+        return batch;
+      }
+      catch (IOException e) {
+        closeInput();
+        throw new RuntimeException("unable to read json file " + path, e);
+      }
+      catch (RuntimeException e) {
+        closeInput();
+        throw e;
+      }
+    }
+
+    private void process(AnnotationPojo ann) {
+      // annotation
+      if (ann.annotation != null) {
+        pending.add(DataStreamInstance.fromAnnotationRaw(null, ann.source, ann.annotator, ann.annotation,
+            ann.starttime * 1000 * 1000, ann.endtime * 1000 * 1000));
+      }
+      // measurement
+      if (ann.measurement != null) {
+        pending.add(DataStreamInstance.fromMeasurementRaw(null, ann.source, ann.annotator, ann.measurement,
+            ann.starttime * 1000 * 1000, ann.endtime * 1000 * 1000));
+      }
+
+      // ensure 1 instance per unique source
+      InstancePojo inst = instanceData.get(ann.source);
+      if (inst == null) {
+        inst = new InstancePojo();
+        instanceData.put(ann.source, inst);
+      }
+      // gather instance info
+      inst.source = ann.source;
+      if (inst.data == null) {
+        inst.data = ann.data;
+      }
+      if (inst.datapath == null) {
+        inst.datapath = ann.datapath;
+      }
+      if (inst.label == null) {
+        inst.label = ann.label;
+        inst.labelobserved = ann.labelobserved;
+      }
+    }
+
+    // read data from disk (if necessary)
+    private String dataOf(InstancePojo pojo) {
+      if (pojo.data != null || pojo.datapath == null) {
+        return pojo.data;
+      }
+      File jsonpath = new File(jsonReferencedDataDir, pojo.datapath);
+      try {
+        return Strings.join(Files.readLines(jsonpath, Charset.forName("utf-8")), "\n");
+      }
+      catch (IOException e) {
+        throw new RuntimeException("unable to read file " + jsonpath.getAbsolutePath(), e);
+      }
+    }
+
+    /**
+     * Releases the file (if it is still open) and ends the iteration.
+     */
+    @Override
+    public void close() {
+      closed = true;
+      closeInput();
+      pending.clear();
+      instanceData.clear();
+      instances = null;
+    }
+
+    private void closeInput() {
+      if (reader != null) {
+        closeQuietly(jsonReader != null ? jsonReader : reader);
+        reader = null;
+        jsonReader = null;
+      }
+    }
+  }
+
+  /**
+   * Peeks at the first non-whitespace character without consuming it.
+   */
+  private static boolean isJsonArray(BufferedReader reader) throws IOException {
+    while (true) {
+      reader.mark(1);
+      int c = reader.read();
+      if (c == -1) {
+        return false;
+      }
+      if (!Character.isWhitespace(c) && c != '\uFEFF') {
+        reader.reset();
+        return c == '[';
+      }
+    }
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    }
+    catch (IOException e) {
+      logger.warn("unable to close json reader", e);
+    }
+  }
+
+}
@@ -10,6 +10,12 @@ public interface Dataset extends Iterable<DatasetInstance> {
 	
 	DatasetInstance lookupInstance(String rawSource);
 	
+	/**
+	 * Looks up an instance by its int id (DatasetInstance.getInfo().getSource()); 
+	 * null if there is none.
+	 */
+	DatasetInstance lookupInstance(int instanceId);
+	
 	Collection<Measurement> getMeasurements();
 	
 	DatasetInfo getInfo();
@@ -55,6 +55,11 @@ public interface DatasetInfo {
 	
 	int getNumAnnotators();
 
+	/**
+	 * Tells the info that the annotations of its instances were changed 
+	 * directly, so that its annotation counts (and those of any other 
+	 * dataset sharing the instances) can be brought up to date.
+	 */
 	void annotationsChanged();
 	
 }
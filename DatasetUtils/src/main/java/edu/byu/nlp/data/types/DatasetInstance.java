@@ -68,5 +68,11 @@ public interface DatasetInstance {
 	 * Does this instance have any annotations of any kind? 
 	 */
 	boolean hasAnnotations();
+	
+	/**
+	 * The number of tokens in this instance (the sum of its feature 
+	 * vector, rounded). Computed once when the instance is created. 
+	 */
+	int getNumTokens();
 
 }
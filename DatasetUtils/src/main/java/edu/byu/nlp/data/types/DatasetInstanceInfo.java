@@ -33,6 +33,11 @@ public interface DatasetInstanceInfo {
 	
 	Indexer<String> getLabelIndexer();
 	
+	/**
+	 * Tells the info that the instance's annotations were changed directly, 
+	 * so that its annotation count (and the annotation counts of the 
+	 * datasets containing the instance) can be brought up to date.
+	 */
 	void annotationsChanged();
 	
 }
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.data.util;
+
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import edu.byu.nlp.data.FlatInstance;
+import edu.byu.nlp.data.types.Dataset;
+import edu.byu.nlp.data.types.DatasetInstance;
+import edu.byu.nlp.data.types.SparseFeatureVector;
+
+/**
+ * The annotations of {@link EmpiricalAnnotations}, indexed by int instance
+ * id (DatasetInstance.getInfo().getSource()) rather than raw source.
+ *
+ * Annotations are stored in one array, grouped by instance and, within an
+ * instance, by annotator (in order of annotator id). Instance i's
+ * annotations are at positions [start(i), end(i)) and annotator j's
+ * annotations of it are at [start(i,j), end(i,j)), so lookups are array
+ * indexing (plus a binary search over the instance's annotators) without
+ * hashing or allocation. Instances are immutable once built and may be
+ * read concurrently without locking.
+ */
+public class EmpiricalAnnotationIndex<D, L> {
+
+  private final FlatInstance<D, L>[] annotations;
+  // instance i's annotator groups are [instanceGroups[i], instanceGroups[i]+numGroups[i])
+  private final int[] instanceGroups;
+  private final int[] numGroups;
+  // group g covers annotations [groupStarts[g], groupStarts[g+1]) by annotator groupAnnotators[g]
+  private final int[] groupStarts;
+  private final int[] groupAnnotators;
+
+  private EmpiricalAnnotationIndex(FlatInstance<D, L>[] annotations, int[] instanceGroups, int[] numGroups,
+      int[] groupStarts, int[] groupAnnotators) {
+    this.annotations = annotations;
+    this.instanceGroups = instanceGroups;
+    this.numGroups = numGroups;
+    this.groupStarts = groupStarts;
+    this.groupAnnotators = groupAnnotators;
+  }
+
+  /**
+   * One past the largest instance id with an entry
+   */
+  public int getNumInstances() {
+    return numGroups.length;
+  }
+
+  public int getNumAnnotations() {
+    return annotations.length;
+  }
+
+  public FlatInstance<D, L> annotationAt(int position) {
+    return annotations[position];
+  }
+
+  /**
+   * The first position of the instance's annotations (unknown ids have none)
+   */
+  public int start(int instance) {
+    return (instance < 0 || instance >= numGroups.length || numGroups[instance] == 0) ? 0
+        : groupStarts[instanceGroups[instance]];
+  }
+
+  public int end(int instance) {
+    return (instance < 0 || instance >= numGroups.length || numGroups[instance] == 0) ? 0
+        : groupStarts[instanceGroups[instance] + numGroups[instance]];
+  }
+
+  public int numAnnotations(int instance) {
+    return end(instance) - start(instance);
+  }
+
+  /**
+   * The number of distinct annotators of the instance
+   */
+  public int numAnnotators(int instance) {
+    return (instance < 0 || instance >= numGroups.length) ? 0 : numGroups[instance];
+  }
+
+  /**
+   * The id of the instance's n'th annotator (in order of annotator id)
+   */
+  public int annotatorOf(int instance, int n) {
+    Preconditions.checkElementIndex(n, numAnnotators(instance));
+    return groupAnnotators[instanceGroups[instance] + n];
+  }
+
+  /**
+   * The first position of the given annotator's annotations of the instance
+   * (start(instance, annotator) == end(instance, annotator) if there are
+   * none)
+   */
+  public int start(int instance, int annotator) {
+    int g = group(instance, annotator);
+    return g < 0 ? 0 : groupStarts[g];
+  }
+
+  public int end(int instance, int annotator) {
+    int g = group(instance, annotator);
+    return g < 0 ? 0 : groupStarts[g + 1];
+  }
+
+  public int numAnnotations(int instance, int annotator) {
+    int g = group(instance, annotator);
+    return g < 0 ? 0 : groupStarts[g + 1] - groupStarts[g];
+  }
+
+  private int group(int instance, int annotator) {
+    if (instance < 0 || instance >= numGroups.length || numGroups[instance] == 0) {
+      return -1;
+    }
+    int from = instanceGroups[instance];
+    int g = Arrays.binarySearch(groupAnnotators, from, from + numGroups[instance], annotator);
+    return g < 0 ? -1 : g;
+  }
+
+  public static EmpiricalAnnotationIndex<SparseFeatureVector, Integer> fromDataset(Dataset dataset) {
+    Builder<SparseFeatureVector, Integer> builder = new Builder<SparseFeatureVector, Integer>();
+    for (DatasetInstance inst : dataset) {
+      if (inst.getAnnotations() != null && inst.getAnnotations().getRawAnnotations() != null) {
+        builder.addInstance(inst.getInfo().getSource(), inst.getAnnotations().getRawAnnotations());
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Accumulates annotations an instance at a time. An instance id may be
+   * added more than once (e.g., for datasets with duplicate sources); its
+   * annotations are merged.
+   */
+  static class Builder<D, L> {
+    private final List<FlatInstance<D, L>> annotations = Lists.newArrayList();
+    private final IntArrayList instances = new IntArrayList();
+    private int numInstances = 0;
+
+    void addInstance(int instance, Iterable<FlatInstance<D, L>> instanceAnnotations) {
+      Preconditions.checkArgument(instance >= 0, "instance ids must be non-negative");
+      numInstances = Math.max(numInstances, instance + 1);
+      for (FlatInstance<D, L> ann : instanceAnnotations) {
+        annotations.add(ann);
+        instances.add(instance);
+      }
+    }
+
+    EmpiricalAnnotationIndex<D, L> build() {
+      int n = annotations.size();
+      final int[] inst = instances.elements();
+      final int[] ann = new int[n];
+      for (int i = 0; i < n; i++) {
+        ann[i] = annotations.get(i).getAnnotator();
+      }
+      // by instance, then annotator, then arrival
+      int[] order = new int[n];
+      for (int i = 0; i < n; i++) {
+        order[i] = i;
+      }
+      IntArrays.mergeSort(order, new AbstractIntComparator() {
+        @Override
+        public int compare(int a, int b) {
+          if (inst[a] != inst[b]) {
+            return inst[a] < inst[b] ? -1 : 1;
+          }
+          return Integer.compare(ann[a], ann[b]);
+        }
+      });
+
+      @SuppressWarnings("unchecked")
+      FlatInstance<D, L>[] sorted = (FlatInstance<D, L>[]) new FlatInstance<?, ?>[n];
+      int[] instanceGroups = new int[numInstances];
+      int[] numGroups = new int[numInstances];
+      IntArrayList groupStarts = new IntArrayList();
+      IntArrayList groupAnnotators = new IntArrayList();
+      for (int i = 0; i < n; i++) {
+        int j = order[i];
+        sorted[i] = annotations.get(j);
+        boolean newInstance = (i == 0 || inst[order[i - 1]] != inst[j]);
+        if (newInstance) {
+          instanceGroups[inst[j]] = groupAnnotators.size();
+        }
+        if (newInstance || ann[order[i - 1]] != ann[j]) {
+          groupStarts.add(i);
+          groupAnnotators.add(ann[j]);
+          ++numGroups[inst[j]];
+        }
+      }
+      groupStarts.add(n);
+      return new EmpiricalAnnotationIndex<D, L>(sorted, instanceGroups, numGroups, groupStarts.toIntArray(),
+          groupAnnotators.toIntArray());
+    }
+  }
+
+}
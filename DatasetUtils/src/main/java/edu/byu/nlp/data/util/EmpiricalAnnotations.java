@@ -42,10 +42,17 @@ public class EmpiricalAnnotations<D,L> {
   private DatasetInfo info;
   private Collection<FlatInstance<D,L>> measurements;
   private Multimap<Integer, FlatInstance<D,L>> perAnnotatorMeasurements;
+  private EmpiricalAnnotationIndex<D,L> index;
   
   public EmpiricalAnnotations(Map<String, Multimap<Integer, FlatInstance<D,L>>> annotations,
        Collection<FlatInstance<D,L>> measurements, DatasetInfo info){
+    this(annotations, measurements, info, null);
+  }
+  
+  public EmpiricalAnnotations(Map<String, Multimap<Integer, FlatInstance<D,L>>> annotations,
+       Collection<FlatInstance<D,L>> measurements, DatasetInfo info, EmpiricalAnnotationIndex<D,L> index){
     this.annotations=annotations;
+    this.index=index;
     this.measurements=measurements;
     this.perAnnotatorMeasurements = HashMultimap.create();
     for (FlatInstance<D, L> meas: measurements){
@@ -75,6 +82,15 @@ public class EmpiricalAnnotations<D,L> {
     return measurements;
   }
   
+  /**
+   * The same annotations indexed by int instance id (null unless built by 
+   * {@link #fromDataset(Dataset)}). Prefer this to getAnnotationsFor() in 
+   * tight loops.
+   */
+  public EmpiricalAnnotationIndex<D,L> getIndex(){
+    return index;
+  }
+  
   public DatasetInfo getDataInfo(){
     return info;
   }
@@ -87,6 +103,7 @@ public class EmpiricalAnnotations<D,L> {
    */
   public static EmpiricalAnnotations<SparseFeatureVector, Integer> fromDataset(Dataset dataset){
 	Map<String, Multimap<Integer, FlatInstance<SparseFeatureVector,Integer>>> annotations = Maps.newHashMap();
+	EmpiricalAnnotationIndex.Builder<SparseFeatureVector, Integer> index = new EmpiricalAnnotationIndex.Builder<SparseFeatureVector, Integer>();
     
     for (DatasetInstance inst: dataset){
     
@@ -100,6 +117,7 @@ public class EmpiricalAnnotations<D,L> {
       for (FlatInstance<SparseFeatureVector,Integer> ann: inst.getAnnotations().getRawAnnotations()){
         annotations.get(source).put(ann.getAnnotator(), ann);
       }
+      index.addInstance(inst.getInfo().getSource(), inst.getAnnotations().getRawAnnotations());
     	
     }
     
@@ -111,7 +129,7 @@ public class EmpiricalAnnotations<D,L> {
       }
     }
     
-    return new EmpiricalAnnotations<SparseFeatureVector, Integer>(annotations, measurements, dataset.getInfo());
+    return new EmpiricalAnnotations<SparseFeatureVector, Integer>(annotations, measurements, dataset.getInfo(), index.build());
   }
 
 }
@@ -0,0 +1,341 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.dataset;
+
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import com.google.common.base.Preconditions;
+
+import edu.byu.nlp.data.FlatInstance;
+import edu.byu.nlp.data.types.Dataset;
+
+/**
+ * The label annotations of an {@link AnnotationStore} sorted once by time,
+ * in the same order as {@link Datasets#sortAnnotationsInPlace(java.util.List)}
+ * (end timestamp, then start timestamp, then annotator, then instance).
+ * Annotations without an end timestamp ({@link FlatInstance#NULL_TIMESTAMP})
+ * sort first.
+ *
+ * Annotations are addressed by their position in time order. Time windows
+ * are located by binary search over the end timestamps, and
+ * {@link Cursor}s replay a window (or one annotator's time series) without
+ * allocating, so replaying "the dataset as of time t" never re-sorts or
+ * re-scans the whole log. Time windows are half-open: [t0, t1).
+ */
+public class AnnotationLog {
+
+  private final int numInstances;
+  private final int numAnnotators;
+  private final int numClasses;
+  private final String[] rawSources;
+  // parallel arrays in time order
+  private final long[] endTimestamps;
+  private final long[] startTimestamps;
+  private final int[] instances;
+  private final int[] annotators;
+  private final int[] labels;
+  // the positions of annotator a's annotations (in time order) are
+  // annotatorPositions[annotatorOffsets[a]..annotatorOffsets[a+1])
+  private final int[] annotatorOffsets;
+  private final int[] annotatorPositions;
+
+  public AnnotationLog(final AnnotationStore store) {
+    int n = store.getNumAnnotations();
+    this.numInstances = store.getNumInstances();
+    this.numAnnotators = store.getNumAnnotators();
+    this.numClasses = store.getNumClasses();
+    this.rawSources = new String[numInstances];
+    for (int i = 0; i < numInstances; i++) {
+      rawSources[i] = store.getRawSource(i);
+    }
+
+    int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    IntArrays.mergeSort(order, new AbstractIntComparator() {
+      @Override
+      public int compare(int a, int b) {
+        int c = Long.compare(store.endTimestampAt(a), store.endTimestampAt(b));
+        if (c == 0) {
+          c = Long.compare(store.startTimestampAt(a), store.startTimestampAt(b));
+        }
+        if (c == 0) {
+          c = Integer.compare(store.annotatorAt(a), store.annotatorAt(b));
+        }
+        if (c == 0) {
+          c = Integer.compare(store.instanceAt(a), store.instanceAt(b));
+        }
+        return c;
+      }
+    });
+
+    this.endTimestamps = new long[n];
+    this.startTimestamps = new long[n];
+    this.instances = new int[n];
+    this.annotators = new int[n];
+    this.labels = new int[n];
+    for (int i = 0; i < n; i++) {
+      int j = order[i];
+      endTimestamps[i] = store.endTimestampAt(j);
+      startTimestamps[i] = store.startTimestampAt(j);
+      instances[i] = store.instanceAt(j);
+      annotators[i] = store.annotatorAt(j);
+      labels[i] = store.labelAt(j);
+    }
+
+    // counting sort by annotator (stable, so each series stays in time order)
+    this.annotatorOffsets = new int[numAnnotators + 1];
+    for (int i = 0; i < n; i++) {
+      ++annotatorOffsets[annotators[i] + 1];
+    }
+    for (int a = 0; a < numAnnotators; a++) {
+      annotatorOffsets[a + 1] += annotatorOffsets[a];
+    }
+    this.annotatorPositions = new int[n];
+    int[] next = Arrays.copyOf(annotatorOffsets, numAnnotators);
+    for (int i = 0; i < n; i++) {
+      annotatorPositions[next[annotators[i]]++] = i;
+    }
+  }
+
+  public static AnnotationLog fromDataset(Dataset dataset) {
+    return new AnnotationLog(AnnotationStore.fromDataset(dataset));
+  }
+
+  public int size() {
+    return endTimestamps.length;
+  }
+
+  public int getNumInstances() {
+    return numInstances;
+  }
+
+  public int getNumAnnotators() {
+    return numAnnotators;
+  }
+
+  public int getNumClasses() {
+    return numClasses;
+  }
+
+  public long endTimestampAt(int position) {
+    return endTimestamps[position];
+  }
+
+  public long startTimestampAt(int position) {
+    return startTimestamps[position];
+  }
+
+  public int instanceAt(int position) {
+    return instances[position];
+  }
+
+  public int annotatorAt(int position) {
+    return annotators[position];
+  }
+
+  public int labelAt(int position) {
+    return labels[position];
+  }
+
+  /**
+   * The number of annotations that end before the given time (equivalently,
+   * the position of the first annotation ending at or after it).
+   */
+  public int positionOf(long time) {
+    return lowerBound(endTimestamps, null, 0, endTimestamps.length, time);
+  }
+
+  /**
+   * The annotations ending in [t0, t1), in time order.
+   */
+  public Cursor annotationsBetween(long t0, long t1) {
+    Preconditions.checkArgument(t0 <= t1, "t0 must not be after t1");
+    int from = positionOf(t0);
+    return new Cursor(null, from, lowerBound(endTimestamps, null, from, endTimestamps.length, t1));
+  }
+
+  /**
+   * All annotations, in time order.
+   */
+  public Cursor replay() {
+    return new Cursor(null, 0, endTimestamps.length);
+  }
+
+  /**
+   * The number of annotations by the given annotator.
+   */
+  public int numAnnotations(int annotator) {
+    Preconditions.checkElementIndex(annotator, numAnnotators, "annotator");
+    return annotatorOffsets[annotator + 1] - annotatorOffsets[annotator];
+  }
+
+  /**
+   * The given annotator's annotations that end in [t0, t1), in time order.
+   */
+  public Cursor annotationsBetween(int annotator, long t0, long t1) {
+    Preconditions.checkElementIndex(annotator, numAnnotators, "annotator");
+    Preconditions.checkArgument(t0 <= t1, "t0 must not be after t1");
+    int start = annotatorOffsets[annotator], end = annotatorOffsets[annotator + 1];
+    int from = lowerBound(endTimestamps, annotatorPositions, start, end, t0);
+    return new Cursor(annotatorPositions, from, lowerBound(endTimestamps, annotatorPositions, from, end, t1));
+  }
+
+  /**
+   * All of the given annotator's annotations, in time order.
+   */
+  public Cursor replay(int annotator) {
+    Preconditions.checkElementIndex(annotator, numAnnotators, "annotator");
+    return new Cursor(annotatorPositions, annotatorOffsets[annotator], annotatorOffsets[annotator + 1]);
+  }
+
+  /**
+   * The end timestamps of the given annotator's annotations, in time order.
+   */
+  public long[] endTimestamps(int annotator) {
+    Cursor cursor = replay(annotator);
+    long[] result = new long[cursor.remaining()];
+    for (int i = 0; cursor.hasNext(); i++) {
+      result[i] = endTimestamps[cursor.next()];
+    }
+    return result;
+  }
+
+  /**
+   * The annotations that ended before the given time, as a store. Only
+   * that prefix of the log is visited.
+   */
+  public AnnotationStore asOf(long time) {
+    AnnotationStore.Builder builder = AnnotationStore.builder(numAnnotators, numClasses);
+    for (int i = 0; i < numInstances; i++) {
+      builder.addInstance(i, rawSources[i]);
+    }
+    for (int i = 0, end = positionOf(time); i < end; i++) {
+      builder.add(instances[i], annotators[i], labels[i], boxed(startTimestamps[i]), boxed(endTimestamps[i]));
+    }
+    return builder.build();
+  }
+
+  private static Long boxed(long timestamp) {
+    return (timestamp == FlatInstance.NULL_TIMESTAMP) ? null : timestamp;
+  }
+
+  /**
+   * The first k in [from, to) with times[index[k]] >= time (or to if none),
+   * where a null index is the identity.
+   */
+  private static int lowerBound(long[] times, int[] index, int from, int to, long time) {
+    int lo = from, hi = to;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (times[index == null ? mid : index[mid]] < time) {
+        lo = mid + 1;
+      }
+      else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Iterates over log positions in time order. next() returns a position
+   * to pass to the log's accessors (or use the cursor's own accessors for
+   * the current annotation).
+   */
+  public class Cursor {
+    private final int[] index; // null: positions are used directly
+    private int next;
+    private final int end;
+    private int current = -1;
+
+    private Cursor(int[] index, int from, int to) {
+      this.index = index;
+      this.next = from;
+      this.end = to;
+    }
+
+    public boolean hasNext() {
+      return next < end;
+    }
+
+    public int remaining() {
+      return end - next;
+    }
+
+    /**
+     * Advances to, and returns the position of, the next annotation.
+     */
+    public int next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      current = (index == null) ? next : index[next];
+      ++next;
+      return current;
+    }
+
+    /**
+     * Skips ahead past every annotation that ends before the given time
+     * (by binary search). Returns the number skipped.
+     */
+    public int skipTo(long time) {
+      int target = lowerBound(endTimestamps, index, next, end, time);
+      int skipped = target - next;
+      next = target;
+      return skipped;
+    }
+
+    /**
+     * The number of remaining annotations that end before the given time;
+     * the next that many calls to next() replay exactly those annotations.
+     */
+    public int countBefore(long time) {
+      return lowerBound(endTimestamps, index, next, end, time) - next;
+    }
+
+    private int current() {
+      Preconditions.checkState(current >= 0, "next() has not been called");
+      return current;
+    }
+
+    public int instance() {
+      return instances[current()];
+    }
+
+    public int annotator() {
+      return annotators[current()];
+    }
+
+    public int label() {
+      return labels[current()];
+    }
+
+    public long startTimestamp() {
+      return startTimestamps[current()];
+    }
+
+    public long endTimestamp() {
+      return endTimestamps[current()];
+    }
+  }
+
+}
@@ -0,0 +1,526 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.dataset;
+
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.commons.math3.linear.AbstractRealMatrix;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.OpenMapRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealMatrixPreservingVisitor;
+import org.apache.commons.math3.linear.SparseRealMatrix;
+import org.apache.commons.math3.linear.SparseRealVector;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.google.common.base.Preconditions;
+
+import edu.byu.nlp.data.BasicFlatInstance;
+import edu.byu.nlp.data.FlatInstance;
+import edu.byu.nlp.data.types.AnnotationSet;
+import edu.byu.nlp.data.types.Dataset;
+import edu.byu.nlp.data.types.DatasetInstance;
+import edu.byu.nlp.data.types.SparseFeatureVector;
+import edu.byu.nlp.math.AbstractRealMatrixPreservingVisitor;
+import edu.byu.nlp.math.SparseRealMatrices;
+import edu.byu.nlp.util.Integers;
+
+/**
+ * An immutable, dataset-wide, columnar store of label annotations.
+ * Annotations are kept in parallel primitive arrays (instance, annotator,
+ * label, start and end timestamps) sorted by instance, then annotator, then
+ * label, with per-instance offset ranges. Instances are identified by their
+ * (dense) DatasetInstanceInfo.getSource() ids.
+ *
+ * {@link #annotationSet(int)} returns read-only per-instance
+ * {@link AnnotationSet} views over the arrays, and aggregate queries
+ * (confusion matrices, majority votes, counts) are linear scans.
+ * Timestamps that were null are stored as {@link FlatInstance#NULL_TIMESTAMP}.
+ */
+public class AnnotationStore {
+
+  private final int numAnnotators;
+  private final int numClasses;
+  // annotations for instance i are at positions [offsets[i], offsets[i+1])
+  private final int[] offsets;
+  private final int[] instances;
+  private final int[] annotators;
+  private final int[] labels;
+  private final long[] startTimestamps;
+  private final long[] endTimestamps;
+  private final String[] rawSources; // indexed by instance; may contain nulls
+
+  private AnnotationStore(int numAnnotators, int numClasses, int[] offsets, int[] instances, int[] annotators,
+      int[] labels, long[] startTimestamps, long[] endTimestamps, String[] rawSources) {
+    this.numAnnotators = numAnnotators;
+    this.numClasses = numClasses;
+    this.offsets = offsets;
+    this.instances = instances;
+    this.annotators = annotators;
+    this.labels = labels;
+    this.startTimestamps = startTimestamps;
+    this.endTimestamps = endTimestamps;
+    this.rawSources = rawSources;
+  }
+
+  public static Builder builder(int numAnnotators, int numClasses) {
+    return new Builder(numAnnotators, numClasses);
+  }
+
+  /**
+   * Collects the label annotations of every instance in the dataset.
+   * Uses each instance's raw annotations when it has any and otherwise
+   * falls back to its label annotation counts (without timestamps); datasets
+   * converted without preserving raw annotations have empty raw collections.
+   */
+  public static AnnotationStore fromDataset(Dataset dataset) {
+    final Builder builder = builder(dataset.getInfo().getNumAnnotators(), dataset.getInfo().getNumClasses());
+    for (DatasetInstance inst : dataset) {
+      final int instance = inst.getInfo().getSource();
+      builder.addInstance(instance, inst.getInfo().getRawSource());
+      AnnotationSet annotations = inst.getAnnotations();
+      if (annotations == null) {
+        continue;
+      }
+      Collection<FlatInstance<SparseFeatureVector, Integer>> rawAnnotations = annotations.getRawAnnotations();
+      if (rawAnnotations != null && !rawAnnotations.isEmpty()) {
+        for (FlatInstance<SparseFeatureVector, Integer> ann : rawAnnotations) {
+          if (ann.getAnnotation() != null) {
+            builder.add(instance, ann.getAnnotator(), ann.getAnnotation(), ann.getStartTimestamp(), ann.getEndTimestamp());
+          }
+        }
+      }
+      else if (annotations.getLabelAnnotations() != null) {
+        annotations.getLabelAnnotations().walkInOptimizedOrder(new AbstractRealMatrixPreservingVisitor() {
+          @Override
+          public void visit(int annotator, int label, double value) {
+            for (int i = 0; i < Integers.fromDouble(value, Datasets.INT_CAST_THRESHOLD); i++) {
+              builder.add(instance, annotator, label, null, null);
+            }
+          }
+        });
+      }
+    }
+    return builder.build();
+  }
+
+  public static class Builder {
+    private final int numAnnotators;
+    private final int numClasses;
+    private final IntArrayList instances = new IntArrayList();
+    private final IntArrayList annotators = new IntArrayList();
+    private final IntArrayList labels = new IntArrayList();
+    private final LongArrayList startTimestamps = new LongArrayList();
+    private final LongArrayList endTimestamps = new LongArrayList();
+    private String[] rawSources = new String[0];
+    private int numInstances = 0;
+
+    private Builder(int numAnnotators, int numClasses) {
+      Preconditions.checkArgument(numAnnotators >= 0 && numClasses >= 0);
+      this.numAnnotators = numAnnotators;
+      this.numClasses = numClasses;
+    }
+
+    /**
+     * Registers an instance (so that it has a range even if it has no
+     * annotations) and optionally its raw source.
+     */
+    public Builder addInstance(int instance, String rawSource) {
+      Preconditions.checkArgument(instance >= 0, "instance ids must be non-negative");
+      numInstances = Math.max(numInstances, instance + 1);
+      if (rawSource != null) {
+        if (instance >= rawSources.length) {
+          rawSources = Arrays.copyOf(rawSources, Math.max(instance + 1, rawSources.length * 2));
+        }
+        rawSources[instance] = rawSource;
+      }
+      return this;
+    }
+
+    public Builder add(int instance, int annotator, int label, Long startTimestamp, Long endTimestamp) {
+      Preconditions.checkArgument(instance >= 0, "instance ids must be non-negative");
+      Preconditions.checkElementIndex(annotator, numAnnotators);
+      Preconditions.checkElementIndex(label, numClasses);
+      numInstances = Math.max(numInstances, instance + 1);
+      instances.add(instance);
+      annotators.add(annotator);
+      labels.add(label);
+      startTimestamps.add(startTimestamp == null ? FlatInstance.NULL_TIMESTAMP : startTimestamp);
+      endTimestamps.add(endTimestamp == null ? FlatInstance.NULL_TIMESTAMP : endTimestamp);
+      return this;
+    }
+
+    /**
+     * Adds annotations [from, to) of the given parallel arrays (without
+     * timestamps).
+     */
+    public Builder addAll(int[] instances, int[] annotators, int[] labels, int from, int to) {
+      Preconditions.checkPositionIndexes(from, to, instances.length);
+      Preconditions.checkArgument(annotators.length >= to && labels.length >= to, "arrays must be parallel");
+      for (int i = from; i < to; i++) {
+        Preconditions.checkArgument(instances[i] >= 0, "instance ids must be non-negative");
+        Preconditions.checkElementIndex(annotators[i], numAnnotators);
+        Preconditions.checkElementIndex(labels[i], numClasses);
+        numInstances = Math.max(numInstances, instances[i] + 1);
+      }
+      this.instances.addElements(this.instances.size(), instances, from, to - from);
+      this.annotators.addElements(this.annotators.size(), annotators, from, to - from);
+      this.labels.addElements(this.labels.size(), labels, from, to - from);
+      for (int i = from; i < to; i++) {
+        startTimestamps.add(FlatInstance.NULL_TIMESTAMP);
+        endTimestamps.add(FlatInstance.NULL_TIMESTAMP);
+      }
+      return this;
+    }
+
+    public AnnotationStore build() {
+      final int n = instances.size();
+      final int[] inst = instances.elements(), ann = annotators.elements(), lab = labels.elements();
+
+      // counting sort by instance (stable) gives the offsets directly
+      int[] offsets = new int[numInstances + 1];
+      for (int i = 0; i < n; i++) {
+        ++offsets[inst[i] + 1];
+      }
+      for (int i = 0; i < numInstances; i++) {
+        offsets[i + 1] += offsets[i];
+      }
+      int[] order = new int[n];
+      int[] next = Arrays.copyOf(offsets, numInstances);
+      for (int i = 0; i < n; i++) {
+        order[next[inst[i]]++] = i;
+      }
+      // within an instance, order by annotator then label (then arrival)
+      AbstractIntComparator byAnnotatorThenLabel = new AbstractIntComparator() {
+        @Override
+        public int compare(int a, int b) {
+          if (ann[a] != ann[b]) {
+            return ann[a] < ann[b] ? -1 : 1;
+          }
+          if (lab[a] != lab[b]) {
+            return lab[a] < lab[b] ? -1 : 1;
+          }
+          return a < b ? -1 : (a == b ? 0 : 1);
+        }
+      };
+      for (int i = 0; i < numInstances; i++) {
+        if (offsets[i + 1] - offsets[i] > 1) {
+          IntArrays.quickSort(order, offsets[i], offsets[i + 1], byAnnotatorThenLabel);
+        }
+      }
+
+      int[] sortedInstances = new int[n], sortedAnnotators = new int[n], sortedLabels = new int[n];
+      long[] sortedStarts = new long[n], sortedEnds = new long[n];
+      long[] starts = startTimestamps.elements(), ends = endTimestamps.elements();
+      for (int i = 0; i < n; i++) {
+        int j = order[i];
+        sortedInstances[i] = inst[j];
+        sortedAnnotators[i] = ann[j];
+        sortedLabels[i] = lab[j];
+        sortedStarts[i] = starts[j];
+        sortedEnds[i] = ends[j];
+      }
+      return new AnnotationStore(numAnnotators, numClasses, offsets, sortedInstances, sortedAnnotators,
+          sortedLabels, sortedStarts, sortedEnds, Arrays.copyOf(rawSources, numInstances));
+    }
+  }
+
+  public int getNumAnnotators() {
+    return numAnnotators;
+  }
+
+  public int getNumClasses() {
+    return numClasses;
+  }
+
+  /**
+   * One more than the largest instance id in the store
+   */
+  public int getNumInstances() {
+    return offsets.length - 1;
+  }
+
+  public int getNumAnnotations() {
+    return instances.length;
+  }
+
+  /** First position of the given instance's annotations */
+  public int start(int instance) {
+    return offsets[instance];
+  }
+
+  /** One past the last position of the given instance's annotations */
+  public int end(int instance) {
+    return offsets[instance + 1];
+  }
+
+  public int instanceAt(int position) {
+    return instances[position];
+  }
+
+  public int annotatorAt(int position) {
+    return annotators[position];
+  }
+
+  public int labelAt(int position) {
+    return labels[position];
+  }
+
+  public long startTimestampAt(int position) {
+    return startTimestamps[position];
+  }
+
+  public long endTimestampAt(int position) {
+    return endTimestamps[position];
+  }
+
+  public String getRawSource(int instance) {
+    return rawSources[instance];
+  }
+
+  public int numAnnotations(int instance) {
+    return offsets[instance + 1] - offsets[instance];
+  }
+
+  /**
+   * The number of distinct annotators who annotated the given instance
+   */
+  public int numAnnotators(int instance) {
+    int count = 0;
+    for (int i = offsets[instance]; i < offsets[instance + 1]; i++) {
+      if (i == offsets[instance] || annotators[i] != annotators[i - 1]) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * result[label] = number of annotations of the instance with that label.
+   * Writes into (and returns) dest, which must have numClasses entries.
+   */
+  public int[] labelCounts(int instance, int[] dest) {
+    Arrays.fill(dest, 0, numClasses, 0);
+    for (int i = offsets[instance]; i < offsets[instance + 1]; i++) {
+      ++dest[labels[i]];
+    }
+    return dest;
+  }
+
+  /**
+   * result[annotator] = total number of annotations by that annotator
+   */
+  public int[] numAnnotationsPerAnnotator() {
+    int[] counts = new int[numAnnotators];
+    for (int annotator : annotators) {
+      ++counts[annotator];
+    }
+    return counts;
+  }
+
+  /**
+   * The majority-vote label of every instance (-1 if an instance has no
+   * annotations). Ties are broken uniformly at random if rnd is not null,
+   * and in favor of the smaller label otherwise.
+   */
+  public int[] majorityVoteLabels(RandomGenerator rnd) {
+    int[] result = new int[getNumInstances()];
+    int[] counts = new int[numClasses];
+    for (int instance = 0; instance < result.length; instance++) {
+      if (numAnnotations(instance) == 0) {
+        result[instance] = -1;
+        continue;
+      }
+      labelCounts(instance, counts);
+      int argMax = 0, tieCount = 0;
+      for (int c = 1; c < numClasses; c++) {
+        if (counts[c] > counts[argMax]) {
+          argMax = c;
+          tieCount = 0;
+        }
+        else if (rnd != null && counts[c] == counts[argMax] && rnd.nextInt(++tieCount + 1) == 0) {
+          // reservoir sampling with a reservoir of size 1
+          argMax = c;
+        }
+      }
+      result[instance] = argMax;
+    }
+    return result;
+  }
+
+  /**
+   * Confusion matrices, one per annotator, with respect to the given
+   * per-instance labels (instances whose label is negative or that are
+   * beyond the end of trueLabels are skipped):
+   * result[annotator][true class][annotation class] = count
+   */
+  public int[][][] confusionMatrices(int[] trueLabels) {
+    int[][][] confusions = new int[numAnnotators][numClasses][numClasses];
+    for (int i = 0; i < instances.length; i++) {
+      int instance = instances[i];
+      if (instance < trueLabels.length && trueLabels[instance] >= 0) {
+        ++confusions[annotators[i]][trueLabels[instance]][labels[i]];
+      }
+    }
+    return confusions;
+  }
+
+  /**
+   * A read-only view of the given instance's annotations.
+   */
+  public AnnotationSet annotationSet(int instance) {
+    Preconditions.checkElementIndex(instance, getNumInstances());
+    return new InstanceAnnotationSet(instance);
+  }
+
+  private class InstanceAnnotationSet implements AnnotationSet {
+    private final int instance;
+
+    private InstanceAnnotationSet(int instance) {
+      this.instance = instance;
+    }
+
+    @Override
+    public SparseRealMatrix getLabelAnnotations() {
+      if (numAnnotators == 0 || numClasses == 0) {
+        return SparseRealMatrices.nullRowSparseMatrix(numClasses);
+      }
+      return new InstanceLabelAnnotations(instance);
+    }
+
+    @Override
+    public Collection<FlatInstance<SparseFeatureVector, Integer>> getRawAnnotations() {
+      final int start = offsets[instance];
+      final int size = offsets[instance + 1] - start;
+      return Collections.unmodifiableList(new AbstractList<FlatInstance<SparseFeatureVector, Integer>>() {
+        @Override
+        public FlatInstance<SparseFeatureVector, Integer> get(int index) {
+          Preconditions.checkElementIndex(index, size);
+          int i = start + index;
+          return new BasicFlatInstance<SparseFeatureVector, Integer>(instance, rawSources[instance],
+              annotators[i], labels[i], null, toTimestamp(startTimestamps[i]), toTimestamp(endTimestamps[i]));
+        }
+
+        @Override
+        public int size() {
+          return size;
+        }
+      });
+    }
+
+    @Override
+    public SparseRealVector getRegressandAnnotationMeans() {
+      return null;
+    }
+
+    @Override
+    public SparseRealVector getRegressandAnnotationVariances() {
+      return null;
+    }
+
+    @Override
+    public String toString() {
+      return "" + getLabelAnnotations();
+    }
+  }
+
+  private static Long toTimestamp(long timestamp) {
+    return timestamp == FlatInstance.NULL_TIMESTAMP ? null : timestamp;
+  }
+
+  /**
+   * [annotator][label] = count for a single instance, read directly from
+   * the store. Read-only. walkInOptimizedOrder visits only the non-zero
+   * entries, in (annotator, label) order.
+   */
+  private class InstanceLabelAnnotations extends AbstractRealMatrix implements SparseRealMatrix {
+    private final int instance;
+
+    private InstanceLabelAnnotations(int instance) {
+      this.instance = instance;
+    }
+
+    @Override
+    public int getRowDimension() {
+      return numAnnotators;
+    }
+
+    @Override
+    public int getColumnDimension() {
+      return numClasses;
+    }
+
+    @Override
+    public double getEntry(int row, int column) {
+      MatrixUtils.checkMatrixIndex(this, row, column);
+      int count = 0;
+      for (int i = offsets[instance]; i < offsets[instance + 1] && annotators[i] <= row; i++) {
+        if (annotators[i] == row && labels[i] == column) {
+          ++count;
+        }
+      }
+      return count;
+    }
+
+    @Override
+    public void setEntry(int row, int column, double value) {
+      throw new UnsupportedOperationException("annotation store views are read-only");
+    }
+
+    @Override
+    public RealMatrix createMatrix(int rowDimension, int columnDimension) {
+      return new OpenMapRealMatrix(rowDimension, columnDimension);
+    }
+
+    @Override
+    public RealMatrix copy() {
+      final RealMatrix copy = new OpenMapRealMatrix(numAnnotators, numClasses);
+      walkInOptimizedOrder(new AbstractRealMatrixPreservingVisitor() {
+        @Override
+        public void visit(int row, int column, double value) {
+          copy.setEntry(row, column, value);
+        }
+      });
+      return copy;
+    }
+
+    @Override
+    public double walkInOptimizedOrder(RealMatrixPreservingVisitor visitor) {
+      visitor.start(numAnnotators, numClasses, 0, numAnnotators - 1, 0, numClasses - 1);
+      int end = offsets[instance + 1];
+      int i = offsets[instance];
+      while (i < end) {
+        // runs of identical (annotator, label) pairs are adjacent
+        int j = i + 1;
+        while (j < end && annotators[j] == annotators[i] && labels[j] == labels[i]) {
+          ++j;
+        }
+        visitor.visit(annotators[i], labels[i], j - i);
+        i = j;
+      }
+      return visitor.end();
+    }
+  }
+
+}
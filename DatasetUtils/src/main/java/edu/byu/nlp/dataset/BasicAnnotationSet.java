@@ -10,6 +10,7 @@ import edu.byu.nlp.data.FlatInstance;
 import edu.byu.nlp.data.types.AnnotationSet;
 import edu.byu.nlp.data.types.SparseFeatureVector;
 import edu.byu.nlp.math.SparseRealMatrices;
+import edu.byu.nlp.util.IntTableCounter;
 import edu.byu.nlp.util.TableCounter;
 import edu.byu.nlp.util.TableCounter.SparseTableVisitor;
 
@@ -63,6 +64,23 @@ public class BasicAnnotationSet implements AnnotationSet{
 		return annotationSet;
 	}
 	
+	/**
+	 * Summarize the annotations contained in an int table:  
+	 * table[instanceId][annotatorId][class] = count
+	 * for a single row instanceId
+	 */
+	public static AnnotationSet fromCountTable(int instanceId, int numAnnotators, int numClasses, IntTableCounter table, 
+	    Collection<FlatInstance<SparseFeatureVector,Integer>> rawAnnotationValues){
+		final BasicAnnotationSet annotationSet = new BasicAnnotationSet(numAnnotators, numClasses, rawAnnotationValues);
+		table.visitRowEntriesSparsely(instanceId, new IntTableCounter.SparseTableVisitor() {
+			@Override
+			public void visitEntry(int row, int annotator, int label, int count) {
+				annotationSet.getLabelAnnotations().setEntry(annotator, label, count);
+			}
+		});
+		return annotationSet;
+	}
+	
 	
 	@Override
 	public SparseRealVector getRegressandAnnotationMeans() {
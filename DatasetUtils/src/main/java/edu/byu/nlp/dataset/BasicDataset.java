@@ -1,15 +1,19 @@
 package edu.byu.nlp.dataset;
 
+import java.lang.ref.WeakReference;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
 
 import org.apache.commons.math3.random.RandomGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -21,6 +25,7 @@ import edu.byu.nlp.data.types.DatasetInstance;
 import edu.byu.nlp.data.types.Measurement;
 import edu.byu.nlp.util.Collections3;
 import edu.byu.nlp.util.Indexer;
+import edu.byu.nlp.util.Integers;
 
 public class BasicDataset implements Dataset {
 	private static final Logger logger = LoggerFactory.getLogger(BasicDataset.class);
@@ -33,6 +38,10 @@ public class BasicDataset implements Dataset {
 		this.instances = Lists.newArrayList(other);
 		this.measurements = Sets.newHashSet(other.getMeasurements());
 		this.info = other.getInfo();
+		if (other instanceof BasicDataset){
+			// same instances: share the other dataset's index as is (if it has been built)
+			this.instanceIndex = ((BasicDataset) other).instanceIndex;
+		}
 	}
 	
 	/**
@@ -54,9 +63,9 @@ public class BasicDataset implements Dataset {
 		int numTokens, int numTokensWithAnnotations, int numTokensWithLabels, int numTokensWithObservedLabels, int numAnnotations,
     IndexerCalculator<String, String> indexers){
 		this(instances, measurements, new Info(source, 
-				numDocuments, numDocumentsWithLabels, numDocumentsWithObservedLabels, 
-				numTokens, numTokensWithLabels, numTokensWithObservedLabels,  
-				indexers, instances));
+				numDocuments, numDocumentsWithLabels, numDocumentsWithObservedLabels, -1, 
+				numTokens, numTokensWithLabels, numTokensWithObservedLabels, numTokensWithAnnotations, 
+				numAnnotations, indexers, instances));
 	}
 	
 	/**
@@ -73,7 +82,8 @@ public class BasicDataset implements Dataset {
 
 	@Override
 	public Iterator<DatasetInstance> iterator() {
-		return instances.iterator();
+		// (removing instances would leave the counts and the instance index stale)
+		return Iterators.unmodifiableIterator(instances.iterator());
 	}
 
 	@Override
@@ -104,15 +114,51 @@ public class BasicDataset implements Dataset {
 		private int numClasses;
 		private IndexerCalculator<String, String> indexers;
 		private Iterable<DatasetInstance> instances;
-		private int numAnnotations = -1;
-		private int numDocumentsWithAnnotations = -1;
-		private int numTokensWithAnnotations = -1;
+		// null until counted (on demand); then kept current by the instances' 
+		// deltas (see AnnotationCounts); written only while holding this info's lock
+		private volatile AnnotationCounts annotationCounts;
 
+		/**
+		 * Creates an info whose annotation counts are computed from 
+		 * the instances when first requested.
+		 */
 		public Info(String source, 
 				int numDocuments, int numDocumentsWithLabels, int numDocumentsWithObservedLabels, 
 				int numTokens, int numTokensWithLabels, int numTokensWithObservedLabels,
 				IndexerCalculator<String, String> indexers, 
 				Iterable<DatasetInstance> instances){
+			this(source, numDocuments, numDocumentsWithLabels, numDocumentsWithObservedLabels, -1, 
+					numTokens, numTokensWithLabels, numTokensWithObservedLabels, -1, -1, 
+					indexers, instances);
+		}
+		
+		/**
+		 * Creates an info with known annotation counts, which are taken to 
+		 * be current. Any of the annotation counts may be -1 (unknown), in 
+		 * which case all three are computed on demand. Known counts are 
+		 * registered with the instances right away.
+		 */
+		public Info(String source, 
+				int numDocuments, int numDocumentsWithLabels, int numDocumentsWithObservedLabels, int numDocumentsWithAnnotations,
+				int numTokens, int numTokensWithLabels, int numTokensWithObservedLabels, int numTokensWithAnnotations,
+				int numAnnotations, IndexerCalculator<String, String> indexers, 
+				Iterable<DatasetInstance> instances){
+			this(source, numDocuments, numDocumentsWithLabels, numDocumentsWithObservedLabels, 
+					numTokens, numTokensWithLabels, numTokensWithObservedLabels, 
+					(numAnnotations==-1 || numDocumentsWithAnnotations==-1 || numTokensWithAnnotations==-1)? null: 
+						AnnotationCounts.given(numAnnotations, numDocumentsWithAnnotations, numTokensWithAnnotations, instances), 
+					indexers, instances);
+		}
+
+		/**
+		 * Creates an info with the given annotation counts, which must be 
+		 * registered with the instances (null counts are computed on demand).
+		 */
+		Info(String source, 
+				int numDocuments, int numDocumentsWithLabels, int numDocumentsWithObservedLabels, 
+				int numTokens, int numTokensWithLabels, int numTokensWithObservedLabels, 
+				AnnotationCounts annotationCounts, IndexerCalculator<String, String> indexers, 
+				Iterable<DatasetInstance> instances){
 			this.source=source;
 			this.numDocuments=numDocuments;
 			this.numDocumentsWithLabels=numDocumentsWithLabels;
@@ -124,6 +170,7 @@ public class BasicDataset implements Dataset {
 			this.numFeatures=indexers.getWordIndexer().size();
 			this.numClasses=indexers.getLabelIndexer().size();
 			this.indexers=indexers;
+			this.annotationCounts=annotationCounts;
 		}
 		
 		@Override
@@ -138,10 +185,7 @@ public class BasicDataset implements Dataset {
 
 		@Override
 		public int getNumDocumentsWithAnnotations() {
-			if (numDocumentsWithAnnotations ==-1){
-				numDocumentsWithAnnotations = Datasets.numDocumentsWithAnnotationsIn(instances);
-			}
-			return numDocumentsWithAnnotations;
+			return annotationCounts().numDocuments();
 		}
 
 		@Override
@@ -211,10 +255,7 @@ public class BasicDataset implements Dataset {
 
 		@Override
 		public int getNumTokensWithAnnotations() {
-			if (numTokensWithAnnotations ==-1){
-				numTokensWithAnnotations = Datasets.numTokensWithAnnotationsIn(instances);
-			}
-			return numTokensWithAnnotations;
+			return annotationCounts().numTokens();
 		}
 
 		@Override
@@ -259,43 +300,237 @@ public class BasicDataset implements Dataset {
 
 		@Override
 		public int getNumAnnotations() {
-			if (numAnnotations==-1){
-				numAnnotations = Datasets.numAnnotationsIn(instances);
+			return Integers.fromDouble(annotationCounts().annotationSum(), Datasets.INT_CAST_THRESHOLD);
+		}
+
+		/**
+		 * The annotation counts, counted from the instances when first 
+		 * requested and kept current by the instances after that. 
+		 */
+		private AnnotationCounts annotationCounts(){
+			AnnotationCounts counts = this.annotationCounts;
+			if (counts==null){
+				synchronized (this) {
+					counts = this.annotationCounts;
+					if (counts==null){
+						counts = AnnotationCounts.of(instances);
+						this.annotationCounts = counts;
+					}
+				}
 			}
-			return numAnnotations;
+			return counts;
+		}
+
+		/**
+		 * The annotation counts if they have been counted, else null 
+		 * (never counts them).
+		 */
+		AnnotationCounts currentAnnotationCounts(){
+			return annotationCounts;
 		}
 
 		/**
 		 * Annotations are the only mutable aspect of a dataset. They were 
 		 * made mutable purely for expediency reasons--it would probably be more ideal  
 		 * to refactor so that this is not necessary.
+		 * 
+		 * Recounts the annotations of this dataset's instances after they were 
+		 * changed directly (e.g., through their label annotation matrices). The 
+		 * differences are sent to every dataset containing the instances, so 
+		 * only this dataset's instances are revisited. 
 		 */
 		@Override
 		public void annotationsChanged() {
-			this.numAnnotations = -1;
-			this.numTokensWithAnnotations = -1;
-			this.numDocumentsWithAnnotations = -1;
+			AnnotationCounts counts = this.annotationCounts;
+			if (counts==null){
+				return;
+			}
+			for (DatasetInstance inst: instances){
+				inst.getInfo().annotationsChanged();
+			}
+			if (counts.hasUnregisteredInstances()){
+				// (their changes can't be sent, so count again)
+				synchronized (this) {
+					if (this.annotationCounts==counts){
+						this.annotationCounts = null;
+					}
+				}
+			}
 		}
 		
 	}
 
 	/**
-	 * Cached instances lookups. The cache is not copied when a dataset is 
-	 * copied or combined with another. This leads to some inefficiency by 
-	 * allowing us to avoid lots of messy bookkeeping. We never need to 
-	 * update our cache since datasets are immutable (at least wrt instances).
+	 * A dataset's annotation counts. They are counted once and then kept 
+	 * current by the instances, which send them every change to their 
+	 * annotations (see {@link BasicDatasetInstance.InstanceInfo}), so no 
+	 * change to any dataset sharing the instances requires a recount. The 
+	 * counters are atomic, since the instances may change from many threads 
+	 * at once. The number of annotations is kept as the sum of the instances' 
+	 * label annotation counts, which need not be integral (only 
+	 * {@link Info#getNumAnnotations()} requires it to be).
+	 * 
+	 * Instances that are not {@link BasicDatasetInstance}s can't send their 
+	 * changes; they are counted as they were when the counts were made (until 
+	 * {@link Info#annotationsChanged()} has the counts made again).
 	 */
-	private Map<String,DatasetInstance> instanceMap = null; // cache indices
+	static class AnnotationCounts {
+		// registered with the instances (so that they don't keep the counts alive)
+		final WeakReference<AnnotationCounts> reference = new WeakReference<AnnotationCounts>(this);
+		private final DoubleAdder annotationSum = new DoubleAdder();
+		private final AtomicInteger numDocuments = new AtomicInteger();
+		private final AtomicInteger numTokens = new AtomicInteger();
+		private volatile boolean hasUnregisteredInstances = false;
+
+		private AnnotationCounts(){}
+
+		/**
+		 * The counts of no instances (see {@link #count(DatasetInstance)}).
+		 */
+		static AnnotationCounts empty(){
+			return new AnnotationCounts();
+		}
+
+		/**
+		 * Counts the given instances, registering with them.
+		 */
+		static AnnotationCounts of(Iterable<DatasetInstance> instances){
+			AnnotationCounts counts = empty();
+			for (DatasetInstance inst: instances){
+				counts.count(inst);
+			}
+			return counts;
+		}
+
+		/**
+		 * Counts that are known to be those of the given instances, 
+		 * registering with them.
+		 */
+		static AnnotationCounts given(double annotationSum, int numDocuments, int numTokens, Iterable<DatasetInstance> instances){
+			AnnotationCounts counts = new AnnotationCounts();
+			counts.add(annotationSum, numDocuments, numTokens);
+			for (DatasetInstance inst: instances){
+				if (inst instanceof BasicDatasetInstance && inst.getInfo() instanceof BasicDatasetInstance.InstanceInfo){
+					((BasicDatasetInstance.InstanceInfo) inst.getInfo()).register(counts, inst.getNumTokens(), false);
+				}
+				else{
+					counts.hasUnregisteredInstances = true;
+				}
+			}
+			return counts;
+		}
+
+		/**
+		 * Adds the given instance to the counts (and registers with it).
+		 */
+		void count(DatasetInstance inst){
+			if (inst instanceof BasicDatasetInstance && inst.getInfo() instanceof BasicDatasetInstance.InstanceInfo){
+				((BasicDatasetInstance.InstanceInfo) inst.getInfo()).register(this, inst.getNumTokens(), true);
+			}
+			else{
+				hasUnregisteredInstances = true;
+				boolean annotated = inst.hasAnnotations();
+				add(BasicDatasetInstance.annotationSumOf(inst), annotated? 1: 0, annotated? inst.getNumTokens(): 0);
+			}
+		}
+
+		void add(double annotationSumDelta, int numDocumentsDelta, int numTokensDelta){
+			if (annotationSumDelta!=0){
+				annotationSum.add(annotationSumDelta);
+			}
+			if (numDocumentsDelta!=0){
+				numDocuments.addAndGet(numDocumentsDelta);
+			}
+			if (numTokensDelta!=0){
+				numTokens.addAndGet(numTokensDelta);
+			}
+		}
+
+		double annotationSum(){
+			return annotationSum.sum();
+		}
+
+		int numDocuments(){
+			return numDocuments.get();
+		}
+
+		int numTokens(){
+			return numTokens.get();
+		}
+
+		boolean hasUnregisteredInstances(){
+			return hasUnregisteredInstances;
+		}
+	}
+
+	/**
+	 * Instance lookups by id go through a dense array (see {@link InstanceIndex}), 
+	 * built on first use. Datasets derived from another dataset (see 
+	 * {@link #shareInstanceIndex(Dataset...)}) share their parent's array rather than 
+	 * building their own, unless they are much smaller than the parent (so that 
+	 * small subsets don't keep the whole parent alive). Lookups never lock: the 
+	 * index is immutable, and if two threads race to build it, both build the same thing.  
+	 */
+	private static final int MAX_SHARED_INDEX_RATIO = 4;
+	private volatile InstanceIndex instanceIndex = null;
+	private volatile InstanceIndex parentIndex = null; // only until instanceIndex is built
+	private volatile Map<String,DatasetInstance> rawSourceMap = null; // only for sources the indexer doesn't resolve
+
+	/**
+	 * Marks this dataset as derived from the given datasets (all of its 
+	 * instances are instances of theirs), so that its instance index can share 
+	 * the first parent's array. Has no effect if this dataset has less than 
+	 * 1/{@value #MAX_SHARED_INDEX_RATIO} of that parent's instances; if some 
+	 * instances are not in that parent's index, this dataset's index is built 
+	 * from scratch (see {@link InstanceIndex#restrictTo(Iterable)}).
+	 */
+	void shareInstanceIndex(Dataset... parents){
+		if (parents.length==0 || !(parents[0] instanceof BasicDataset)){
+			return;
+		}
+		BasicDataset parent = (BasicDataset) parents[0];
+		if ((long) instances.size() * MAX_SHARED_INDEX_RATIO < parent.instances.size()){
+			return;
+		}
+		this.parentIndex = parent.getInstanceIndex();
+	}
+
+	public InstanceIndex getInstanceIndex(){
+		InstanceIndex index = this.instanceIndex;
+		if (index==null){
+			InstanceIndex parent = this.parentIndex;
+			index = (parent==null)? InstanceIndex.of(instances): parent.restrictTo(instances);
+			this.instanceIndex = index;
+			this.parentIndex = null;
+		}
+		return index;
+	}
+
 	@Override
-	public synchronized DatasetInstance lookupInstance(String source) {
-		if (this.instanceMap==null){
-			logger.info("regenerating instance lookup cache for dataset "+getInfo().getSource());
-			this.instanceMap = Maps.newHashMap();
-			for (DatasetInstance inst: this){
-				instanceMap.put(inst.getInfo().getRawSource(), inst);
+	public DatasetInstance lookupInstance(int instanceId) {
+		return getInstanceIndex().get(instanceId);
+	}
+
+	@Override
+	public DatasetInstance lookupInstance(String source) {
+		Indexer<String> instanceIdIndexer = getInfo().getInstanceIdIndexer();
+		if (instanceIdIndexer!=null){
+			DatasetInstance inst = lookupInstance(instanceIdIndexer.indexOf(source));
+			if (inst!=null && source!=null && source.equals(inst.getInfo().getRawSource())){
+				return inst;
+			}
+		}
+		// the indexer didn't resolve the source (e.g., ids were not assigned by it)
+		Map<String,DatasetInstance> map = this.rawSourceMap;
+		if (map==null){
+			logger.info("generating raw source lookup cache for dataset "+getInfo().getSource());
+			map = Maps.newHashMap();
+			for (DatasetInstance inst: instances){
+				map.put(inst.getInfo().getRawSource(), inst);
 			}
+			this.rawSourceMap = map;
 		}
-		return this.instanceMap.get(source);
+		return map.get(source);
 	}
 
   @Override
@@ -1,8 +1,14 @@
 package edu.byu.nlp.dataset;
 
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+
 import edu.byu.nlp.data.types.AnnotationSet;
 import edu.byu.nlp.data.types.DatasetInstance;
 import edu.byu.nlp.data.types.DatasetInstanceInfo;
@@ -17,6 +23,7 @@ public class BasicDatasetInstance implements DatasetInstance {
 	private static final Logger logger = LoggerFactory.getLogger(BasicDatasetInstance.class);
 	  
 	private SparseFeatureVector featureVector;
+	private int numTokens;
 
 	private Integer label;
 	private boolean isLabelConcealed = false;
@@ -49,6 +56,8 @@ public class BasicDatasetInstance implements DatasetInstance {
 			Integer label, boolean isLabelConcealed, Double regressand, boolean isRegressandConcealed, 
 			AnnotationSet annotations, DatasetInstanceInfo info){
 		this.featureVector = vector;
+		// allow fractional document features
+		this.numTokens = (vector==null)? 0: Integers.fromDouble(vector.sum(), 1);
 		this.label=label;
 		this.isLabelConcealed=isLabelConcealed;
 		this.regressand=regressand;
@@ -116,10 +125,27 @@ public class BasicDatasetInstance implements DatasetInstance {
 	@Override
 	public boolean hasAnnotations() {
 		return 
-		    SparseRealMatrices.sum(getAnnotations().getLabelAnnotations())>0 ||
+		    annotationSumOf(this)>0 ||
 				SparseRealVectors.sum(getAnnotations().getRegressandAnnotationMeans())>0;
 	}
 
+	/**
+	 * The sum of the instance's label annotation counts (which need not be 
+	 * integers), cached (and kept up to date) by the info if it is an 
+	 * {@link InstanceInfo}.
+	 */
+	static double annotationSumOf(DatasetInstance inst){
+		if (inst.getInfo() instanceof InstanceInfo){
+			return ((InstanceInfo) inst.getInfo()).getAnnotationSum();
+		}
+		return SparseRealMatrices.sum(inst.getAnnotations().getLabelAnnotations());
+	}
+
+	@Override
+	public int getNumTokens() {
+		return numTokens;
+	}
+
 	@Override
 	public AnnotationSet getAnnotations() {
 		return annotations;
@@ -131,9 +157,20 @@ public class BasicDatasetInstance implements DatasetInstance {
 	}
 	
 	
+	/**
+	 * Besides describing an instance, an InstanceInfo keeps the annotation 
+	 * counts of every dataset containing the instance (see 
+	 * {@link BasicDataset.AnnotationCounts}) up to date: the datasets register 
+	 * when they first count the instance, and every later change to the 
+	 * instance's annotations is sent to them as a delta. Registrations are 
+	 * weak, so they don't keep datasets alive. All of this state is guarded 
+	 * by the lock of the instance's AnnotationSet.
+	 */
 	public static class InstanceInfo implements DatasetInstanceInfo{
 		private int source;
-		private int numAnnotations = -1;
+		private volatile double annotationSum = Double.NaN; // NaN if unknown
+		private boolean annotated; // only maintained while there are registrations
+		private List<Registration> registrations = null;
 		private Indexer<String> labelIndexer;
 		private AnnotationSet annotations;
     private String rawSource;
@@ -154,10 +191,24 @@ public class BasicDatasetInstance implements DatasetInstance {
 		}
 		@Override
 		public int getNumAnnotations() {
-			if (numAnnotations==-1){
-				numAnnotations = Integers.fromDouble(SparseRealMatrices.sum(annotations.getLabelAnnotations()), Datasets.INT_CAST_THRESHOLD);
+			return Integers.fromDouble(getAnnotationSum(), Datasets.INT_CAST_THRESHOLD);
+		}
+		/**
+		 * The sum of the label annotation counts; unlike 
+		 * {@link #getNumAnnotations()}, this need not be an integer. 
+		 */
+		double getAnnotationSum() {
+			double value = annotationSum;
+			if (Double.isNaN(value)){
+				// (under the lock that deltas are applied with, so that none is lost)
+				synchronized (annotations) {
+					if (Double.isNaN(annotationSum)){
+						annotationSum = SparseRealMatrices.sum(annotations.getLabelAnnotations());
+					}
+					value = annotationSum;
+				}
 			}
-			return numAnnotations;
+			return value;
 		}
 		@Override
 		public String toString() {
@@ -167,9 +218,83 @@ public class BasicDatasetInstance implements DatasetInstance {
 		public Indexer<String> getLabelIndexer() {
 			return labelIndexer;
 		}
+		/**
+		 * Recounts this instance's annotations (after they were changed 
+		 * directly), and sends the difference to the datasets containing it.
+		 */
 		@Override
 		public void annotationsChanged() {
-			this.numAnnotations = -1;
+			synchronized (annotations) {
+				if (registrations==null){
+					this.annotationSum = Double.NaN;
+					return;
+				}
+				double previousSum = annotationSum;
+				boolean previouslyAnnotated = annotated;
+				annotationSum = SparseRealMatrices.sum(annotations.getLabelAnnotations());
+				annotated = isAnnotated(annotationSum);
+				sendChange(annotationSum - previousSum, previouslyAnnotated);
+			}
+		}
+		/**
+		 * Applies the effect of added (or, with a negative delta, removed) 
+		 * annotations without recomputing the count, and sends it to the 
+		 * datasets containing this instance. Callers must hold the lock of the 
+		 * instance's AnnotationSet.
+		 */
+		public void annotationsChanged(int numAnnotationsDelta) {
+			if (Double.isNaN(annotationSum)){
+				return;
+			}
+			annotationSum += numAnnotationsDelta;
+			if (registrations!=null){
+				boolean previouslyAnnotated = annotated;
+				annotated = isAnnotated(annotationSum);
+				sendChange(numAnnotationsDelta, previouslyAnnotated);
+			}
+		}
+		/**
+		 * Registers a dataset's counts to be sent this instance's changes, 
+		 * and (if count) adds the instance as it is now to the counts. The 
+		 * instance has numTokens tokens as the dataset sees it.
+		 */
+		void register(BasicDataset.AnnotationCounts counts, int numTokens, boolean count) {
+			synchronized (annotations) {
+				getAnnotationSum();
+				if (registrations==null){
+					registrations = Lists.newArrayListWithCapacity(2);
+					annotated = isAnnotated(annotationSum);
+				}
+				else{
+					// (so that instances that never change don't collect registrations of datasets that are gone)
+					sendChange(0, annotated);
+				}
+				registrations.add(new Registration(counts.reference, numTokens));
+				if (count){
+					counts.add(annotationSum, annotated? 1: 0, annotated? numTokens: 0);
+				}
+			}
+		}
+		private boolean isAnnotated(double annotationSum){
+			// (as in BasicDatasetInstance.hasAnnotations())
+			return annotationSum>0 || SparseRealVectors.sum(annotations.getRegressandAnnotationMeans())>0;
+		}
+		/**
+		 * Sends a change to the registered counts, dropping those that are gone.
+		 */
+		private void sendChange(double annotationSumDelta, boolean previouslyAnnotated){
+			int numDocumentsDelta = (annotated==previouslyAnnotated)? 0: (annotated? 1: -1);
+			for (Iterator<Registration> it = registrations.iterator(); it.hasNext(); ){
+				Registration registration = it.next();
+				BasicDataset.AnnotationCounts counts = registration.counts.get();
+				if (counts==null){
+					// the dataset is gone
+					it.remove();
+				}
+				else{
+					counts.add(annotationSumDelta, numDocumentsDelta, numDocumentsDelta*registration.numTokens);
+				}
+			}
 		}
     @Override
     public String getRawSource() {
@@ -178,6 +303,15 @@ public class BasicDatasetInstance implements DatasetInstance {
 		
 	}
 
+	private static class Registration {
+		final WeakReference<BasicDataset.AnnotationCounts> counts;
+		final int numTokens;
+		Registration(WeakReference<BasicDataset.AnnotationCounts> counts, int numTokens){
+			this.counts=counts;
+			this.numTokens=numTokens;
+		}
+	}
+
 
 
 }
@@ -0,0 +1,248 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.dataset;
+
+import java.util.Collection;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+import edu.byu.nlp.data.BasicFlatInstance;
+import edu.byu.nlp.data.FlatInstance;
+import edu.byu.nlp.data.types.AnnotationSet;
+import edu.byu.nlp.data.types.Dataset;
+import edu.byu.nlp.data.types.DatasetInfo;
+import edu.byu.nlp.data.types.DatasetInstance;
+import edu.byu.nlp.data.types.DatasetInstanceInfo;
+import edu.byu.nlp.data.types.Measurement;
+import edu.byu.nlp.data.types.SparseFeatureVector;
+import edu.byu.nlp.math.SparseRealMatrices;
+
+/**
+ * Adds annotations to a dataset from many threads at once. Unlike
+ * {@link Datasets#addAnnotationToDataset(Dataset, FlatInstance)}, instances
+ * are looked up by int id in an array built once at construction, each
+ * update locks only the AnnotationSet of the instance it touches, and the
+ * annotation counts of the dataset (and of every other dataset sharing the
+ * instance) are adjusted by deltas instead of being invalidated and
+ * recomputed (see {@link BasicDatasetInstance.InstanceInfo}).
+ *
+ * Instance ids are the ids assigned by the dataset's instance id indexer
+ * (i.e., {@link DatasetInstanceInfo#getSource()}). The set of instances in
+ * the dataset must not change while the ingestor is in use.
+ */
+public class ConcurrentAnnotationIngestor {
+
+  private final Dataset dataset;
+  private final DatasetInstance[] instances;
+  private final int numAnnotators;
+  private final int numLabels;
+
+  public ConcurrentAnnotationIngestor(Dataset dataset) {
+    Preconditions.checkNotNull(dataset);
+    this.dataset = dataset;
+    DatasetInfo info = dataset.getInfo();
+    this.numAnnotators = info.getAnnotatorIdIndexer().size();
+    this.numLabels = info.getLabelIndexer().size();
+    this.instances = new DatasetInstance[info.getInstanceIdIndexer().size()];
+    for (DatasetInstance inst: dataset) {
+      int id = inst.getInfo().getSource();
+      Preconditions.checkState(0 <= id && id < instances.length,
+          "instance "+inst.getInfo().getRawSource()+" has an id ("+id+") unknown to the instance id indexer");
+      instances[id] = inst;
+    }
+    // count now; from then on the instances keep the counts current
+    info.getNumAnnotations();
+    info.getNumDocumentsWithAnnotations();
+    info.getNumTokensWithAnnotations();
+  }
+
+  public Dataset getDataset() {
+    return dataset;
+  }
+
+  /**
+   * The instance with the given int id, or null if it is not in the dataset.
+   */
+  public DatasetInstance lookupInstance(int instanceId) {
+    Preconditions.checkElementIndex(instanceId, instances.length, "instance id");
+    return instances[instanceId];
+  }
+
+  public void add(FlatInstance<SparseFeatureVector, Integer> ann) {
+    Changes changes = new Changes();
+    add(ann, changes);
+    changes.applyTo(dataset.getInfo());
+  }
+
+  public void addAll(Iterable<? extends FlatInstance<SparseFeatureVector, Integer>> annotations) {
+    Changes changes = new Changes();
+    for (FlatInstance<SparseFeatureVector, Integer> ann: annotations) {
+      add(ann, changes);
+    }
+    changes.applyTo(dataset.getInfo());
+  }
+
+  /**
+   * Adds a single label annotation. Timestamps may be null.
+   */
+  public void add(int instanceId, int annotator, int label, Long startTimestamp, Long endTimestamp) {
+    Changes changes = new Changes();
+    DatasetInstance inst = checkedInstance(instanceId, annotator, label);
+    update(inst, newAnnotation(inst, annotator, label, startTimestamp, endTimestamp), annotator, label, 1, changes);
+    changes.applyTo(dataset.getInfo());
+  }
+
+  /**
+   * Adds the label annotations (instanceIds[i], annotators[i], labels[i]).
+   * Either timestamp array may be null; entries equal to
+   * {@link FlatInstance#NULL_TIMESTAMP} are treated as missing.
+   */
+  public void addAll(int[] instanceIds, int[] annotators, int[] labels, long[] startTimestamps, long[] endTimestamps) {
+    Preconditions.checkArgument(instanceIds.length == annotators.length && instanceIds.length == labels.length,
+        "instanceIds, annotators and labels must have the same length");
+    Preconditions.checkArgument(startTimestamps == null || startTimestamps.length == instanceIds.length,
+        "startTimestamps must be null or have one entry per annotation");
+    Preconditions.checkArgument(endTimestamps == null || endTimestamps.length == instanceIds.length,
+        "endTimestamps must be null or have one entry per annotation");
+    Changes changes = new Changes();
+    for (int i = 0; i < instanceIds.length; i++) {
+      DatasetInstance inst = checkedInstance(instanceIds[i], annotators[i], labels[i]);
+      FlatInstance<SparseFeatureVector, Integer> ann = newAnnotation(inst, annotators[i], labels[i],
+          timestamp(startTimestamps, i), timestamp(endTimestamps, i));
+      update(inst, ann, annotators[i], labels[i], 1, changes);
+    }
+    changes.applyTo(dataset.getInfo());
+  }
+
+  /**
+   * Removes an annotation previously added to the dataset.
+   */
+  public void remove(FlatInstance<SparseFeatureVector, Integer> ann) {
+    Preconditions.checkNotNull(ann);
+    Changes changes = new Changes();
+    if (ann.isMeasurement()) {
+      Collection<Measurement> measurements = dataset.getMeasurements();
+      synchronized (measurements) {
+        measurements.remove(ann.getMeasurement());
+      }
+    }
+    if (ann.getAnnotation() != null) {
+      DatasetInstance inst = checkedInstance(ann);
+      update(inst, ann, ann.getAnnotator(), ann.getAnnotation(), -1, changes);
+    }
+    changes.applyTo(dataset.getInfo());
+  }
+
+  private void add(FlatInstance<SparseFeatureVector, Integer> ann, Changes changes) {
+    Preconditions.checkNotNull(ann);
+    if (ann.isMeasurement()) {
+      Collection<Measurement> measurements = dataset.getMeasurements();
+      synchronized (measurements) {
+        measurements.add(ann.getMeasurement());
+      }
+    }
+    if (ann.getAnnotation() != null) {
+      DatasetInstance inst = checkedInstance(ann);
+      update(inst, new BasicFlatInstance<SparseFeatureVector, Integer>(
+          ann.getInstanceId(), ann.getSource(), ann.getAnnotator(), ann.getAnnotation(), ann.getMeasurement(),
+          ann.getStartTimestamp(), ann.getEndTimestamp()),
+          ann.getAnnotator(), ann.getAnnotation(), 1, changes);
+    }
+  }
+
+  /**
+   * Adds (delta=1) or removes (delta=-1) a raw annotation and its label
+   * count while holding the instance's AnnotationSet lock. The instance
+   * sends the change to the datasets containing it; changes it can't send
+   * are recorded in changes.
+   */
+  static void update(DatasetInstance inst, FlatInstance<SparseFeatureVector, Integer> ann,
+      int annotator, int label, int delta, Changes changes) {
+    AnnotationSet annotations = inst.getAnnotations();
+    synchronized (annotations) {
+      if (delta > 0) {
+        annotations.getRawAnnotations().add(ann);
+      }
+      else {
+        annotations.getRawAnnotations().remove(ann);
+      }
+      SparseRealMatrices.incrementValueAt(annotations.getLabelAnnotations(), annotator, label, delta);
+
+      DatasetInstanceInfo info = inst.getInfo();
+      if (info instanceof BasicDatasetInstance.InstanceInfo) {
+        ((BasicDatasetInstance.InstanceInfo) info).annotationsChanged(delta);
+      }
+      else {
+        info.annotationsChanged();
+        changes.unsent = true;
+      }
+      changes.any = true;
+    }
+  }
+
+  private DatasetInstance checkedInstance(FlatInstance<SparseFeatureVector, Integer> ann) {
+    DatasetInstance inst = checkedInstance(ann.getInstanceId(), ann.getAnnotator(), ann.getAnnotation());
+    if (ann.getSource() != null) {
+      Preconditions.checkState(Objects.equal(inst.getInfo().getRawSource(), ann.getSource()),
+          "The source of the instance that was looked up ("+inst.getInfo().getRawSource()+
+          ") doesn't match the src of the annotation ("+ann.getSource()+").");
+    }
+    return inst;
+  }
+
+  private DatasetInstance checkedInstance(int instanceId, int annotator, int label) {
+    Preconditions.checkArgument(0 <= instanceId && instanceId < instances.length,
+        "cannot add annotation with invalid instance id "+instanceId+"."
+            + " Must be between 0 and "+instances.length);
+    Preconditions.checkArgument(0 <= annotator && annotator < numAnnotators,
+        "cannot add annotation with invalid annotator id "+annotator+"."
+            + " Must be between 0 and "+numAnnotators);
+    Preconditions.checkArgument(0 <= label && label < numLabels,
+        "cannot add annotation with invalid label "+label+"."
+            + " Must be between 0 and "+numLabels);
+    DatasetInstance inst = instances[instanceId];
+    Preconditions.checkArgument(inst != null, "attempted to annotate an instance "+instanceId+" "
+        + "that is unknown to the dataset recorder (not in the dataset).");
+    return inst;
+  }
+
+  private static FlatInstance<SparseFeatureVector, Integer> newAnnotation(DatasetInstance inst,
+      int annotator, int label, Long startTimestamp, Long endTimestamp) {
+    return new BasicFlatInstance<SparseFeatureVector, Integer>(inst.getInfo().getSource(),
+        inst.getInfo().getRawSource(), annotator, label, null, startTimestamp, endTimestamp);
+  }
+
+  private static Long timestamp(long[] timestamps, int i) {
+    return (timestamps == null || timestamps[i] == FlatInstance.NULL_TIMESTAMP) ? null : timestamps[i];
+  }
+
+  /**
+   * Whether one call made any changes, and whether the instances could send
+   * them all to their datasets themselves.
+   */
+  static class Changes {
+    boolean any;
+    boolean unsent;
+
+    void applyTo(DatasetInfo info) {
+      if (any && (unsent || !(info instanceof BasicDataset.Info))) {
+        info.annotationsChanged();
+      }
+    }
+  }
+
+}
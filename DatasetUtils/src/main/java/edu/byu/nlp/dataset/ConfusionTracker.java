@@ -0,0 +1,451 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.dataset;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import edu.byu.nlp.data.types.Dataset;
+import edu.byu.nlp.data.types.DatasetInstance;
+import edu.byu.nlp.util.IntCountMatrix;
+import edu.byu.nlp.util.ParallelTasks;
+
+/**
+ * Per-annotator confusion matrices that are kept up to date as annotations
+ * are added and removed, rather than being rebuilt from the whole dataset
+ * (compare {@link Datasets#confusionMatricesWrtGoldLabels(Dataset)}).
+ *
+ * Confusions are counted with respect to a reference label per instance:
+ * either a fixed gold label or the instance's current majority-vote label.
+ * In the majority-vote case, when an update flips an instance's majority
+ * vote, all of that instance's annotations are moved to the new reference
+ * row. Ties are sticky: the majority vote only changes when another label
+ * strictly overtakes it (or, on removal, when it is no longer among the
+ * most frequent labels, in which case ties are broken at random, or toward
+ * the lowest label if the tracker has no RandomGenerator).
+ *
+ * Each annotator's matrix is allocated on first use and starts out sparse
+ * (a hash map over cells); it is converted to a dense array once it has
+ * enough non-zero cells. Annotators who never annotate a referenced
+ * instance cost nothing.
+ *
+ * All methods are synchronized, so a tracker may be updated by simulation
+ * threads while being read (e.g., by a dashboard).
+ */
+public class ConfusionTracker {
+
+  private final int numInstances;
+  private final int numAnnotators;
+  private final int numClasses;
+  private final boolean majorityVote;
+  private final RandomGenerator rnd;
+
+  private final int[] referenceLabels; // -1 if none
+  private final IntCountMatrix labelCounts; // instance x label; only when majorityVote
+  private final Int2IntOpenHashMap[] instanceAnnotations; // (annotator*numClasses+label) -> count
+  private final AnnotatorConfusion[] confusions;
+
+  private ConfusionTracker(int numInstances, int numAnnotators, int numClasses, int[] goldLabels, RandomGenerator rnd) {
+    Preconditions.checkArgument(numInstances >= 0 && numAnnotators >= 0 && numClasses >= 0);
+    Preconditions.checkArgument((long) numAnnotators * numClasses <= Integer.MAX_VALUE, "too many annotators");
+    this.numInstances = numInstances;
+    this.numAnnotators = numAnnotators;
+    this.numClasses = numClasses;
+    this.majorityVote = (goldLabels == null);
+    this.rnd = rnd;
+    this.instanceAnnotations = new Int2IntOpenHashMap[numInstances];
+    this.confusions = new AnnotatorConfusion[numAnnotators];
+    if (majorityVote) {
+      this.referenceLabels = new int[numInstances];
+      Arrays.fill(referenceLabels, -1);
+      this.labelCounts = new IntCountMatrix(numInstances, numClasses, true);
+    }
+    else {
+      Preconditions.checkArgument(goldLabels.length == numInstances, "need one gold label per instance");
+      for (int label : goldLabels) {
+        Preconditions.checkArgument(label < numClasses, "invalid gold label "+label);
+      }
+      this.referenceLabels = goldLabels.clone();
+      this.labelCounts = null;
+    }
+  }
+
+  /**
+   * An empty tracker that counts confusions with respect to the given gold
+   * labels (negative for instances without one).
+   */
+  public static ConfusionTracker wrtGoldLabels(int numAnnotators, int numClasses, int[] goldLabels) {
+    return new ConfusionTracker(goldLabels.length, numAnnotators, numClasses, goldLabels, null);
+  }
+
+  /**
+   * An empty tracker that counts confusions with respect to each instance's
+   * current majority-vote label. Ties on removal are broken with rnd, or
+   * toward the lowest label if rnd is null.
+   */
+  public static ConfusionTracker wrtMajorityVoteLabels(int numInstances, int numAnnotators, int numClasses,
+      RandomGenerator rnd) {
+    return new ConfusionTracker(numInstances, numAnnotators, numClasses, null, rnd);
+  }
+
+  /**
+   * A tracker initialized with every annotation in the store, counted with
+   * respect to the given gold labels. Instances are split into numThreads
+   * contiguous partitions that are processed in parallel.
+   */
+  public static ConfusionTracker wrtGoldLabels(AnnotationStore store, int[] goldLabels, int numThreads) {
+    Preconditions.checkArgument(goldLabels.length >= store.getNumInstances(), "need one gold label per instance");
+    ConfusionTracker tracker = wrtGoldLabels(store.getNumAnnotators(), store.getNumClasses(),
+        Arrays.copyOf(goldLabels, store.getNumInstances()));
+    tracker.initialize(store, numThreads);
+    return tracker;
+  }
+
+  /**
+   * A tracker initialized with every annotation in the store, counted with
+   * respect to majority-vote labels (initial ties are broken as in
+   * {@link AnnotationStore#majorityVoteLabels(RandomGenerator)}).
+   * Instances are split into numThreads contiguous partitions that are
+   * processed in parallel.
+   */
+  public static ConfusionTracker wrtMajorityVoteLabels(AnnotationStore store, RandomGenerator rnd, int numThreads) {
+    ConfusionTracker tracker = wrtMajorityVoteLabels(store.getNumInstances(), store.getNumAnnotators(),
+        store.getNumClasses(), rnd);
+    int[] initialLabels = store.majorityVoteLabels(rnd);
+    System.arraycopy(initialLabels, 0, tracker.referenceLabels, 0, initialLabels.length);
+    tracker.initialize(store, numThreads);
+    return tracker;
+  }
+
+  public static ConfusionTracker wrtGoldLabels(Dataset data) {
+    AnnotationStore store = AnnotationStore.fromDataset(data);
+    int[] goldLabels = new int[store.getNumInstances()];
+    Arrays.fill(goldLabels, -1);
+    for (DatasetInstance inst : data) {
+      if (inst.getLabel() != null) {
+        goldLabels[inst.getInfo().getSource()] = inst.getLabel();
+      }
+    }
+    return wrtGoldLabels(store, goldLabels, Runtime.getRuntime().availableProcessors());
+  }
+
+  public static ConfusionTracker wrtMajorityVoteLabels(Dataset data, RandomGenerator rnd) {
+    return wrtMajorityVoteLabels(AnnotationStore.fromDataset(data), rnd, Runtime.getRuntime().availableProcessors());
+  }
+
+  private void initialize(final AnnotationStore store, int numThreads) {
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be positive");
+    int numPartitions = Math.max(1, Math.min(numThreads, store.getNumInstances()));
+    final int partitionSize = (store.getNumInstances() + numPartitions - 1) / numPartitions;
+
+    // each partition touches only its own instances' rows and accumulates
+    // confusions locally; the partial confusions are merged afterwards
+    List<Callable<AnnotatorConfusion[]>> tasks = Lists.newArrayList();
+    for (int p = 0; p < numPartitions; p++) {
+      final int from = p * partitionSize;
+      final int to = Math.min(store.getNumInstances(), from + partitionSize);
+      tasks.add(new Callable<AnnotatorConfusion[]>() {
+        @Override
+        public AnnotatorConfusion[] call() {
+          AnnotatorConfusion[] partial = new AnnotatorConfusion[numAnnotators];
+          for (int instance = from; instance < to; instance++) {
+            int reference = referenceLabels[instance];
+            for (int i = store.start(instance); i < store.end(instance); i++) {
+              int annotator = store.annotatorAt(i), label = store.labelAt(i);
+              annotationsOf(instance).addTo(annotator * numClasses + label, 1);
+              if (majorityVote) {
+                labelCounts.increment(instance, label);
+              }
+              if (reference >= 0) {
+                confusionOf(partial, annotator).add(reference * numClasses + label, 1);
+              }
+            }
+          }
+          return partial;
+        }
+      });
+    }
+
+    List<AnnotatorConfusion[]> partials = ParallelTasks.invokeAll(tasks, numThreads);
+
+    synchronized (this) {
+      for (AnnotatorConfusion[] partial : partials) {
+        for (int annotator = 0; annotator < numAnnotators; annotator++) {
+          if (partial[annotator] != null) {
+            confusionOf(confusions, annotator).addAll(partial[annotator]);
+          }
+        }
+      }
+    }
+  }
+
+  public int getNumInstances() {
+    return numInstances;
+  }
+
+  public int getNumAnnotators() {
+    return numAnnotators;
+  }
+
+  public int getNumClasses() {
+    return numClasses;
+  }
+
+  public synchronized void add(int instance, int annotator, int label) {
+    checkIndices(instance, annotator, label);
+    int oldReference = referenceLabels[instance];
+    int newReference = oldReference;
+    if (majorityVote) {
+      labelCounts.increment(instance, label);
+      if (oldReference < 0 || labelCounts.get(instance, label) > labelCounts.get(instance, oldReference)) {
+        newReference = label;
+      }
+    }
+    if (newReference != oldReference) {
+      moveAnnotations(instance, oldReference, newReference);
+      referenceLabels[instance] = newReference;
+    }
+    annotationsOf(instance).addTo(annotator * numClasses + label, 1);
+    if (newReference >= 0) {
+      confusionOf(confusions, annotator).add(newReference * numClasses + label, 1);
+    }
+  }
+
+  /**
+   * Removes a previously added annotation.
+   *
+   * @throws IllegalStateException if the instance has no such annotation
+   */
+  public synchronized void remove(int instance, int annotator, int label) {
+    checkIndices(instance, annotator, label);
+    int key = annotator * numClasses + label;
+    Int2IntOpenHashMap annotations = instanceAnnotations[instance];
+    Preconditions.checkState(annotations != null && annotations.get(key) > 0,
+        "instance "+instance+" has no annotation of "+label+" by annotator "+annotator);
+    if (annotations.addTo(key, -1) == 1) {
+      annotations.remove(key);
+    }
+    int oldReference = referenceLabels[instance];
+    if (oldReference >= 0) {
+      confusionOf(confusions, annotator).add(oldReference * numClasses + label, -1);
+    }
+    if (majorityVote) {
+      labelCounts.decrement(instance, label);
+      int newReference = oldReference;
+      if (labelCounts.rowTotal(instance) == 0) {
+        newReference = -1;
+      }
+      else if (label == oldReference
+          && labelCounts.get(instance, oldReference) < labelCounts.get(instance, labelCounts.argmax(instance))) {
+        // (ties go to the lowest label if there is no rnd)
+        newReference = (rnd == null) ? labelCounts.argmax(instance) : labelCounts.argmax(instance, rnd);
+      }
+      if (newReference != oldReference) {
+        moveAnnotations(instance, oldReference, newReference);
+        referenceLabels[instance] = newReference;
+      }
+    }
+  }
+
+  /**
+   * The label that the given instance's annotations are currently compared
+   * against (-1 if none).
+   */
+  public synchronized int referenceLabel(int instance) {
+    Preconditions.checkElementIndex(instance, numInstances, "instance");
+    return referenceLabels[instance];
+  }
+
+  public synchronized int[] referenceLabels() {
+    return referenceLabels.clone();
+  }
+
+  /**
+   * The number of times the annotator assigned annotatedClass to an
+   * instance whose reference label is trueClass.
+   */
+  public synchronized int count(int annotator, int trueClass, int annotatedClass) {
+    Preconditions.checkElementIndex(annotator, numAnnotators, "annotator");
+    Preconditions.checkElementIndex(trueClass, numClasses, "true class");
+    Preconditions.checkElementIndex(annotatedClass, numClasses, "annotated class");
+    AnnotatorConfusion confusion = confusions[annotator];
+    return (confusion == null) ? 0 : confusion.get(trueClass * numClasses + annotatedClass);
+  }
+
+  /**
+   * The number of the annotator's annotations on instances that have a
+   * reference label.
+   */
+  public synchronized int numReferencedAnnotations(int annotator) {
+    Preconditions.checkElementIndex(annotator, numAnnotators, "annotator");
+    AnnotatorConfusion confusion = confusions[annotator];
+    return (confusion == null) ? 0 : confusion.total;
+  }
+
+  /**
+   * The fraction of the annotator's referenced annotations that agree with
+   * the reference label (NaN if there are none). O(1).
+   */
+  public synchronized double accuracy(int annotator) {
+    Preconditions.checkElementIndex(annotator, numAnnotators, "annotator");
+    AnnotatorConfusion confusion = confusions[annotator];
+    return (confusion == null || confusion.total == 0) ? Double.NaN : confusion.diagonal / (double) confusion.total;
+  }
+
+  /**
+   * result[true class][annotation class] = count
+   */
+  public synchronized int[][] confusionMatrix(int annotator) {
+    Preconditions.checkElementIndex(annotator, numAnnotators, "annotator");
+    int[][] result = new int[numClasses][numClasses];
+    if (confusions[annotator] != null) {
+      confusions[annotator].copyTo(result);
+    }
+    return result;
+  }
+
+  /**
+   * result[annotator][true class][annotation class] = count (in the same
+   * format as {@link Datasets#confusionMatricesWrtGoldLabels(Dataset)}).
+   */
+  public synchronized int[][][] confusionMatrices() {
+    int[][][] result = new int[numAnnotators][][];
+    for (int annotator = 0; annotator < numAnnotators; annotator++) {
+      result[annotator] = confusionMatrix(annotator);
+    }
+    return result;
+  }
+
+  private void checkIndices(int instance, int annotator, int label) {
+    Preconditions.checkElementIndex(instance, numInstances, "instance");
+    Preconditions.checkElementIndex(annotator, numAnnotators, "annotator");
+    Preconditions.checkElementIndex(label, numClasses, "label");
+  }
+
+  /**
+   * Moves all of the instance's (recorded) annotations from the confusion
+   * row of one reference label to another (either may be -1).
+   */
+  private void moveAnnotations(int instance, int from, int to) {
+    Int2IntOpenHashMap annotations = instanceAnnotations[instance];
+    if (annotations == null) {
+      return;
+    }
+    for (Int2IntMap.Entry entry : annotations.int2IntEntrySet()) {
+      int annotator = entry.getIntKey() / numClasses, label = entry.getIntKey() % numClasses;
+      AnnotatorConfusion confusion = confusionOf(confusions, annotator);
+      if (from >= 0) {
+        confusion.add(from * numClasses + label, -entry.getIntValue());
+      }
+      if (to >= 0) {
+        confusion.add(to * numClasses + label, entry.getIntValue());
+      }
+    }
+  }
+
+  private Int2IntOpenHashMap annotationsOf(int instance) {
+    if (instanceAnnotations[instance] == null) {
+      instanceAnnotations[instance] = new Int2IntOpenHashMap();
+    }
+    return instanceAnnotations[instance];
+  }
+
+  private AnnotatorConfusion confusionOf(AnnotatorConfusion[] confusions, int annotator) {
+    if (confusions[annotator] == null) {
+      confusions[annotator] = new AnnotatorConfusion(numClasses);
+    }
+    return confusions[annotator];
+  }
+
+  /**
+   * One annotator's confusion counts, indexed by
+   * trueClass * numClasses + annotatedClass. Sparse until a quarter of the
+   * cells are non-zero, dense afterwards.
+   */
+  private static class AnnotatorConfusion {
+    private final int numClasses;
+    private Int2IntOpenHashMap sparse = new Int2IntOpenHashMap();
+    private int[] dense;
+    private int total;
+    private int diagonal;
+
+    AnnotatorConfusion(int numClasses) {
+      this.numClasses = numClasses;
+    }
+
+    int get(int cell) {
+      return (dense != null) ? dense[cell] : sparse.get(cell);
+    }
+
+    void add(int cell, int delta) {
+      if (dense != null) {
+        dense[cell] += delta;
+      }
+      else if (sparse.addTo(cell, delta) + delta == 0) {
+        sparse.remove(cell);
+      }
+      else if (sparse.size() * 4 > numClasses * numClasses) {
+        dense = new int[numClasses * numClasses];
+        for (Int2IntMap.Entry entry : sparse.int2IntEntrySet()) {
+          dense[entry.getIntKey()] = entry.getIntValue();
+        }
+        sparse = null;
+      }
+      total += delta;
+      if (cell / numClasses == cell % numClasses) {
+        diagonal += delta;
+      }
+    }
+
+    void addAll(AnnotatorConfusion other) {
+      if (other.dense != null) {
+        for (int cell = 0; cell < other.dense.length; cell++) {
+          if (other.dense[cell] != 0) {
+            add(cell, other.dense[cell]);
+          }
+        }
+      }
+      else {
+        for (Int2IntMap.Entry entry : other.sparse.int2IntEntrySet()) {
+          add(entry.getIntKey(), entry.getIntValue());
+        }
+      }
+    }
+
+    void copyTo(int[][] result) {
+      if (dense != null) {
+        for (int cell = 0; cell < dense.length; cell++) {
+          result[cell / numClasses][cell % numClasses] = dense[cell];
+        }
+      }
+      else {
+        for (Int2IntMap.Entry entry : sparse.int2IntEntrySet()) {
+          result[entry.getIntKey() / numClasses][entry.getIntKey() % numClasses] = entry.getIntValue();
+        }
+      }
+    }
+  }
+
+}
@@ -8,7 +8,6 @@ import com.google.common.collect.Multiset;
 
 import edu.byu.nlp.data.types.DatasetInstance;
 import edu.byu.nlp.math.AbstractRealMatrixPreservingVisitor;
-import edu.byu.nlp.util.Integers;
 import edu.byu.nlp.util.Multisets2;
 
 public class DatasetInstances {
@@ -54,9 +53,7 @@ public class DatasetInstances {
 	
 
 	public static int numTokensIn(DatasetInstance inst){
-//		return Integers.fromDouble(inst.asFeatureVector().sum(), Datasets.INT_CAST_THRESHOLD);
-		// allow fractional features
-		return Integers.fromDouble(inst.asFeatureVector().sum(), 1);
+		return inst.getNumTokens();
 	}
 	
 }
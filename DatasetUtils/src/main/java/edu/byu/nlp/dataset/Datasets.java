@@ -5,6 +5,7 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -49,7 +50,6 @@ import edu.byu.nlp.data.types.DatasetInstance;
 import edu.byu.nlp.data.types.Measurement;
 import edu.byu.nlp.data.types.SparseFeatureVector;
 import edu.byu.nlp.data.types.SparseFeatureVector.EntryVisitor;
-import edu.byu.nlp.math.AbstractRealMatrixPreservingVisitor;
 import edu.byu.nlp.math.SparseRealMatrices;
 import edu.byu.nlp.util.ArgMinMaxTracker.MinMaxTracker;
 import edu.byu.nlp.util.DoubleArrays;
@@ -62,7 +62,7 @@ import edu.byu.nlp.util.Integers;
 import edu.byu.nlp.util.Iterables2;
 import edu.byu.nlp.util.Multisets2;
 import edu.byu.nlp.util.Pair;
-import edu.byu.nlp.util.TableCounter;
+import edu.byu.nlp.util.IntTableCounter;
 
 public class Datasets {
 	private static final Logger logger = LoggerFactory.getLogger(Datasets.class);
@@ -116,8 +116,8 @@ public class Datasets {
 			for (int i=0; i<size; i++){
 				instances.add(itr.next());
 			}
-			splits.add(new BasicDataset(instances, dataset.getMeasurements(),
-			    infoWithUpdatedCounts(instances, dataset.getInfo())));
+			splits.add(derivedFrom(new BasicDataset(instances, dataset.getMeasurements(),
+			    infoWithUpdatedCounts(instances, dataset.getInfo())), dataset));
 		}
 		
 		return splits;
@@ -146,7 +146,7 @@ public class Datasets {
 			IndexerCalculator<String, String> indexers, 
 			boolean preserveRawAnnotations) {
 		
-		TableCounter<String, Integer, Integer> annotationCounter = TableCounter.create();
+		IntTableCounter annotationCounter = IntTableCounter.create();
     Multimap<String, FlatInstance<SparseFeatureVector,Integer>> rawAnnotationMap = HashMultimap.create(); 
     Set<Measurement> measurements = Sets.newHashSet(); 
 		Set<String> instanceIndices = Sets.newHashSet();
@@ -163,16 +163,19 @@ public class Datasets {
 		  
 //		  int source = inst.getInstanceId();
 		  String source = inst.getSource();
+		  int instanceIndex = indexers.getInstanceIdIndexer().indexOf(source);
 		  
 			// record instance (if source is specified)
-		  if (indexers.getInstanceIdIndexer().contains(source)){
+		  if (instanceIndex!=-1){
   			instanceIndices.add(source);
 		  }
 
 			// record annotations
 			if (inst.isAnnotation()){
-				// record annotation
-				annotationCounter.incrementCount(source, inst.getAnnotator(), inst.getAnnotation());
+				// record annotation (annotations of unknown instances are never read back)
+				if (instanceIndex!=-1){
+				  annotationCounter.incrementCount(instanceIndex, inst.getAnnotator(), inst.getAnnotation());
+				}
 				if (preserveRawAnnotations){
 					rawAnnotationMap.put(source, inst);
 				}
@@ -211,7 +214,9 @@ public class Datasets {
 			
 			// aggregated annotations
 			final AnnotationSet annotationSet = BasicAnnotationSet.fromCountTable(
-			    source, indexers.getAnnotatorIdIndexer().size(), indexers.getLabelIndexer().size(), annotationCounter, rawAnnotationMap.get(source));
+			    instanceIndex, indexers.getAnnotatorIdIndexer().size(), indexers.getLabelIndexer().size(), annotationCounter, 
+			    // (a copy: views of the multimap share its internals, so they can't be updated concurrently)
+			    Sets.newHashSet(rawAnnotationMap.get(source)));
 			
 			// dataset instance
 			DatasetInstance inst = new BasicDatasetInstance(
@@ -252,8 +257,8 @@ public class Datasets {
 			}
 		}
 		
-		return Pair.of(new BasicDataset(annotatedData, dataset.getMeasurements(), infoWithUpdatedCounts(annotatedData, dataset.getInfo())),
-				new BasicDataset(unannotatedData, Sets.newHashSet(), infoWithUpdatedCounts(unannotatedData, dataset.getInfo())));
+		return Pair.of(derivedFrom(new BasicDataset(annotatedData, dataset.getMeasurements(), infoWithUpdatedCounts(annotatedData, dataset.getInfo())), dataset),
+				derivedFrom(new BasicDataset(unannotatedData, Sets.newHashSet(), infoWithUpdatedCounts(unannotatedData, dataset.getInfo())), dataset));
 	}
 	
 	/**
@@ -275,8 +280,8 @@ public class Datasets {
 			}
 		}
 		
-		return Pair.of(new BasicDataset(labeledData, dataset.getMeasurements(), infoWithUpdatedCounts(labeledData, dataset.getInfo())),
-				new BasicDataset(unlabeledData, dataset.getMeasurements(), infoWithUpdatedCounts(unlabeledData, dataset.getInfo())));
+		return Pair.of(derivedFrom(new BasicDataset(labeledData, dataset.getMeasurements(), infoWithUpdatedCounts(labeledData, dataset.getInfo())), dataset),
+				derivedFrom(new BasicDataset(unlabeledData, dataset.getMeasurements(), infoWithUpdatedCounts(unlabeledData, dataset.getInfo())), dataset));
 	}
 
   /**
@@ -309,8 +314,8 @@ public class Datasets {
 			}
 		}
 		
-		return Pair.of(new BasicDataset(labeledData, dataset.getMeasurements(), infoWithUpdatedCounts(labeledData, dataset.getInfo())),
-				new BasicDataset(unlabeledData, dataset.getMeasurements(), infoWithUpdatedCounts(unlabeledData, dataset.getInfo())));
+		return Pair.of(derivedFrom(new BasicDataset(labeledData, dataset.getMeasurements(), infoWithUpdatedCounts(labeledData, dataset.getInfo())), dataset),
+				derivedFrom(new BasicDataset(unlabeledData, dataset.getMeasurements(), infoWithUpdatedCounts(unlabeledData, dataset.getInfo())), dataset));
 	}
 
 	public static DatasetInfo infoWithCalculatedCounts(Iterable<DatasetInstance> instances, String source, 
@@ -320,14 +325,18 @@ public class Datasets {
 		return infoWithUpdatedCounts(instances, info);
 	}
 	
+	/**
+	 * Computes all counts (including annotation counts, which the instances 
+	 * keep current from then on) in a single pass over the instances, using 
+	 * each instance's cached token and annotation counts.
+	 */
 	public static DatasetInfo infoWithUpdatedCounts(Iterable<DatasetInstance> instances, DatasetInfo previousInfo){
 
 		int numDocuments = 0, numDocumentsWithLabels = 0, numDocumentsWithObservedLabels = 0;
 		int numTokens = 0, numTokensWithLabels = 0, numTokensWithObservedLabels = 0;
+		BasicDataset.AnnotationCounts annotationCounts = BasicDataset.AnnotationCounts.empty();
 		for (DatasetInstance inst: instances){
-//			int numTokensInCurrentDocument = Integers.fromDouble(inst.asFeatureVector().sum(),INT_CAST_THRESHOLD);
-			// allow fractional document features
-			int numTokensInCurrentDocument = Integers.fromDouble(inst.asFeatureVector().sum(),1); 
+			int numTokensInCurrentDocument = inst.getNumTokens(); 
 			
 			numDocuments++;
 			numTokens += numTokensInCurrentDocument;
@@ -339,14 +348,18 @@ public class Datasets {
 				numDocumentsWithObservedLabels++;
 				numTokensWithObservedLabels += numTokensInCurrentDocument;
 			}
+			annotationCounts.count(inst);
 		}
 		
 		return new BasicDataset.Info(
 				previousInfo.getSource(), 
-				numDocuments, numDocumentsWithLabels, numDocumentsWithObservedLabels,
-				numTokens, numTokensWithLabels, numTokensWithObservedLabels,
-				new IndexerCalculator<>(previousInfo.getFeatureIndexer(), previousInfo.getLabelIndexer(), previousInfo.getInstanceIdIndexer(), previousInfo.getAnnotatorIdIndexer()), 
-				instances);
+				numDocuments, numDocumentsWithLabels, numDocumentsWithObservedLabels, 
+				numTokens, numTokensWithLabels, numTokensWithObservedLabels, 
+				annotationCounts, indexersOf(previousInfo), instances);
+	}
+
+	private static IndexerCalculator<String, String> indexersOf(DatasetInfo info){
+		return new IndexerCalculator<>(info.getFeatureIndexer(), info.getLabelIndexer(), info.getInstanceIdIndexer(), info.getAnnotatorIdIndexer());
 	}
 
 	/**
@@ -366,8 +379,33 @@ public class Datasets {
 		  }
 		}
 		
-		return new BasicDataset(instances, measurements, 
-				infoWithUpdatedCounts(instances, datasets[0].getInfo()));
+		return derivedFrom(new BasicDataset(instances, measurements, 
+				infoWithSummedCounts(instances, datasets)), datasets);
+	}
+
+	/**
+	 * The info of the concatenation of the given datasets, computed by 
+	 * summing the datasets' counts rather than revisiting their instances 
+	 * (except for the annotation counts, which must register with them).
+	 */
+	private static DatasetInfo infoWithSummedCounts(Iterable<DatasetInstance> instances, Dataset... datasets){
+		int numDocuments = 0, numDocumentsWithLabels = 0, numDocumentsWithObservedLabels = 0;
+		int numTokens = 0, numTokensWithLabels = 0, numTokensWithObservedLabels = 0;
+		for (Dataset dataset: datasets){
+			DatasetInfo info = dataset.getInfo();
+			numDocuments += info.getNumDocuments();
+			numDocumentsWithLabels += info.getNumDocumentsWithLabels();
+			numDocumentsWithObservedLabels += info.getNumDocumentsWithObservedLabels();
+			numTokens += info.getNumTokens();
+			numTokensWithLabels += info.getNumTokensWithLabels();
+			numTokensWithObservedLabels += info.getNumTokensWithObservedLabels();
+		}
+		DatasetInfo first = datasets[0].getInfo();
+		return new BasicDataset.Info(
+				first.getSource(), 
+				numDocuments, numDocumentsWithLabels, numDocumentsWithObservedLabels, 
+				numTokens, numTokensWithLabels, numTokensWithObservedLabels, 
+				null, indexersOf(first), instances); // (annotation counts are computed on demand)
 	}
 	
 
@@ -405,15 +443,16 @@ public class Datasets {
 			}
 		}
 		
-		return new BasicDataset(instances, data.getMeasurements(), infoWithUpdatedCounts(instances, data.getInfo()));
+		return derivedFrom(new BasicDataset(instances, data.getMeasurements(), infoWithUpdatedCounts(instances, data.getInfo())), data);
 	}
 
 	public static DatasetInstance copy(DatasetInstance inst){
+		// (the copy shares the info along with the annotations, so that 
+		// changes through either reach the datasets containing the other)
 		return new BasicDatasetInstance(inst.asFeatureVector(), 
 				inst.getLabel(), DatasetInstances.isLabelConcealed(inst), 
 				inst.getRegressand(), DatasetInstances.isRegressandConcealed(inst), 
-				inst.getAnnotations(), inst.getInfo().getSource(), 
-				inst.getInfo().getRawSource(), inst.getInfo().getLabelIndexer());
+				inst.getAnnotations(), inst.getInfo());
 	}
 	
 	
@@ -439,8 +478,12 @@ public class Datasets {
 	 * differently (maybe by adding annotations using AnnotationInstance 
 	 * data representations before compiling into Dataset representations). 
 	 * 
+	 * Updates lock only the affected instance's AnnotationSet (and the 
+	 * dataset's measurements), so annotations for different instances may 
+	 * be added from different threads. For high-volume concurrent 
+	 * ingestion see {@link ConcurrentAnnotationIngestor}.
 	 */
-	public static synchronized void addAnnotationToDataset(
+	public static void addAnnotationToDataset(
 			Dataset dataset, FlatInstance<SparseFeatureVector,Integer> ann){
 	    Integer annotation = ann.getAnnotation();
 	    Integer annotator = ann.getAnnotator();
@@ -470,27 +513,25 @@ public class Datasets {
 
 		// add measurements
 		if (ann.isMeasurement()){
-		  dataset.getMeasurements().add(ann.getMeasurement());
+		  Collection<Measurement> measurements = dataset.getMeasurements();
+		  synchronized (measurements) {
+		    measurements.add(ann.getMeasurement());
+		  }
 		}
 		
-		// add the raw annotation
+		// add the raw annotation (and update instance and dataset counts)
 		if (ann.getAnnotation()!=null){
-			inst.getAnnotations().getRawAnnotations().add(new BasicFlatInstance<SparseFeatureVector, Integer>(
-			    ann.getInstanceId(), ann.getSource(), ann.getAnnotator(), ann.getAnnotation(), ann.getMeasurement(), 
-			    ann.getStartTimestamp(), ann.getEndTimestamp()));
-	  		// increment previous annotation value for this annotator
-	  		SparseRealMatrices.incrementValueAt(inst.getAnnotations().getLabelAnnotations(), 
-	  				(int)annotator, annotation, 1);
-	
-	  		// update instance info
-	  		inst.getInfo().annotationsChanged();
-	  		// update dataset info
-	  		dataset.getInfo().annotationsChanged();
+		  ConcurrentAnnotationIngestor.Changes changes = new ConcurrentAnnotationIngestor.Changes();
+		  ConcurrentAnnotationIngestor.update(inst, new BasicFlatInstance<SparseFeatureVector, Integer>(
+		      ann.getInstanceId(), ann.getSource(), ann.getAnnotator(), ann.getAnnotation(), ann.getMeasurement(), 
+		      ann.getStartTimestamp(), ann.getEndTimestamp()), 
+		      annotator, annotation, 1, changes);
+		  changes.applyTo(dataset.getInfo());
 		}
 
 	}
 	
-	public static synchronized void addAnnotationsToDataset(
+	public static void addAnnotationsToDataset(
 			Dataset dataset, Iterable<FlatInstance<SparseFeatureVector,Integer>> annotations){
 		for (FlatInstance<SparseFeatureVector,Integer> ann: annotations){
 			addAnnotationToDataset(dataset, ann);
@@ -529,20 +570,17 @@ public class Datasets {
   
     // remove measurements
     if (ann.isMeasurement()){
-      dataset.getMeasurements().remove(ann.getMeasurement());
+      Collection<Measurement> measurements = dataset.getMeasurements();
+      synchronized (measurements) {
+        measurements.remove(ann.getMeasurement());
+      }
     }
     
-    // add the raw annotation
+    // remove the raw annotation (and update instance and dataset counts)
     if (ann.getAnnotation()!=null){
-      inst.getAnnotations().getRawAnnotations().remove(ann);
-        // decrement previous annotation value for this annotator
-        SparseRealMatrices.incrementValueAt(inst.getAnnotations().getLabelAnnotations(), 
-            (int)annotator, annotation, -1);
-  
-        // update instance info
-        inst.getInfo().annotationsChanged();
-        // update dataset info
-        dataset.getInfo().annotationsChanged();
+      ConcurrentAnnotationIngestor.Changes changes = new ConcurrentAnnotationIngestor.Changes();
+      ConcurrentAnnotationIngestor.update(inst, ann, annotator, annotation, -1, changes);
+      changes.applyTo(dataset.getInfo());
     }
   }
 	
@@ -1030,7 +1068,7 @@ public class Datasets {
   			return o1.getInfo().getRawSource().compareTo(o2.getInfo().getRawSource());
   		}
   	});
-    return new BasicDataset(instances, data.getMeasurements(), data.getInfo());
+    return derivedFrom(new BasicDataset(instances, data.getMeasurements(), data.getInfo()), data);
 	}
 
   public static String[] docRawSourcesIn(Dataset data) {
@@ -1052,7 +1090,16 @@ public class Datasets {
 
 	public static Dataset filteredDataset(Dataset data, Predicate<DatasetInstance> predicate) {
 		Iterable<DatasetInstance> filteredInstances = Lists.newArrayList(Iterables.filter(data, predicate));
-		return new BasicDataset(filteredInstances, data.getMeasurements(), infoWithUpdatedCounts(filteredInstances, data.getInfo()));
+		return derivedFrom(new BasicDataset(filteredInstances, data.getMeasurements(), infoWithUpdatedCounts(filteredInstances, data.getInfo())), data);
+	}
+
+	/**
+	 * Lets a dataset whose instances all come from the given datasets share 
+	 * their instance index (see {@link BasicDataset#getInstanceIndex()}).
+	 */
+	private static BasicDataset derivedFrom(BasicDataset derived, Dataset... parents){
+		derived.shareInstanceIndex(parents);
+		return derived;
 	}
 
 	
@@ -1098,37 +1145,36 @@ public class Datasets {
 	 * result[annotator][true class][annotation class] = count
 	 */
 	public static int[][][] confusionMatricesWrtGoldLabels(Dataset data){
-		int numAnnotators = data.getInfo().getNumAnnotators();
-		int numClasses = data.getInfo().getNumClasses();
-		final int[][][] confusions = new int[numAnnotators][numClasses][numClasses]; 
-		for (DatasetInstance inst: data){
-			final int label = inst.getLabel();
-			inst.getAnnotations().getLabelAnnotations().walkInOptimizedOrder(new AbstractRealMatrixPreservingVisitor() {
-				@Override
-				public void visit(int annotator, int annotationValue, double value) {
-					confusions[annotator][label][annotationValue] += value;
-				}
-			});
-		}
-		return confusions;
+		return confusionMatricesWrtGoldLabels(data, AnnotationStore.fromDataset(data));
 	}
 
-	public static int[][][] confusionMatricesWrtMajorityVoteLabels(Dataset data, RandomGenerator rnd) {
-		int numAnnotators = data.getInfo().getNumAnnotators();
-		int numClasses = data.getInfo().getNumClasses();
-		final int[][][] confusions = new int[numAnnotators][numClasses][numClasses]; 
+	/**
+	 * Like {@link #confusionMatricesWrtGoldLabels(Dataset)}, with the data's 
+	 * annotations already collected (by {@link AnnotationStore#fromDataset(Dataset)}), 
+	 * so that one store can serve several queries.
+	 */
+	public static int[][][] confusionMatricesWrtGoldLabels(Dataset data, AnnotationStore store){
+		int[] labels = new int[store.getNumInstances()];
+		Arrays.fill(labels, -1);
 		for (DatasetInstance inst: data){
-			final Integer label = DatasetInstances.majorityVoteLabel(inst, rnd);
-			if (label!=null){ // skip instances that have no annotations
-				inst.getAnnotations().getLabelAnnotations().walkInOptimizedOrder(new AbstractRealMatrixPreservingVisitor() {
-					@Override
-					public void visit(int annotator, int annotationValue, double value) {
-						confusions[annotator][label][annotationValue] += value;
-					}
-				});
+			if (inst.getLabel()!=null){
+				labels[inst.getInfo().getSource()] = inst.getLabel();
 			}
 		}
-		return confusions;
+		return store.confusionMatrices(labels);
+	}
+
+	public static int[][][] confusionMatricesWrtMajorityVoteLabels(Dataset data, RandomGenerator rnd) {
+		return confusionMatricesWrtMajorityVoteLabels(AnnotationStore.fromDataset(data), rnd);
+	}
+
+	/**
+	 * Like {@link #confusionMatricesWrtMajorityVoteLabels(Dataset, RandomGenerator)}, 
+	 * with the data's annotations already collected. 
+	 */
+	public static int[][][] confusionMatricesWrtMajorityVoteLabels(AnnotationStore store, RandomGenerator rnd) {
+		// instances that have no annotations have label -1 and are skipped
+		return store.confusionMatrices(store.majorityVoteLabels(rnd));
 	}
 
 
@@ -1157,9 +1203,9 @@ public class Datasets {
 		}
 		
 		int maxIterations = 10000;
-		double[][][] annotatorParameters = AnnotationStream2Annotators.confusionMatrices2AnnotatorParameters(confusionMatrices);
+		double[][][] annotatorParameters = AnnotationStream2Annotators.confusionMatrices2AnnotatorParameters(confusionMatrices, smoothing);
 		final int[] clusterAssignments = AnnotationStream2Annotators.clusterAnnotatorParameters(
-				annotatorParameters, clusterAlgorithm, numAnnotatorClusters, maxIterations, smoothing, rnd);
+				annotatorParameters, clusterAlgorithm, numAnnotatorClusters, maxIterations, rnd);
 		
 		// transform flat instances and then recreate a dataset.
 		List<Map<String, Object>> transformedFlatInstances = Lists.newArrayList();
@@ -1291,10 +1337,11 @@ public class Datasets {
       BasicSparseFeatureVector scaledFeatures = new BasicSparseFeatureVector(entries);
       
       // instance with the new features
+      // (sharing the info along with the annotations; see copy())
       instances.add(new BasicDatasetInstance(scaledFeatures, 
           inst.getLabel(), DatasetInstances.isLabelConcealed(inst), 
           inst.getRegressand(), DatasetInstances.isRegressandConcealed(inst), 
-          inst.getAnnotations(), inst.getInfo().getSource(), inst.getInfo().getRawSource(), dataset.getInfo().getLabelIndexer()));
+          inst.getAnnotations(), inst.getInfo()));
     }
     
     // dataset with the new instances and the new annotatorIdIndexer
@@ -0,0 +1,89 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.dataset;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import edu.byu.nlp.data.types.DatasetInstance;
+
+/**
+ * An immutable lookup table from int instance id
+ * (DatasetInstance.getInfo().getSource()) to instance, backed by a dense
+ * array. If several instances share an id, the last one wins.
+ *
+ * Indices of datasets derived from another dataset (splits, filtered
+ * subsets, joins of those) are built with {@link #restrictTo(Iterable)},
+ * which shares the original array and only records which ids are present.
+ */
+public class InstanceIndex {
+
+  private final DatasetInstance[] byId;
+  private final BitSet members; // null: every non-null entry is a member
+
+  private InstanceIndex(DatasetInstance[] byId, BitSet members) {
+    this.byId = byId;
+    this.members = members;
+  }
+
+  public static InstanceIndex of(Iterable<DatasetInstance> instances) {
+    DatasetInstance[] byId = new DatasetInstance[16];
+    int size = 0;
+    for (DatasetInstance inst : instances) {
+      int id = inst.getInfo().getSource();
+      if (id < 0) {
+        continue;
+      }
+      if (id >= byId.length) {
+        byId = Arrays.copyOf(byId, Math.max(id + 1, byId.length * 2));
+      }
+      byId[id] = inst;
+      size = Math.max(size, id + 1);
+    }
+    return new InstanceIndex(Arrays.copyOf(byId, size), null);
+  }
+
+  /**
+   * An index of the given instances. If each of them is the instance this
+   * index holds for its id, the result shares this index's array;
+   * otherwise a new index is built.
+   */
+  public InstanceIndex restrictTo(Iterable<DatasetInstance> instances) {
+    BitSet subset = new BitSet(byId.length);
+    for (DatasetInstance inst : instances) {
+      int id = inst.getInfo().getSource();
+      if (id < 0) {
+        continue;
+      }
+      if (id >= byId.length || byId[id] != inst) {
+        return of(instances);
+      }
+      subset.set(id);
+    }
+    return new InstanceIndex(byId, subset);
+  }
+
+  /**
+   * The instance with the given id, or null if there is none.
+   */
+  public DatasetInstance get(int instanceId) {
+    if (instanceId < 0 || instanceId >= byId.length || (members != null && !members.get(instanceId))) {
+      return null;
+    }
+    return byId[instanceId];
+  }
+
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.data.annotators;
+
+import java.util.List;
+
+import org.fest.assertions.Assertions;
+import org.fest.assertions.Delta;
+import org.junit.Test;
+
+import edu.byu.nlp.data.annotators.SimulatedAnnotationGenerator.Annotations;
+import edu.byu.nlp.dataset.AnnotationStore;
+
+public class SimulatedAnnotationGeneratorTest {
+
+	private static final double[][][] CONFUSIONS = {
+		{{.8, .1, .1}, {.1, .8, .1}, {0, .2, .8}},
+		{{.5, .5, 0}, {.2, .3, .5}, {1, 0, 0}},
+	};
+	private static final double[] RATES = {.25, .75};
+
+	private static int[] trueLabels(int numInstances){
+		int[] labels = new int[numInstances];
+		for (int i=0; i<numInstances; i++){
+			labels[i] = i%3;
+		}
+		return labels;
+	}
+
+	@Test
+	public void testDistribution(){
+		List<SimulatedAnnotator> annotators = SimulatedAnnotators.from(CONFUSIONS, RATES);
+		int[] trueLabels = trueLabels(30000);
+		Annotations annotations = new SimulatedAnnotationGenerator(annotators, 2).generate(trueLabels, 10, 1);
+		Assertions.assertThat(annotations.size()).isEqualTo(300000);
+
+		int[] perAnnotator = new int[2];
+		int[][][] counts = new int[2][3][3];
+		for (int i=0; i<annotations.size(); i++){
+			Assertions.assertThat(annotations.instanceAt(i)).isEqualTo(i/10);
+			++perAnnotator[annotations.annotatorAt(i)];
+			++counts[annotations.annotatorAt(i)][trueLabels[annotations.instanceAt(i)]][annotations.labelAt(i)];
+		}
+		Assertions.assertThat(perAnnotator[1]/300000.0).isEqualTo(.75, Delta.delta(.01));
+		for (int j=0; j<2; j++){
+			for (int k=0; k<3; k++){
+				int total = counts[j][k][0]+counts[j][k][1]+counts[j][k][2];
+				for (int l=0; l<3; l++){
+					Assertions.assertThat((double)counts[j][k][l]/total).isEqualTo(CONFUSIONS[j][k][l], Delta.delta(.01));
+				}
+			}
+		}
+		// zero-probability confusions never occur
+		Assertions.assertThat(counts[0][2][0]).isEqualTo(0);
+		Assertions.assertThat(counts[1][0][2]).isEqualTo(0);
+	}
+
+	@Test
+	public void testDeterministicAcrossThreads(){
+		List<SimulatedAnnotator> annotators = SimulatedAnnotators.from(CONFUSIONS, RATES);
+		int[] trueLabels = trueLabels(20000);
+		Annotations serial = new SimulatedAnnotationGenerator(annotators, 1).generate(trueLabels, 7, 42);
+		Annotations parallel = new SimulatedAnnotationGenerator(annotators, 4).generate(trueLabels, 7, 42);
+		Annotations other = new SimulatedAnnotationGenerator(annotators, 4).generate(trueLabels, 7, 43);
+		boolean differs = false;
+		for (int i=0; i<serial.size(); i++){
+			Assertions.assertThat(parallel.annotatorAt(i)).isEqualTo(serial.annotatorAt(i));
+			Assertions.assertThat(parallel.labelAt(i)).isEqualTo(serial.labelAt(i));
+			differs |= other.labelAt(i)!=serial.labelAt(i);
+		}
+		Assertions.assertThat(differs).isTrue();
+	}
+
+	@Test
+	public void testGenerateStore(){
+		List<SimulatedAnnotator> annotators = SimulatedAnnotators.from(CONFUSIONS, RATES);
+		AnnotationStore store = new SimulatedAnnotationGenerator(annotators, 1).generateStore(trueLabels(100), 4, 1);
+		Assertions.assertThat(store.getNumInstances()).isEqualTo(100);
+		Assertions.assertThat(store.getNumAnnotators()).isEqualTo(2);
+		for (int i=0; i<100; i++){
+			Assertions.assertThat(store.numAnnotations(i)).isEqualTo(4);
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.data.app;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.fest.assertions.Assertions;
+import org.junit.Test;
+
+import edu.byu.nlp.data.app.AnnotationStream2Annotators.ClusteringMethod;
+
+public class AnnotatorClustererTest {
+
+  private static final int NUM_CLASSES = 3;
+
+  /**
+   * Annotator i is a noisy copy of one of three prototypes (i%3): accurate,
+   * biased toward label 0, and biased toward label 2.
+   */
+  private static double[][][] annotators(int num, RandomGenerator rnd) {
+    double[][][] prototypes = {
+        {{.9, .05, .05}, {.05, .9, .05}, {.05, .05, .9}},
+        {{.9, .05, .05}, {.6, .3, .1}, {.6, .1, .3}},
+        {{.3, .1, .6}, {.1, .3, .6}, {.05, .05, .9}},
+    };
+    double[][][] params = new double[num][NUM_CLASSES][NUM_CLASSES];
+    for (int i = 0; i < num; i++) {
+      for (int r = 0; r < NUM_CLASSES; r++) {
+        for (int c = 0; c < NUM_CLASSES; c++) {
+          params[i][r][c] = prototypes[i % 3][r][c] + 0.02 * rnd.nextGaussian();
+        }
+      }
+    }
+    return params;
+  }
+
+  private static void assertRecoversPrototypes(int[] assignments) {
+    for (int i = 3; i < assignments.length; i++) {
+      Assertions.assertThat(assignments[i]).isEqualTo(assignments[i % 3]);
+    }
+    Assertions.assertThat(assignments[0]).isNotEqualTo(assignments[1]);
+    Assertions.assertThat(assignments[0]).isNotEqualTo(assignments[2]);
+    Assertions.assertThat(assignments[1]).isNotEqualTo(assignments[2]);
+  }
+
+  @Test
+  public void testLloyd() {
+    double[][][] params = annotators(60, new MersenneTwister(1));
+    int[] assignments = new AnnotatorClusterer(params, 2).kmeans(3, 100, 1000, new MersenneTwister(2));
+    assertRecoversPrototypes(assignments);
+  }
+
+  @Test
+  public void testMiniBatchIsReproducibleAcrossThreads() {
+    double[][][] params = annotators(3000, new MersenneTwister(3));
+    int[] serial = new AnnotatorClusterer(params, 1).kmeans(3, 200, 256, new MersenneTwister(4));
+    assertRecoversPrototypes(serial);
+    int[] parallel = new AnnotatorClusterer(params, 4).kmeans(3, 200, 256, new MersenneTwister(4));
+    Assertions.assertThat(parallel).isEqualTo(serial);
+  }
+
+  @Test
+  public void testAccuracy() {
+    double[][][] params = annotators(9, new MersenneTwister(5));
+    int[] assignments = new AnnotatorClusterer(params, 1).cluster(ClusteringMethod.ACCURACY, 3, 0, 1, null);
+    // the accurate prototype sorts first
+    Assertions.assertThat(assignments[0]).isEqualTo(0);
+    assertRecoversPrototypes(assignments);
+  }
+
+  @Test
+  public void testClusterIdsAreContiguous() {
+    double[][][] params = annotators(3, new MersenneTwister(6));
+    // more clusters than annotators: blocks are empty, but ids stay contiguous
+    int[] assignments = new AnnotatorClusterer(params, 1).cluster(ClusteringMethod.RANDOM, 5, 0, 1, new MersenneTwister(7));
+    Assertions.assertThat(assignments).containsOnly(0, 1, 2);
+    assignments = new AnnotatorClusterer(params, 1).kmeans(5, 10, 10, new MersenneTwister(7));
+    Assertions.assertThat(assignments).containsOnly(0, 1, 2);
+  }
+
+}
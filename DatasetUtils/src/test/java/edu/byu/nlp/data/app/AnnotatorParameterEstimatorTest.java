@@ -78,9 +78,8 @@ public class AnnotatorParameterEstimatorTest {
     ClusteringMethod aggregate = ClusteringMethod.KMEANS;
     int k = 3;
     int maxIterations = 1000;
-    double smooth = 0.00001;
-	double[][][] annotatorParameters = AnnotationStream2Annotators.confusionMatrices2AnnotatorParameters(confusionMatrices);
-	final int[] clusterAssignments = AnnotationStream2Annotators.clusterAnnotatorParameters(annotatorParameters, aggregate, k, maxIterations, smooth, new MersenneTwister(1));
+	double[][][] annotatorParameters = AnnotationStream2Annotators.confusionMatrices2AnnotatorParameters(confusionMatrices, 0.01);
+	final int[] clusterAssignments = AnnotationStream2Annotators.clusterAnnotatorParameters(annotatorParameters, aggregate, k, maxIterations, new MersenneTwister(1));
 	double[][][] clusteredParameters = AnnotationStream2Annotators.aggregateAnnotatorParameterClusters(annotatorParameters, clusterAssignments);
 
 //	System.out.println(IntArrays.toString(clusterAssignments));
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.data.pipes;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.fest.assertions.Assertions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import edu.byu.nlp.data.streams.StreamingJSONAnnotationReader;
+import edu.byu.nlp.data.types.DataStreamInstance;
+import edu.byu.nlp.util.Maps2;
+
+public class StreamingJSONAnnotationReaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final List<String> ANNOTATIONS = Lists.newArrayList(
+		"{\"data\":\"ABC\", \"label\":\"0\", \"labelobserved\":true, \"source\":\"1\"}",
+		"{\"annotation\":\"0\", \"annotator\":\"A\", \"source\":\"1\", \"starttime\":1, \"endtime\":2}",
+		"{\"annotation\":\"1\", \"annotator\":\"B\", \"source\":\"1\"}",
+		"{\"datapath\":\"doc2.txt\", \"source\":\"2\"}",
+		"{\"annotation\":\"1\", \"annotator\":\"A\", \"source\":\"2\", \"label\":\"1\"}",
+		"{\"data\":\"XYZ\", \"source\":\"3\"}"
+	);
+
+	private Iterable<Map<String,Object>> records(String contents, int numThreads, int batchSize) throws IOException{
+		File json = folder.newFile();
+		Files.write(contents, json, Charsets.UTF_8);
+		Files.write("line one\nline two", new File(folder.getRoot(), "doc2.txt"), Charsets.UTF_8);
+		StreamingJSONAnnotationReader reader = new StreamingJSONAnnotationReader(
+				folder.getRoot().getAbsolutePath(), DataStreamInstance.DATA, numThreads, batchSize);
+		return reader.apply(Maps2.<String,Object>hashmapOf(DataStreamInstance.DATA, json.getAbsolutePath()));
+	}
+
+	private List<Map<String,Object>> read(String contents, int numThreads, int batchSize) throws IOException{
+		return Lists.newArrayList(records(contents, numThreads, batchSize));
+	}
+
+	@Test
+	public void testJsonArray() throws IOException{
+		List<Map<String,Object>> records = read("[\n"+Joiner.on(",\n").join(ANNOTATIONS)+"\n]", 1, 100);
+		// 3 annotations (in file order) followed by 3 instances
+		Assertions.assertThat(records).hasSize(6);
+		Assertions.assertThat(DataStreamInstance.getAnnotation(records.get(0))).isEqualTo("0");
+		Assertions.assertThat(DataStreamInstance.getStartTime(records.get(0))).isEqualTo(1000000L);
+		Assertions.assertThat(DataStreamInstance.getAnnotator(records.get(1))).isEqualTo("B");
+		Assertions.assertThat(DataStreamInstance.getSource(records.get(2))).isEqualTo("2");
+
+		Map<String,Object> inst1 = records.get(3), inst2 = records.get(4), inst3 = records.get(5);
+		Assertions.assertThat(DataStreamInstance.getData(inst1)).isEqualTo("ABC");
+		Assertions.assertThat(DataStreamInstance.getLabel(inst1)).isEqualTo("0");
+		// data is read from the datapath file
+		Assertions.assertThat(DataStreamInstance.getData(inst2)).isEqualTo("line one\nline two");
+		Assertions.assertThat(DataStreamInstance.getLabel(inst2)).isEqualTo("1");
+		Assertions.assertThat(DataStreamInstance.getLabel(inst3)).isNull();
+	}
+
+	@Test
+	public void testJsonLinesAgreesWithArray() throws IOException{
+		List<Map<String,Object>> expected = read("[\n"+Joiner.on(",\n").join(ANNOTATIONS)+"\n]", 1, 100);
+		String jsonLines = Joiner.on("\n\n").join(ANNOTATIONS)+"\n";
+		Assertions.assertThat(read(jsonLines, 1, 100)).isEqualTo(expected);
+		// parsed by several threads, a few lines at a time
+		Assertions.assertThat(read(jsonLines, 3, 4)).isEqualTo(expected);
+		Assertions.assertThat(read(jsonLines, 8, 1)).isEqualTo(expected);
+	}
+
+	@Test
+	public void testCloseEarly() throws IOException{
+		Iterable<Map<String,Object>> records = records(Joiner.on("\n").join(ANNOTATIONS), 2, 2);
+		Iterator<Map<String,Object>> it = records.iterator();
+		Assertions.assertThat(it instanceof Closeable).isTrue();
+		Assertions.assertThat(DataStreamInstance.getAnnotator(it.next())).isEqualTo("A");
+		((Closeable) it).close();
+		Assertions.assertThat(it.hasNext()).isFalse();
+		// (closing is idempotent, and other iterators are unaffected)
+		((Closeable) it).close();
+		Assertions.assertThat(Lists.newArrayList(records)).hasSize(6);
+	}
+
+}
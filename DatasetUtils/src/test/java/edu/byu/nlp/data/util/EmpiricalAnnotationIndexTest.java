@@ -0,0 +1,87 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.data.util;
+
+import java.util.List;
+
+import org.fest.assertions.Assertions;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+
+import edu.byu.nlp.data.BasicFlatInstance;
+import edu.byu.nlp.data.FlatInstance;
+import edu.byu.nlp.data.types.Dataset;
+import edu.byu.nlp.data.types.DatasetInstance;
+import edu.byu.nlp.data.types.SparseFeatureVector;
+import edu.byu.nlp.dataset.DatasetsTestUtil;
+
+public class EmpiricalAnnotationIndexTest {
+
+	private static FlatInstance<String,Integer> annotation(int annotator, int label){
+		return new BasicFlatInstance<String,Integer>(0, null, annotator, label, null, null, null);
+	}
+
+	@Test
+	public void testAgreesWithMultimaps(){
+		Dataset dataset = DatasetsTestUtil.mockDataset();
+		EmpiricalAnnotations<SparseFeatureVector, Integer> empirical = EmpiricalAnnotations.fromDataset(dataset);
+		EmpiricalAnnotationIndex<SparseFeatureVector, Integer> index = empirical.getIndex();
+		int total = 0;
+		for (DatasetInstance inst: dataset){
+			int instance = inst.getInfo().getSource();
+			Multimap<Integer, FlatInstance<SparseFeatureVector, Integer>> expected = empirical.getAnnotationsFor(inst.getInfo().getRawSource(), null);
+			Assertions.assertThat(index.numAnnotations(instance)).isEqualTo(expected.size());
+			Assertions.assertThat(index.numAnnotators(instance)).isEqualTo(expected.keySet().size());
+			for (int annotator: expected.keySet()){
+				List<FlatInstance<SparseFeatureVector, Integer>> actual = Lists.newArrayList();
+				for (int i=index.start(instance, annotator); i<index.end(instance, annotator); i++){
+					actual.add(index.annotationAt(i));
+				}
+				Assertions.assertThat(actual).containsOnly(expected.get(annotator).toArray());
+			}
+			total += expected.size();
+		}
+		Assertions.assertThat(index.getNumAnnotations()).isEqualTo(total);
+	}
+
+	@Test
+	public void testGroupsAndMissingEntries(){
+		EmpiricalAnnotationIndex.Builder<String,Integer> builder = new EmpiricalAnnotationIndex.Builder<String,Integer>();
+		FlatInstance<String,Integer> a = annotation(2, 0), b = annotation(0, 1), c = annotation(2, 1), d = annotation(1, 1);
+		builder.addInstance(5, ImmutableList.of(a, b, c));
+		builder.addInstance(1, ImmutableList.<FlatInstance<String,Integer>>of());
+		builder.addInstance(5, ImmutableList.of(d)); // duplicate ids are merged
+		EmpiricalAnnotationIndex<String,Integer> index = builder.build();
+
+		Assertions.assertThat(index.getNumInstances()).isEqualTo(6);
+		Assertions.assertThat(index.numAnnotations(5)).isEqualTo(4);
+		Assertions.assertThat(index.numAnnotators(5)).isEqualTo(3);
+		Assertions.assertThat(index.annotatorOf(5, 0)).isEqualTo(0);
+		Assertions.assertThat(index.annotatorOf(5, 2)).isEqualTo(2);
+		// within an annotator, annotations keep their arrival order
+		Assertions.assertThat(index.annotationAt(index.start(5, 2))).isSameAs(a);
+		Assertions.assertThat(index.annotationAt(index.start(5, 2)+1)).isSameAs(c);
+		Assertions.assertThat(index.annotationAt(index.start(5, 1))).isSameAs(d);
+		Assertions.assertThat(index.numAnnotations(5, 3)).isEqualTo(0);
+		Assertions.assertThat(index.numAnnotations(1)).isEqualTo(0);
+		Assertions.assertThat(index.numAnnotations(0, 0)).isEqualTo(0);
+		Assertions.assertThat(index.numAnnotations(17)).isEqualTo(0);
+	}
+
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.dataset;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.fest.assertions.Assertions;
+import org.junit.Test;
+
+public class AnnotationLogTest {
+
+	private static final int NUM_INSTANCES = 20, NUM_ANNOTATORS = 4, NUM_CLASSES = 3;
+
+	private static AnnotationStore randomStore(RandomGenerator rnd, int num){
+		AnnotationStore.Builder builder = AnnotationStore.builder(NUM_ANNOTATORS, NUM_CLASSES);
+		builder.addInstance(NUM_INSTANCES-1, null);
+		for (int i=0; i<num; i++){
+			// a few annotations have no timestamps; end times have ties
+			Long end = (i%17==0)? null: Long.valueOf(rnd.nextInt(100));
+			Long start = (end==null)? null: end-rnd.nextInt(5);
+			builder.add(rnd.nextInt(NUM_INSTANCES), rnd.nextInt(NUM_ANNOTATORS), rnd.nextInt(NUM_CLASSES), start, end);
+		}
+		return builder.build();
+	}
+
+	@Test
+	public void testTimeOrder(){
+		AnnotationLog log = new AnnotationLog(randomStore(new MersenneTwister(1), 300));
+		Assertions.assertThat(log.size()).isEqualTo(300);
+		for (int i=1; i<log.size(); i++){
+			Assertions.assertThat(log.endTimestampAt(i)).isGreaterThanOrEqualTo(log.endTimestampAt(i-1));
+		}
+		// untimestamped annotations come first
+		Assertions.assertThat(log.endTimestampAt(0)).isEqualTo(-1L);
+		int total = 0;
+		for (int annotator=0; annotator<NUM_ANNOTATORS; annotator++){
+			long[] series = log.endTimestamps(annotator);
+			Assertions.assertThat(series.length).isEqualTo(log.numAnnotations(annotator));
+			for (int i=1; i<series.length; i++){
+				Assertions.assertThat(series[i]).isGreaterThanOrEqualTo(series[i-1]);
+			}
+			AnnotationLog.Cursor cursor = log.replay(annotator);
+			while (cursor.hasNext()){
+				cursor.next();
+				Assertions.assertThat(cursor.annotator()).isEqualTo(annotator);
+			}
+			total += series.length;
+		}
+		Assertions.assertThat(total).isEqualTo(log.size());
+	}
+
+	@Test
+	public void testAnnotationsBetween(){
+		AnnotationLog log = new AnnotationLog(randomStore(new MersenneTwister(2), 500));
+		for (long t0=-1; t0<=101; t0+=7){
+			for (long t1=t0; t1<=t0+30; t1+=3){
+				int expected = 0;
+				int[] expectedPerAnnotator = new int[NUM_ANNOTATORS];
+				for (int i=0; i<log.size(); i++){
+					if (log.endTimestampAt(i)>=t0 && log.endTimestampAt(i)<t1){
+						++expected;
+						++expectedPerAnnotator[log.annotatorAt(i)];
+					}
+				}
+				AnnotationLog.Cursor cursor = log.annotationsBetween(t0, t1);
+				Assertions.assertThat(cursor.remaining()).isEqualTo(expected);
+				while (cursor.hasNext()){
+					cursor.next();
+					Assertions.assertThat(cursor.endTimestamp()).isGreaterThanOrEqualTo(t0).isLessThan(t1);
+				}
+				for (int annotator=0; annotator<NUM_ANNOTATORS; annotator++){
+					Assertions.assertThat(log.annotationsBetween(annotator, t0, t1).remaining())
+						.isEqualTo(expectedPerAnnotator[annotator]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCursorSkipTo(){
+		AnnotationLog log = new AnnotationLog(randomStore(new MersenneTwister(3), 200));
+		AnnotationLog.Cursor cursor = log.replay();
+		int skipped = cursor.skipTo(50);
+		Assertions.assertThat(skipped).isEqualTo(log.positionOf(50));
+		Assertions.assertThat(cursor.countBefore(60)).isEqualTo(log.positionOf(60)-log.positionOf(50));
+		Assertions.assertThat(cursor.next()).isEqualTo(log.positionOf(50));
+		// skipping backwards is a no-op
+		Assertions.assertThat(cursor.skipTo(0)).isEqualTo(0);
+	}
+
+	@Test
+	public void testAsOf(){
+		AnnotationStore store = randomStore(new MersenneTwister(4), 300);
+		AnnotationLog log = new AnnotationLog(store);
+		AnnotationStore prefix = log.asOf(40);
+		Assertions.assertThat(prefix.getNumInstances()).isEqualTo(NUM_INSTANCES);
+		Assertions.assertThat(prefix.getNumAnnotations()).isEqualTo(log.positionOf(40));
+		int[] expected = new int[NUM_CLASSES], actual = new int[NUM_CLASSES];
+		for (int instance=0; instance<NUM_INSTANCES; instance++){
+			Arrays.fill(expected, 0);
+			for (int i=store.start(instance); i<store.end(instance); i++){
+				if (store.endTimestampAt(i)<40){
+					++expected[store.labelAt(i)];
+				}
+			}
+			Assertions.assertThat(prefix.labelCounts(instance, actual)).isEqualTo(expected);
+		}
+		// the full log reproduces the store
+		Assertions.assertThat(log.asOf(Long.MAX_VALUE).confusionMatrices(store.majorityVoteLabels(new MersenneTwister(5))))
+			.isEqualTo(store.confusionMatrices(store.majorityVoteLabels(new MersenneTwister(5))));
+	}
+
+}
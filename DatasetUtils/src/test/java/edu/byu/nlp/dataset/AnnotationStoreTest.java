@@ -0,0 +1,147 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.dataset;
+
+import java.util.List;
+
+import org.apache.commons.math3.linear.SparseRealMatrix;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.fest.assertions.Assertions;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import edu.byu.nlp.data.FlatInstance;
+import edu.byu.nlp.data.types.AnnotationSet;
+import edu.byu.nlp.data.types.Dataset;
+import edu.byu.nlp.data.types.DatasetInstance;
+import edu.byu.nlp.data.types.SparseFeatureVector;
+import edu.byu.nlp.math.SparseRealMatrices;
+
+public class AnnotationStoreTest {
+
+  /**
+   * 3 annotators, 3 classes, 4 instances (instance 2 has no annotations)
+   */
+  private static AnnotationStore mockStore(){
+    return AnnotationStore.builder(3, 3)
+        .add(3, 0, 2, 10L, 11L)
+        .add(0, 2, 1, null, null)
+        .add(0, 0, 1, 1L, 2L)
+        .add(0, 0, 1, 3L, 4L)
+        .add(1, 1, 0, 5L, 6L)
+        .add(0, 1, 2, 7L, 8L)
+        .add(1, 2, 0, 9L, 9L)
+        .addInstance(2, "instance two")
+        .build();
+  }
+
+  @Test
+  public void testLayout(){
+    AnnotationStore store = mockStore();
+    Assertions.assertThat(store.getNumInstances()).isEqualTo(4);
+    Assertions.assertThat(store.getNumAnnotations()).isEqualTo(7);
+    Assertions.assertThat(store.numAnnotations(0)).isEqualTo(4);
+    Assertions.assertThat(store.numAnnotations(2)).isEqualTo(0);
+    Assertions.assertThat(store.numAnnotators(0)).isEqualTo(3);
+    Assertions.assertThat(store.getRawSource(2)).isEqualTo("instance two");
+    // sorted by instance, then annotator, then label (stable)
+    int[] expectedAnnotators = {0, 0, 1, 2, 1, 2, 0};
+    long[] expectedStarts = {1, 3, 7, FlatInstance.NULL_TIMESTAMP, 5, 9, 10};
+    for (int i=0; i<store.getNumAnnotations(); i++){
+      Assertions.assertThat(store.annotatorAt(i)).isEqualTo(expectedAnnotators[i]);
+      Assertions.assertThat(store.startTimestampAt(i)).isEqualTo(expectedStarts[i]);
+    }
+    Assertions.assertThat(store.start(3)).isEqualTo(6);
+    Assertions.assertThat(store.end(3)).isEqualTo(7);
+    Assertions.assertThat(store.numAnnotationsPerAnnotator()).isEqualTo(new int[]{3, 2, 2});
+  }
+
+  @Test
+  public void testAnnotationSetView(){
+    AnnotationStore store = mockStore();
+    AnnotationSet set = store.annotationSet(0);
+    SparseRealMatrix m = set.getLabelAnnotations();
+    Assertions.assertThat(m.getEntry(0, 1)).isEqualTo(2.0);
+    Assertions.assertThat(m.getEntry(1, 2)).isEqualTo(1.0);
+    Assertions.assertThat(m.getEntry(2, 2)).isEqualTo(0.0);
+    Assertions.assertThat(SparseRealMatrices.sum(m)).isEqualTo(4.0);
+    Assertions.assertThat(SparseRealMatrices.numNonZeroRows(m)).isEqualTo(3);
+    Assertions.assertThat(m.copy().getEntry(0, 1)).isEqualTo(2.0);
+
+    List<FlatInstance<SparseFeatureVector, Integer>> raw = Lists.newArrayList(set.getRawAnnotations());
+    Assertions.assertThat(raw.size()).isEqualTo(4);
+    Assertions.assertThat(raw.get(0).getAnnotation()).isEqualTo(1);
+    Assertions.assertThat(raw.get(0).getEndTimestamp()).isEqualTo(2L);
+    Assertions.assertThat(raw.get(3).getStartTimestamp()).isNull();
+
+    Assertions.assertThat(store.annotationSet(2).getRawAnnotations()).isEmpty();
+  }
+
+  @Test(expected=UnsupportedOperationException.class)
+  public void testViewIsReadOnly(){
+    mockStore().annotationSet(0).getLabelAnnotations().setEntry(0, 0, 1);
+  }
+
+  @Test
+  public void testAggregates(){
+    AnnotationStore store = mockStore();
+    Assertions.assertThat(store.majorityVoteLabels(null)).isEqualTo(new int[]{1, 0, -1, 2});
+    Assertions.assertThat(store.labelCounts(0, new int[3])).isEqualTo(new int[]{0, 3, 1});
+
+    int[][][] confusions = store.confusionMatrices(new int[]{1, 1, 0, -1});
+    Assertions.assertThat(confusions[0]).isEqualTo(new int[][]{{0,0,0},{0,2,0},{0,0,0}});
+    Assertions.assertThat(confusions[1]).isEqualTo(new int[][]{{0,0,0},{1,0,1},{0,0,0}});
+    Assertions.assertThat(confusions[2]).isEqualTo(new int[][]{{0,0,0},{1,1,0},{0,0,0}});
+
+    // there are no ties, so breaking them randomly changes nothing
+    int[] mv = store.majorityVoteLabels(new MersenneTwister(1));
+    Assertions.assertThat(mv).isEqualTo(new int[]{1, 0, -1, 2});
+  }
+
+  @Test
+  public void testFromDataset(){
+    Dataset dataset = DatasetsTestUtil.mockDataset();
+    AnnotationStore store = AnnotationStore.fromDataset(dataset);
+    int total = 0;
+    for (DatasetInstance inst: dataset){
+      int instance = inst.getInfo().getSource();
+      Assertions.assertThat(store.numAnnotations(instance)).isEqualTo(inst.getAnnotations().getRawAnnotations().size());
+      Assertions.assertThat(SparseRealMatrices.sum(store.annotationSet(instance).getLabelAnnotations()))
+        .isEqualTo(SparseRealMatrices.sum(inst.getAnnotations().getLabelAnnotations()));
+      total += inst.getAnnotations().getRawAnnotations().size();
+    }
+    Assertions.assertThat(store.getNumAnnotations()).isEqualTo(total);
+  }
+
+  @Test
+  public void testFromDatasetWithoutRawAnnotations(){
+    // the label annotation counts are used when raw annotations were not preserved
+    Dataset withRaw = DatasetsTestUtil.mockDataset(true);
+    Dataset withoutRaw = DatasetsTestUtil.mockDataset(false);
+    AnnotationStore store = AnnotationStore.fromDataset(withoutRaw);
+    Assertions.assertThat(store.getNumAnnotations()).isEqualTo(AnnotationStore.fromDataset(withRaw).getNumAnnotations());
+    for (DatasetInstance inst: withoutRaw){
+      Assertions.assertThat(inst.getAnnotations().getRawAnnotations()).isEmpty();
+      Assertions.assertThat(SparseRealMatrices.sum(store.annotationSet(inst.getInfo().getSource()).getLabelAnnotations()))
+        .isEqualTo(SparseRealMatrices.sum(inst.getAnnotations().getLabelAnnotations()));
+    }
+    Assertions.assertThat(Datasets.confusionMatricesWrtGoldLabels(withoutRaw))
+      .isEqualTo(Datasets.confusionMatricesWrtGoldLabels(withRaw));
+    Assertions.assertThat(Datasets.confusionMatricesWrtMajorityVoteLabels(withoutRaw, null))
+      .isEqualTo(Datasets.confusionMatricesWrtMajorityVoteLabels(withRaw, null));
+  }
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.dataset;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.fest.assertions.Assertions;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import edu.byu.nlp.data.FlatInstance;
+import edu.byu.nlp.data.types.Dataset;
+import edu.byu.nlp.data.types.DatasetInfo;
+import edu.byu.nlp.data.types.DatasetInstance;
+import edu.byu.nlp.data.types.SparseFeatureVector;
+import edu.byu.nlp.math.SparseRealMatrices;
+
+public class ConcurrentAnnotationIngestorTest {
+
+	/**
+	 * The maintained counts must agree with a full recount
+	 */
+	private static void assertCountsAreConsistent(Dataset dataset){
+		DatasetInfo info = dataset.getInfo();
+		Assertions.assertThat(info.getNumAnnotations()).isEqualTo(Datasets.numAnnotationsIn(dataset));
+		Assertions.assertThat(info.getNumDocumentsWithAnnotations()).isEqualTo(Datasets.numDocumentsWithAnnotationsIn(dataset));
+		Assertions.assertThat(info.getNumTokensWithAnnotations()).isEqualTo(Datasets.numTokensWithAnnotationsIn(dataset));
+		for (DatasetInstance inst: dataset){
+			Assertions.assertThat(inst.getInfo().getNumAnnotations())
+				.isEqualTo((int)SparseRealMatrices.sum(inst.getAnnotations().getLabelAnnotations()));
+			Assertions.assertThat(inst.getAnnotations().getRawAnnotations().size())
+				.isEqualTo(inst.getInfo().getNumAnnotations());
+		}
+	}
+
+	@Test
+	public void testConcurrentAdds() throws InterruptedException{
+		final Dataset dataset = DatasetsTestUtil.mockDataset();
+		final ConcurrentAnnotationIngestor ingestor = new ConcurrentAnnotationIngestor(dataset);
+		final int numInstances = dataset.getInfo().getInstanceIdIndexer().size();
+		final int numAnnotators = dataset.getInfo().getNumAnnotators();
+		final int numClasses = dataset.getInfo().getNumClasses();
+		int before = dataset.getInfo().getNumAnnotations();
+
+		final int numThreads = 4, perThread = 500;
+		List<Thread> threads = Lists.newArrayList();
+		for (int t=0; t<numThreads; t++){
+			final Random rnd = new Random(t);
+			threads.add(new Thread(){
+				@Override
+				public void run() {
+					for (int i=0; i<perThread; i++){
+						ingestor.add(rnd.nextInt(numInstances), rnd.nextInt(numAnnotators), rnd.nextInt(numClasses), (long)i, null);
+					}
+				}
+			});
+		}
+		for (Thread t: threads){
+			t.start();
+		}
+		for (Thread t: threads){
+			t.join();
+		}
+		Assertions.assertThat(dataset.getInfo().getNumAnnotations()).isEqualTo(before+numThreads*perThread);
+		assertCountsAreConsistent(dataset);
+	}
+
+	/**
+	 * Batches ingested from many threads at once are applied to the counts of 
+	 * the dataset and of the datasets sharing its instances, which are never 
+	 * recounted.
+	 */
+	@Test
+	public void testConcurrentBatchesNeverRecount() throws InterruptedException{
+		final Dataset dataset = DatasetsTestUtil.mockDataset();
+		final Dataset split = Datasets.split(dataset, new int[]{2, 1}).get(0);
+		final ConcurrentAnnotationIngestor ingestor = new ConcurrentAnnotationIngestor(dataset);
+		split.getInfo().getNumAnnotations();
+		final BasicDataset.AnnotationCounts counts = ((BasicDataset.Info) dataset.getInfo()).currentAnnotationCounts();
+		final BasicDataset.AnnotationCounts splitCounts = ((BasicDataset.Info) split.getInfo()).currentAnnotationCounts();
+		Assertions.assertThat(counts).isNotNull();
+		Assertions.assertThat(splitCounts).isNotNull();
+		final int numInstances = dataset.getInfo().getInstanceIdIndexer().size();
+		final int numAnnotators = dataset.getInfo().getNumAnnotators();
+		final int numClasses = dataset.getInfo().getNumClasses();
+		int before = dataset.getInfo().getNumAnnotations();
+
+		final int numThreads = 4, perThread = 200, batchSize = 5;
+		final AtomicInteger numRecounted = new AtomicInteger();
+		List<Thread> threads = Lists.newArrayList();
+		for (int t=0; t<numThreads; t++){
+			final Random rnd = new Random(t);
+			threads.add(new Thread(){
+				@Override
+				public void run() {
+					for (int i=0; i<perThread; i++){
+						int[] instanceIds = new int[batchSize], annotators = new int[batchSize], labels = new int[batchSize];
+						for (int j=0; j<batchSize; j++){
+							instanceIds[j] = rnd.nextInt(numInstances);
+							annotators[j] = rnd.nextInt(numAnnotators);
+							labels[j] = rnd.nextInt(numClasses);
+						}
+						ingestor.addAll(instanceIds, annotators, labels, null, null);
+						dataset.getInfo().getNumAnnotations();
+						split.getInfo().getNumDocumentsWithAnnotations();
+						if (((BasicDataset.Info) dataset.getInfo()).currentAnnotationCounts()!=counts || 
+								((BasicDataset.Info) split.getInfo()).currentAnnotationCounts()!=splitCounts){
+							numRecounted.incrementAndGet();
+						}
+					}
+				}
+			});
+		}
+		for (Thread t: threads){
+			t.start();
+		}
+		for (Thread t: threads){
+			t.join();
+		}
+		Assertions.assertThat(numRecounted.get()).isEqualTo(0);
+		Assertions.assertThat(((BasicDataset.Info) dataset.getInfo()).currentAnnotationCounts()).isSameAs(counts);
+		Assertions.assertThat(((BasicDataset.Info) split.getInfo()).currentAnnotationCounts()).isSameAs(splitCounts);
+		Assertions.assertThat(dataset.getInfo().getNumAnnotations()).isEqualTo(before+numThreads*perThread*batchSize);
+		assertCountsAreConsistent(dataset);
+		assertCountsAreConsistent(split);
+	}
+
+	@Test
+	public void testConcurrentRecounts() throws InterruptedException{
+		// counts recomputed while annotations are being added must neither miss nor double-count any
+		final Dataset dataset = DatasetsTestUtil.mockDataset();
+		final ConcurrentAnnotationIngestor ingestor = new ConcurrentAnnotationIngestor(dataset);
+		final int numInstances = dataset.getInfo().getInstanceIdIndexer().size();
+		int before = dataset.getInfo().getNumAnnotations();
+
+		final int numThreads = 4, perThread = 2000;
+		List<Thread> threads = Lists.newArrayList();
+		for (int t=0; t<numThreads; t++){
+			final Random rnd = new Random(t);
+			threads.add(new Thread(){
+				@Override
+				public void run() {
+					for (int i=0; i<perThread; i++){
+						ingestor.add(rnd.nextInt(numInstances), 0, 0, null, null);
+						if (i%10==0){
+							dataset.getInfo().annotationsChanged();
+							dataset.getInfo().getNumAnnotations();
+						}
+					}
+				}
+			});
+		}
+		for (Thread t: threads){
+			t.start();
+		}
+		for (Thread t: threads){
+			t.join();
+		}
+		Assertions.assertThat(dataset.getInfo().getNumAnnotations()).isEqualTo(before+numThreads*perThread);
+		assertCountsAreConsistent(dataset);
+	}
+
+	@Test
+	public void testBatchAdd(){
+		Dataset dataset = DatasetsTestUtil.mockDataset();
+		ConcurrentAnnotationIngestor ingestor = new ConcurrentAnnotationIngestor(dataset);
+		int before = dataset.getInfo().getNumAnnotations();
+		ingestor.addAll(new int[]{0,1,1,2}, new int[]{0,1,0,1}, new int[]{1,0,0,1},
+				new long[]{7,FlatInstance.NULL_TIMESTAMP,7,7}, null);
+		Assertions.assertThat(dataset.getInfo().getNumAnnotations()).isEqualTo(before+4);
+		assertCountsAreConsistent(dataset);
+
+		DatasetInstance inst = ingestor.lookupInstance(1);
+		Assertions.assertThat(inst.getInfo().getSource()).isEqualTo(1);
+		int numUntimed = 0;
+		for (FlatInstance<SparseFeatureVector, Integer> ann: inst.getAnnotations().getRawAnnotations()){
+			if (ann.getStartTimestamp()==null){
+				numUntimed++;
+			}
+		}
+		Assertions.assertThat(numUntimed).isEqualTo(1);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidLabel(){
+		Dataset dataset = DatasetsTestUtil.mockDataset();
+		new ConcurrentAnnotationIngestor(dataset).add(0, 0, dataset.getInfo().getNumClasses(), null, null);
+	}
+
+	@Test
+	public void testRemove(){
+		Dataset dataset = DatasetsTestUtil.mockDataset();
+		ConcurrentAnnotationIngestor ingestor = new ConcurrentAnnotationIngestor(dataset);
+		int numDocuments = dataset.getInfo().getNumDocumentsWithAnnotations();
+		int numTokens = dataset.getInfo().getNumTokensWithAnnotations();
+
+		// strip every annotation from the first instance
+		DatasetInstance inst = ingestor.lookupInstance(0);
+		for (FlatInstance<SparseFeatureVector, Integer> ann: Lists.newArrayList(inst.getAnnotations().getRawAnnotations())){
+			ingestor.remove(ann);
+		}
+		Assertions.assertThat(inst.hasAnnotations()).isFalse();
+		Assertions.assertThat(dataset.getInfo().getNumDocumentsWithAnnotations()).isEqualTo(numDocuments-1);
+		Assertions.assertThat(dataset.getInfo().getNumTokensWithAnnotations())
+			.isEqualTo(numTokens-DatasetInstances.numTokensIn(inst));
+		assertCountsAreConsistent(dataset);
+
+		// and annotate it again
+		ingestor.add(0, 0, 0, null, null);
+		Assertions.assertThat(dataset.getInfo().getNumDocumentsWithAnnotations()).isEqualTo(numDocuments);
+		assertCountsAreConsistent(dataset);
+	}
+
+}
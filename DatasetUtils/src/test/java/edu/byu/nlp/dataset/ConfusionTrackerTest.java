@@ -0,0 +1,172 @@
+/**
+ * Copyright 2015 Brigham Young University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.byu.nlp.dataset;
+
+import java.util.List;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.fest.assertions.Assertions;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class ConfusionTrackerTest {
+
+	private static final int NUM_INSTANCES = 40, NUM_ANNOTATORS = 6, NUM_CLASSES = 4;
+
+	/**
+	 * (instance, annotator, label) triples
+	 */
+	private static List<int[]> randomAnnotations(RandomGenerator rnd, int num){
+		List<int[]> annotations = Lists.newArrayList();
+		for (int i=0; i<num; i++){
+			annotations.add(new int[]{rnd.nextInt(NUM_INSTANCES), rnd.nextInt(NUM_ANNOTATORS), rnd.nextInt(NUM_CLASSES)});
+		}
+		return annotations;
+	}
+
+	private static AnnotationStore storeOf(List<int[]> annotations){
+		AnnotationStore.Builder builder = AnnotationStore.builder(NUM_ANNOTATORS, NUM_CLASSES);
+		builder.addInstance(NUM_INSTANCES-1, null);
+		for (int[] ann: annotations){
+			builder.add(ann[0], ann[1], ann[2], null, null);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * The tracker must agree with confusion matrices recomputed from
+	 * scratch with respect to the tracker's reference labels, and those
+	 * labels must be majority votes.
+	 */
+	private static void assertConsistent(ConfusionTracker tracker, List<int[]> annotations){
+		AnnotationStore store = storeOf(annotations);
+		int[] reference = tracker.referenceLabels();
+		Assertions.assertThat(tracker.confusionMatrices()).isEqualTo(store.confusionMatrices(reference));
+		int[] counts = new int[NUM_CLASSES];
+		for (int instance=0; instance<NUM_INSTANCES; instance++){
+			store.labelCounts(instance, counts);
+			if (store.numAnnotations(instance)==0){
+				Assertions.assertThat(reference[instance]).isEqualTo(-1);
+			}
+			else{
+				for (int c=0; c<NUM_CLASSES; c++){
+					Assertions.assertThat(counts[reference[instance]]).isGreaterThanOrEqualTo(counts[c]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testIncrementalMajorityVote(){
+		RandomGenerator rnd = new MersenneTwister(1);
+		ConfusionTracker tracker = ConfusionTracker.wrtMajorityVoteLabels(NUM_INSTANCES, NUM_ANNOTATORS, NUM_CLASSES, rnd);
+		List<int[]> annotations = Lists.newArrayList();
+		for (int[] ann: randomAnnotations(rnd, 300)){
+			tracker.add(ann[0], ann[1], ann[2]);
+			annotations.add(ann);
+			if (annotations.size()%25==0){
+				assertConsistent(tracker, annotations);
+			}
+		}
+		// remove in random order (flipping and emptying majority votes)
+		while (!annotations.isEmpty()){
+			int[] ann = annotations.remove(rnd.nextInt(annotations.size()));
+			tracker.remove(ann[0], ann[1], ann[2]);
+			if (annotations.size()%25==0){
+				assertConsistent(tracker, annotations);
+			}
+		}
+		for (int annotator=0; annotator<NUM_ANNOTATORS; annotator++){
+			Assertions.assertThat(tracker.numReferencedAnnotations(annotator)).isEqualTo(0);
+		}
+	}
+
+	@Test
+	public void testMajorityVoteFlip(){
+		ConfusionTracker tracker = ConfusionTracker.wrtMajorityVoteLabels(1, 3, 2, new MersenneTwister(1));
+		tracker.add(0, 0, 0);
+		Assertions.assertThat(tracker.referenceLabel(0)).isEqualTo(0);
+		tracker.add(0, 1, 1); // tie: sticky
+		Assertions.assertThat(tracker.referenceLabel(0)).isEqualTo(0);
+		Assertions.assertThat(tracker.accuracy(0)).isEqualTo(1.0);
+		tracker.add(0, 2, 1); // flip
+		Assertions.assertThat(tracker.referenceLabel(0)).isEqualTo(1);
+		Assertions.assertThat(tracker.count(0, 1, 0)).isEqualTo(1);
+		Assertions.assertThat(tracker.accuracy(0)).isEqualTo(0.0);
+		Assertions.assertThat(tracker.accuracy(1)).isEqualTo(1.0);
+		tracker.remove(0, 0, 0);
+		tracker.remove(0, 1, 1);
+		tracker.remove(0, 2, 1);
+		Assertions.assertThat(tracker.referenceLabel(0)).isEqualTo(-1);
+		Assertions.assertThat(Double.isNaN(tracker.accuracy(0))).isTrue();
+	}
+
+	@Test
+	public void testRemovalTieWithoutRnd(){
+		ConfusionTracker tracker = ConfusionTracker.wrtMajorityVoteLabels(1, 6, 3, null);
+		tracker.add(0, 0, 2);
+		tracker.add(0, 1, 2);
+		tracker.add(0, 2, 1);
+		tracker.add(0, 3, 1);
+		tracker.add(0, 4, 0);
+		tracker.add(0, 5, 0);
+		Assertions.assertThat(tracker.referenceLabel(0)).isEqualTo(2);
+		tracker.remove(0, 0, 2); // 1 and 0 tie for the majority
+		Assertions.assertThat(tracker.referenceLabel(0)).isEqualTo(0);
+		Assertions.assertThat(tracker.count(4, 0, 0)).isEqualTo(1);
+		Assertions.assertThat(tracker.count(1, 0, 2)).isEqualTo(1);
+	}
+
+	@Test
+	public void testParallelInitialization(){
+		List<int[]> annotations = randomAnnotations(new MersenneTwister(2), 2000);
+		AnnotationStore store = storeOf(annotations);
+		ConfusionTracker serial = ConfusionTracker.wrtMajorityVoteLabels(store, new MersenneTwister(3), 1);
+		ConfusionTracker parallel = ConfusionTracker.wrtMajorityVoteLabels(store, new MersenneTwister(3), 4);
+		Assertions.assertThat(parallel.referenceLabels()).isEqualTo(store.majorityVoteLabels(new MersenneTwister(3)));
+		Assertions.assertThat(parallel.confusionMatrices()).isEqualTo(serial.confusionMatrices());
+		assertConsistent(parallel, annotations);
+		// and can be updated afterwards
+		parallel.add(0, 0, 0);
+		annotations.add(new int[]{0, 0, 0});
+		assertConsistent(parallel, annotations);
+	}
+
+	@Test
+	public void testGoldLabels(){
+		int[] gold = new int[NUM_INSTANCES];
+		for (int i=0; i<gold.length; i++){
+			gold[i] = (i%5==0)? -1: i%NUM_CLASSES;
+		}
+		List<int[]> annotations = randomAnnotations(new MersenneTwister(4), 500);
+		ConfusionTracker tracker = ConfusionTracker.wrtGoldLabels(storeOf(annotations), gold, 3);
+		Assertions.assertThat(tracker.confusionMatrices()).isEqualTo(storeOf(annotations).confusionMatrices(gold));
+		int[] ann = annotations.remove(0);
+		tracker.remove(ann[0], ann[1], ann[2]);
+		Assertions.assertThat(tracker.confusionMatrices()).isEqualTo(storeOf(annotations).confusionMatrices(gold));
+		Assertions.assertThat(tracker.referenceLabels()).isEqualTo(gold);
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testRemoveMissing(){
+		ConfusionTracker tracker = ConfusionTracker.wrtMajorityVoteLabels(2, 2, 2, null);
+		tracker.add(0, 0, 1);
+		tracker.remove(0, 1, 1);
+	}
+
+}
@@ -1,6 +1,7 @@
 package edu.byu.nlp.dataset;
 
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -9,13 +10,17 @@ import org.fest.assertions.Assertions;
 import org.fest.assertions.Fail;
 import org.junit.Test;
 
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import edu.byu.nlp.data.FlatInstance;
 import edu.byu.nlp.data.types.Dataset;
+import edu.byu.nlp.data.types.DatasetInfo;
 import edu.byu.nlp.data.types.DatasetInstance;
 import edu.byu.nlp.data.types.SparseFeatureVector;
 import edu.byu.nlp.data.util.JsonDatasetMocker;
+import edu.byu.nlp.math.SparseRealMatrices;
 import edu.byu.nlp.util.Counter;
 import edu.byu.nlp.util.Counters;
 import edu.byu.nlp.util.DoubleArrays;
@@ -333,4 +338,177 @@ public class DatasetsTest {
 
 	}
 	
+	/**
+	 * Annotation counts are computed up front and then maintained by deltas; 
+	 * they must always agree with a recount.
+	 */
+	@Test
+	public void testInfoCountsAreMaintained(){
+		Dataset dataset = DatasetsTestUtil.mockDataset();
+		DatasetInfo info = dataset.getInfo();
+		Assertions.assertThat(info.getNumAnnotations()).isEqualTo(Datasets.numAnnotationsIn(dataset));
+		Assertions.assertThat(info.getNumDocumentsWithAnnotations()).isEqualTo(Datasets.numDocumentsWithAnnotationsIn(dataset));
+		Assertions.assertThat(info.getNumTokensWithAnnotations()).isEqualTo(Datasets.numTokensWithAnnotationsIn(dataset));
+
+		// remove every annotation of the first instance
+		DatasetInstance first = dataset.iterator().next();
+		Assertions.assertThat(first.getNumTokens()).isEqualTo((int)first.asFeatureVector().sum());
+		int numAnnotations = info.getNumAnnotations();
+		int numTokensWithAnnotations = info.getNumTokensWithAnnotations();
+		List<FlatInstance<SparseFeatureVector, Integer>> anns = Lists.newArrayList(first.getAnnotations().getRawAnnotations());
+		for (FlatInstance<SparseFeatureVector, Integer> ann: anns){
+			Datasets.removeAnnotationFromDataset(dataset, ann);
+		}
+		Assertions.assertThat(info.getNumAnnotations()).isEqualTo(numAnnotations-anns.size());
+		Assertions.assertThat(info.getNumTokensWithAnnotations()).isEqualTo(numTokensWithAnnotations-first.getNumTokens());
+		Assertions.assertThat(info.getNumDocumentsWithAnnotations()).isEqualTo(Datasets.numDocumentsWithAnnotationsIn(dataset));
+
+		// put them back
+		Datasets.addAnnotationsToDataset(dataset, anns);
+		Assertions.assertThat(info.getNumAnnotations()).isEqualTo(numAnnotations);
+		Assertions.assertThat(info.getNumTokensWithAnnotations()).isEqualTo(numTokensWithAnnotations);
+
+		// joined counts are the sums of the parts
+		Dataset joined = Datasets.join(dataset, dataset);
+		Assertions.assertThat(joined.getInfo().getNumDocuments()).isEqualTo(2*info.getNumDocuments());
+		Assertions.assertThat(joined.getInfo().getNumAnnotations()).isEqualTo(Datasets.numAnnotationsIn(joined));
+		Assertions.assertThat(joined.getInfo().getNumTokens()).isEqualTo(2*info.getNumTokens());
+	}
+	
+	/**
+	 * Derived datasets share their parent's instances, so annotations added 
+	 * through the parent must show up in their counts too.
+	 */
+	@Test
+	public void testDerivedInfoCountsFollowSharedInstances(){
+		Dataset dataset = DatasetsTestUtil.mockDataset();
+		Dataset split = Datasets.split(dataset, new int[]{2, 1}).get(0);
+		int numAnnotations = split.getInfo().getNumAnnotations();
+		Assertions.assertThat(numAnnotations).isEqualTo(Datasets.numAnnotationsIn(split));
+
+		DatasetInstance inst = split.iterator().next();
+		FlatInstance<SparseFeatureVector, Integer> ann = inst.getAnnotations().getRawAnnotations().iterator().next();
+		Datasets.removeAnnotationFromDataset(dataset, ann);
+		Assertions.assertThat(split.getInfo().getNumAnnotations()).isEqualTo(numAnnotations-1);
+		Datasets.addAnnotationToDataset(dataset, ann);
+		Assertions.assertThat(split.getInfo().getNumAnnotations()).isEqualTo(numAnnotations);
+		Assertions.assertThat(split.getInfo().getNumDocumentsWithAnnotations()).isEqualTo(Datasets.numDocumentsWithAnnotationsIn(split));
+	}
+
+	private static BasicDataset.AnnotationCounts countsOf(Dataset dataset){
+		return ((BasicDataset.Info) dataset.getInfo()).currentAnnotationCounts();
+	}
+
+	/**
+	 * Annotation counts are counted once per dataset; no later change, 
+	 * whether to another dataset or through the legacy annotationsChanged() 
+	 * calls, makes a dataset count its instances again.
+	 */
+	@Test
+	public void testAnnotationCountsAreNeverRecounted(){
+		Dataset dataset = DatasetsTestUtil.mockDataset();
+		Dataset split = Datasets.split(dataset, new int[]{2, 1}).get(0);
+		int numAnnotations = dataset.getInfo().getNumAnnotations();
+		split.getInfo().getNumAnnotations();
+		BasicDataset.AnnotationCounts counts = countsOf(dataset);
+		BasicDataset.AnnotationCounts splitCounts = countsOf(split);
+		Assertions.assertThat(counts).isNotNull();
+		Assertions.assertThat(splitCounts).isNotNull();
+
+		// changes to an unrelated dataset
+		Dataset other = DatasetsTestUtil.mockDataset();
+		FlatInstance<SparseFeatureVector, Integer> ann = other.iterator().next().getAnnotations().getRawAnnotations().iterator().next();
+		Datasets.removeAnnotationFromDataset(other, ann);
+		Datasets.addAnnotationToDataset(other, ann);
+		other.getInfo().annotationsChanged();
+		other.iterator().next().getInfo().annotationsChanged();
+		Assertions.assertThat(countsOf(dataset)).isSameAs(counts);
+		Assertions.assertThat(countsOf(split)).isSameAs(splitCounts);
+		Assertions.assertThat(dataset.getInfo().getNumAnnotations()).isEqualTo(numAnnotations);
+
+		// changes made directly to a shared instance, reported the legacy way
+		DatasetInstance inst = split.iterator().next();
+		inst.getAnnotations().getLabelAnnotations().addToEntry(0, 0, 1);
+		inst.getInfo().annotationsChanged();
+		Assertions.assertThat(dataset.getInfo().getNumAnnotations()).isEqualTo(numAnnotations+1);
+		Assertions.assertThat(split.getInfo().getNumAnnotations()).isEqualTo(Datasets.numAnnotationsIn(split));
+		SparseRealMatrices.clear(inst.getAnnotations().getLabelAnnotations());
+		dataset.getInfo().annotationsChanged();
+		Assertions.assertThat(dataset.getInfo().getNumAnnotations()).isEqualTo(Datasets.numAnnotationsIn(dataset));
+		Assertions.assertThat(split.getInfo().getNumDocumentsWithAnnotations()).isEqualTo(Datasets.numDocumentsWithAnnotationsIn(split));
+		Assertions.assertThat(split.getInfo().getNumTokensWithAnnotations()).isEqualTo(Datasets.numTokensWithAnnotationsIn(split));
+		Assertions.assertThat(countsOf(dataset)).isSameAs(counts);
+		Assertions.assertThat(countsOf(split)).isSameAs(splitCounts);
+	}
+
+	/**
+	 * Label annotation matrices may hold fractional counts; only asking for 
+	 * the (integral) number of annotations requires them to sum to integers.
+	 */
+	@Test
+	public void testFractionalAnnotationCounts(){
+		Dataset dataset = DatasetsTestUtil.mockDataset();
+		DatasetInstance inst = dataset.iterator().next();
+		SparseRealMatrices.clear(inst.getAnnotations().getLabelAnnotations());
+		inst.getAnnotations().getLabelAnnotations().setEntry(0, 0, 0.5);
+		inst.getInfo().annotationsChanged();
+
+		Assertions.assertThat(inst.hasAnnotations()).isTrue();
+		int numDocuments = dataset.getInfo().getNumDocuments();
+		Dataset copy = Datasets.split(dataset, new int[]{numDocuments}).get(0);
+		Assertions.assertThat(copy.getInfo().getNumDocumentsWithAnnotations()).isEqualTo(Datasets.numDocumentsWithAnnotationsIn(dataset));
+		Assertions.assertThat(Datasets.join(copy, copy).getInfo().getNumTokensWithAnnotations())
+			.isEqualTo(2*Datasets.numTokensWithAnnotationsIn(dataset));
+	}
+	
+	@Test
+	public void testInstanceLookupIsSharedAcrossDerivedDatasets() throws IOException{
+		Dataset dataset = JsonDatasetMocker.buildTestDatasetFromJson(JsonDatasetMocker.jsonInstances2(System.currentTimeMillis()));
+		for (DatasetInstance inst: dataset){
+			Assertions.assertThat(dataset.lookupInstance(inst.getInfo().getSource())).isSameAs(inst);
+			Assertions.assertThat(dataset.lookupInstance(inst.getInfo().getRawSource())).isSameAs(inst);
+		}
+		Assertions.assertThat(dataset.lookupInstance("no such source")).isNull();
+		Assertions.assertThat(dataset.lookupInstance(-1)).isNull();
+
+		List<Dataset> splits = Datasets.split(Datasets.shuffled(dataset, new MersenneTwister(1)), new int[]{3,5});
+		Dataset rejoined = Datasets.join(splits.get(1), splits.get(0));
+		InstanceIndex index = ((BasicDataset)dataset).getInstanceIndex();
+		for (DatasetInstance inst: dataset){
+			int id = inst.getInfo().getSource();
+			// each instance is found in exactly the split that holds it
+			boolean inFirst = Lists.newArrayList(splits.get(0)).contains(inst);
+			Assertions.assertThat(splits.get(0).lookupInstance(id)).isSameAs(inFirst? inst: null);
+			Assertions.assertThat(splits.get(1).lookupInstance(id)).isSameAs(inFirst? null: inst);
+			Assertions.assertThat(splits.get(inFirst? 0: 1).lookupInstance(inst.getInfo().getRawSource())).isSameAs(inst);
+			Assertions.assertThat(rejoined.lookupInstance(id)).isSameAs(inst);
+		}
+		// derived datasets share the original's index rather than rebuilding it
+		Assertions.assertThat(((BasicDataset)Datasets.shuffled(dataset, new MersenneTwister(2))).getInstanceIndex()).isSameAs(index);
+	}
+
+	@Test
+	public void testInstanceLookupInSmallSubset() throws IOException{
+		Dataset dataset = JsonDatasetMocker.buildTestDatasetFromJson(JsonDatasetMocker.jsonInstances2(System.currentTimeMillis()));
+		final DatasetInstance kept = dataset.iterator().next();
+		// much smaller than its parent, so it indexes its instance itself
+		Dataset subset = Datasets.filteredDataset(dataset, new Predicate<DatasetInstance>() {
+			@Override
+			public boolean apply(DatasetInstance inst) {
+				return inst==kept;
+			}
+		});
+		for (DatasetInstance inst: dataset){
+			Assertions.assertThat(subset.lookupInstance(inst.getInfo().getSource())).isSameAs(inst==kept? inst: null);
+		}
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testIteratorIsUnmodifiable() throws IOException{
+		Dataset dataset = JsonDatasetMocker.buildTestDatasetFromJson(JsonDatasetMocker.jsonInstances2(System.currentTimeMillis()));
+		Iterator<DatasetInstance> it = dataset.iterator();
+		it.next();
+		it.remove();
+	}
+	
 }
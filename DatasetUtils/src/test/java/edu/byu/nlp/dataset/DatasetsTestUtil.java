@@ -46,6 +46,10 @@ public class DatasetsTestUtil {
 //	}
 	
 	public static Dataset mockDataset(){
+		return mockDataset(true);
+	}
+
+	public static Dataset mockDataset(boolean preserveRawAnnotations){
 
 		List<Map<String,Object>> rawData = Lists.newArrayList();
 		SparseFeatureVector data1 = new BasicSparseFeatureVector(new int[]{0,1,2,4}, new double[]{8,4,2,1});
@@ -117,7 +121,7 @@ public class DatasetsTestUtil {
     .transform(DataStreams.Transforms.transformFieldValue(DataStreamInstance.SOURCE, DataStreamInstance.INSTANCE_ID, instanceFieldIndexer))
     ;
 		
-		return Datasets.convert("data source", stream, new IndexerCalculator<>(featureIndex, labelIndex, instanceIdIndex, annotatorIdIndex), true);
+		return Datasets.convert("data source", stream, new IndexerCalculator<>(featureIndex, labelIndex, instanceIdIndex, annotatorIdIndex), preserveRawAnnotations);
 	}
 	
 	